@@ -0,0 +1,26 @@
+package com.kusalk.projects.session.handler.benchmarks;
+
+import com.kusalk.projects.session.handler.session.SessionMemento;
+
+/**
+ * Memento of the {@link BenchmarkSession}
+ */
+public class BenchmarkMemento extends SessionMemento {
+
+    private static final long serialVersionUID = 1L;
+
+    private byte[] payload;
+
+    public byte[] getPayload( ) {
+        return payload;
+    }
+
+    public void setPayload( byte[] payload ) {
+        this.payload = payload;
+    }
+
+    @Override
+    public void setSessionClass( ) {
+        this.sessionClass = BenchmarkSession.class.getName( );
+    }
+}
@@ -0,0 +1,32 @@
+package com.kusalk.projects.session.handler.benchmarks;
+
+import com.kusalk.projects.session.handler.session.Session;
+import com.kusalk.projects.session.handler.session.SessionMemento;
+
+/**
+ * Session holding an opaque payload, so the benchmarks control the size of the memento
+ */
+public class BenchmarkSession extends Session {
+
+    private byte[] payload = new byte[0];
+
+    @Override
+    public void restore( SessionMemento memento ) {
+        this.payload = ( ( BenchmarkMemento ) memento ).getPayload( );
+    }
+
+    @Override
+    public SessionMemento createMemento( ) {
+        BenchmarkMemento memento = new BenchmarkMemento( );
+        memento.setPayload( payload );
+        return memento;
+    }
+
+    public byte[] getPayload( ) {
+        return payload;
+    }
+
+    public void setPayload( byte[] payload ) {
+        this.payload = payload;
+    }
+}
@@ -0,0 +1,139 @@
+package com.kusalk.projects.session.handler.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two JMH result files written with {@code -rf csv}, usually of a baseline build and of a candidate build.
+ * Results are matched by benchmark, mode, thread count and parameters, and a change is reported as significant when
+ * the scores differ by more than the sum of their error margins.
+ * <p>
+ * Usage : {@code java -cp target/benchmarks.jar com.kusalk.projects.session.handler.benchmarks.CompareResults
+ * baseline.csv candidate.csv}
+ */
+public final class CompareResults {
+
+    private static final String ROW_FORMAT = "%-90s %14s %14s %9s  %s%n";
+
+    private CompareResults( ) {
+    }
+
+    public static void main( String[] args ) throws IOException {
+        if ( args.length != 2 ) {
+            System.err.println( "Usage : CompareResults <baseline.csv> <candidate.csv>" );
+            System.exit( 2 );
+        }
+        Map<String, Result> baseline = read( args[0] );
+        Map<String, Result> candidate = read( args[1] );
+        System.out.printf( ROW_FORMAT, "Benchmark", "Baseline", "Candidate", "Change", "" );
+        for ( Map.Entry<String, Result> entry : candidate.entrySet( ) ) {
+            Result after = entry.getValue( );
+            Result before = baseline.get( entry.getKey( ) );
+            if ( before == null ) {
+                System.out.printf( ROW_FORMAT, entry.getKey( ), "-", format( after ), "-", "new" );
+                continue;
+            }
+            double change = ( after.score - before.score ) / before.score * 100;
+            boolean significant = Math.abs( after.score - before.score ) > errorOf( before ) + errorOf( after );
+            System.out.printf( ROW_FORMAT, entry.getKey( ), format( before ), format( after ),
+                    String.format( "%+.1f%%", change ), significant ? "significant" : "" );
+        }
+        for ( String key : baseline.keySet( ) ) {
+            if ( !candidate.containsKey( key ) ) {
+                System.out.printf( ROW_FORMAT, key, format( baseline.get( key ) ), "-", "-", "removed" );
+            }
+        }
+    }
+
+    private static Map<String, Result> read( String file ) throws IOException {
+        List<String> lines = Files.readAllLines( Paths.get( file ), StandardCharsets.UTF_8 );
+        Map<String, Result> results = new LinkedHashMap<>( );
+        if ( lines.isEmpty( ) ) {
+            return results;
+        }
+        List<String> header = split( lines.get( 0 ) );
+        for ( String line : lines.subList( 1, lines.size( ) ) ) {
+            if ( line.trim( ).isEmpty( ) ) {
+                continue;
+            }
+            List<String> columns = split( line );
+            StringBuilder key = new StringBuilder( shortName( columns.get( 0 ) ) )
+                    .append( ' ' ).append( columns.get( 1 ) )
+                    .append( " t=" ).append( columns.get( 2 ) );
+            for ( int i = 7; i < columns.size( ) && i < header.size( ); i++ ) {
+                if ( !columns.get( i ).isEmpty( ) ) {
+                    key.append( ' ' ).append( header.get( i ).replace( "Param: ", "" ) ).append( '=' ).append( columns.get( i ) );
+                }
+            }
+            results.put( key.toString( ), new Result( parse( columns.get( 4 ) ), parse( columns.get( 5 ) ), columns.get( 6 ) ) );
+        }
+        return results;
+    }
+
+    private static String shortName( String benchmark ) {
+        String prefix = CompareResults.class.getPackage( ).getName( ) + ".";
+        return benchmark.startsWith( prefix ) ? benchmark.substring( prefix.length( ) ) : benchmark;
+    }
+
+    /**
+     * Splits a CSV line, honouring double quoted columns
+     */
+    private static List<String> split( String line ) {
+        List<String> columns = new ArrayList<>( );
+        StringBuilder column = new StringBuilder( );
+        boolean quoted = false;
+        for ( int i = 0; i < line.length( ); i++ ) {
+            char c = line.charAt( i );
+            if ( c == '"' ) {
+                if ( quoted && i + 1 < line.length( ) && line.charAt( i + 1 ) == '"' ) {
+                    column.append( '"' );
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if ( c == ',' && !quoted ) {
+                columns.add( column.toString( ) );
+                column.setLength( 0 );
+            } else {
+                column.append( c );
+            }
+        }
+        columns.add( column.toString( ) );
+        return columns;
+    }
+
+    private static double parse( String value ) {
+        try {
+            return Double.parseDouble( value );
+        } catch ( NumberFormatException e ) {
+            return Double.NaN;
+        }
+    }
+
+    private static double errorOf( Result result ) {
+        return Double.isNaN( result.error ) ? 0 : result.error;
+    }
+
+    private static String format( Result result ) {
+        return String.format( "%.3f %s", result.score, result.unit );
+    }
+
+    private static final class Result {
+
+        private final double score;
+        private final double error;
+        private final String unit;
+
+        private Result( double score, double error, String unit ) {
+            this.score = score;
+            this.error = error;
+            this.unit = unit;
+        }
+    }
+}
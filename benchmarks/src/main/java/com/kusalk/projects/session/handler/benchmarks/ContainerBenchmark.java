@@ -0,0 +1,83 @@
+package com.kusalk.projects.session.handler.benchmarks;
+
+import com.kusalk.projects.session.handler.SessionServices;
+import com.kusalk.projects.session.handler.containers.InternalSessionContainer;
+import com.kusalk.projects.session.handler.session.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the in-memory paths of the {@link InternalSessionContainer}. The number of threads is set with the
+ * JMH {@code -t} option, see the README of the benchmarks module.
+ * <p>
+ * The default container is a singleton configured from system properties, so every parameter combination runs in its
+ * own fork and sets the container mode and the number of partitions before the container is first used.
+ */
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" } )
+@State( Scope.Benchmark )
+public class ContainerBenchmark {
+
+    private static final long TIMEOUT_IN_SECONDS = TimeUnit.HOURS.toSeconds( 1 );
+
+    @Param( { "LOCK_FREE", "LOCKED" } )
+    public String containerMode;
+
+    @Param( { "1", "8" } )
+    public int partitions;
+
+    @Param( { "100000" } )
+    public int liveSessions;
+
+    private InternalSessionContainer container;
+    private SessionServices sessionServices;
+    private String[] sessionIds;
+
+    @Setup( Level.Trial )
+    public void setUp( ) {
+        System.setProperty( InternalSessionContainer.CONTAINER_MODE_PROPERTY, containerMode );
+        System.setProperty( InternalSessionContainer.PARTITIONS_PROPERTY, String.valueOf( partitions ) );
+        container = InternalSessionContainer.getInstance( );
+        sessionServices = new SessionServices( );
+        sessionIds = new String[liveSessions];
+        for ( int i = 0; i < liveSessions; i++ ) {
+            sessionIds[i] = sessionServices.createSession( BenchmarkSession.class, TIMEOUT_IN_SECONDS ).getData( );
+        }
+    }
+
+    /**
+     * Creates a session and removes it again, so the number of live sessions stays constant during the run
+     */
+    @Benchmark
+    public String createSession( ) {
+        String sessionId = sessionServices.createSession( BenchmarkSession.class, TIMEOUT_IN_SECONDS ).getData( );
+        container.removeSession( sessionId );
+        return sessionId;
+    }
+
+    @Benchmark
+    public Session loadSessionFromContainer( ) {
+        return container.loadSessionFromContainer( sessionIds[ThreadLocalRandom.current( ).nextInt( sessionIds.length )] );
+    }
+
+    @Benchmark
+    public Session loadSession( ) {
+        return sessionServices.loadSession( sessionIds[ThreadLocalRandom.current( ).nextInt( sessionIds.length )] ).getData( );
+    }
+}
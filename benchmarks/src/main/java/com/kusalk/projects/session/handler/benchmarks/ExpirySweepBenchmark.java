@@ -0,0 +1,81 @@
+package com.kusalk.projects.session.handler.benchmarks;
+
+import com.kusalk.projects.session.handler.containers.InternalSessionContainer;
+import com.kusalk.projects.session.handler.expiry.TimerNode;
+import com.kusalk.projects.session.handler.expiry.TimerWheel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the cost of one tick of the session sweeper for a growing number of live sessions. The sweeper of the
+ * {@link InternalSessionContainer} is not reachable from outside the container, so this drives the same
+ * {@link TimerWheel} the sweeper advances, with session timeouts spread evenly over an hour. Expired nodes are
+ * rescheduled an hour ahead, which keeps the number of live sessions constant.
+ * <p>
+ * {@link #fullScanTick()} is the baseline of a sweeper checking the timeout of every live session on each tick.
+ */
+@BenchmarkMode( { Mode.AverageTime, Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" } )
+@Threads( 1 )
+@State( Scope.Benchmark )
+public class ExpirySweepBenchmark {
+
+    private static final long TICK_MILLIS = InternalSessionContainer.DEFAULT_EXPIRY_TICK_MILLIS;
+    private static final long TIMEOUT_MILLIS = TimeUnit.HOURS.toMillis( 1 );
+
+    @Param( { "10000", "100000", "1000000", "10000000" } )
+    public int liveSessions;
+
+    private TimerWheel<TimerNode> wheel;
+    private long[] deadlines;
+    private long wheelNow;
+    private long scanNow;
+
+    @Setup( Level.Trial )
+    public void setUp( ) {
+        Random random = new Random( 42 );
+        wheel = new TimerWheel<>( TICK_MILLIS, 0 );
+        deadlines = new long[liveSessions];
+        for ( int i = 0; i < liveSessions; i++ ) {
+            long deadline = TICK_MILLIS + ( long ) ( random.nextDouble( ) * TIMEOUT_MILLIS );
+            wheel.schedule( new TimerNode( ), deadline );
+            deadlines[i] = deadline;
+        }
+    }
+
+    @Benchmark
+    public int timerWheelTick( ) {
+        long now = wheelNow += TICK_MILLIS;
+        return wheel.advance( now, node -> wheel.schedule( node, now + TIMEOUT_MILLIS ) );
+    }
+
+    @Benchmark
+    public int fullScanTick( ) {
+        long now = scanNow += TICK_MILLIS;
+        int expired = 0;
+        for ( int i = 0; i < deadlines.length; i++ ) {
+            if ( deadlines[i] <= now ) {
+                deadlines[i] = now + TIMEOUT_MILLIS;
+                expired++;
+            }
+        }
+        return expired;
+    }
+}
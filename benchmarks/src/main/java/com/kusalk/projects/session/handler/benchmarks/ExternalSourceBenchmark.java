@@ -0,0 +1,138 @@
+package com.kusalk.projects.session.handler.benchmarks;
+
+import com.kusalk.projects.session.handler.SessionServices;
+import com.kusalk.projects.session.handler.containers.ExternalSessionContainer;
+import com.kusalk.projects.session.handler.containers.InternalSessionContainer;
+import com.kusalk.projects.session.handler.external.sources.ExternalSessionSource;
+import com.kusalk.projects.session.handler.external.sources.SegmentedSessionSource;
+import com.kusalk.projects.session.handler.external.sources.SessionFileSource;
+import com.kusalk.projects.session.handler.session.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks of saving sessions to and restoring them from an external source, for several memento sizes.
+ * <p>
+ * Each operation works on the next session of a fixed pool, so the sessions cycle between the external source and the
+ * internal container. The benchmarks run single threaded as two threads must not save the same session at once.
+ */
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" } )
+@Threads( 1 )
+@State( Scope.Benchmark )
+public class ExternalSourceBenchmark {
+
+    private static final long TIMEOUT_IN_SECONDS = TimeUnit.HOURS.toSeconds( 1 );
+    private static final int POOL_SIZE = 1024;
+
+    /**
+     * {@code FILE} for the {@link SessionFileSource}, {@code SEGMENTED} for the {@link SegmentedSessionSource}
+     */
+    @Param( { "FILE", "SEGMENTED" } )
+    public String source;
+
+    @Param( { "256", "4096", "65536" } )
+    public int mementoBytes;
+
+    private ExternalSessionSource externalSessionSource;
+    private InternalSessionContainer container;
+    private SessionServices sessionServices;
+    private String[] sessionIds;
+    private Path directory;
+    private int next;
+
+    @Setup( Level.Trial )
+    public void setUp( ) throws IOException {
+        if ( "SEGMENTED".equals( source ) ) {
+            directory = Files.createTempDirectory( "session-benchmark" );
+            externalSessionSource = SegmentedSessionSource.builder( directory ).build( );
+        } else {
+            // The file source keeps its files in the working directory, they are deleted again in the tear down
+            externalSessionSource = new SessionFileSource( );
+        }
+        container = InternalSessionContainer.getInstance( );
+        sessionServices = new SessionServices( new ExternalSessionContainer( externalSessionSource ) );
+        sessionIds = new String[POOL_SIZE];
+        Random random = new Random( 42 );
+        for ( int i = 0; i < POOL_SIZE; i++ ) {
+            sessionIds[i] = sessionServices.createSession( BenchmarkSession.class, TIMEOUT_IN_SECONDS ).getData( );
+            BenchmarkSession session = ( BenchmarkSession ) container.loadSessionFromContainer( sessionIds[i] );
+            session.setPayload( payload( random ) );
+            sessionServices.saveSessionToExternalSource( session );
+            sessionServices.loadExternalSourceSession( sessionIds[i] );
+        }
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown( ) throws IOException {
+        if ( externalSessionSource instanceof SegmentedSessionSource ) {
+            ( ( SegmentedSessionSource ) externalSessionSource ).close( );
+            try ( Stream<Path> files = Files.walk( directory ) ) {
+                files.sorted( Comparator.reverseOrder( ) ).forEach( path -> path.toFile( ).delete( ) );
+            }
+        } else {
+            for ( String sessionId : sessionIds ) {
+                externalSessionSource.deleteSessionMemento( sessionId );
+            }
+        }
+    }
+
+    /**
+     * Saves a session to the external source, which removes it from the container, and loads it back
+     */
+    @Benchmark
+    public Session saveAndLoadRoundTrip( ) {
+        String sessionId = nextSessionId( );
+        sessionServices.saveSessionToExternalSource( container.loadSessionFromContainer( sessionId ) );
+        return sessionServices.loadExternalSourceSession( sessionId ).getData( );
+    }
+
+    /**
+     * Drops a session from the container and restores it from the state already held by the external source
+     */
+    @Benchmark
+    public Session loadExternalSourceSession( ) {
+        String sessionId = nextSessionId( );
+        container.removeSession( sessionId );
+        return sessionServices.loadExternalSourceSession( sessionId ).getData( );
+    }
+
+    private String nextSessionId( ) {
+        next = ( next + 1 ) % POOL_SIZE;
+        return sessionIds[next];
+    }
+
+    /**
+     * Text-like payload drawn from a small alphabet, so compressing codecs see realistic input
+     */
+    private byte[] payload( Random random ) {
+        byte[] payload = new byte[mementoBytes];
+        for ( int i = 0; i < payload.length; i++ ) {
+            payload[i] = ( byte ) ( 'a' + random.nextInt( 16 ) );
+        }
+        return payload;
+    }
+}
@@ -0,0 +1,417 @@
+package com.kusalk.projects.session.handler.loadtest;
+
+import com.kusalk.projects.session.handler.SessionServices;
+import com.kusalk.projects.session.handler.codec.JavaSerializationMementoCodec;
+import com.kusalk.projects.session.handler.containers.ExternalSessionContainer;
+import com.kusalk.projects.session.handler.containers.InternalSessionContainer;
+import com.kusalk.projects.session.handler.external.sources.ExpirySweeper;
+import com.kusalk.projects.session.handler.external.sources.ExternalSessionSource;
+import com.kusalk.projects.session.handler.external.sources.SegmentedSessionSource;
+import com.kusalk.projects.session.handler.external.sources.SessionFileSource;
+import com.kusalk.projects.session.handler.external.sources.ShardedSessionSource;
+import com.kusalk.projects.session.handler.external.sources.WriteBehindSessionSource;
+import com.kusalk.projects.session.handler.loadtest.LoadTestConfig.Operation;
+import com.kusalk.projects.session.handler.metrics.LatencyHistogram;
+import com.kusalk.projects.session.handler.session.Session;
+import com.kusalk.projects.session.handler.util.SessionResponse;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Soak and load test of the session handler. Worker threads run a weighted mix of creates, loads, saves and removes
+ * against a fixed set of key slots whose popularity follows a Zipfian distribution, so a few hot sessions take most of
+ * the traffic while the long tail keeps moving between the internal container and the external source. Sessions carry
+ * payloads and timeouts drawn from configurable ranges and expire in the external source, where an
+ * {@link ExpirySweeper} reclaims them.
+ * <p>
+ * Every report interval a CSV row is written per operation with its throughput and latency percentiles, next to the
+ * heap, the garbage collections, the live sessions of the container and the lag of the sweeper. At the end the full
+ * latency distribution of every operation is written in the percentile format of HdrHistogram.
+ */
+public final class LoadTest {
+
+    private static final String CSV_HEADER = "elapsed_seconds,operation,count,throughput_per_second,p50_us,p99_us,p999_us,max_us,errors,"
+            + "heap_used_mb,gc_count,gc_millis,container_sessions,sweeper_lag_ms,swept_sessions";
+    private static final int HGRM_TICKS_PER_HALF_DISTANCE = 5;
+
+    private final LoadTestConfig config;
+    private final InternalSessionContainer container;
+    private final ExternalSessionSource source;
+    private final SessionServices sessionServices;
+    private final ZipfianGenerator keyGenerator;
+    private final AtomicReferenceArray<String> slots;
+    private final OperationStats[] stats = new OperationStats[Operation.values( ).length];
+    private volatile boolean running = true;
+
+    private LoadTest( LoadTestConfig config, InternalSessionContainer container, ExternalSessionSource source, SessionServices sessionServices ) {
+        this.config = config;
+        this.container = container;
+        this.source = source;
+        this.sessionServices = sessionServices;
+        this.keyGenerator = new ZipfianGenerator( config.getKeys( ), config.getZipfExponent( ) );
+        this.slots = new AtomicReferenceArray<>( config.getKeys( ) );
+        for ( Operation operation : Operation.values( ) ) {
+            stats[operation.ordinal( )] = new OperationStats( );
+        }
+    }
+
+    public static void main( String[] args ) throws Exception {
+        LoadTestConfig config = LoadTestConfig.parse( args );
+        Path directory = config.getDirectory( );
+        boolean temporary = directory == null;
+        if ( temporary ) {
+            directory = Files.createTempDirectory( "session-loadtest" );
+        }
+        ExternalSessionSource source = createSource( config.getSource( ), directory );
+        try {
+            run( config, source );
+        } finally {
+            if ( source instanceof AutoCloseable ) {
+                ( ( AutoCloseable ) source ).close( );
+            }
+            if ( temporary ) {
+                try ( Stream<Path> files = Files.walk( directory ) ) {
+                    files.sorted( Comparator.reverseOrder( ) ).forEach( path -> path.toFile( ).delete( ) );
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the load test against the provided external source. The source is not closed.
+     *
+     * @param config settings of the run
+     * @param source external source under test
+     * @throws InterruptedException if interrupted while waiting for the run to finish
+     */
+    public static void run( LoadTestConfig config, ExternalSessionSource source ) throws InterruptedException {
+        InternalSessionContainer.Builder containerBuilder = InternalSessionContainer.builder( "loadtest" );
+        if ( config.getMaximumWeight( ) > 0 ) {
+            containerBuilder.maximumWeight( config.getMaximumWeight( ) );
+        }
+        InternalSessionContainer container = containerBuilder.build( );
+        ExecutorService ioExecutor = Executors.newFixedThreadPool( Math.max( 4, config.getThreads( ) ), daemonThreads( "loadtest-io" ) );
+        try ( ExpirySweeper sweeper = ExpirySweeper.builder( source )
+                .sweepIntervalMillis( config.getSweepIntervalMillis( ) )
+                .maxSessionsPerSweep( config.getMaxSessionsPerSweep( ) )
+                .build( ) ) {
+            SessionServices sessionServices = new SessionServices( container, new ExternalSessionContainer( source ), ioExecutor );
+            new LoadTest( config, container, source, sessionServices ).run( sweeper );
+        } finally {
+            ioExecutor.shutdownNow( );
+            container.close( );
+        }
+    }
+
+    private void run( ExpirySweeper sweeper ) throws InterruptedException {
+        System.out.println( "Load test : " + config );
+        ThreadFactory workerThreads = config.isVirtualThreads( ) ? virtualThreads( ) : daemonThreads( "loadtest-worker" );
+        List<Thread> workers = new ArrayList<>( );
+        for ( int i = 0; i < config.getThreads( ); i++ ) {
+            long seed = config.getSeed( ) + i;
+            Thread worker = workerThreads.newThread( ( ) -> work( new Random( seed ) ) );
+            workers.add( worker );
+            worker.start( );
+        }
+        try ( PrintWriter csv = new PrintWriter( Files.newBufferedWriter( config.getCsvFile( ), StandardCharsets.UTF_8 ) ) ) {
+            csv.println( CSV_HEADER );
+            report( csv, sweeper );
+        } catch ( IOException e ) {
+            throw new UncheckedIOException( "Error writing the load test report " + config.getCsvFile( ), e );
+        } finally {
+            running = false;
+            for ( Thread worker : workers ) {
+                worker.join( );
+            }
+        }
+        writeHistograms( );
+        source.flush( );
+    }
+
+    /**
+     * Writes a CSV row per operation every report interval until the duration of the run passed
+     */
+    private void report( PrintWriter csv, ExpirySweeper sweeper ) throws InterruptedException {
+        long start = System.nanoTime( );
+        long end = start + TimeUnit.SECONDS.toNanos( config.getDurationSeconds( ) );
+        long intervalNanos = TimeUnit.SECONDS.toNanos( config.getReportIntervalSeconds( ) );
+        long lastReport = start;
+        long[] lastGc = gcTotals( );
+        while ( lastReport < end ) {
+            long nextReport = Math.min( end, lastReport + intervalNanos );
+            TimeUnit.NANOSECONDS.sleep( Math.max( 0, nextReport - System.nanoTime( ) ) );
+            long now = System.nanoTime( );
+            double intervalSeconds = ( now - lastReport ) / 1e9;
+            long[] gc = gcTotals( );
+            String system = String.format( Locale.ROOT, "%d,%d,%d,%d,%d,%d",
+                    ManagementFactory.getMemoryMXBean( ).getHeapMemoryUsage( ).getUsed( ) / ( 1024 * 1024 ),
+                    gc[0] - lastGc[0], gc[1] - lastGc[1], container.getSessionCount( ), sweeper.getLagMillis( ), sweeper.getSweptSessions( ) );
+            long elapsedSeconds = Math.round( ( now - start ) / 1e9 );
+            for ( Operation operation : Operation.values( ) ) {
+                OperationStats operationStats = stats[operation.ordinal( )];
+                LatencyHistogram interval = operationStats.swapInterval( );
+                long errors = operationStats.errors.sumThenReset( );
+                csv.println( String.format( Locale.ROOT, "%d,%s,%d,%.1f,%d,%d,%d,%d,%d,%s", elapsedSeconds, operation.name( ).toLowerCase( Locale.ROOT ),
+                        interval.getCount( ), interval.getCount( ) / intervalSeconds, micros( interval.getValueAtPercentile( 50 ) ),
+                        micros( interval.getValueAtPercentile( 99 ) ), micros( interval.getValueAtPercentile( 99.9 ) ), micros( interval.getMax( ) ),
+                        errors, system ) );
+            }
+            csv.flush( );
+            System.out.println( String.format( Locale.ROOT, "%4ds  sessions=%d  sweeperLag=%dms  gc=%d/%dms", elapsedSeconds,
+                    container.getSessionCount( ), sweeper.getLagMillis( ), gc[0] - lastGc[0], gc[1] - lastGc[1] ) );
+            lastGc = gc;
+            lastReport = now;
+        }
+    }
+
+    private void work( Random random ) {
+        while ( running ) {
+            Operation operation = config.nextOperation( random );
+            int slot = keyGenerator.next( random );
+            long start = System.nanoTime( );
+            boolean success;
+            try {
+                success = execute( operation, slot, random );
+            } catch ( RuntimeException e ) {
+                success = false;
+            }
+            stats[operation.ordinal( )].record( System.nanoTime( ) - start, success );
+        }
+    }
+
+    /**
+     * Runs an operation on a key slot. Loads and saves of empty slots create the session first, as would a client
+     * logging in, and sessions found expired leave their slot empty.
+     *
+     * @return whether the operation succeeded
+     */
+    private boolean execute( Operation operation, int slot, Random random ) {
+        String sessionId = slots.get( slot );
+        if ( operation == Operation.CREATE || sessionId == null ) {
+            return create( slot, random );
+        }
+        switch ( operation ) {
+            case LOAD:
+                return load( slot, sessionId ) != null;
+            case SAVE:
+                Session session = load( slot, sessionId );
+                if ( session == null ) {
+                    return true;
+                }
+                setPayload( ( LoadTestSession ) session, random );
+                return sessionServices.saveSessionToExternalSource( session ).isSuccess( );
+            case REMOVE:
+                if ( !slots.compareAndSet( slot, sessionId, null ) ) {
+                    return true;
+                }
+                container.removeSession( sessionId );
+                source.deleteSessionMemento( sessionId );
+                return true;
+            default:
+                throw new IllegalStateException( "Unknown operation " + operation );
+        }
+    }
+
+    private boolean create( int slot, Random random ) {
+        SessionResponse<String> created = sessionServices.createSession( LoadTestSession.class, config.nextTimeoutSeconds( random ) );
+        if ( created.isError( ) ) {
+            return false;
+        }
+        Session session = container.loadSessionFromContainer( created.getData( ) );
+        if ( session != null ) {
+            setPayload( ( LoadTestSession ) session, random );
+        }
+        String replaced = slots.getAndSet( slot, created.getData( ) );
+        if ( replaced != null ) {
+            container.removeSession( replaced );
+        }
+        return true;
+    }
+
+    /**
+     * Loads the session of a slot, emptying the slot if the session expired
+     *
+     * @return session or {@code null} if it expired
+     */
+    private Session load( int slot, String sessionId ) {
+        SessionResponse<Session> loaded = sessionServices.loadSession( sessionId );
+        if ( loaded.isError( ) ) {
+            slots.compareAndSet( slot, sessionId, null );
+            return null;
+        }
+        return loaded.getData( );
+    }
+
+    private void setPayload( LoadTestSession session, Random random ) {
+        byte[] payload = new byte[config.nextSessionBytes( random )];
+        random.nextBytes( payload );
+        try {
+            session.startWritingSession( );
+            session.setPayload( payload );
+        } finally {
+            session.endWritingSession( );
+        }
+    }
+
+    /**
+     * Writes the latency distribution of every operation over the whole run and prints a summary
+     */
+    private void writeHistograms( ) {
+        System.out.println( String.format( Locale.ROOT, "%-8s %12s %10s %10s %10s %10s %8s", "op", "count", "p50_us", "p99_us", "p999_us", "max_us", "errors" ) );
+        for ( Operation operation : Operation.values( ) ) {
+            OperationStats operationStats = stats[operation.ordinal( )];
+            LatencyHistogram total = operationStats.total;
+            String name = operation.name( ).toLowerCase( Locale.ROOT );
+            System.out.println( String.format( Locale.ROOT, "%-8s %12d %10d %10d %10d %10d %8d", name, total.getCount( ),
+                    micros( total.getValueAtPercentile( 50 ) ), micros( total.getValueAtPercentile( 99 ) ), micros( total.getValueAtPercentile( 99.9 ) ),
+                    micros( total.getMax( ) ), operationStats.totalErrors.sum( ) ) );
+            Path file = Paths.get( config.getHdrPrefix( ) + "-" + name + ".hgrm" );
+            try ( PrintWriter hgrm = new PrintWriter( Files.newBufferedWriter( file, StandardCharsets.UTF_8 ) ) ) {
+                writePercentiles( hgrm, total );
+            } catch ( IOException e ) {
+                throw new UncheckedIOException( "Error writing the latency distribution " + file, e );
+            }
+        }
+    }
+
+    /**
+     * Writes the percentile distribution of a histogram in the output format of HdrHistogram, with values in
+     * microseconds, so it can be plotted with the HdrHistogram tooling
+     */
+    static void writePercentiles( PrintWriter out, LatencyHistogram histogram ) {
+        long count = histogram.getCount( );
+        out.println( String.format( Locale.ROOT, "%12s %14s %10s %14s", "Value", "Percentile", "TotalCount", "1/(1-Percentile)" ) );
+        out.println( );
+        if ( count > 0 ) {
+            double percentileReportingStep = 50;
+            double percentile = 0;
+            while ( true ) {
+                writePercentileLine( out, histogram, percentile, count );
+                if ( percentile >= 100 || ( long ) Math.ceil( percentile / 100 * count ) >= count ) {
+                    break;
+                }
+                percentile += percentileReportingStep / HGRM_TICKS_PER_HALF_DISTANCE;
+                if ( percentile >= 100 - percentileReportingStep ) {
+                    percentileReportingStep /= 2;
+                }
+            }
+            writePercentileLine( out, histogram, 100, count );
+        }
+        out.println( String.format( Locale.ROOT, "#[Mean    = %12.3f, Max            = %12.3f]", histogram.getMean( ) / 1000, histogram.getMax( ) / 1000.0 ) );
+        out.println( String.format( Locale.ROOT, "#[Total count    = %12d]", count ) );
+    }
+
+    private static void writePercentileLine( PrintWriter out, LatencyHistogram histogram, double percentile, long count ) {
+        long totalCount = Math.min( count, Math.max( 1, ( long ) Math.ceil( percentile / 100 * count ) ) );
+        String inverse = percentile >= 100 ? "" : String.format( Locale.ROOT, "%14.2f", 1 / ( 1 - percentile / 100 ) );
+        out.println( String.format( Locale.ROOT, "%12.3f %2.12f %10d %s", histogram.getValueAtPercentile( percentile ) / 1000.0,
+                percentile / 100, totalCount, inverse ) );
+    }
+
+    private static long micros( long nanos ) {
+        return TimeUnit.NANOSECONDS.toMicros( nanos );
+    }
+
+    /**
+     * @return number and accumulated time in milliseconds of the garbage collections so far
+     */
+    private static long[] gcTotals( ) {
+        long[] totals = new long[2];
+        for ( GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans( ) ) {
+            totals[0] += Math.max( 0, collector.getCollectionCount( ) );
+            totals[1] += Math.max( 0, collector.getCollectionTime( ) );
+        }
+        return totals;
+    }
+
+    private static ExternalSessionSource createSource( String name, Path directory ) {
+        switch ( name ) {
+            case "file":
+                return new SessionFileSource( directory, new JavaSerializationMementoCodec( ) );
+            case "segmented":
+                return SegmentedSessionSource.builder( directory ).build( );
+            case "sharded":
+                return ShardedSessionSource.builder( )
+                        .shard( "shard-a", SegmentedSessionSource.builder( directory.resolve( "shard-a" ) ).build( ) )
+                        .shard( "shard-b", SegmentedSessionSource.builder( directory.resolve( "shard-b" ) ).build( ) )
+                        .build( );
+            case "write-behind":
+                return WriteBehindSessionSource.builder( SegmentedSessionSource.builder( directory ).build( ) ).build( );
+            default:
+                throw new IllegalArgumentException( "Unknown source " + name + ", expected file, segmented, sharded or write-behind" );
+        }
+    }
+
+    private static ThreadFactory daemonThreads( String prefix ) {
+        AtomicInteger counter = new AtomicInteger( );
+        return runnable -> {
+            Thread thread = new Thread( runnable, prefix + "-" + counter.incrementAndGet( ) );
+            thread.setDaemon( true );
+            return thread;
+        };
+    }
+
+    /**
+     * Creates the virtual thread factory of the running JVM. The module is compiled for Java 11, so the factory is
+     * looked up reflectively and virtual threads are only available when running on Java 21 or later.
+     */
+    private static ThreadFactory virtualThreads( ) {
+        try {
+            Object builder = Thread.class.getMethod( "ofVirtual" ).invoke( null );
+            Class<?> builderClass = Class.forName( "java.lang.Thread$Builder" );
+            builderClass.getMethod( "name", String.class, long.class ).invoke( builder, "loadtest-virtual-", 0L );
+            return ( ThreadFactory ) builderClass.getMethod( "factory" ).invoke( builder );
+        } catch ( ReflectiveOperationException e ) {
+            throw new IllegalStateException( "Virtual threads need Java 21 or later, running on Java " + System.getProperty( "java.version" ), e );
+        }
+    }
+
+    /**
+     * Latencies and errors of one operation, over the current report interval and over the whole run
+     */
+    private static final class OperationStats {
+
+        private final AtomicReference<LatencyHistogram> interval = new AtomicReference<>( new LatencyHistogram( ) );
+        private final LatencyHistogram total = new LatencyHistogram( );
+        private final LongAdder errors = new LongAdder( );
+        private final LongAdder totalErrors = new LongAdder( );
+
+        void record( long nanos, boolean success ) {
+            interval.get( ).record( nanos );
+            total.record( nanos );
+            if ( !success ) {
+                errors.increment( );
+                totalErrors.increment( );
+            }
+        }
+
+        /**
+         * Starts a new report interval, returning the histogram of the interval which ended
+         */
+        LatencyHistogram swapInterval( ) {
+            return interval.getAndSet( new LatencyHistogram( ) );
+        }
+    }
+}
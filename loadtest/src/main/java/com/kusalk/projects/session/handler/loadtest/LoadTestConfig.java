@@ -0,0 +1,287 @@
+package com.kusalk.projects.session.handler.loadtest;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Settings of a load test run, parsed from {@code name=value} arguments. Ranges are written as {@code min..max}.
+ */
+public final class LoadTestConfig {
+
+    /**
+     * Operations run by the load test
+     */
+    public enum Operation {
+        /**
+         * Creating a session in a free key slot and filling its payload
+         */
+        CREATE,
+        /**
+         * Loading the session of a key slot, from the internal container or the external source
+         */
+        LOAD,
+        /**
+         * Loading the session of a key slot, replacing its payload and saving it to the external source
+         */
+        SAVE,
+        /**
+         * Removing the session of a key slot from the internal container and the external source
+         */
+        REMOVE
+    }
+
+    private long durationSeconds = 60;
+    private long reportIntervalSeconds = 5;
+    private int threads = 8;
+    private boolean virtualThreads;
+    private int keys = 100000;
+    private double zipfExponent = 0.99;
+    private final Map<Operation, Integer> mix = new EnumMap<>( Operation.class );
+    private int minSessionBytes = 256;
+    private int maxSessionBytes = 16384;
+    private long minTimeoutSeconds = 60;
+    private long maxTimeoutSeconds = 1800;
+    private String source = "segmented";
+    private Path directory;
+    private long maximumWeight;
+    private long sweepIntervalMillis = 1000;
+    private int maxSessionsPerSweep = 1000;
+    private Path csvFile = Paths.get( "loadtest.csv" );
+    private String hdrPrefix = "loadtest";
+    private long seed = System.nanoTime( );
+
+    public LoadTestConfig( ) {
+        mix.put( Operation.CREATE, 10 );
+        mix.put( Operation.LOAD, 70 );
+        mix.put( Operation.SAVE, 15 );
+        mix.put( Operation.REMOVE, 5 );
+    }
+
+    /**
+     * Parses {@code name=value} arguments over the defaults
+     *
+     * @param args arguments
+     * @return parsed settings
+     */
+    public static LoadTestConfig parse( String[] args ) {
+        LoadTestConfig config = new LoadTestConfig( );
+        Map<String, String> values = new HashMap<>( );
+        for ( String arg : args ) {
+            int separator = arg.indexOf( '=' );
+            if ( separator <= 0 ) {
+                throw new IllegalArgumentException( "Arguments are written as name=value : " + arg );
+            }
+            values.put( arg.substring( 0, separator ), arg.substring( separator + 1 ) );
+        }
+        for ( Map.Entry<String, String> entry : values.entrySet( ) ) {
+            String value = entry.getValue( );
+            switch ( entry.getKey( ) ) {
+                case "durationSeconds":
+                    config.durationSeconds = positive( entry.getKey( ), Long.parseLong( value ) );
+                    break;
+                case "reportIntervalSeconds":
+                    config.reportIntervalSeconds = positive( entry.getKey( ), Long.parseLong( value ) );
+                    break;
+                case "threads":
+                    config.threads = ( int ) positive( entry.getKey( ), Integer.parseInt( value ) );
+                    break;
+                case "virtualThreads":
+                    config.virtualThreads = Boolean.parseBoolean( value );
+                    break;
+                case "keys":
+                    config.keys = ( int ) positive( entry.getKey( ), Integer.parseInt( value ) );
+                    break;
+                case "zipfExponent":
+                    config.zipfExponent = Double.parseDouble( value );
+                    break;
+                case "mix":
+                    config.parseMix( value );
+                    break;
+                case "sessionBytes":
+                    long[] sessionBytes = range( entry.getKey( ), value );
+                    config.minSessionBytes = ( int ) sessionBytes[0];
+                    config.maxSessionBytes = ( int ) sessionBytes[1];
+                    break;
+                case "timeoutSeconds":
+                    long[] timeouts = range( entry.getKey( ), value );
+                    config.minTimeoutSeconds = positive( entry.getKey( ), timeouts[0] );
+                    config.maxTimeoutSeconds = timeouts[1];
+                    break;
+                case "source":
+                    config.source = value;
+                    break;
+                case "directory":
+                    config.directory = Paths.get( value );
+                    break;
+                case "maximumWeight":
+                    config.maximumWeight = Long.parseLong( value );
+                    break;
+                case "sweepIntervalMillis":
+                    config.sweepIntervalMillis = positive( entry.getKey( ), Long.parseLong( value ) );
+                    break;
+                case "maxSessionsPerSweep":
+                    config.maxSessionsPerSweep = ( int ) positive( entry.getKey( ), Integer.parseInt( value ) );
+                    break;
+                case "csv":
+                    config.csvFile = Paths.get( value );
+                    break;
+                case "hdr":
+                    config.hdrPrefix = value;
+                    break;
+                case "seed":
+                    config.seed = Long.parseLong( value );
+                    break;
+                default:
+                    throw new IllegalArgumentException( "Unknown argument : " + entry.getKey( ) );
+            }
+        }
+        new ZipfianGenerator( 1, config.zipfExponent );
+        return config;
+    }
+
+    /**
+     * Picks an operation with the probability of its weight in the mix
+     */
+    Operation nextOperation( Random random ) {
+        int total = mix.values( ).stream( ).mapToInt( Integer::intValue ).sum( );
+        int pick = random.nextInt( total );
+        for ( Map.Entry<Operation, Integer> entry : mix.entrySet( ) ) {
+            pick -= entry.getValue( );
+            if ( pick < 0 ) {
+                return entry.getKey( );
+            }
+        }
+        return Operation.LOAD;
+    }
+
+    /**
+     * Draws a session size, log-uniform within the size range so small sessions are common and large ones rare
+     */
+    int nextSessionBytes( Random random ) {
+        if ( minSessionBytes == maxSessionBytes ) {
+            return minSessionBytes;
+        }
+        double logMin = Math.log( Math.max( 1, minSessionBytes ) );
+        double logMax = Math.log( maxSessionBytes );
+        return ( int ) Math.round( Math.exp( logMin + random.nextDouble( ) * ( logMax - logMin ) ) );
+    }
+
+    /**
+     * Draws a session timeout, uniform within the timeout range
+     */
+    long nextTimeoutSeconds( Random random ) {
+        return minTimeoutSeconds + ( long ) ( random.nextDouble( ) * ( maxTimeoutSeconds - minTimeoutSeconds + 1 ) );
+    }
+
+    public long getDurationSeconds( ) {
+        return durationSeconds;
+    }
+
+    public long getReportIntervalSeconds( ) {
+        return reportIntervalSeconds;
+    }
+
+    public int getThreads( ) {
+        return threads;
+    }
+
+    public boolean isVirtualThreads( ) {
+        return virtualThreads;
+    }
+
+    public int getKeys( ) {
+        return keys;
+    }
+
+    public double getZipfExponent( ) {
+        return zipfExponent;
+    }
+
+    public String getSource( ) {
+        return source;
+    }
+
+    /**
+     * @return directory of the external source, or {@code null} to use a temporary directory deleted after the run
+     */
+    public Path getDirectory( ) {
+        return directory;
+    }
+
+    /**
+     * @return maximum weight of the internal container, or {@code 0} for an unbounded container
+     */
+    public long getMaximumWeight( ) {
+        return maximumWeight;
+    }
+
+    public long getSweepIntervalMillis( ) {
+        return sweepIntervalMillis;
+    }
+
+    public int getMaxSessionsPerSweep( ) {
+        return maxSessionsPerSweep;
+    }
+
+    public Path getCsvFile( ) {
+        return csvFile;
+    }
+
+    public String getHdrPrefix( ) {
+        return hdrPrefix;
+    }
+
+    public long getSeed( ) {
+        return seed;
+    }
+
+    @Override
+    public String toString( ) {
+        return "durationSeconds=" + durationSeconds + " threads=" + threads + ( virtualThreads ? " (virtual)" : "" ) + " keys=" + keys
+                + " zipfExponent=" + zipfExponent + " mix=" + mix + " sessionBytes=" + minSessionBytes + ".." + maxSessionBytes
+                + " timeoutSeconds=" + minTimeoutSeconds + ".." + maxTimeoutSeconds + " source=" + source + " maximumWeight=" + maximumWeight
+                + " seed=" + seed;
+    }
+
+    /**
+     * Parses a mix such as {@code create:10,load:70,save:15,remove:5}. Operations left out are not run.
+     */
+    private void parseMix( String value ) {
+        mix.clear( );
+        for ( String part : value.split( "," ) ) {
+            String[] weight = part.split( ":" );
+            if ( weight.length != 2 ) {
+                throw new IllegalArgumentException( "Operation mix is written as operation:weight,... : " + value );
+            }
+            int parsedWeight = Integer.parseInt( weight[1].trim( ) );
+            if ( parsedWeight < 0 ) {
+                throw new IllegalArgumentException( "Operation weight must not be negative : " + part );
+            }
+            mix.put( Operation.valueOf( weight[0].trim( ).toUpperCase( ) ), parsedWeight );
+        }
+        if ( mix.values( ).stream( ).mapToInt( Integer::intValue ).sum( ) <= 0 ) {
+            throw new IllegalArgumentException( "Operation mix needs a positive weight : " + value );
+        }
+    }
+
+    private static long[] range( String name, String value ) {
+        String[] bounds = value.split( "\\.\\." );
+        long min = Long.parseLong( bounds[0].trim( ) );
+        long max = bounds.length > 1 ? Long.parseLong( bounds[1].trim( ) ) : min;
+        if ( bounds.length > 2 || min < 0 || max < min ) {
+            throw new IllegalArgumentException( name + " is written as min..max : " + value );
+        }
+        return new long[]{ min, max };
+    }
+
+    private static long positive( String name, long value ) {
+        if ( value <= 0 ) {
+            throw new IllegalArgumentException( name + " must be positive : " + value );
+        }
+        return value;
+    }
+}
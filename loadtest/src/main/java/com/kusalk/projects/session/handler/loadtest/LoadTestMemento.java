@@ -0,0 +1,26 @@
+package com.kusalk.projects.session.handler.loadtest;
+
+import com.kusalk.projects.session.handler.session.SessionMemento;
+
+/**
+ * Memento of the {@link LoadTestSession}
+ */
+public class LoadTestMemento extends SessionMemento {
+
+    private static final long serialVersionUID = 1L;
+
+    private byte[] payload;
+
+    public byte[] getPayload( ) {
+        return payload;
+    }
+
+    public void setPayload( byte[] payload ) {
+        this.payload = payload;
+    }
+
+    @Override
+    public void setSessionClass( ) {
+        this.sessionClass = LoadTestSession.class.getName( );
+    }
+}
@@ -0,0 +1,32 @@
+package com.kusalk.projects.session.handler.loadtest;
+
+import com.kusalk.projects.session.handler.session.Session;
+import com.kusalk.projects.session.handler.session.SessionMemento;
+
+/**
+ * Session holding an opaque payload, so the load test controls the size of the memento
+ */
+public class LoadTestSession extends Session {
+
+    private byte[] payload = new byte[0];
+
+    @Override
+    public void restore( SessionMemento memento ) {
+        this.payload = ( ( LoadTestMemento ) memento ).getPayload( );
+    }
+
+    @Override
+    public SessionMemento createMemento( ) {
+        LoadTestMemento memento = new LoadTestMemento( );
+        memento.setPayload( payload );
+        return memento;
+    }
+
+    public byte[] getPayload( ) {
+        return payload;
+    }
+
+    public void setPayload( byte[] payload ) {
+        this.payload = payload;
+    }
+}
@@ -0,0 +1,80 @@
+package com.kusalk.projects.session.handler.loadtest;
+
+import java.util.Random;
+
+/**
+ * Draws key indexes in [0, n) with a Zipfian popularity, following the generator of Gray et al. "Quickly Generating
+ * Billion-Record Synthetic Databases". The rank drawn is scrambled with a hash, so the popular keys are spread over
+ * the key space instead of being the lowest indexes.
+ */
+final class ZipfianGenerator {
+
+    private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    private final int items;
+    private final double exponent;
+    private final double alpha;
+    private final double zetaN;
+    private final double eta;
+    private final double halfPowExponent;
+
+    /**
+     * @param items    number of keys
+     * @param exponent skew of the popularity within [0, 1), {@code 0} for uniform keys and {@code 0.99} for web-like
+     *                 traffic
+     */
+    ZipfianGenerator( int items, double exponent ) {
+        if ( items <= 0 || exponent < 0 || exponent >= 1 ) {
+            throw new IllegalArgumentException( "Zipfian generator needs a positive key count and an exponent within [0, 1)" );
+        }
+        this.items = items;
+        this.exponent = exponent;
+        this.zetaN = zeta( items, exponent );
+        double zeta2 = zeta( 2, exponent );
+        this.alpha = 1 / ( 1 - exponent );
+        this.eta = ( 1 - Math.pow( 2.0 / items, 1 - exponent ) ) / ( 1 - zeta2 / zetaN );
+        this.halfPowExponent = 1 + Math.pow( 0.5, exponent );
+    }
+
+    /**
+     * Draws the next key index
+     *
+     * @param random random source of the calling thread
+     * @return key index in [0, n)
+     */
+    int next( Random random ) {
+        if ( exponent == 0 ) {
+            return random.nextInt( items );
+        }
+        double u = random.nextDouble( );
+        double uz = u * zetaN;
+        long rank;
+        if ( uz < 1 ) {
+            rank = 0;
+        } else if ( uz < halfPowExponent ) {
+            rank = 1;
+        } else {
+            rank = ( long ) ( items * Math.pow( eta * u - eta + 1, alpha ) );
+        }
+        return ( int ) Long.remainderUnsigned( fnvHash( Math.min( rank, items - 1 ) ), items );
+    }
+
+    private static double zeta( long n, double exponent ) {
+        double sum = 0;
+        for ( long i = 1; i <= n; i++ ) {
+            sum += 1 / Math.pow( i, exponent );
+        }
+        return sum;
+    }
+
+    private static long fnvHash( long value ) {
+        long hash = FNV_OFFSET_BASIS;
+        for ( int i = 0; i < 8; i++ ) {
+            hash ^= value & 0xFF;
+            hash *= FNV_PRIME;
+            value >>>= 8;
+        }
+        return hash;
+    }
+}
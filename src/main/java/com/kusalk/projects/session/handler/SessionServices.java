@@ -2,12 +2,34 @@ package com.kusalk.projects.session.handler;
 
 import com.kusalk.projects.session.handler.containers.ExternalSessionContainer;
 import com.kusalk.projects.session.handler.containers.InternalSessionContainer;
+import com.kusalk.projects.session.handler.external.sources.StoredSession;
+import com.kusalk.projects.session.handler.id.SessionId;
+import com.kusalk.projects.session.handler.metrics.SessionCounter;
+import com.kusalk.projects.session.handler.metrics.SessionMetrics;
+import com.kusalk.projects.session.handler.session.DeltaMemento;
 import com.kusalk.projects.session.handler.session.Session;
 import com.kusalk.projects.session.handler.session.SessionMemento;
 import com.kusalk.projects.session.handler.util.SessionCode;
+import com.kusalk.projects.session.handler.util.SessionExecutors;
 import com.kusalk.projects.session.handler.util.SessionMessages;
 import com.kusalk.projects.session.handler.util.SessionResponse;
+import com.kusalk.projects.session.handler.warmup.SessionWarmer;
+import com.kusalk.projects.session.handler.warmup.WarmUpProgress;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -21,28 +43,92 @@ public class SessionServices {
 
     private final Logger LOGGER = Logger.getLogger( SessionServices.class.getName( ) );
 
+    /**
+     * Number of times a session modified while it was saved is saved again before it is left in the container
+     */
+    private static final int MAX_SAVE_ATTEMPTS = 3;
+
     private final InternalSessionContainer internalSessionContainer;
     private final boolean loadSessionsFromExternalLoader;
+    private final Executor ioExecutor;
+    private final ConcurrentHashMap<String, CompletableFuture<SessionResponse<Session>>> inFlightLoads = new ConcurrentHashMap<>( );
     private ExternalSessionContainer externalSessionContainer;
+    private SessionWarmer sessionWarmer;
 
     /**
-     * Creates an instance of session services object with an external session source handler
+     * Creates an instance of session services object with an external session source handler. The asynchronous
+     * methods call the external source on the {@link SessionExecutors#defaultIoExecutor()} default executor.
      *
      * @param sessionLoader external session container handler object
      */
     public SessionServices( ExternalSessionContainer sessionLoader ) {
-        this.internalSessionContainer = InternalSessionContainer.getInstance( );
+        this( sessionLoader, SessionExecutors.defaultIoExecutor( ) );
+    }
+
+    /**
+     * Creates an instance of session services object with an external session source handler
+     *
+     * @param sessionLoader external session container handler object
+     * @param ioExecutor    executor the asynchronous methods and the passivation of evicted sessions call the external
+     *                      source on
+     */
+    public SessionServices( ExternalSessionContainer sessionLoader, Executor ioExecutor ) {
+        this( InternalSessionContainer.getInstance( ), sessionLoader, ioExecutor );
+    }
+
+    /**
+     * Creates an instance of session services object working with the provided internal session container and an
+     * external session source handler. Sessions evicted from a bounded container are passivated by the first session
+     * services created for the container with an external session source handler.
+     *
+     * @param internalSessionContainer internal session container, such as a named container
+     * @param sessionLoader            external session container handler object
+     * @param ioExecutor               executor the asynchronous methods and the passivation of evicted sessions call
+     *                                 the external source on
+     */
+    public SessionServices( InternalSessionContainer internalSessionContainer, ExternalSessionContainer sessionLoader, Executor ioExecutor ) {
+        this.internalSessionContainer = internalSessionContainer;
+        this.ioExecutor = ioExecutor;
         this.externalSessionContainer = sessionLoader;
         loadSessionsFromExternalLoader = sessionLoader != null;
+        if ( loadSessionsFromExternalLoader ) {
+            sessionWarmer = new SessionWarmer( internalSessionContainer, sessionLoader, ioExecutor );
+        }
+        // The passivating sessions are kept by the container, so loads through any session services re-activate them
+        if ( loadSessionsFromExternalLoader && ( internalSessionContainer.isBounded( ) || internalSessionContainer.isOffHeapEnabled( ) )
+                && !internalSessionContainer.registerEvictionListener( this::passivateSession ) ) {
+            LOGGER.log( Level.FINE, "Sessions evicted from container {0} are passivated by the listener registered first", internalSessionContainer.getName( ) );
+        }
     }
 
     /**
      * Creates an instance of session services object without an external session source handler
      */
     public SessionServices( ) {
-        LOGGER.log( Level.FINE, "Initializing session services and using internal session container" );
-        this.internalSessionContainer = InternalSessionContainer.getInstance( );
+        this( InternalSessionContainer.getInstance( ) );
+    }
+
+    /**
+     * Creates an instance of session services object working with the provided internal session container without an
+     * external session source handler
+     *
+     * @param internalSessionContainer internal session container, such as a named container
+     */
+    public SessionServices( InternalSessionContainer internalSessionContainer ) {
+        LOGGER.log( Level.FINE, "Initializing session services and using internal session container {0}", internalSessionContainer.getName( ) );
+        this.internalSessionContainer = internalSessionContainer;
         this.loadSessionsFromExternalLoader = false;
+        this.ioExecutor = SessionExecutors.defaultIoExecutor( );
+    }
+
+    /**
+     * Creates a session of the provided session class with the default timeout of the internal session container
+     *
+     * @param sessionClass session class
+     * @return {@link SessionResponse<String>} session response
+     */
+    public SessionResponse<String> createSession( Class<? extends Session> sessionClass ) {
+        return createSession( sessionClass, internalSessionContainer.getDefaultTimeoutInSeconds( ) );
     }
 
     /**
@@ -57,18 +143,40 @@ public class SessionServices {
         return internalSessionContainer.createSession( sessionClass, timeout );
     }
 
+    /**
+     * Creates a session of the provided session class with the provided timeout. The session class is resolved once
+     * through the {@link com.kusalk.projects.session.handler.session.SessionTypeRegistry}, so this avoids the class
+     * name lookup of {@link #createSession(String, long)}
+     *
+     * @param sessionClass session class
+     * @param timeout      timeout in seconds
+     * @return {@link SessionResponse<String>} session response
+     */
+    public SessionResponse<String> createSession( Class<? extends Session> sessionClass, long timeout ) {
+        LOGGER.log( Level.FINE, "Creating session for the provided class {0} with timeout {1}s", new Object[]{ sessionClass.getName( ), timeout } );
+        return internalSessionContainer.createSession( sessionClass, timeout );
+    }
+
     /**
      * Loads the session object. This loads the session object from the {@link InternalSessionContainer} object
      * and if the session is not found and an external source is provided, then the session will try to retrieve
-     * from the {@link ExternalSessionContainer} object
+     * from the {@link ExternalSessionContainer} object. The session id is normalised first, so the external source is
+     * always asked for the session id the session is saved under.
      *
      * @param sessionId session id
      * @return {@link SessionResponse<Session>} session response
      */
     public SessionResponse<Session> loadSession( String sessionId ) {
-        SessionResponse<Session> session = loadContainerLocalSession( sessionId );
+        String normalizedId = SessionId.normalize( sessionId );
+        if ( normalizedId == null ) {
+            return new SessionResponse<>( SessionMessages.SESSION_EXPIRED, SessionCode.ERROR, null );
+        }
+        SessionResponse<Session> session = loadContainerLocalSession( normalizedId );
         if ( session.isError( ) && loadSessionsFromExternalLoader ) {
-            session = loadExternalSourceSession( sessionId );
+            if ( isKnownExpired( normalizedId ) ) {
+                return new SessionResponse<>( SessionMessages.SESSION_EXPIRED, SessionCode.ERROR, null );
+            }
+            session = loadExternalSourceSessionOnce( normalizedId, Runnable::run ).join( );
             if ( session.isError( ) ) {
                 return new SessionResponse<>( SessionMessages.SESSION_EXPIRED, SessionCode.ERROR, null );
             }
@@ -77,31 +185,425 @@ public class SessionServices {
     }
 
     /**
-     * Saves the session to the configured external source
+     * Asynchronous version of {@link #createSession(Class, long)}. Creating a session does not touch the external
+     * source, so the returned future is already completed.
+     *
+     * @param sessionClass session class
+     * @param timeout      timeout in seconds
+     * @return {@link CompletableFuture} completed with the session response
+     */
+    public CompletableFuture<SessionResponse<String>> createSessionAsync( Class<? extends Session> sessionClass, long timeout ) {
+        return CompletableFuture.completedFuture( createSession( sessionClass, timeout ) );
+    }
+
+    /**
+     * Asynchronous version of {@link #loadSession(String)}. Sessions found in the {@link InternalSessionContainer} are
+     * returned in an already completed future, only misses are loaded from the external source on the I/O executor.
+     *
+     * @param sessionId session id
+     * @return {@link CompletableFuture} completed with the session response
+     */
+    public CompletableFuture<SessionResponse<Session>> loadSessionAsync( String sessionId ) {
+        String normalizedId = SessionId.normalize( sessionId );
+        if ( normalizedId == null ) {
+            return CompletableFuture.completedFuture( new SessionResponse<>( SessionMessages.SESSION_EXPIRED, SessionCode.ERROR, null ) );
+        }
+        SessionResponse<Session> session = loadContainerLocalSession( normalizedId );
+        if ( session.isSuccess( ) || !loadSessionsFromExternalLoader ) {
+            return CompletableFuture.completedFuture( session );
+        }
+        if ( isKnownExpired( normalizedId ) ) {
+            return CompletableFuture.completedFuture( new SessionResponse<>( SessionMessages.SESSION_EXPIRED, SessionCode.ERROR, null ) );
+        }
+        return loadExternalSourceSessionOnce( normalizedId, ioExecutor ).thenApply( externalSession -> externalSession.isError( )
+                ? new SessionResponse<>( SessionMessages.SESSION_EXPIRED, SessionCode.ERROR, null )
+                : externalSession );
+    }
+
+    /**
+     * Asynchronous version of {@link #saveSessionToExternalSource(Session)}, saving the session on the I/O executor.
+     * If the I/O executor rejects the save, the session is left in the container and the future is completed with an
+     * error response.
+     *
+     * @param session {@link Session} session object to be saved
+     * @return {@link CompletableFuture} completed with the session response
+     */
+    public CompletableFuture<SessionResponse<Boolean>> saveSessionToExternalSourceAsync( Session session ) {
+        try {
+            return CompletableFuture.supplyAsync( ( ) -> saveSessionToExternalSource( session ), ioExecutor );
+        } catch ( RejectedExecutionException e ) {
+            LOGGER.log( Level.WARNING, "Session save to external source rejected for session : {0}", session.getSessionId( ) );
+            return CompletableFuture.completedFuture( new SessionResponse<>( "Session save to external source rejected for session : " + session.getSessionId( ), SessionCode.ERROR, false ) );
+        }
+    }
+
+    /**
+     * Saves the session to the configured external source and removes it from the {@link InternalSessionContainer}.
+     * Sessions tracking their modifications are not written again if they did not change since they were last
+     * persisted or restored. The session is locked only while its snapshot is taken, so its readers are not blocked
+     * while the snapshot is written. Sessions tracking their modifications are only removed if they did not change
+     * since the snapshot and are saved again otherwise, a session still changing after {@value #MAX_SAVE_ATTEMPTS}
+     * saves is left in the container and an error is returned. Changes made to sessions which do not track their
+     * modifications while they are saved are lost.
      *
      * @param session {@link Session} session object to be saved
      * @return {@link SessionResponse<Boolean>} session response
      */
     public SessionResponse<Boolean> saveSessionToExternalSource( Session session ) {
+        for ( int attempt = 1; attempt <= MAX_SAVE_ATTEMPTS; attempt++ ) {
+            SessionResponse<Long> persistResponse = persistSession( session );
+            if ( persistResponse.isError( ) ) {
+                return new SessionResponse<Boolean>( "Session save to external source failed for session : " + session.getSessionId( ), SessionCode.ERROR, false );
+            }
+            SessionResponse<Boolean> removeResponse = removeIfUnchanged( session, persistResponse.getData( ) );
+            if ( removeResponse != null ) {
+                return removeResponse;
+            }
+            LOGGER.log( Level.FINE, "Session {0} was modified while it was saved, saving it again", session.getSessionId( ) );
+        }
+        return new SessionResponse<>( "Session modified while it was saved, kept in local container : " + session.getSessionId( ), SessionCode.ERROR, false );
+    }
+
+    /**
+     * Removes the session from the {@link InternalSessionContainer} if it was not modified since the persisted
+     * version, checked and removed under its write lock so no modification can slip in between
+     *
+     * @return {@link SessionResponse<Boolean>} response of the removal or {@code null} if the session was modified
+     */
+    private SessionResponse<Boolean> removeIfUnchanged( Session session, long persistedVersion ) {
         try {
             session.startWritingSession( );
+            if ( session.getVersion( ) != persistedVersion ) {
+                return null;
+            }
+            return internalSessionContainer.removeSession( session.getSessionId( ) );
+        } finally {
+            session.endWritingSession( );
+        }
+    }
 
-            SessionMemento memento = session.createMemento( );
-            memento.setSessionClass( );
-            memento.setSessionTimeoutInSeconds( session.getTimeoutInSeconds( ) );
-            SessionResponse<Boolean> booleanSessionResponse = externalSessionContainer.saveSession( session.getSessionId( ), memento );
-            if ( booleanSessionResponse.isSuccess( ) ) {
-                return internalSessionContainer.removeSession( session.getSessionId( ) );
-            } else {
-                return new SessionResponse<Boolean>( "Session save to external source failed for session : " + session.getSessionId( ), SessionCode.ERROR, false );
+    /**
+     * Warms up the {@link InternalSessionContainer} from the {@link ExternalSessionContainer}, which should be done
+     * right after starting the application. The most recently written live sessions are restored into the internal
+     * session container and the rest are loaded from the external source on their first load, where sessions found
+     * expired by the warm-up are answered as expired without reading the external source.
+     *
+     * @param hydrateCount number of sessions restored into the internal session container
+     * @return {@link SessionResponse<WarmUpProgress>} session response with the warm-up report
+     * @see SessionWarmer
+     */
+    public SessionResponse<WarmUpProgress> warmUp( int hydrateCount ) {
+        if ( !loadSessionsFromExternalLoader ) {
+            return new SessionResponse<>( "No external session source to warm up from", SessionCode.ERROR, null );
+        }
+        WarmUpProgress progress = sessionWarmer.warmUp( hydrateCount );
+        if ( progress.getPhase( ) == WarmUpProgress.Phase.FAILED ) {
+            return new SessionResponse<>( "Session warm-up failed", SessionCode.ERROR, progress );
+        }
+        return new SessionResponse<>( "Session warm-up completed", SessionCode.SUCCESS, progress );
+    }
+
+    /**
+     * Asynchronous version of {@link #warmUp(int)}, warming up on the I/O executor. Sessions can be loaded while the
+     * warm-up runs and its progress is available from {@link #getWarmUpProgress()}.
+     *
+     * @param hydrateCount number of sessions restored into the internal session container
+     * @return {@link CompletableFuture} completed with the session response
+     */
+    public CompletableFuture<SessionResponse<WarmUpProgress>> warmUpAsync( int hydrateCount ) {
+        return CompletableFuture.supplyAsync( ( ) -> warmUp( hydrateCount ), ioExecutor );
+    }
+
+    /**
+     * Returns the progress of the warm-up
+     *
+     * @return {@link WarmUpProgress} progress or {@code null} if there is no external session source
+     */
+    public WarmUpProgress getWarmUpProgress( ) {
+        return sessionWarmer != null ? sessionWarmer.getProgress( ) : null;
+    }
+
+    private boolean isKnownExpired( String sessionId ) {
+        StoredSession storedSession = sessionWarmer.takeLazyReference( sessionId );
+        return storedSession != null && storedSession.isExpired( System.currentTimeMillis( ) );
+    }
+
+    /**
+     * Loads the sessions of the provided session ids. Sessions found in the {@link InternalSessionContainer} are
+     * returned as they are and the rest are read from the {@link ExternalSessionContainer} in one batch and restored
+     * under their original session ids.
+     *
+     * @param sessionIds session ids
+     * @return {@link SessionResponse} response with the sessions found keyed by the provided session ids. Session ids
+     * which are invalid, expired or unknown are missing from the map.
+     */
+    public SessionResponse<Map<String, Session>> loadSessions( Collection<String> sessionIds ) {
+        Map<String, Session> sessions = new HashMap<>( );
+        // The external source is asked for the normalised session ids, the sessions are returned under the provided ones
+        Map<String, String> missingSessionIds = new HashMap<>( );
+        for ( String sessionId : sessionIds ) {
+            String normalizedId = SessionId.normalize( sessionId );
+            if ( normalizedId == null ) {
+                continue;
             }
+            Session session = loadContainerLocalSession( normalizedId ).getData( );
+            if ( session != null ) {
+                sessions.put( sessionId, session );
+            } else if ( !loadSessionsFromExternalLoader || !isKnownExpired( normalizedId ) ) {
+                missingSessionIds.put( normalizedId, sessionId );
+            }
+        }
+        if ( !missingSessionIds.isEmpty( ) && loadSessionsFromExternalLoader ) {
+            LOGGER.log( Level.FINE, "Loading {0} sessions from external session container", missingSessionIds.size( ) );
+            Map<String, SessionMemento> mementos = externalSessionContainer.loadSessions( missingSessionIds.keySet( ) ).getData( );
+            if ( mementos != null ) {
+                mementos.forEach( ( sessionId, memento ) -> {
+                    SessionResponse<Session> restoreResponse = internalSessionContainer.restoreSession( sessionId, memento );
+                    if ( restoreResponse.isSuccess( ) ) {
+                        sessions.put( missingSessionIds.get( sessionId ), restoreResponse.getData( ) );
+                    }
+                } );
+            }
+        }
+        return new SessionResponse<>( "Loaded " + sessions.size( ) + " of " + sessionIds.size( ) + " sessions", SessionCode.SUCCESS, sessions );
+    }
+
+    /**
+     * Saves the sessions to the configured external source in one batch and removes the saved sessions from the
+     * {@link InternalSessionContainer}. The snapshot of each session is taken while holding its write lock, one
+     * session at a time, and the sessions are marked as persisting in session id order, so saving overlapping batches
+     * from different threads cannot deadlock. Sessions modified after their snapshot are saved again one by one, as by
+     * {@link #saveSessionToExternalSource(Session)}.
+     *
+     * @param sessions sessions to be saved
+     * @return {@link SessionResponse} response with the outcome of every save keyed by session id, which is an error
+     * response if any of the saves failed
+     */
+    public SessionResponse<Map<String, Boolean>> saveSessions( Collection<? extends Session> sessions ) {
+        Set<Session> distinctSessions = Collections.newSetFromMap( new IdentityHashMap<>( ) );
+        distinctSessions.addAll( sessions );
+        List<Session> persistOrder = new ArrayList<>( distinctSessions );
+        persistOrder.sort( Comparator.comparing( Session::getSessionId ) );
+        persistOrder.forEach( Session::startPersistingSession );
+        try {
+            Map<String, SessionMemento> mementos = new LinkedHashMap<>( );
+            Map<String, Snapshot> snapshots = new HashMap<>( );
+            Map<String, Session> fullySavedSessions = new HashMap<>( );
+            Map<String, Boolean> separateResults = new HashMap<>( );
+            for ( Session session : sessions ) {
+                Snapshot snapshot = takeSnapshot( session );
+                if ( snapshot.isUnchanged( ) ) {
+                    if ( refreshExpiry( session ) ) {
+                        snapshots.put( session.getSessionId( ), snapshot );
+                        SessionMetrics.increment( SessionCounter.SAVES_SKIPPED );
+                        separateResults.put( session.getSessionId( ), true );
+                        continue;
+                    }
+                    snapshot = takeFullSnapshot( session );
+                }
+                snapshots.put( session.getSessionId( ), snapshot );
+                // Deltas are small and appended one by one
+                Snapshot fullSnapshot = appendDelta( session, snapshot );
+                if ( fullSnapshot == null ) {
+                    separateResults.put( session.getSessionId( ), true );
+                } else {
+                    snapshot = fullSnapshot;
+                    snapshots.put( session.getSessionId( ), snapshot );
+                    mementos.put( session.getSessionId( ), snapshot.memento );
+                    fullySavedSessions.put( session.getSessionId( ), session );
+                }
+            }
+            Map<String, Boolean> results = new HashMap<>( separateResults );
+            if ( !mementos.isEmpty( ) ) {
+                SessionResponse<Map<String, Boolean>> saveResponse = externalSessionContainer.saveSessions( mementos );
+                if ( saveResponse.getData( ) != null ) {
+                    results.putAll( saveResponse.getData( ) );
+                }
+            }
+            int failedSaves = 0;
+            for ( Session session : sessions ) {
+                String sessionId = session.getSessionId( );
+                if ( Boolean.TRUE.equals( results.get( sessionId ) ) ) {
+                    long persistedVersion = snapshots.get( sessionId ).version;
+                    if ( fullySavedSessions.get( sessionId ) == session ) {
+                        markPersisted( session, persistedVersion );
+                    }
+                    if ( removeIfUnchanged( session, persistedVersion ) == null && saveSessionToExternalSource( session ).isError( ) ) {
+                        results.put( sessionId, false );
+                        failedSaves++;
+                    }
+                } else {
+                    results.put( sessionId, false );
+                    failedSaves++;
+                }
+            }
+            if ( failedSaves > 0 ) {
+                return new SessionResponse<>( "Session save to external source failed for " + failedSaves + " sessions", SessionCode.ERROR, results );
+            }
+            return new SessionResponse<>( results.size( ) + " sessions saved to external source", SessionCode.SUCCESS, results );
+        } finally {
+            persistOrder.forEach( Session::endPersistingSession );
+        }
+    }
+
+    /**
+     * Hands a session evicted from a bounded {@link InternalSessionContainer} to the I/O executor, which saves it to
+     * the external source so that the next {@link #loadSession(String)} re-activates it under the same session id.
+     * The eviction is triggered by whichever thread works with the container, which may hold the lock of the evicted
+     * session, so the session is never saved on that thread. Until the save returns, loads find the session among
+     * the passivating sessions of the container.
+     *
+     * @param session evicted session
+     */
+    private void passivateSession( Session session ) {
+        internalSessionContainer.startPassivation( session );
+        try {
+            ioExecutor.execute( ( ) -> runPassivation( session ) );
+        } catch ( RejectedExecutionException e ) {
+            LOGGER.log( Level.SEVERE, e, ( ) -> "Passivation of evicted session " + session.getSessionId( ) + " rejected" );
+            internalSessionContainer.finishPassivation( session );
+        }
+    }
+
+    /**
+     * Saves an evicted session to the external source, saving it again if it was modified while it was saved
+     */
+    private void runPassivation( Session session ) {
+        try {
+            for ( int attempt = 1; attempt <= MAX_SAVE_ATTEMPTS; attempt++ ) {
+                SessionResponse<Long> saveResponse = persistSession( session );
+                if ( saveResponse.isError( ) ) {
+                    LOGGER.log( Level.WARNING, "Evicted session {0} could not be passivated to the external source", session.getSessionId( ) );
+                    return;
+                }
+                if ( session.getVersion( ) == saveResponse.getData( ) ) {
+                    return;
+                }
+            }
+        } catch ( RuntimeException e ) {
+            LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred while passivating evicted session " + session.getSessionId( ) );
+        } finally {
+            internalSessionContainer.finishPassivation( session );
+        }
+    }
+
+    /**
+     * Writes the session to the external source unless it did not change since it was last persisted. Sessions which
+     * were persisted before and can create a delta memento are appended as a delta, falling back to a full write if
+     * the external source does not support deltas. The write lock of the session is only held while the snapshot is
+     * taken, serializing and writing the snapshot run after it is released.
+     *
+     * @return {@link SessionResponse<Long>} session response with the version of the session held by the external source
+     */
+    private SessionResponse<Long> persistSession( Session session ) {
+        session.startPersistingSession( );
+        try {
+            Snapshot snapshot = takeSnapshot( session );
+            if ( snapshot.isUnchanged( ) ) {
+                if ( refreshExpiry( session ) ) {
+                    LOGGER.log( Level.FINE, "Session {0} is unchanged since it was last persisted", session.getSessionId( ) );
+                    SessionMetrics.increment( SessionCounter.SAVES_SKIPPED );
+                    return new SessionResponse<>( "Session unchanged since it was last persisted", SessionCode.SUCCESS, snapshot.version );
+                }
+                snapshot = takeFullSnapshot( session );
+            }
+            Snapshot fullSnapshot = appendDelta( session, snapshot );
+            if ( fullSnapshot == null ) {
+                return new SessionResponse<>( "Session delta appended to external source", SessionCode.SUCCESS, snapshot.version );
+            }
+            SessionResponse<Boolean> saveResponse = externalSessionContainer.saveSession( session.getSessionId( ), fullSnapshot.memento );
+            if ( saveResponse.isError( ) ) {
+                return new SessionResponse<>( saveResponse.getMessage( ), SessionCode.ERROR, null );
+            }
+            markPersisted( session, fullSnapshot.version );
+            return new SessionResponse<>( saveResponse.getMessage( ), SessionCode.SUCCESS, fullSnapshot.version );
+        } finally {
+            session.endPersistingSession( );
+        }
+    }
+
+    /**
+     * Takes the snapshot of a session under its write lock. Sessions which were persisted before are snapshotted as a
+     * delta if they can create one.
+     *
+     * @return {@link Snapshot} snapshot, which is unchanged if the session did not change since it was last persisted
+     */
+    private Snapshot takeSnapshot( Session session ) {
+        try {
+            session.startWritingSession( );
+            long version = session.getVersion( );
+            if ( !session.isModified( ) ) {
+                return new Snapshot( version, null, null );
+            }
+            DeltaMemento delta = session.isPersisted( ) ? session.createDeltaMemento( ) : null;
+            if ( delta != null ) {
+                delta.setSessionClass( );
+                delta.setSessionTimeoutInSeconds( session.getTimeoutInSeconds( ) );
+                return new Snapshot( version, null, delta );
+            }
+            return new Snapshot( version, createMemento( session ), null );
         } finally {
             session.endWritingSession( );
         }
     }
 
     /**
-     * Loads the session from the {@link InternalSessionContainer} internal container
+     * Appends the delta of the snapshot to the external source. Full snapshots are returned as they are and a full
+     * snapshot is taken instead of a delta the external source does not accept.
+     *
+     * @return {@link Snapshot} full snapshot to be written or {@code null} if the delta was appended
+     */
+    private Snapshot appendDelta( Session session, Snapshot snapshot ) {
+        if ( snapshot.delta == null ) {
+            return snapshot;
+        }
+        if ( externalSessionContainer.saveSessionDelta( session.getSessionId( ), snapshot.delta ).isSuccess( ) ) {
+            markPersisted( session, snapshot.version );
+            return null;
+        }
+        return takeFullSnapshot( session );
+    }
+
+    private Snapshot takeFullSnapshot( Session session ) {
+        try {
+            session.startWritingSession( );
+            return new Snapshot( session.getVersion( ), createMemento( session ), null );
+        } finally {
+            session.endWritingSession( );
+        }
+    }
+
+    /**
+     * Extends the expiry of the memento of an unchanged session in the external source. The memento expires its timeout
+     * after it was written, so a session which is used but not modified would otherwise expire there while it is
+     * still in use.
+     *
+     * @return {@code true} if the stored memento was refreshed, {@code false} if it has to be written again
+     */
+    private boolean refreshExpiry( Session session ) {
+        SessionResponse<Boolean> touchResponse = externalSessionContainer.touchSession( session.getSessionId( ), session.getTimeoutInSeconds( ) );
+        return touchResponse.isSuccess( ) && Boolean.TRUE.equals( touchResponse.getData( ) );
+    }
+
+    private void markPersisted( Session session, long version ) {
+        try {
+            session.startWritingSession( );
+            session.markPersisted( version );
+        } finally {
+            session.endWritingSession( );
+        }
+    }
+
+    private SessionMemento createMemento( Session session ) {
+        SessionMemento memento = session.createMemento( );
+        memento.setSessionClass( );
+        memento.setSessionTimeoutInSeconds( session.getTimeoutInSeconds( ) );
+        return memento;
+    }
+
+    /**
+     * Loads the session from the {@link InternalSessionContainer} internal container. Sessions evicted from the
+     * container whose passivation to the external source has not finished yet are added back to the container.
      *
      * @param sessionId session id to be loaded
      * @return {@link SessionResponse<Session>} session response
@@ -109,6 +611,9 @@ public class SessionServices {
     public SessionResponse<Session> loadContainerLocalSession( String sessionId ) {
         LOGGER.log( Level.FINE, "Loading session {0} from internal session container", new Object[]{ sessionId } );
         Session session = internalSessionContainer.loadSessionFromContainer( sessionId );
+        if ( session == null ) {
+            session = internalSessionContainer.reactivatePassivatingSession( sessionId );
+        }
         if ( session == null ) {
             return new SessionResponse<>( "No session for session id : " + sessionId + " found in local container", SessionCode.ERROR, null );
         }
@@ -117,24 +622,94 @@ public class SessionServices {
 
     /**
      * Loads the session from the {@link ExternalSessionContainer} external container from the provided external source.
-     * If the session can be loaded from the external source, then the application will provide a new session id for the loaded
-     * session and will also add this session to the {@link InternalSessionContainer} application sessions map.
+     * If the session can be loaded from the external source, then the session is restored under its original session id
+     * and added to the {@link InternalSessionContainer} application sessions map, so later loads find it in memory.
+     * <p>
+     * Concurrent loads of the same session id are coalesced: only the first caller reads and restores the memento and
+     * every other caller waits for it and receives the same {@link Session} object.
      *
      * @param sessionId session id to be loaded
      * @return {@link SessionResponse<Session>} session response
      */
     public SessionResponse<Session> loadExternalSourceSession( String sessionId ) {
+        String normalizedId = SessionId.normalize( sessionId );
+        if ( normalizedId == null ) {
+            return new SessionResponse<>( "Invalid session id : " + sessionId, SessionCode.ERROR, null );
+        }
+        return loadExternalSourceSessionOnce( normalizedId, Runnable::run ).join( );
+    }
+
+    /**
+     * Returns the in-flight load of the normalised session id, or starts a new load on the provided executor if there
+     * is none
+     */
+    private CompletableFuture<SessionResponse<Session>> loadExternalSourceSessionOnce( String sessionId, Executor executor ) {
+        CompletableFuture<SessionResponse<Session>> inFlightLoad = inFlightLoads.get( sessionId );
+        if ( inFlightLoad != null ) {
+            SessionMetrics.increment( SessionCounter.LOADS_COALESCED );
+            return inFlightLoad;
+        }
+        CompletableFuture<SessionResponse<Session>> load = new CompletableFuture<>( );
+        inFlightLoad = inFlightLoads.putIfAbsent( sessionId, load );
+        if ( inFlightLoad != null ) {
+            SessionMetrics.increment( SessionCounter.LOADS_COALESCED );
+            return inFlightLoad;
+        }
+        try {
+            executor.execute( ( ) -> {
+                try {
+                    load.complete( readAndRestoreExternalSession( sessionId ) );
+                } catch ( RuntimeException e ) {
+                    LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred while loading session " + sessionId + " from external source" );
+                    load.complete( new SessionResponse<>( "Error loading session from external source : " + sessionId, SessionCode.ERROR, null ) );
+                } finally {
+                    inFlightLoads.remove( sessionId, load );
+                }
+            } );
+        } catch ( RejectedExecutionException e ) {
+            inFlightLoads.remove( sessionId, load );
+            load.complete( new SessionResponse<>( "External session load rejected for session : " + sessionId, SessionCode.ERROR, null ) );
+        }
+        return load;
+    }
+
+    private SessionResponse<Session> readAndRestoreExternalSession( String sessionId ) {
+        // The session may have been restored by a load which completed just before this one started
+        Session session = loadContainerLocalSession( sessionId ).getData( );
+        if ( session != null ) {
+            return new SessionResponse<>( "Session for session id : " + sessionId + " found in local container", SessionCode.SUCCESS, session );
+        }
         LOGGER.log( Level.FINE, "Loading session {0} from external session container", new Object[]{ sessionId } );
         SessionResponse<SessionMemento> mementoSessionResponse = externalSessionContainer.loadSession( sessionId );
         if ( mementoSessionResponse.isSuccess( ) ) {
-            SessionMemento memento = mementoSessionResponse.getData( );
-            SessionResponse<String> sessionCreateResponse = internalSessionContainer.createSession( memento.getSessionClass( ), memento.getSessionTimeoutInSeconds( ) );
-            if ( sessionCreateResponse.isSuccess( ) ) {
-                Session createdSession = internalSessionContainer.loadSessionFromContainer( sessionCreateResponse.getData( ) );
-                createdSession.restore( memento );
-                return new SessionResponse<>( "Session load success from external source", SessionCode.SUCCESS, createdSession );
+            SessionResponse<Session> sessionRestoreResponse = internalSessionContainer.restoreSession( sessionId, mementoSessionResponse.getData( ) );
+            if ( sessionRestoreResponse.isSuccess( ) ) {
+                return new SessionResponse<>( "Session load success from external source", SessionCode.SUCCESS, sessionRestoreResponse.getData( ) );
             }
         }
         return new SessionResponse<>( mementoSessionResponse.getMessage( ), SessionCode.ERROR, null );
     }
+
+    /**
+     * State of a session taken under its write lock, written to the external source after the lock is released
+     */
+    private static final class Snapshot {
+
+        private final long version;
+        private final SessionMemento memento;
+        private final DeltaMemento delta;
+
+        private Snapshot( long version, SessionMemento memento, DeltaMemento delta ) {
+            this.version = version;
+            this.memento = memento;
+            this.delta = delta;
+        }
+
+        /**
+         * @return whether the session did not change since it was last persisted, so there is nothing to write
+         */
+        private boolean isUnchanged( ) {
+            return memento == null && delta == null;
+        }
+    }
 }
@@ -0,0 +1,114 @@
+package com.kusalk.projects.session.handler.codec;
+
+import com.kusalk.projects.session.handler.session.SessionMemento;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A compact, schema based {@link MementoCodec}. Each memento class is registered with a {@link MementoSchema} which
+ * writes its fields with a {@link BinaryWriter}. An encoded memento is laid out as
+ * <pre>
+ * byte    format marker, {@link #FORMAT_MARKER}
+ * varint  type id of the memento schema
+ * varint  schema version
+ * varlong session timeout in seconds
+ * ...     fields written by the schema
+ * </pre>
+ * The type id replaces the memento and session class names, which Java serialization writes into every record. The
+ * session class is restored by {@link SessionMemento#setSessionClass()} when decoding.
+ * <p>
+ * Mementos of classes without a registered schema are encoded by the fallback codec, and records which do not start
+ * with the format marker are decoded by it. By default the fallback is {@link JavaSerializationMementoCodec}, so
+ * records written before this codec was configured can still be read.
+ */
+public class BinaryMementoCodec implements MementoCodec {
+
+    /**
+     * First byte of every memento encoded by this codec. It can not be the first byte of a Java serialization stream.
+     */
+    public static final byte FORMAT_MARKER = ( byte ) 0xB1;
+
+    private static final int INITIAL_BUFFER_SIZE = 128;
+
+    private final ConcurrentHashMap<Class<?>, MementoSchema<?>> schemasByClass = new ConcurrentHashMap<>( );
+    private final ConcurrentHashMap<Integer, MementoSchema<?>> schemasByTypeId = new ConcurrentHashMap<>( );
+    private final MementoCodec fallbackCodec;
+
+    public BinaryMementoCodec( ) {
+        this( new JavaSerializationMementoCodec( ) );
+    }
+
+    /**
+     * @param fallbackCodec codec of mementos without a registered schema and of records not written by this codec
+     */
+    public BinaryMementoCodec( MementoCodec fallbackCodec ) {
+        this.fallbackCodec = fallbackCodec;
+    }
+
+    /**
+     * Registers the schema of a memento class
+     *
+     * @param schema memento schema
+     * @return this codec
+     * @throws IllegalArgumentException if the type id or the memento class is already registered with another schema
+     */
+    public BinaryMementoCodec register( MementoSchema<?> schema ) {
+        if ( schema.getTypeId( ) <= 0 ) {
+            throw new IllegalArgumentException( "Memento type id must be positive : " + schema.getTypeId( ) );
+        }
+        synchronized ( schemasByTypeId ) {
+            MementoSchema<?> byTypeId = schemasByTypeId.get( schema.getTypeId( ) );
+            MementoSchema<?> byClass = schemasByClass.get( schema.getMementoClass( ) );
+            if ( ( byTypeId != null && byTypeId != schema ) || ( byClass != null && byClass != schema ) ) {
+                throw new IllegalArgumentException( "Memento type id " + schema.getTypeId( ) + " or class " + schema.getMementoClass( ).getName( )
+                        + " is already registered" );
+            }
+            schemasByTypeId.put( schema.getTypeId( ), schema );
+            schemasByClass.put( schema.getMementoClass( ), schema );
+        }
+        return this;
+    }
+
+    @Override
+    @SuppressWarnings( "unchecked" )
+    public byte[] encode( SessionMemento memento ) throws IOException {
+        MementoSchema<SessionMemento> schema = ( MementoSchema<SessionMemento> ) schemasByClass.get( memento.getClass( ) );
+        if ( schema == null ) {
+            return fallbackCodec.encode( memento );
+        }
+        BinaryWriter writer = new BinaryWriter( INITIAL_BUFFER_SIZE );
+        writer.writeByte( FORMAT_MARKER )
+                .writeVarInt( schema.getTypeId( ) )
+                .writeVarInt( schema.getVersion( ) )
+                .writeVarLong( memento.getSessionTimeoutInSeconds( ) );
+        schema.write( memento, writer );
+        return writer.toByteArray( );
+    }
+
+    @Override
+    public SessionMemento decode( ByteBuffer buffer ) throws IOException {
+        if ( !buffer.hasRemaining( ) || buffer.get( buffer.position( ) ) != FORMAT_MARKER ) {
+            return fallbackCodec.decode( buffer );
+        }
+        BinaryReader reader = new BinaryReader( buffer );
+        reader.readByte( );
+        int typeId = reader.readVarInt( );
+        int version = reader.readVarInt( );
+        MementoSchema<?> schema = schemasByTypeId.get( typeId );
+        if ( schema == null ) {
+            throw new StreamCorruptedException( "No memento schema registered for type id " + typeId );
+        }
+        if ( version > schema.getVersion( ) ) {
+            throw new StreamCorruptedException( "Memento of type id " + typeId + " was written with schema version " + version
+                    + ", newer than the registered version " + schema.getVersion( ) );
+        }
+        long sessionTimeoutInSeconds = reader.readVarLong( );
+        SessionMemento memento = schema.read( reader, version );
+        memento.setSessionTimeoutInSeconds( sessionTimeoutInSeconds );
+        memento.setSessionClass( );
+        return memento;
+    }
+}
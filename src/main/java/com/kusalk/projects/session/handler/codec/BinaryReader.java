@@ -0,0 +1,122 @@
+package com.kusalk.projects.session.handler.codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the fields written by a {@link BinaryWriter} from a {@link ByteBuffer}
+ */
+public final class BinaryReader {
+
+    private final ByteBuffer buffer;
+
+    BinaryReader( ByteBuffer buffer ) {
+        this.buffer = buffer;
+    }
+
+    public boolean readBoolean( ) throws IOException {
+        return readByte( ) != 0;
+    }
+
+    public byte readByte( ) throws IOException {
+        if ( !buffer.hasRemaining( ) ) {
+            throw new EOFException( "Unexpected end of memento" );
+        }
+        return buffer.get( );
+    }
+
+    public int readVarInt( ) throws IOException {
+        int value = 0;
+        for ( int shift = 0; shift < 35; shift += 7 ) {
+            byte b = readByte( );
+            value |= ( b & 0x7F ) << shift;
+            if ( b >= 0 ) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException( "Malformed variable length integer" );
+    }
+
+    public long readVarLong( ) throws IOException {
+        long value = 0;
+        for ( int shift = 0; shift < 70; shift += 7 ) {
+            byte b = readByte( );
+            value |= ( long ) ( b & 0x7F ) << shift;
+            if ( b >= 0 ) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException( "Malformed variable length long" );
+    }
+
+    public int readSignedVarInt( ) throws IOException {
+        int value = readVarInt( );
+        return ( value >>> 1 ) ^ -( value & 1 );
+    }
+
+    public long readSignedVarLong( ) throws IOException {
+        long value = readVarLong( );
+        return ( value >>> 1 ) ^ -( value & 1 );
+    }
+
+    public double readDouble( ) throws IOException {
+        if ( buffer.remaining( ) < 8 ) {
+            throw new EOFException( "Unexpected end of memento" );
+        }
+        return Double.longBitsToDouble( buffer.getLong( ) );
+    }
+
+    public String readString( ) throws IOException {
+        int length = readLength( );
+        if ( length < 0 ) {
+            return null;
+        }
+        String value;
+        if ( buffer.hasArray( ) ) {
+            value = new String( buffer.array( ), buffer.arrayOffset( ) + buffer.position( ), length, StandardCharsets.UTF_8 );
+            buffer.position( buffer.position( ) + length );
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get( bytes );
+            value = new String( bytes, StandardCharsets.UTF_8 );
+        }
+        return value;
+    }
+
+    public byte[] readBytes( ) throws IOException {
+        int length = readLength( );
+        if ( length < 0 ) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get( bytes );
+        return bytes;
+    }
+
+    /**
+     * Reads exactly the requested number of raw bytes
+     */
+    void readFully( byte[] target, int offset, int length ) throws IOException {
+        if ( length > buffer.remaining( ) ) {
+            throw new EOFException( "Unexpected end of memento" );
+        }
+        buffer.get( target, offset, length );
+    }
+
+    /**
+     * Reads a length prefix, returning {@code -1} for {@code null} values
+     */
+    private int readLength( ) throws IOException {
+        int length = readVarInt( ) - 1;
+        if ( length > buffer.remaining( ) ) {
+            throw new EOFException( "Unexpected end of memento" );
+        }
+        if ( length < -1 ) {
+            throw new StreamCorruptedException( "Malformed length prefix" );
+        }
+        return length;
+    }
+}
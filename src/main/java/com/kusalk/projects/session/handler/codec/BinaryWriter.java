@@ -0,0 +1,120 @@
+package com.kusalk.projects.session.handler.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes the fields of a memento for the {@link BinaryMementoCodec}. Integers are written as variable length
+ * integers, so small values take a single byte. Strings and byte arrays are prefixed by their length plus one, where
+ * zero marks a {@code null} value.
+ */
+public final class BinaryWriter {
+
+    private byte[] bytes;
+    private int size;
+
+    BinaryWriter( int initialCapacity ) {
+        this.bytes = new byte[initialCapacity];
+    }
+
+    public BinaryWriter writeBoolean( boolean value ) {
+        ensureCapacity( 1 );
+        bytes[size++] = ( byte ) ( value ? 1 : 0 );
+        return this;
+    }
+
+    public BinaryWriter writeByte( int value ) {
+        ensureCapacity( 1 );
+        bytes[size++] = ( byte ) value;
+        return this;
+    }
+
+    /**
+     * Writes an unsigned variable length integer. Negative values take five bytes, use {@link #writeSignedVarInt(int)}
+     * for values which can be negative.
+     */
+    public BinaryWriter writeVarInt( int value ) {
+        ensureCapacity( 5 );
+        while ( ( value & ~0x7F ) != 0 ) {
+            bytes[size++] = ( byte ) ( ( value & 0x7F ) | 0x80 );
+            value >>>= 7;
+        }
+        bytes[size++] = ( byte ) value;
+        return this;
+    }
+
+    /**
+     * Writes an unsigned variable length long. Negative values take ten bytes, use {@link #writeSignedVarLong(long)}
+     * for values which can be negative.
+     */
+    public BinaryWriter writeVarLong( long value ) {
+        ensureCapacity( 10 );
+        while ( ( value & ~0x7FL ) != 0 ) {
+            bytes[size++] = ( byte ) ( ( value & 0x7F ) | 0x80 );
+            value >>>= 7;
+        }
+        bytes[size++] = ( byte ) value;
+        return this;
+    }
+
+    /**
+     * Writes a zig-zag encoded variable length integer, so small negative values stay small
+     */
+    public BinaryWriter writeSignedVarInt( int value ) {
+        return writeVarInt( ( value << 1 ) ^ ( value >> 31 ) );
+    }
+
+    /**
+     * Writes a zig-zag encoded variable length long, so small negative values stay small
+     */
+    public BinaryWriter writeSignedVarLong( long value ) {
+        return writeVarLong( ( value << 1 ) ^ ( value >> 63 ) );
+    }
+
+    public BinaryWriter writeDouble( double value ) {
+        long bits = Double.doubleToRawLongBits( value );
+        ensureCapacity( 8 );
+        for ( int shift = 56; shift >= 0; shift -= 8 ) {
+            bytes[size++] = ( byte ) ( bits >>> shift );
+        }
+        return this;
+    }
+
+    public BinaryWriter writeString( String value ) {
+        return writeBytes( value == null ? null : value.getBytes( StandardCharsets.UTF_8 ) );
+    }
+
+    public BinaryWriter writeBytes( byte[] value ) {
+        if ( value == null ) {
+            return writeVarInt( 0 );
+        }
+        writeVarInt( value.length + 1 );
+        ensureCapacity( value.length );
+        System.arraycopy( value, 0, bytes, size, value.length );
+        size += value.length;
+        return this;
+    }
+
+    /**
+     * Writes raw bytes without a length prefix
+     */
+    void writeRaw( byte[] value, int offset, int length ) {
+        ensureCapacity( length );
+        System.arraycopy( value, offset, bytes, size, length );
+        size += length;
+    }
+
+    int size( ) {
+        return size;
+    }
+
+    byte[] toByteArray( ) {
+        return Arrays.copyOf( bytes, size );
+    }
+
+    private void ensureCapacity( int additional ) {
+        if ( size + additional > bytes.length ) {
+            bytes = Arrays.copyOf( bytes, Math.max( bytes.length << 1, size + additional ) );
+        }
+    }
+}
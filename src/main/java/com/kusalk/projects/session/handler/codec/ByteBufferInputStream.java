@@ -0,0 +1,47 @@
+package com.kusalk.projects.session.handler.codec;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An {@link InputStream} reading the remaining bytes of a {@link ByteBuffer}, so mementos can be deserialized straight
+ * from a mapped segment without copying them to the heap first.
+ */
+final class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream( ByteBuffer buffer ) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public int read( ) {
+        return buffer.hasRemaining( ) ? buffer.get( ) & 0xFF : -1;
+    }
+
+    @Override
+    public int read( byte[] bytes, int offset, int length ) {
+        if ( length == 0 ) {
+            return 0;
+        }
+        if ( !buffer.hasRemaining( ) ) {
+            return -1;
+        }
+        int count = Math.min( length, buffer.remaining( ) );
+        buffer.get( bytes, offset, count );
+        return count;
+    }
+
+    @Override
+    public long skip( long count ) {
+        int skipped = ( int ) Math.max( 0, Math.min( count, buffer.remaining( ) ) );
+        buffer.position( buffer.position( ) + skipped );
+        return skipped;
+    }
+
+    @Override
+    public int available( ) {
+        return buffer.remaining( );
+    }
+}
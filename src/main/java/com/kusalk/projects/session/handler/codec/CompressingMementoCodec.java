@@ -0,0 +1,203 @@
+package com.kusalk.projects.session.handler.codec;
+
+import com.kusalk.projects.session.handler.session.SessionMemento;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link MementoCodec} compressing the records of another codec. Records smaller than the compression threshold,
+ * and records which do not get smaller, are stored exactly as the wrapped codec wrote them. Compressed records start
+ * with the following header
+ * <pre>
+ * byte   compression marker, {@link #COMPRESSION_MARKER}
+ * byte   {@link CompressionAlgorithm} id
+ * varint dictionary id, 0 when no dictionary was used
+ * varint length of the uncompressed record
+ * </pre>
+ * so stores holding a mix of compressed and uncompressed records, or records written before compression was enabled,
+ * stay readable. The wrapped codec must not start its records with the compression marker.
+ * <p>
+ * Dictionaries are registered per session class under a stable id, and every dictionary which was ever used must stay
+ * registered to read the records compressed with it. Dictionaries can be trained from sample mementos with
+ * {@link Builder#trainDictionary(String, int, List, int)}.
+ */
+public class CompressingMementoCodec implements MementoCodec {
+
+    /**
+     * First byte of every compressed record
+     */
+    public static final byte COMPRESSION_MARKER = ( byte ) 0xC5;
+
+    public static final int DEFAULT_THRESHOLD_BYTES = 256;
+
+    private final MementoCodec delegate;
+    private final CompressionAlgorithm algorithm;
+    private final int thresholdBytes;
+    private final Map<String, Integer> dictionaryIdsBySessionClass;
+    private final Map<Integer, byte[]> dictionariesById;
+
+    private CompressingMementoCodec( Builder builder ) {
+        this.delegate = builder.delegate;
+        this.algorithm = builder.algorithm;
+        this.thresholdBytes = builder.thresholdBytes;
+        this.dictionaryIdsBySessionClass = new HashMap<>( builder.dictionaryIdsBySessionClass );
+        this.dictionariesById = new HashMap<>( builder.dictionariesById );
+    }
+
+    /**
+     * Creates a builder of a codec compressing the records of the provided codec
+     *
+     * @param delegate codec of the uncompressed records
+     * @return {@link Builder} builder
+     */
+    public static Builder builder( MementoCodec delegate ) {
+        return new Builder( delegate );
+    }
+
+    @Override
+    public byte[] encode( SessionMemento memento ) throws IOException {
+        byte[] record = delegate.encode( memento );
+        if ( record.length < thresholdBytes ) {
+            return record;
+        }
+        int dictionaryId = dictionaryIdsBySessionClass.getOrDefault( memento.getSessionClass( ), 0 );
+        byte[] compressed = algorithm.compress( record, dictionary( dictionaryId ) );
+
+        BinaryWriter writer = new BinaryWriter( compressed.length + 12 );
+        writer.writeByte( COMPRESSION_MARKER )
+                .writeByte( algorithm.getId( ) )
+                .writeVarInt( dictionaryId )
+                .writeVarInt( record.length );
+        if ( writer.size( ) + compressed.length >= record.length ) {
+            return record;
+        }
+        writer.writeRaw( compressed, 0, compressed.length );
+        return writer.toByteArray( );
+    }
+
+    @Override
+    public SessionMemento decode( ByteBuffer buffer ) throws IOException {
+        if ( !buffer.hasRemaining( ) || buffer.get( buffer.position( ) ) != COMPRESSION_MARKER ) {
+            return delegate.decode( buffer );
+        }
+        BinaryReader reader = new BinaryReader( buffer );
+        reader.readByte( );
+        CompressionAlgorithm recordAlgorithm = CompressionAlgorithm.fromId( reader.readByte( ) );
+        int dictionaryId = reader.readVarInt( );
+        int originalLength = reader.readVarInt( );
+        byte[] dictionary = dictionary( dictionaryId );
+        if ( dictionary == null ) {
+            throw new StreamCorruptedException( "Record was compressed with the unknown dictionary " + dictionaryId );
+        }
+        return delegate.decode( recordAlgorithm.decompress( buffer, originalLength, dictionary ) );
+    }
+
+    private byte[] dictionary( int dictionaryId ) {
+        return dictionaryId == 0 ? new byte[0] : dictionariesById.get( dictionaryId );
+    }
+
+    /**
+     * Builder of {@link CompressingMementoCodec} objects
+     */
+    public static final class Builder {
+
+        private final MementoCodec delegate;
+        private final Map<String, Integer> dictionaryIdsBySessionClass = new HashMap<>( );
+        private final Map<Integer, byte[]> dictionariesById = new HashMap<>( );
+        private CompressionAlgorithm algorithm = CompressionAlgorithm.LZ;
+        private int thresholdBytes = DEFAULT_THRESHOLD_BYTES;
+
+        private Builder( MementoCodec delegate ) {
+            if ( delegate == null ) {
+                throw new IllegalArgumentException( "Memento codec to compress is required" );
+            }
+            this.delegate = delegate;
+        }
+
+        /**
+         * @param algorithm algorithm used to compress new records, records are always decompressed with the algorithm
+         *                  they were compressed with
+         * @return this builder
+         */
+        public Builder algorithm( CompressionAlgorithm algorithm ) {
+            this.algorithm = algorithm;
+            return this;
+        }
+
+        /**
+         * @param thresholdBytes records smaller than this are not compressed
+         * @return this builder
+         */
+        public Builder thresholdBytes( int thresholdBytes ) {
+            if ( thresholdBytes < 0 ) {
+                throw new IllegalArgumentException( "Compression threshold can not be negative : " + thresholdBytes );
+            }
+            this.thresholdBytes = thresholdBytes;
+            return this;
+        }
+
+        /**
+         * Registers a dictionary used to compress the mementos of a session class
+         *
+         * @param sessionClass session class name, as returned by {@link SessionMemento#getSessionClass()}
+         * @param dictionaryId stable, positive id of the dictionary
+         * @param dictionary   dictionary bytes
+         * @return this builder
+         */
+        public Builder dictionary( String sessionClass, int dictionaryId, byte[] dictionary ) {
+            if ( dictionaryId <= 0 ) {
+                throw new IllegalArgumentException( "Dictionary id must be positive : " + dictionaryId );
+            }
+            byte[] existing = dictionariesById.putIfAbsent( dictionaryId, dictionary.clone( ) );
+            if ( existing != null ) {
+                throw new IllegalArgumentException( "Dictionary id " + dictionaryId + " is already registered" );
+            }
+            dictionaryIdsBySessionClass.put( sessionClass, dictionaryId );
+            return this;
+        }
+
+        /**
+         * Registers a dictionary which is only used to read records compressed with it earlier
+         *
+         * @param dictionaryId id of the dictionary
+         * @param dictionary   dictionary bytes
+         * @return this builder
+         */
+        public Builder retiredDictionary( int dictionaryId, byte[] dictionary ) {
+            if ( dictionariesById.putIfAbsent( dictionaryId, dictionary.clone( ) ) != null ) {
+                throw new IllegalArgumentException( "Dictionary id " + dictionaryId + " is already registered" );
+            }
+            return this;
+        }
+
+        /**
+         * Trains a dictionary from sample mementos of a session class, encoded with the wrapped codec, and registers
+         * it. The trained dictionary should be stored by the application, as it is needed to read the records
+         * compressed with it.
+         *
+         * @param sessionClass session class name
+         * @param dictionaryId stable, positive id of the dictionary
+         * @param samples      sample mementos of the session class
+         * @param maximumBytes maximum dictionary size
+         * @return this builder
+         * @throws IOException if a sample can not be encoded
+         */
+        public Builder trainDictionary( String sessionClass, int dictionaryId, List<? extends SessionMemento> samples, int maximumBytes ) throws IOException {
+            List<byte[]> records = new ArrayList<>( samples.size( ) );
+            for ( SessionMemento sample : samples ) {
+                records.add( delegate.encode( sample ) );
+            }
+            return dictionary( sessionClass, dictionaryId, DictionaryTrainer.train( records, maximumBytes ) );
+        }
+
+        public CompressingMementoCodec build( ) {
+            return new CompressingMementoCodec( this );
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.kusalk.projects.session.handler.codec;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+/**
+ * Compression algorithms supported by the {@link CompressingMementoCodec}. The id of the algorithm is written into
+ * every compressed record and must never change.
+ */
+public enum CompressionAlgorithm {
+
+    /**
+     * JDK deflate, the better compression ratio
+     */
+    DEFLATE( 1 ) {
+        @Override
+        byte[] compress( byte[] input, byte[] dictionary ) {
+            return DeflateCompressor.compress( input, dictionary );
+        }
+
+        @Override
+        byte[] decompress( ByteBuffer input, int originalLength, byte[] dictionary ) throws IOException {
+            return DeflateCompressor.decompress( input, originalLength, dictionary );
+        }
+    },
+
+    /**
+     * Pure Java LZ compression, several times faster than deflate with a lower compression ratio
+     */
+    LZ( 2 ) {
+        @Override
+        byte[] compress( byte[] input, byte[] dictionary ) {
+            return LzCompressor.compress( input, dictionary );
+        }
+
+        @Override
+        byte[] decompress( ByteBuffer input, int originalLength, byte[] dictionary ) throws IOException {
+            return LzCompressor.decompress( input, originalLength, dictionary );
+        }
+    };
+
+    private final int id;
+
+    CompressionAlgorithm( int id ) {
+        this.id = id;
+    }
+
+    public int getId( ) {
+        return id;
+    }
+
+    abstract byte[] compress( byte[] input, byte[] dictionary );
+
+    abstract byte[] decompress( ByteBuffer input, int originalLength, byte[] dictionary ) throws IOException;
+
+    static CompressionAlgorithm fromId( int id ) throws IOException {
+        for ( CompressionAlgorithm algorithm : values( ) ) {
+            if ( algorithm.id == id ) {
+                return algorithm;
+            }
+        }
+        throw new StreamCorruptedException( "Unknown compression algorithm id " + id );
+    }
+}
@@ -0,0 +1,68 @@
+package com.kusalk.projects.session.handler.codec;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses records with the JDK {@link Deflater}. Deflaters and inflaters hold native memory and are expensive to
+ * create, so one of each is kept per thread and reset between records.
+ */
+final class DeflateCompressor {
+
+    private static final ThreadLocal<Deflater> DEFLATERS = ThreadLocal.withInitial( ( ) -> new Deflater( Deflater.DEFAULT_COMPRESSION, true ) );
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial( ( ) -> new Inflater( true ) );
+
+    private DeflateCompressor( ) {
+    }
+
+    static byte[] compress( byte[] input, byte[] dictionary ) {
+        Deflater deflater = DEFLATERS.get( );
+        deflater.reset( );
+        if ( dictionary.length > 0 ) {
+            deflater.setDictionary( dictionary );
+        }
+        deflater.setInput( input );
+        deflater.finish( );
+        byte[] output = new byte[input.length / 2 + 64];
+        int size = 0;
+        while ( !deflater.finished( ) ) {
+            if ( size == output.length ) {
+                output = Arrays.copyOf( output, output.length << 1 );
+            }
+            size += deflater.deflate( output, size, output.length - size );
+        }
+        return Arrays.copyOf( output, size );
+    }
+
+    static byte[] decompress( ByteBuffer input, int originalLength, byte[] dictionary ) throws IOException {
+        Inflater inflater = INFLATERS.get( );
+        inflater.reset( );
+        // Raw deflate streams do not ask for their dictionary, so it is set up front
+        if ( dictionary.length > 0 ) {
+            inflater.setDictionary( dictionary );
+        }
+        inflater.setInput( input );
+        byte[] output = new byte[originalLength];
+        int size = 0;
+        try {
+            while ( size < originalLength ) {
+                int inflated = inflater.inflate( output, size, originalLength - size );
+                if ( inflated == 0 && ( inflater.needsInput( ) || inflater.finished( ) ) ) {
+                    break;
+                }
+                size += inflated;
+            }
+        } catch ( DataFormatException e ) {
+            throw new StreamCorruptedException( "Invalid deflate record : " + e.getMessage( ) );
+        }
+        if ( size != originalLength ) {
+            throw new StreamCorruptedException( "Decompressed length does not match the original length" );
+        }
+        return output;
+    }
+}
@@ -0,0 +1,103 @@
+package com.kusalk.projects.session.handler.codec;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds compression dictionaries from sample records. Small records compress poorly on their own because there is
+ * nothing earlier in the record to refer to; a dictionary holding the byte sequences common to many records of a
+ * session class gives the compressor that history.
+ * <p>
+ * The samples are cut into fixed size chunks and every chunk is scored by how many samples contain its eight byte
+ * sequences. The best chunks are kept, with the best one placed last so it is closest to the record.
+ */
+public final class DictionaryTrainer {
+
+    private static final int SEQUENCE_LENGTH = 8;
+    private static final int CHUNK_LENGTH = 32;
+
+    private DictionaryTrainer( ) {
+    }
+
+    /**
+     * Trains a dictionary from the sample records
+     *
+     * @param samples      encoded sample records
+     * @param maximumBytes maximum size of the dictionary
+     * @return dictionary, empty if the samples do not share any sequences
+     */
+    public static byte[] train( List<byte[]> samples, int maximumBytes ) {
+        Map<Long, Integer> sampleCounts = new HashMap<>( );
+        for ( byte[] sample : samples ) {
+            Set<Long> sequences = new HashSet<>( );
+            for ( int i = 0; i + SEQUENCE_LENGTH <= sample.length; i++ ) {
+                sequences.add( sequence( sample, i ) );
+            }
+            sequences.forEach( sequence -> sampleCounts.merge( sequence, 1, Integer::sum ) );
+        }
+
+        List<Chunk> chunks = new ArrayList<>( );
+        for ( byte[] sample : samples ) {
+            for ( int start = 0; start + SEQUENCE_LENGTH <= sample.length; start += CHUNK_LENGTH ) {
+                int end = Math.min( sample.length, start + CHUNK_LENGTH );
+                long score = 0;
+                for ( int i = start; i + SEQUENCE_LENGTH <= end; i++ ) {
+                    int count = sampleCounts.get( sequence( sample, i ) );
+                    if ( count > 1 ) {
+                        score += count;
+                    }
+                }
+                if ( score > 0 ) {
+                    chunks.add( new Chunk( Arrays.copyOfRange( sample, start, end ), score ) );
+                }
+            }
+        }
+        chunks.sort( ( first, second ) -> Long.compare( second.score, first.score ) );
+
+        List<byte[]> selected = new ArrayList<>( );
+        Set<ByteBuffer> seen = new HashSet<>( );
+        int size = 0;
+        for ( Chunk chunk : chunks ) {
+            if ( size + chunk.bytes.length > maximumBytes ) {
+                continue;
+            }
+            if ( seen.add( ByteBuffer.wrap( chunk.bytes ) ) ) {
+                selected.add( chunk.bytes );
+                size += chunk.bytes.length;
+            }
+        }
+
+        byte[] dictionary = new byte[size];
+        int position = size;
+        for ( byte[] bytes : selected ) {
+            position -= bytes.length;
+            System.arraycopy( bytes, 0, dictionary, position, bytes.length );
+        }
+        return dictionary;
+    }
+
+    private static long sequence( byte[] bytes, int position ) {
+        long value = 0;
+        for ( int i = 0; i < SEQUENCE_LENGTH; i++ ) {
+            value = ( value << 8 ) | ( bytes[position + i] & 0xFF );
+        }
+        return value;
+    }
+
+    private static final class Chunk {
+
+        private final byte[] bytes;
+        private final long score;
+
+        private Chunk( byte[] bytes, long score ) {
+            this.bytes = bytes;
+            this.score = score;
+        }
+    }
+}
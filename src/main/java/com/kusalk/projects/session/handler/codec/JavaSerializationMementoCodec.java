@@ -0,0 +1,40 @@
+package com.kusalk.projects.session.handler.codec;
+
+import com.kusalk.projects.session.handler.session.SessionMemento;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link MementoCodec} using Java serialization. This is the format the session sources have always written, so it
+ * is also used to read records written before a different codec was configured.
+ */
+public class JavaSerializationMementoCodec implements MementoCodec {
+
+    /**
+     * First byte of every Java serialization stream
+     */
+    static final byte STREAM_MAGIC_FIRST_BYTE = ( byte ) 0xAC;
+
+    @Override
+    public byte[] encode( SessionMemento memento ) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream( );
+        try ( ObjectOutputStream objectOutputStream = new ObjectOutputStream( bytes ) ) {
+            objectOutputStream.writeObject( memento );
+        }
+        return bytes.toByteArray( );
+    }
+
+    @Override
+    public SessionMemento decode( ByteBuffer buffer ) throws IOException {
+        try ( ObjectInputStream objectInputStream = new ObjectInputStream( new ByteBufferInputStream( buffer ) ) ) {
+            return ( SessionMemento ) objectInputStream.readObject( );
+        } catch ( ClassNotFoundException | ClassCastException e ) {
+            throw new StreamCorruptedException( "Serialized object is not a known session memento : " + e.getMessage( ) );
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.kusalk.projects.session.handler.codec;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A small LZ77 style compressor trading compression ratio for speed. Matches are found with a single-entry hash table
+ * of four byte sequences, so compressing is a single pass over the input. The output is a list of sequences
+ * <pre>
+ * varint literal count, literal bytes, varint (match length - 3), varint match offset
+ * </pre>
+ * ended by a sequence with a zero match length and no offset. A dictionary is treated as input preceding the record,
+ * so matches can point into it.
+ */
+final class LzCompressor {
+
+    private static final int MIN_MATCH = 4;
+    private static final int HASH_BITS = 14;
+    private static final int MAX_OFFSET = 1 << 20;
+
+    private LzCompressor( ) {
+    }
+
+    static byte[] compress( byte[] input, byte[] dictionary ) {
+        byte[] window = dictionary.length == 0 ? input : concat( dictionary, input );
+        int start = dictionary.length;
+        int[] table = new int[1 << HASH_BITS];
+        Arrays.fill( table, -1 );
+        for ( int i = 0; i + MIN_MATCH <= start; i++ ) {
+            table[hash( window, i )] = i;
+        }
+
+        BinaryWriter writer = new BinaryWriter( input.length / 2 + 16 );
+        int anchor = start;
+        int position = start;
+        int limit = window.length - MIN_MATCH;
+        while ( position <= limit ) {
+            int h = hash( window, position );
+            int reference = table[h];
+            table[h] = position;
+            if ( reference < 0 || position - reference > MAX_OFFSET || readInt( window, reference ) != readInt( window, position ) ) {
+                position++;
+                continue;
+            }
+            int length = MIN_MATCH;
+            while ( position + length < window.length && window[reference + length] == window[position + length] ) {
+                length++;
+            }
+            writer.writeVarInt( position - anchor );
+            writer.writeRaw( window, anchor, position - anchor );
+            writer.writeVarInt( length - MIN_MATCH + 1 );
+            writer.writeVarInt( position - reference );
+            position += length;
+            anchor = position;
+        }
+        writer.writeVarInt( window.length - anchor );
+        writer.writeRaw( window, anchor, window.length - anchor );
+        writer.writeVarInt( 0 );
+        return writer.toByteArray( );
+    }
+
+    static byte[] decompress( ByteBuffer input, int originalLength, byte[] dictionary ) throws IOException {
+        BinaryReader reader = new BinaryReader( input );
+        int start = dictionary.length;
+        byte[] output = new byte[start + originalLength];
+        System.arraycopy( dictionary, 0, output, 0, start );
+        int position = start;
+        while ( true ) {
+            int literals = reader.readVarInt( );
+            if ( literals < 0 || position + literals > output.length ) {
+                throw new StreamCorruptedException( "Compressed literals exceed the original length" );
+            }
+            reader.readFully( output, position, literals );
+            position += literals;
+
+            int match = reader.readVarInt( );
+            if ( match == 0 ) {
+                break;
+            }
+            int length = match + MIN_MATCH - 1;
+            int offset = reader.readVarInt( );
+            if ( offset <= 0 || offset > position || length < MIN_MATCH || position + length > output.length ) {
+                throw new StreamCorruptedException( "Invalid compressed match" );
+            }
+            // Byte by byte copy, a match may overlap the bytes it produces
+            for ( int i = 0; i < length; i++, position++ ) {
+                output[position] = output[position - offset];
+            }
+        }
+        if ( position != output.length ) {
+            throw new StreamCorruptedException( "Decompressed length does not match the original length" );
+        }
+        return start == 0 ? output : Arrays.copyOfRange( output, start, output.length );
+    }
+
+    private static int hash( byte[] bytes, int position ) {
+        return ( readInt( bytes, position ) * 0x9E3779B1 ) >>> ( 32 - HASH_BITS );
+    }
+
+    private static int readInt( byte[] bytes, int position ) {
+        return ( bytes[position] & 0xFF ) | ( bytes[position + 1] & 0xFF ) << 8 | ( bytes[position + 2] & 0xFF ) << 16 | bytes[position + 3] << 24;
+    }
+
+    private static byte[] concat( byte[] first, byte[] second ) {
+        byte[] bytes = Arrays.copyOf( first, first.length + second.length );
+        System.arraycopy( second, 0, bytes, first.length, second.length );
+        return bytes;
+    }
+}
@@ -0,0 +1,46 @@
+package com.kusalk.projects.session.handler.codec;
+
+import com.kusalk.projects.session.handler.session.SessionMemento;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Converts session mementos to bytes and back. External session sources use a codec to decide how mementos are
+ * stored, independently of where they are stored.
+ * <p>
+ * Encoded mementos must be self-describing, so a codec can recognise the records it wrote and hand older records to
+ * the codec which wrote them.
+ */
+public interface MementoCodec {
+
+    /**
+     * Encodes the memento
+     *
+     * @param memento memento to encode
+     * @return encoded memento
+     * @throws IOException if the memento cannot be encoded
+     */
+    byte[] encode( SessionMemento memento ) throws IOException;
+
+    /**
+     * Decodes the memento from the remaining bytes of the buffer. The buffer can be a read-only view of a mapped file,
+     * so implementations must not keep a reference to it.
+     *
+     * @param buffer encoded memento
+     * @return decoded memento
+     * @throws IOException if the bytes are not a memento encoded by this codec
+     */
+    SessionMemento decode( ByteBuffer buffer ) throws IOException;
+
+    /**
+     * Decodes the memento from the provided bytes
+     *
+     * @param bytes encoded memento
+     * @return decoded memento
+     * @throws IOException if the bytes are not a memento encoded by this codec
+     */
+    default SessionMemento decode( byte[] bytes ) throws IOException {
+        return decode( ByteBuffer.wrap( bytes ) );
+    }
+}
@@ -0,0 +1,54 @@
+package com.kusalk.projects.session.handler.codec;
+
+import com.kusalk.projects.session.handler.session.SessionMemento;
+
+import java.io.IOException;
+
+/**
+ * Describes how the {@link BinaryMementoCodec} writes and reads one memento class.
+ * <p>
+ * Every schema has a type id, which is written in place of the memento class name, and must never change or be reused
+ * for another memento class once records were written with it. When the fields of a memento change, increase the
+ * version and keep {@link #read(BinaryReader, int)} able to read the earlier versions.
+ * <p>
+ * The session timeout and the session class of the memento are handled by the codec, schemas only write the fields of
+ * their own memento class.
+ *
+ * @param <T> memento class
+ */
+public interface MementoSchema<T extends SessionMemento> {
+
+    /**
+     * @return stable id of the memento class, must be positive
+     */
+    int getTypeId( );
+
+    /**
+     * @return memento class described by this schema
+     */
+    Class<T> getMementoClass( );
+
+    /**
+     * @return version of the schema used when writing mementos
+     */
+    int getVersion( );
+
+    /**
+     * Writes the fields of the memento using the current version of the schema
+     *
+     * @param memento memento to write
+     * @param writer  target of the fields
+     * @throws IOException if the memento cannot be written
+     */
+    void write( T memento, BinaryWriter writer ) throws IOException;
+
+    /**
+     * Reads a memento written with the provided version of the schema
+     *
+     * @param reader  source of the fields
+     * @param version schema version the memento was written with
+     * @return memento
+     * @throws IOException if the memento cannot be read
+     */
+    T read( BinaryReader reader, int version ) throws IOException;
+}
@@ -0,0 +1,58 @@
+package com.kusalk.projects.session.handler.containers;
+
+/**
+ * A doubly linked queue of {@link SessionEntry} objects ordered from the least to the most recently used entry. The
+ * links live in the entries themselves so moving an entry never allocates.
+ */
+final class AccessOrderQueue {
+
+    private SessionEntry first;
+    private SessionEntry last;
+
+    SessionEntry peekFirst( ) {
+        return first;
+    }
+
+    SessionEntry peekLast( ) {
+        return last;
+    }
+
+    boolean isEmpty( ) {
+        return first == null;
+    }
+
+    void addLast( SessionEntry entry ) {
+        entry.accessPrevious = last;
+        entry.accessNext = null;
+        if ( last == null ) {
+            first = entry;
+        } else {
+            last.accessNext = entry;
+        }
+        last = entry;
+    }
+
+    void moveToBack( SessionEntry entry ) {
+        if ( entry != last ) {
+            remove( entry );
+            addLast( entry );
+        }
+    }
+
+    void remove( SessionEntry entry ) {
+        SessionEntry previous = entry.accessPrevious;
+        SessionEntry next = entry.accessNext;
+        if ( previous == null ) {
+            first = next;
+        } else {
+            previous.accessNext = next;
+        }
+        if ( next == null ) {
+            last = previous;
+        } else {
+            next.accessPrevious = previous;
+        }
+        entry.accessPrevious = null;
+        entry.accessNext = null;
+    }
+}
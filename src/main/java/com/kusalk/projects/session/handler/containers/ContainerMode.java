@@ -0,0 +1,38 @@
+package com.kusalk.projects.session.handler.containers;
+
+/**
+ * Concurrency modes supported by the {@link InternalSessionContainer}. The mode is selected once when the container
+ * is created using the {@value InternalSessionContainer#CONTAINER_MODE_PROPERTY} system property, or the builder of a
+ * named container.
+ */
+public enum ContainerMode {
+
+    /**
+     * Every create and remove takes the fair write lock of the partition and every load takes the shared read lock.
+     * This is the original behaviour of the container and is kept for comparison.
+     */
+    LOCKED,
+
+    /**
+     * Creates, loads and removes rely only on the atomic per-key operations of the backing map, so operations on
+     * different sessions never wait for each other.
+     */
+    LOCK_FREE;
+
+    /**
+     * Resolves the container mode from the given value, falling back to {@link #LOCK_FREE} for unknown values
+     *
+     * @param value mode name
+     * @return {@link ContainerMode} container mode
+     */
+    public static ContainerMode fromValue( String value ) {
+        if ( value != null ) {
+            for ( ContainerMode mode : values( ) ) {
+                if ( mode.name( ).equalsIgnoreCase( value.trim( ) ) ) {
+                    return mode;
+                }
+            }
+        }
+        return LOCK_FREE;
+    }
+}
@@ -0,0 +1,548 @@
+package com.kusalk.projects.session.handler.containers;
+
+import com.kusalk.projects.session.handler.codec.MementoCodec;
+import com.kusalk.projects.session.handler.eviction.ReadBuffer;
+import com.kusalk.projects.session.handler.expiry.TimerWheel;
+import com.kusalk.projects.session.handler.id.SessionId;
+import com.kusalk.projects.session.handler.metrics.SessionCounter;
+import com.kusalk.projects.session.handler.metrics.SessionMetrics;
+import com.kusalk.projects.session.handler.metrics.SessionTimer;
+import com.kusalk.projects.session.handler.session.Session;
+import com.kusalk.projects.session.handler.session.SessionMemento;
+import com.kusalk.projects.session.handler.session.SessionTypeRegistry;
+import com.kusalk.projects.session.handler.util.SessionCode;
+import com.kusalk.projects.session.handler.util.SessionResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A partition of the {@link InternalSessionContainer}. Every partition holds the sessions whose id hashes to it in its
+ * own map, with its own expiry wheel, lock, eviction policy, off-heap tier and remover thread, so partitions never
+ * contend with each other.
+ */
+final class ContainerPartition {
+
+    private static final Logger LOGGER = Logger.getLogger( ContainerPartition.class.getName( ) );
+
+    private final InternalSessionContainer container;
+    private final String name;
+    private final ConcurrentHashMap<SessionId, SessionEntry> sessionContainer = new ConcurrentHashMap<>( );
+    /*
+     * Entries which were created or removed since the last tick of the remover thread. The expiry wheel is confined to
+     * the remover thread, so other threads hand their schedule and cancel requests over through this queue.
+     */
+    private final ConcurrentLinkedQueue<SessionEntry> expiryBuffer = new ConcurrentLinkedQueue<>( );
+    private final TimerWheel<SessionEntry> expiryWheel;
+    private final SessionTypeRegistry sessionTypeRegistry = SessionTypeRegistry.getInstance( );
+
+    private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock( true );
+    private final ReentrantReadWriteLock.WriteLock writeLock = readWriteLock.writeLock( );
+    private final ReentrantReadWriteLock.ReadLock readLock = readWriteLock.readLock( );
+
+    private final ContainerMode containerMode;
+
+    /*
+     * Eviction state, only used when the partition is bounded. Reads and writes are recorded in buffers and replayed
+     * against the policy by the thread holding the eviction lock.
+     */
+    private final WindowTinyLfuPolicy evictionPolicy;
+    private final ReentrantLock evictionLock = new ReentrantLock( );
+    private final ConcurrentLinkedQueue<SessionEntry> policyWriteBuffer = new ConcurrentLinkedQueue<>( );
+    private final ReadBuffer<SessionEntry> policyReadBuffer;
+
+    /*
+     * Off-heap tier, only used when enabled. Idle sessions are looked for by the remover thread every quarter of the
+     * idle time.
+     */
+    private final OffHeapTier offHeapTier;
+    private long nextOffloadMillis;
+    private volatile boolean closed;
+
+    /**
+     * @param container            container the partition belongs to
+     * @param name                 name of the remover thread
+     * @param containerMode        concurrency mode
+     * @param maximumWeight        maximum weight of the partition, zero for an unbounded partition
+     * @param tickMillis           tick of the expiry wheel
+     * @param offHeapCapacityBytes off-heap capacity of the partition, zero to keep every session on the heap
+     * @param offHeapSlabBytes     size of a slab of the off-heap tier
+     * @param offHeapIdleMillis    time since the last load after which a session is moved off-heap
+     */
+    ContainerPartition( InternalSessionContainer container, String name, ContainerMode containerMode, long maximumWeight, long tickMillis,
+                        long offHeapCapacityBytes, int offHeapSlabBytes, long offHeapIdleMillis ) {
+        this.container = container;
+        this.name = name;
+        this.containerMode = containerMode;
+        this.evictionPolicy = maximumWeight > 0 ? new WindowTinyLfuPolicy( maximumWeight ) : null;
+        this.policyReadBuffer = evictionPolicy != null ? new ReadBuffer<>( ) : null;
+        this.offHeapTier = offHeapCapacityBytes > 0
+                ? new OffHeapTier( offHeapCapacityBytes, offHeapSlabBytes, offHeapIdleMillis, this::evictOffHeapEntry )
+                : null;
+        this.expiryWheel = new TimerWheel<>( tickMillis, System.currentTimeMillis( ) );
+    }
+
+    boolean isBounded( ) {
+        return evictionPolicy != null;
+    }
+
+    boolean isOffHeapEnabled( ) {
+        return offHeapTier != null;
+    }
+
+    void setOffHeapMementoCodec( MementoCodec mementoCodec ) {
+        if ( offHeapTier != null ) {
+            offHeapTier.setMementoCodec( mementoCodec );
+        }
+    }
+
+    long getOffHeapUsedBytes( ) {
+        return offHeapTier != null ? offHeapTier.getUsedBytes( ) : 0;
+    }
+
+    int getSessionCount( ) {
+        return sessionContainer.size( );
+    }
+
+    long getEstimatedMemoryBytes( ) {
+        long bytes = 0;
+        for ( SessionEntry entry : sessionContainer.values( ) ) {
+            Session session = entry.getSession( );
+            bytes += InternalSessionContainer.ESTIMATED_SESSION_OVERHEAD_BYTES + ( session != null ? session.getWeight( ) - 1 : 0 );
+        }
+        return bytes;
+    }
+
+    boolean containsSession( SessionId sessionId ) {
+        return sessionContainer.containsKey( sessionId );
+    }
+
+    /**
+     * Visits the sessions of the partition, decoding a copy of the sessions held off-heap
+     */
+    void forEachSession( Consumer<Session> action ) {
+        for ( SessionEntry entry : sessionContainer.values( ) ) {
+            Session session = entry.getSession( );
+            if ( session == null && offHeapTier != null ) {
+                session = offHeapTier.copy( entry );
+            }
+            if ( session != null && !entry.isRemoved( ) ) {
+                action.accept( session );
+            }
+        }
+    }
+
+    Session loadSession( SessionId sessionId ) {
+        boolean locked = containerMode == ContainerMode.LOCKED;
+        try {
+            if ( locked ) {
+                SessionMetrics.lock( readLock, SessionTimer.CONTAINER_LOCK_WAIT );
+            }
+            SessionEntry entry = sessionContainer.get( sessionId );
+            Session session = entry == null ? null : offHeapTier == null ? entry.getSession( ) : activate( entry );
+            if ( session != null ) {
+                // Sliding expiration only moves the timestamp, the remover thread reschedules the entry lazily when it fires
+                session.setLastLoadedTimestamp( System.currentTimeMillis( ) );
+                if ( evictionPolicy != null && policyReadBuffer.offer( entry ) ) {
+                    performMaintenance( );
+                }
+                SessionMetrics.increment( SessionCounter.CONTAINER_HITS );
+                SessionChangeListener changeListener = container.getChangeListener( );
+                if ( changeListener != null ) {
+                    changeListener.onLoaded( session );
+                }
+                return session;
+            }
+            SessionMetrics.increment( SessionCounter.CONTAINER_MISSES );
+            return null;
+        } catch ( Exception e ) {
+            LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred while loading session from internal container" );
+        } finally {
+            if ( locked ) {
+                readLock.unlock( );
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Maps the new session to the generated id unless the id is already taken. The session id is only assigned when
+     * the id is free, so a collision leaves the session untouched.
+     *
+     * @return {@code true} if the session was added
+     */
+    boolean addNewSession( SessionId sessionId, Session session ) {
+        return addSession( sessionId, session, SessionCounter.CREATED, true );
+    }
+
+    /**
+     * Maps a session which left the partition back to its id, without notifying the change listener as the session
+     * is not new
+     *
+     * @return {@code true} if the session was added
+     */
+    boolean reactivateSession( SessionId sessionId, Session session ) {
+        return addSession( sessionId, session, SessionCounter.RESTORED, false );
+    }
+
+    private boolean addSession( SessionId sessionId, Session session, SessionCounter counter, boolean notifyCreated ) {
+        boolean locked = containerMode == ContainerMode.LOCKED;
+        try {
+            if ( locked ) {
+                SessionMetrics.lock( writeLock, SessionTimer.CONTAINER_LOCK_WAIT );
+            }
+            SessionEntry sessionEntry = new SessionEntry( session );
+            SessionEntry storedEntry = sessionContainer.computeIfAbsent( sessionId, id -> {
+                session.setSessionId( id );
+                return sessionEntry;
+            } );
+            if ( storedEntry != sessionEntry ) {
+                return false;
+            }
+            afterInsert( sessionEntry );
+            SessionMetrics.increment( counter );
+        } finally {
+            if ( locked ) {
+                writeLock.unlock( );
+            }
+        }
+        SessionChangeListener changeListener = container.getChangeListener( );
+        if ( notifyCreated && changeListener != null ) {
+            changeListener.onCreated( session );
+        }
+        if ( evictionPolicy != null ) {
+            performMaintenance( );
+        }
+        return true;
+    }
+
+    SessionResponse<Session> restoreSession( SessionId sessionId, SessionMemento memento ) {
+        SessionResponse<Session> sessionResponse = addRestoredSession( sessionId, memento );
+        if ( evictionPolicy != null && sessionResponse.isSuccess( ) ) {
+            performMaintenance( );
+        }
+        return sessionResponse;
+    }
+
+    private SessionResponse<Session> addRestoredSession( SessionId sessionId, SessionMemento memento ) {
+        boolean locked = containerMode == ContainerMode.LOCKED;
+        try {
+            if ( locked ) {
+                SessionMetrics.lock( writeLock, SessionTimer.CONTAINER_LOCK_WAIT );
+            }
+
+            Session sessionObject = sessionTypeRegistry.resolve( memento.getSessionClass( ) ).newSession( );
+            sessionObject.setSessionId( sessionId );
+            sessionObject.setTimeoutInSeconds( memento.getSessionTimeoutInSeconds( ) );
+            sessionObject.restore( memento );
+            sessionObject.markPersisted( sessionObject.getVersion( ) );
+            sessionObject.setLastLoadedTimestamp( System.currentTimeMillis( ) );
+
+            SessionEntry sessionEntry = new SessionEntry( sessionObject );
+            SessionEntry storedEntry = sessionContainer.putIfAbsent( sessionId, sessionEntry );
+            if ( storedEntry != null ) {
+                Session storedSession = offHeapTier == null ? storedEntry.getSession( ) : activate( storedEntry );
+                if ( storedSession == null ) {
+                    return new SessionResponse<>( "Session removed from local container while restoring", SessionCode.ERROR, null );
+                }
+                storedSession.setLastLoadedTimestamp( System.currentTimeMillis( ) );
+                return new SessionResponse<>( "Session already present in local container", SessionCode.SUCCESS, storedSession );
+            }
+            afterInsert( sessionEntry );
+            SessionMetrics.increment( SessionCounter.RESTORED );
+            return new SessionResponse<>( "Session restored and added to local container", SessionCode.SUCCESS, sessionObject );
+
+        } catch ( ClassNotFoundException | RuntimeException e ) {
+            LOGGER.log( Level.SEVERE, e, ( ) -> "Error while restoring session " + sessionId );
+            return new SessionResponse<>( "Error restoring session : " + e.getMessage( ), SessionCode.ERROR, null );
+        } finally {
+            if ( locked ) {
+                writeLock.unlock( );
+            }
+        }
+    }
+
+    SessionResponse<Boolean> removeSession( SessionId sessionId ) {
+        boolean locked = containerMode == ContainerMode.LOCKED;
+        try {
+            if ( locked ) {
+                SessionMetrics.lock( writeLock, SessionTimer.CONTAINER_LOCK_WAIT );
+            }
+            SessionEntry removedEntry = sessionContainer.remove( sessionId );
+            if ( removedEntry != null ) {
+                LOGGER.log( Level.FINE, "Session removed from local container. SessionID : {0}", sessionId );
+                SessionMetrics.increment( SessionCounter.REMOVED );
+                afterRemoval( removedEntry );
+                notifyRemoval( sessionId );
+                return new SessionResponse<>( "Session removed for id : " + sessionId, SessionCode.SUCCESS, true );
+            }
+        } catch ( Exception e ) {
+            LOGGER.log( Level.SEVERE, e, ( ) -> "Error while removing th session from local container" );
+        } finally {
+            if ( locked ) {
+                writeLock.unlock( );
+            }
+        }
+        return new SessionResponse<>( "Session failed to removed for id : " + sessionId, SessionCode.ERROR, false );
+    }
+
+    private void afterInsert( SessionEntry entry ) {
+        expiryBuffer.add( entry );
+        if ( evictionPolicy != null ) {
+            policyWriteBuffer.add( entry );
+        }
+    }
+
+    private void afterRemoval( SessionEntry entry ) {
+        entry.markRemoved( );
+        if ( offHeapTier != null ) {
+            offHeapTier.release( entry, false );
+        }
+        expiryBuffer.add( entry );
+        if ( evictionPolicy != null ) {
+            policyWriteBuffer.add( entry );
+        }
+    }
+
+    /**
+     * Replays the buffered reads and writes against the eviction policy and evicts sessions until the partition fits
+     * within its maximum weight. Only one thread performs maintenance at a time. Threads which find the eviction lock
+     * taken leave their events in the buffers, and the events are replayed by the current holder or at the latest on
+     * the next tick of the remover thread.
+     */
+    private void performMaintenance( ) {
+        do {
+            if ( !evictionLock.tryLock( ) ) {
+                return;
+            }
+            List<SessionEntry> victims = new ArrayList<>( );
+            try {
+                policyReadBuffer.drainTo( evictionPolicy::access );
+                SessionEntry entry;
+                while ( ( entry = policyWriteBuffer.poll( ) ) != null ) {
+                    if ( entry.isRemoved( ) ) {
+                        evictionPolicy.remove( entry );
+                    } else {
+                        evictionPolicy.add( entry );
+                    }
+                }
+                evictionPolicy.evict( victims );
+                // Victims removed concurrently by another thread are left to that thread
+                victims.removeIf( victim -> !evict( victim ) );
+                victims.forEach( expiryBuffer::add );
+            } finally {
+                evictionLock.unlock( );
+            }
+            victims.forEach( victim -> notifyRemoval( victim.getSessionId( ) ) );
+        } while ( !policyWriteBuffer.isEmpty( ) );
+    }
+
+    /**
+     * Removes the entry if it is still mapped, handing its session to the eviction listener atomically with the
+     * removal, so a concurrent load finds the session either in the partition or with the listener
+     *
+     * @return {@code false} if the entry was already removed
+     */
+    private boolean evict( SessionEntry victim ) {
+        SessionEvictionListener listener = container.getEvictionListener( );
+        boolean[] evicted = new boolean[1];
+        sessionContainer.computeIfPresent( victim.getSessionId( ), ( id, entry ) -> {
+            if ( entry != victim ) {
+                return entry;
+            }
+            evicted[0] = true;
+            if ( listener != null ) {
+                handOverEvictedSession( victim, listener );
+            }
+            return null;
+        } );
+        if ( !evicted[0] ) {
+            return false;
+        }
+        LOGGER.log( Level.FINE, "Session evicted from local container. SessionID : {0}", victim.getSessionId( ) );
+        SessionMetrics.increment( SessionCounter.EVICTED );
+        victim.markRemoved( );
+        if ( offHeapTier != null ) {
+            offHeapTier.release( victim, false );
+        }
+        return true;
+    }
+
+    private void handOverEvictedSession( SessionEntry entry, SessionEvictionListener listener ) {
+        try {
+            Session session = entry.getSession( );
+            if ( session == null && offHeapTier != null ) {
+                session = offHeapTier.copy( entry );
+            }
+            if ( session != null ) {
+                listener.onEviction( session );
+            }
+        } catch ( RuntimeException e ) {
+            LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred while handing over evicted session " + entry.getSessionId( ) );
+        }
+    }
+
+    private void notifyRemoval( SessionId sessionId ) {
+        SessionChangeListener changeListener = container.getChangeListener( );
+        if ( changeListener != null ) {
+            changeListener.onRemoved( sessionId );
+        }
+    }
+
+    /**
+     * Removes the session only if it is still mapped and still expired. The expiry check runs atomically with the
+     * removal so that a load touching the session concurrently is never lost.
+     */
+    private boolean removeExpiredSession( SessionEntry expiredEntry, long now ) {
+        boolean[] removed = new boolean[1];
+        sessionContainer.computeIfPresent( expiredEntry.getSessionId( ), ( id, entry ) -> {
+            if ( entry == expiredEntry && now > entry.getExpiresAtMillis( ) ) {
+                removed[0] = true;
+                return null;
+            }
+            return entry;
+        } );
+        if ( removed[0] ) {
+            afterRemoval( expiredEntry );
+            notifyRemoval( expiredEntry.getSessionId( ) );
+        }
+        return removed[0];
+    }
+
+    /**
+     * Applies the schedule and cancel requests handed over by other threads to the expiry wheel
+     */
+    private void drainExpiryBuffer( ) {
+        SessionEntry entry;
+        while ( ( entry = expiryBuffer.poll( ) ) != null ) {
+            if ( entry.isRemoved( ) ) {
+                expiryWheel.cancel( entry );
+            } else if ( !entry.isScheduled( ) ) {
+                expiryWheel.schedule( entry, entry.getExpiresAtMillis( ) );
+            }
+        }
+    }
+
+    /**
+     * Called by the expiry wheel when the deadline of an entry has passed. Sessions loaded since they were scheduled
+     * are rescheduled to their new deadline instead of being removed.
+     */
+    private void onExpiryDeadline( SessionEntry entry, long now ) {
+        if ( entry.isRemoved( ) ) {
+            return;
+        }
+        if ( removeExpiredSession( entry, now ) ) {
+            LOGGER.log( Level.FINE, "Session expired for session : {0}", entry.getSessionId( ) );
+            SessionMetrics.sessionExpired( entry.getSessionId( ).toString( ), entry.getTimeoutInSeconds( ) );
+        } else if ( !entry.isRemoved( ) ) {
+            expiryWheel.schedule( entry, entry.getExpiresAtMillis( ) );
+        }
+    }
+
+    /**
+     * Returns the session of the entry, rehydrating it if it is held off-heap. Loaders set the load timestamp before
+     * checking whether the remover thread is moving the session off-heap, so a session handed out here is never
+     * replaced by a rehydrated copy.
+     *
+     * @return session or {@code null} if the entry was removed concurrently
+     */
+    private Session activate( SessionEntry entry ) {
+        Session session = entry.getSession( );
+        if ( session != null ) {
+            session.setLastLoadedTimestamp( System.currentTimeMillis( ) );
+            if ( !entry.isOffloading( ) ) {
+                return session;
+            }
+            // Wait for the remover thread to either move the session off-heap or give up
+            synchronized ( entry ) {
+                session = entry.getSession( );
+            }
+            if ( session != null ) {
+                return session;
+            }
+        }
+        return offHeapTier.rehydrate( entry );
+    }
+
+    /**
+     * Moves the sessions which were not loaded for the idle time off-heap
+     */
+    private void offloadIdleSessions( long now ) {
+        for ( SessionEntry entry : sessionContainer.values( ) ) {
+            if ( entry.getSession( ) != null ) {
+                offHeapTier.offload( entry, now );
+            }
+        }
+    }
+
+    /**
+     * Removes a session held off-heap from the partition to make room for another one
+     *
+     * @return {@code false} if the session was already removed
+     */
+    private boolean evictOffHeapEntry( SessionEntry entry ) {
+        if ( !evict( entry ) ) {
+            return false;
+        }
+        afterRemoval( entry );
+        notifyRemoval( entry.getSessionId( ) );
+        return true;
+    }
+
+    /**
+     * Starts the remover thread of the partition, which advances the expiry wheel once per tick. Only the sessions
+     * whose deadline falls within the elapsed ticks are visited, and timed out sessions are removed from the memory.
+     */
+    void start( ) {
+        Thread sessionRemover = new Thread( ( ) -> {
+            while ( !closed ) {
+                if ( evictionPolicy != null ) {
+                    performMaintenance( );
+                }
+                drainExpiryBuffer( );
+                long now = System.currentTimeMillis( );
+                expiryWheel.advance( now, entry -> onExpiryDeadline( entry, now ) );
+                if ( offHeapTier != null && now >= nextOffloadMillis ) {
+                    offloadIdleSessions( now );
+                    nextOffloadMillis = now + Math.max( expiryWheel.getTickMillis( ), offHeapTier.getIdleMillis( ) / 4 );
+                }
+                synchronized ( this ) {
+                    try {
+                        if ( !closed ) {
+                            wait( expiryWheel.getTickMillis( ) );
+                        }
+                    } catch ( InterruptedException e ) {
+                        LOGGER.log( Level.SEVERE, e.getMessage( ), e );
+                    }
+                }
+            }
+        } );
+        sessionRemover.setDaemon( true );
+        sessionRemover.setName( name );
+        sessionRemover.setUncaughtExceptionHandler( ( t, e ) -> LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred within the session remover thread" ) );
+        sessionRemover.start( );
+    }
+
+    /**
+     * Stops the remover thread and drops every session of the partition without notifying the eviction listener
+     */
+    void close( ) {
+        synchronized ( this ) {
+            closed = true;
+            notifyAll( );
+        }
+        for ( SessionId sessionId : sessionContainer.keySet( ) ) {
+            SessionEntry removedEntry = sessionContainer.remove( sessionId );
+            if ( removedEntry != null ) {
+                afterRemoval( removedEntry );
+            }
+        }
+    }
+}
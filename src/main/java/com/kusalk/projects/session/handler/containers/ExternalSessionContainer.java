@@ -1,16 +1,47 @@
 package com.kusalk.projects.session.handler.containers;
 
+import com.kusalk.projects.session.handler.external.index.NegativeCache;
+import com.kusalk.projects.session.handler.external.index.ScalableBloomFilter;
 import com.kusalk.projects.session.handler.external.sources.ExternalSessionSource;
+import com.kusalk.projects.session.handler.external.sources.StoredSession;
+import com.kusalk.projects.session.handler.metrics.ExternalLoadEvent;
+import com.kusalk.projects.session.handler.metrics.ExternalSaveEvent;
+import com.kusalk.projects.session.handler.metrics.SessionCounter;
+import com.kusalk.projects.session.handler.metrics.SessionMetrics;
+import com.kusalk.projects.session.handler.session.DeltaMemento;
 import com.kusalk.projects.session.handler.session.SessionMemento;
 import com.kusalk.projects.session.handler.util.SessionCode;
+import com.kusalk.projects.session.handler.util.SessionExecutors;
 import com.kusalk.projects.session.handler.util.SessionResponse;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * This class handles the basic implementations to deal with the {@link ExternalSessionSource} external source
  * <p>
+ * Loads of session ids which are not in the external source are answered in memory where possible:
+ * <ul>
+ * <li>If the source can list its session ids, a {@link ScalableBloomFilter} of the stored ids is built when the
+ * container is created and updated on every save. Ids which are definitely not in the filter are not read from the
+ * source. Deleted ids stay in the filter, so the filter is rebuilt in the background once the deletes reach half of
+ * the ids it holds.</li>
+ * <li>Ids which were read and not found, or deleted, are kept in a bounded {@link NegativeCache} for a short time.</li>
+ * </ul>
+ * The filter and the cache are sized with the {@value #FILTER_EXPECTED_IDS_PROPERTY},
+ * {@value #FILTER_FALSE_POSITIVE_PROBABILITY_PROPERTY}, {@value #NEGATIVE_CACHE_SIZE_PROPERTY} and
+ * {@value #NEGATIVE_CACHE_TTL_MILLIS_PROPERTY} system properties. Setting the filter expected ids to zero disables the
+ * filter and setting the negative cache size to zero disables the cache. The filter only learns about ids saved
+ * through this container, so it should be disabled when other processes write to the same external source.
+ * <p>
  * Created By : Kusal Kankanamge
  * Created On : 5/29/2021
  */
@@ -18,10 +49,45 @@ public class ExternalSessionContainer {
 
     private static final Logger LOGGER = Logger.getLogger( ExternalSessionContainer.class.getName( ) );
 
+    public static final String FILTER_EXPECTED_IDS_PROPERTY = "session.handler.external.filter.expected.ids";
+    public static final String FILTER_FALSE_POSITIVE_PROBABILITY_PROPERTY = "session.handler.external.filter.fpp";
+    public static final String NEGATIVE_CACHE_SIZE_PROPERTY = "session.handler.external.negative.cache.size";
+    public static final String NEGATIVE_CACHE_TTL_MILLIS_PROPERTY = "session.handler.external.negative.cache.ttl.millis";
+
+    private static final long DEFAULT_FILTER_EXPECTED_IDS = 100000;
+    private static final double DEFAULT_FILTER_FALSE_POSITIVE_PROBABILITY = 0.01;
+    private static final int DEFAULT_NEGATIVE_CACHE_SIZE = 10000;
+    private static final long DEFAULT_NEGATIVE_CACHE_TTL_MILLIS = 30000;
+    private static final int STORE_STAMP_STRIPES = 1024;
+
     private final ExternalSessionSource externalSessionSource;
+    private final long filterExpectedIds;
+    private final double filterFalsePositiveProbability;
+    private final NegativeCache negativeCache;
+    /*
+     * Stamps moved by every save, striped by session id. A miss is only kept in the negative cache if no save of the
+     * id started since the read, as the save may have cleared the cache before the miss was put.
+     */
+    private final AtomicLongArray storeStamps = new AtomicLongArray( STORE_STAMP_STRIPES );
+    private final AtomicLong deletesSinceFilterBuild = new AtomicLong( );
+    private final AtomicBoolean filterRebuilding = new AtomicBoolean( );
+    private volatile ScalableBloomFilter existenceFilter;
+    private volatile ScalableBloomFilter rebuildingFilter;
 
     public ExternalSessionContainer( ExternalSessionSource externalSessionSource ) {
         this.externalSessionSource = externalSessionSource;
+        this.filterExpectedIds = Long.getLong( FILTER_EXPECTED_IDS_PROPERTY, DEFAULT_FILTER_EXPECTED_IDS );
+        String falsePositiveProbability = System.getProperty( FILTER_FALSE_POSITIVE_PROBABILITY_PROPERTY );
+        this.filterFalsePositiveProbability = falsePositiveProbability == null
+                ? DEFAULT_FILTER_FALSE_POSITIVE_PROBABILITY
+                : Double.parseDouble( falsePositiveProbability );
+        int negativeCacheSize = Integer.getInteger( NEGATIVE_CACHE_SIZE_PROPERTY, DEFAULT_NEGATIVE_CACHE_SIZE );
+        this.negativeCache = negativeCacheSize > 0
+                ? new NegativeCache( negativeCacheSize, Long.getLong( NEGATIVE_CACHE_TTL_MILLIS_PROPERTY, DEFAULT_NEGATIVE_CACHE_TTL_MILLIS ) )
+                : null;
+        if ( filterExpectedIds > 0 ) {
+            buildExistenceFilter( );
+        }
     }
 
     /**
@@ -31,11 +97,20 @@ public class ExternalSessionContainer {
      * @return {@link SessionResponse<SessionMemento>} response object
      */
     public SessionResponse<SessionMemento> loadSession( String sessionId ) {
+        if ( isKnownMissing( sessionId ) ) {
+            LOGGER.log( Level.FINE, "Session is not in the external session source. SessionID : {0}", sessionId );
+            SessionMetrics.increment( SessionCounter.EXTERNAL_LOADS_FILTERED );
+            return new SessionResponse<>( "Error loading session from external source : " + sessionId, SessionCode.ERROR, null );
+        }
         LOGGER.log( Level.FINE, "Loading session from external session source. SessionID : {0}", sessionId );
+        long storeStamp = storeStamp( sessionId );
+        ExternalLoadEvent loadEvent = SessionMetrics.startExternalLoad( );
         SessionResponse<SessionMemento> mementoSessionResponse = externalSessionSource.readSessionMemento( sessionId );
+        SessionMetrics.endExternalLoad( loadEvent, sessionId, mementoSessionResponse.isSuccess( ) );
         if ( mementoSessionResponse.isSuccess( ) ) {
             return mementoSessionResponse;
         }
+        cacheMissing( sessionId, storeStamp );
         return new SessionResponse<>( "Error loading session from external source : " + sessionId, SessionCode.ERROR, null );
     }
 
@@ -48,7 +123,240 @@ public class ExternalSessionContainer {
      */
     public SessionResponse<Boolean> saveSession( String sessionId, SessionMemento memento ) {
         LOGGER.log( Level.FINE, "Saving session to external session source. SessionID : {0}", sessionId );
-        return externalSessionSource.writeSessionMemento( sessionId, memento );
+        // The id is recorded before the write so a concurrent load does not skip the source, and again after it so a
+        // filter rebuild listing the source while the write was running does not miss it
+        recordStored( sessionId );
+        ExternalSaveEvent saveEvent = SessionMetrics.startExternalSave( );
+        SessionResponse<Boolean> writeResponse = externalSessionSource.writeSessionMemento( sessionId, memento );
+        SessionMetrics.endExternalSave( saveEvent, sessionId, 1, writeResponse.isSuccess( ) ? 0 : 1, false );
+        recordStored( sessionId );
+        return writeResponse;
+    }
+
+    /**
+     * Appends the delta memento to the memento stored in the external source
+     *
+     * @param sessionId session id
+     * @param delta     delta memento
+     * @return {@link SessionResponse<Boolean>} response object with {@code true} if success, or an error response if
+     * the external source does not support deltas
+     */
+    public SessionResponse<Boolean> saveSessionDelta( String sessionId, DeltaMemento delta ) {
+        LOGGER.log( Level.FINE, "Appending session delta to external session source. SessionID : {0}", sessionId );
+        recordStored( sessionId );
+        ExternalSaveEvent saveEvent = SessionMetrics.startExternalSave( );
+        SessionResponse<Boolean> writeResponse = externalSessionSource.appendSessionDelta( sessionId, delta );
+        SessionMetrics.endExternalSave( saveEvent, sessionId, 1, writeResponse.isSuccess( ) ? 0 : 1, true );
+        recordStored( sessionId );
+        return writeResponse;
+    }
+
+    /**
+     * Extends the expiry of the memento stored in the external source as if it was written now
+     *
+     * @param sessionId        session id
+     * @param timeoutInSeconds timeout of the session
+     * @return {@link SessionResponse<Boolean>} response object with {@code true} if the stored memento was refreshed,
+     * {@code false} if it has to be written again
+     */
+    public SessionResponse<Boolean> touchSession( String sessionId, long timeoutInSeconds ) {
+        LOGGER.log( Level.FINE, "Refreshing session expiry in external session source. SessionID : {0}", sessionId );
+        return externalSessionSource.touchSessionMemento( sessionId, timeoutInSeconds );
+    }
+
+    /**
+     * Loads the sessions of the provided session ids from the external source in one batch
+     *
+     * @param sessionIds session ids
+     * @return {@link SessionResponse} response object with the mementos found, keyed by session id
+     */
+    public SessionResponse<Map<String, SessionMemento>> loadSessions( Collection<String> sessionIds ) {
+        List<String> candidateIds = new ArrayList<>( sessionIds.size( ) );
+        for ( String sessionId : sessionIds ) {
+            if ( !isKnownMissing( sessionId ) ) {
+                candidateIds.add( sessionId );
+            }
+        }
+        LOGGER.log( Level.FINE, "Loading {0} sessions from external session source", candidateIds.size( ) );
+        long[] storeStamps = new long[candidateIds.size( )];
+        for ( int i = 0; i < storeStamps.length; i++ ) {
+            storeStamps[i] = storeStamp( candidateIds.get( i ) );
+        }
+        SessionResponse<Map<String, SessionMemento>> mementosResponse = externalSessionSource.readSessionMementos( candidateIds );
+        if ( SessionMetrics.ENABLED ) {
+            int found = mementosResponse.getData( ) != null ? mementosResponse.getData( ).size( ) : 0;
+            SessionMetrics.add( SessionCounter.EXTERNAL_LOADS_FILTERED, sessionIds.size( ) - candidateIds.size( ) );
+            SessionMetrics.add( SessionCounter.EXTERNAL_LOADS, candidateIds.size( ) );
+            SessionMetrics.add( SessionCounter.EXTERNAL_LOAD_MISSES, candidateIds.size( ) - found );
+        }
+        if ( negativeCache != null && mementosResponse.getData( ) != null ) {
+            for ( int i = 0; i < storeStamps.length; i++ ) {
+                String sessionId = candidateIds.get( i );
+                if ( !mementosResponse.getData( ).containsKey( sessionId ) ) {
+                    cacheMissing( sessionId, storeStamps[i] );
+                }
+            }
+        }
+        return mementosResponse;
+    }
+
+    /**
+     * Writes the memento objects to the external source in one batch
+     *
+     * @param mementos memento objects keyed by session id
+     * @return {@link SessionResponse} response object with the outcome of every write keyed by session id
+     */
+    public SessionResponse<Map<String, Boolean>> saveSessions( Map<String, SessionMemento> mementos ) {
+        LOGGER.log( Level.FINE, "Saving {0} sessions to external session source", mementos.size( ) );
+        mementos.keySet( ).forEach( this::recordStored );
+        ExternalSaveEvent saveEvent = SessionMetrics.startExternalSave( );
+        SessionResponse<Map<String, Boolean>> writeResponse = externalSessionSource.writeSessionMementos( mementos );
+        if ( saveEvent != null ) {
+            SessionMetrics.endExternalSave( saveEvent, null, mementos.size( ), failedWrites( writeResponse, mementos.size( ) ), false );
+        }
+        mementos.keySet( ).forEach( this::recordStored );
+        return writeResponse;
+    }
+
+    /**
+     * Makes every write accepted by the external source so far durable
+     *
+     * @return {@link SessionResponse<Boolean>} response object with {@code true} if success
+     */
+    public SessionResponse<Boolean> flush( ) {
+        LOGGER.log( Level.FINE, "Flushing external session source" );
+        return externalSessionSource.flush( );
+    }
+
+    /**
+     * Deletes the session memento from the external source
+     *
+     * @param sessionId session id
+     * @return {@link SessionResponse<Boolean>} response object with {@code true} if a memento was deleted
+     */
+    public SessionResponse<Boolean> deleteSession( String sessionId ) {
+        LOGGER.log( Level.FINE, "Deleting session from external session source. SessionID : {0}", sessionId );
+        long storeStamp = storeStamp( sessionId );
+        SessionResponse<Boolean> deleteResponse = externalSessionSource.deleteSessionMemento( sessionId );
+        if ( deleteResponse.isSuccess( ) ) {
+            cacheMissing( sessionId, storeStamp );
+            ScalableBloomFilter filter = existenceFilter;
+            if ( filter != null && deletesSinceFilterBuild.incrementAndGet( ) > filter.getApproximateCount( ) / 2 ) {
+                rebuildExistenceFilterAsync( );
+            }
+        }
+        return deleteResponse;
+    }
+
+    /**
+     * Lists the sessions stored in the external source
+     *
+     * @param action action receiving the stored sessions, which may be called from several threads at once
+     * @return {@link SessionResponse<Boolean>} response object with {@code true} if every session was listed
+     */
+    public SessionResponse<Boolean> forEachStoredSession( Consumer<StoredSession> action ) {
+        LOGGER.log( Level.FINE, "Listing the sessions of the external session source" );
+        return externalSessionSource.forEachStoredSession( action );
+    }
+
+    /**
+     * Rebuilds the filter of stored session ids from the external source in the background, dropping deleted ids
+     */
+    public void rebuildExistenceFilterAsync( ) {
+        if ( filterExpectedIds <= 0 || !filterRebuilding.compareAndSet( false, true ) ) {
+            return;
+        }
+        SessionExecutors.defaultIoExecutor( ).execute( ( ) -> {
+            try {
+                buildExistenceFilter( );
+            } finally {
+                filterRebuilding.set( false );
+            }
+        } );
+    }
+
+    private static int failedWrites( SessionResponse<Map<String, Boolean>> writeResponse, int sessionCount ) {
+        if ( writeResponse.getData( ) == null ) {
+            return sessionCount;
+        }
+        int written = 0;
+        for ( Boolean success : writeResponse.getData( ).values( ) ) {
+            if ( Boolean.TRUE.equals( success ) ) {
+                written++;
+            }
+        }
+        return sessionCount - written;
+    }
+
+    private boolean isKnownMissing( String sessionId ) {
+        if ( negativeCache != null && negativeCache.contains( sessionId ) ) {
+            return true;
+        }
+        ScalableBloomFilter filter = existenceFilter;
+        return filter != null && !filter.mightContain( sessionId );
     }
 
+    private void recordStored( String sessionId ) {
+        // The filter being rebuilt is read first: once it is cleared, the rebuilt filter is already installed
+        ScalableBloomFilter pendingFilter = rebuildingFilter;
+        if ( pendingFilter != null ) {
+            pendingFilter.add( sessionId );
+        }
+        ScalableBloomFilter filter = existenceFilter;
+        if ( filter != null ) {
+            filter.add( sessionId );
+        }
+        if ( negativeCache != null ) {
+            // The stamp moves before the cache is cleared, so a miss put after the clear sees the new stamp
+            storeStamps.incrementAndGet( storeStampIndex( sessionId ) );
+            negativeCache.remove( sessionId );
+        }
+    }
+
+    /**
+     * Puts a session id read or deleted as missing into the negative cache, unless a save of the id started after the
+     * stamp was taken
+     *
+     * @param sessionId  session id
+     * @param storeStamp stamp of the session id taken before the read or the delete
+     */
+    private void cacheMissing( String sessionId, long storeStamp ) {
+        if ( negativeCache == null ) {
+            return;
+        }
+        negativeCache.put( sessionId );
+        if ( storeStamp( sessionId ) != storeStamp ) {
+            negativeCache.remove( sessionId );
+        }
+    }
+
+    private long storeStamp( String sessionId ) {
+        return storeStamps.get( storeStampIndex( sessionId ) );
+    }
+
+    private static int storeStampIndex( String sessionId ) {
+        return ( sessionId.hashCode( ) & 0x7fffffff ) % STORE_STAMP_STRIPES;
+    }
+
+    /**
+     * Builds the filter of the session ids stored in the external source and installs it. The filter is left as it is
+     * if the source can not list its session ids.
+     */
+    private void buildExistenceFilter( ) {
+        ScalableBloomFilter filter = new ScalableBloomFilter( filterExpectedIds, filterFalsePositiveProbability );
+        rebuildingFilter = filter;
+        try {
+            long deletesBefore = deletesSinceFilterBuild.get( );
+            SessionResponse<Boolean> listResponse = externalSessionSource.forEachSessionId( filter::add );
+            if ( listResponse.isError( ) ) {
+                LOGGER.log( Level.INFO, "External session source can not list session ids, loads are not filtered : {0}", listResponse.getMessage( ) );
+                return;
+            }
+            existenceFilter = filter;
+            deletesSinceFilterBuild.addAndGet( -deletesBefore );
+            LOGGER.log( Level.FINE, "Built the external session id filter with {0} ids", filter.getApproximateCount( ) );
+        } finally {
+            rebuildingFilter = null;
+        }
+    }
 }
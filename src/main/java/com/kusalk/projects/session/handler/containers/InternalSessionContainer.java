@@ -1,21 +1,45 @@
 package com.kusalk.projects.session.handler.containers;
 
+import com.kusalk.projects.session.handler.codec.MementoCodec;
+import com.kusalk.projects.session.handler.id.SessionId;
+import com.kusalk.projects.session.handler.id.SessionIdGenerator;
+import com.kusalk.projects.session.handler.metrics.SessionMetrics;
+import com.kusalk.projects.session.handler.metrics.SessionRestoreEvent;
 import com.kusalk.projects.session.handler.session.Session;
+import com.kusalk.projects.session.handler.session.SessionMemento;
+import com.kusalk.projects.session.handler.session.SessionType;
+import com.kusalk.projects.session.handler.session.SessionTypeRegistry;
 import com.kusalk.projects.session.handler.util.SessionCode;
 import com.kusalk.projects.session.handler.util.SessionResponse;
 
-import java.lang.reflect.InvocationTargetException;
-import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * This class contains the implementation logic to handle sessions within a single server instance. Only one instance
- * of this class should be there for the entire app server as this class is responsible for handling all the sessions
- * within the application.
+ * This class contains the implementation logic to handle sessions within a single server instance. The default
+ * container returned by {@link #getInstance()} is configured with system properties and shared by the whole
+ * application. Further containers with their own name, timeouts and limits can be created with {@link #builder(String)},
+ * for example to isolate tenants.
+ * <p>
+ * Sessions are spread over a number of partitions by the hash of their id, {@value #PARTITIONS_PROPERTY} for the default
+ * container. Every partition has its own map, lock, eviction policy, off-heap tier and expiry thread, and the maximum
+ * weight and the off-heap capacity are split evenly between the partitions.
+ * <p>
+ * The container runs either in {@link ContainerMode#LOCK_FREE} mode (default), where every operation relies on the atomic
+ * per-key operations of the backing {@link ConcurrentHashMap}, or in {@link ContainerMode#LOCKED} mode where the
+ * fair read-write lock of the partition guards every operation. The mode is selected with the
+ * {@value #CONTAINER_MODE_PROPERTY} system property.
+ * <p>
+ * The container can be bounded with the {@value #MAXIMUM_WEIGHT_PROPERTY} system property. A bounded container evicts
+ * sessions using a W-TinyLFU policy once the total weight of its sessions exceeds the maximum, and hands every evicted
+ * session to the registered {@link SessionEvictionListener} so that it can be passivated to an external source.
+ * <p>
+ * The container can keep idle sessions off-heap when the {@value #OFF_HEAP_CAPACITY_BYTES_PROPERTY} system property is
+ * set. Sessions not loaded for {@value #OFF_HEAP_IDLE_MILLIS_PROPERTY} milliseconds are serialized from their memento
+ * into direct memory and rehydrated on their next load. When the off-heap capacity is used up, the sessions moved
+ * off-heap first are evicted and handed to the {@link SessionEvictionListener}.
  * <p>
  * Created By : Kusal Kankanamge
  * Created On : 5/29/2021
@@ -25,21 +49,74 @@ public class InternalSessionContainer {
     private static final Logger LOGGER = Logger.getLogger( InternalSessionContainer.class.getName( ) );
 
     public static final int SESSION_GENERATE_LIMIT = 3;
+    /**
+     * @deprecated sessions are expired by a timer wheel advancing every {@link #DEFAULT_EXPIRY_TICK_MILLIS} by
+     * default, configured with {@link Builder#expiryTickMillis(long)}. This constant is no longer used.
+     */
+    @Deprecated
     public static final int SESSION_REMOVER_WAIT_TIME_MILLIS = 10000;
+    public static final long DEFAULT_EXPIRY_TICK_MILLIS = 1000;
+    public static final String DEFAULT_CONTAINER_NAME = "default";
+    public static final long DEFAULT_SESSION_TIMEOUT_SECONDS = 1800;
+    public static final String PARTITIONS_PROPERTY = "session.handler.container.partitions";
+    public static final String SESSION_TIMEOUT_SECONDS_PROPERTY = "session.handler.session.timeout.seconds";
+    public static final String CONTAINER_MODE_PROPERTY = "session.handler.container.mode";
+    public static final String EXPIRY_TICK_MILLIS_PROPERTY = "session.handler.expiry.tick.millis";
+    public static final String MAXIMUM_WEIGHT_PROPERTY = "session.handler.container.maximum.weight";
+    public static final String OFF_HEAP_CAPACITY_BYTES_PROPERTY = "session.handler.offheap.capacity.bytes";
+    public static final String OFF_HEAP_IDLE_MILLIS_PROPERTY = "session.handler.offheap.idle.millis";
+    public static final String OFF_HEAP_SLAB_BYTES_PROPERTY = "session.handler.offheap.slab.bytes";
+    public static final long DEFAULT_OFF_HEAP_IDLE_MILLIS = 300000;
+    public static final int DEFAULT_OFF_HEAP_SLAB_BYTES = 1024 * 1024;
+    /**
+     * Estimated memory held per session by the container itself: the map node, the session entry, the session id and
+     * the header fields of the {@link Session} and the lock it allocates when first worked with, without the state of
+     * the session. Measured with compressed references by the footprint test, rounded up for the slot of the map table.
+     */
+    public static final long ESTIMATED_SESSION_OVERHEAD_BYTES = 240;
 
-    private final ConcurrentHashMap<String, Session> sessionContainer = new ConcurrentHashMap<>( );
-    private final ConcurrentLinkedQueue<String> sessionQueue = new ConcurrentLinkedQueue<>( );
+    private static final ConcurrentHashMap<String, InternalSessionContainer> CONTAINERS = new ConcurrentHashMap<>( );
 
-    private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock( true );
-    private final ReentrantReadWriteLock.WriteLock writeLock = readWriteLock.writeLock( );
-    private final ReentrantReadWriteLock.ReadLock readLock = readWriteLock.readLock( );
+    private final String name;
+    private final ContainerPartition[] partitions;
+    private final ContainerMode containerMode;
+    private final long defaultTimeoutInSeconds;
+    private final SessionTypeRegistry sessionTypeRegistry = SessionTypeRegistry.getInstance( );
+    private final SessionIdGenerator sessionIdGenerator = SessionIdGenerator.load( );
+    /*
+     * Evicted sessions whose passivation to an external source has not finished yet, kept with the container so that
+     * loads through any session services of the container can re-activate them
+     */
+    private final ConcurrentHashMap<SessionId, Passivation> passivations = new ConcurrentHashMap<>( );
+    private volatile SessionEvictionListener evictionListener;
+    private volatile SessionChangeListener changeListener;
 
-    private InternalSessionContainer( ) {
-        runSessionRemoverThread( );
+    private InternalSessionContainer( Builder builder ) {
+        this.name = builder.name;
+        this.containerMode = builder.containerMode;
+        this.defaultTimeoutInSeconds = builder.defaultTimeoutInSeconds;
+        int partitionCount = builder.partitions;
+        long partitionWeight = builder.maximumWeight > 0 ? ( builder.maximumWeight + partitionCount - 1 ) / partitionCount : 0;
+        long partitionOffHeapBytes = builder.offHeapCapacityBytes > 0 ? Math.max( builder.offHeapCapacityBytes / partitionCount, builder.offHeapSlabBytes ) : 0;
+        this.partitions = new ContainerPartition[partitionCount];
+        for ( int i = 0; i < partitionCount; i++ ) {
+            partitions[i] = new ContainerPartition( this, "session-remover-thread-" + name + "-" + i, containerMode, partitionWeight,
+                    builder.expiryTickMillis, partitionOffHeapBytes, builder.offHeapSlabBytes, builder.offHeapIdleMillis );
+        }
+        if ( CONTAINERS.putIfAbsent( name, this ) != null ) {
+            throw new IllegalArgumentException( "Internal session container already exists : " + name );
+        }
+        LOGGER.log( Level.FINE, "Internal session container {0} running in {1} mode with {2} partitions, {3}ms expiry ticks and {4} ids",
+                new Object[]{ name, containerMode, partitionCount, builder.expiryTickMillis, sessionIdGenerator.getClass( ).getSimpleName( ) } );
+        for ( ContainerPartition partition : partitions ) {
+            partition.start( );
+        }
+        SessionMetrics.registerContainer( InternalSessionContainer::getTotalSessionCount, InternalSessionContainer::getTotalEstimatedMemoryBytes );
     }
 
     /**
-     * Single session container instance should be maintained throughout the application
+     * Returns the default container, configured with the system properties. Single session container instance should
+     * be maintained throughout the application unless named containers are built.
      *
      * @return {@link InternalSessionContainer} instance
      */
@@ -48,6 +125,218 @@ public class InternalSessionContainer {
         return ResourceHolder.LOCAL_SESSION_CONTAINER;
     }
 
+    /**
+     * Returns the container of the provided name
+     *
+     * @param name container name
+     * @return {@link InternalSessionContainer} container or {@code null} if no container of the name was built
+     */
+    public static InternalSessionContainer getInstance( String name ) {
+        return DEFAULT_CONTAINER_NAME.equals( name ) ? getInstance( ) : CONTAINERS.get( name );
+    }
+
+    /**
+     * Creates a builder of a named container. The builder starts from the defaults, not from the system properties
+     * configuring the default container.
+     *
+     * @param name name of the container, unique within the JVM
+     * @return {@link Builder} builder
+     */
+    public static Builder builder( String name ) {
+        if ( name == null || name.isEmpty( ) || DEFAULT_CONTAINER_NAME.equals( name ) ) {
+            throw new IllegalArgumentException( "Invalid internal session container name : " + name );
+        }
+        return new Builder( name );
+    }
+
+    private static int getTotalSessionCount( ) {
+        return CONTAINERS.values( ).stream( ).mapToInt( InternalSessionContainer::getSessionCount ).sum( );
+    }
+
+    private static long getTotalEstimatedMemoryBytes( ) {
+        return CONTAINERS.values( ).stream( ).mapToLong( InternalSessionContainer::getEstimatedMemoryBytes ).sum( );
+    }
+
+    public String getName( ) {
+        return name;
+    }
+
+    public int getPartitionCount( ) {
+        return partitions.length;
+    }
+
+    /**
+     * Returns the timeout of sessions created without one
+     *
+     * @return timeout in seconds
+     */
+    public long getDefaultTimeoutInSeconds( ) {
+        return defaultTimeoutInSeconds;
+    }
+
+    /**
+     * Returns the concurrency mode this container was started with
+     *
+     * @return {@link ContainerMode} container mode
+     */
+    public ContainerMode getContainerMode( ) {
+        return containerMode;
+    }
+
+    /**
+     * Returns whether the container evicts sessions to stay within a maximum weight
+     *
+     * @return {@code true} if the container is bounded
+     */
+    public boolean isBounded( ) {
+        return partitions[0].isBounded( );
+    }
+
+    /**
+     * Returns whether the container moves idle sessions off-heap
+     *
+     * @return {@code true} if the off-heap tier is enabled
+     */
+    public boolean isOffHeapEnabled( ) {
+        return partitions[0].isOffHeapEnabled( );
+    }
+
+    /**
+     * Sets the codec sessions are serialized with when they are moved off-heap. Java serialization is used by default.
+     * The codec must not be changed while sessions are held off-heap.
+     *
+     * @param mementoCodec memento codec
+     */
+    public void setOffHeapMementoCodec( MementoCodec mementoCodec ) {
+        for ( ContainerPartition partition : partitions ) {
+            partition.setOffHeapMementoCodec( mementoCodec );
+        }
+    }
+
+    /**
+     * Returns the direct memory used by sessions held off-heap
+     *
+     * @return used bytes, or zero if the off-heap tier is disabled
+     */
+    public long getOffHeapUsedBytes( ) {
+        long bytes = 0;
+        for ( ContainerPartition partition : partitions ) {
+            bytes += partition.getOffHeapUsedBytes( );
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the number of sessions held in the container
+     *
+     * @return session count
+     */
+    public int getSessionCount( ) {
+        int count = 0;
+        for ( ContainerPartition partition : partitions ) {
+            count += partition.getSessionCount( );
+        }
+        return count;
+    }
+
+    /**
+     * Returns an estimate of the memory the container holds for its sessions. Every session is counted with
+     * {@link #ESTIMATED_SESSION_OVERHEAD_BYTES} plus its weight beyond the default weight of one, so the state of
+     * sessions weighing themselves in bytes is included. Sessions held off-heap only count with their overhead. This
+     * visits every session.
+     *
+     * @return memory estimate in bytes
+     */
+    public long getEstimatedMemoryBytes( ) {
+        long bytes = 0;
+        for ( ContainerPartition partition : partitions ) {
+            bytes += partition.getEstimatedMemoryBytes( );
+        }
+        return bytes;
+    }
+
+    /**
+     * Registers the listener which is notified of every session evicted from a bounded container. Only one listener
+     * is kept, registering a listener replaces the previous one.
+     *
+     * @param evictionListener eviction listener or {@code null} to drop evicted sessions
+     */
+    public synchronized void setEvictionListener( SessionEvictionListener evictionListener ) {
+        this.evictionListener = evictionListener;
+    }
+
+    /**
+     * Registers the listener which is notified of every session evicted from a bounded container, unless a listener is
+     * already registered
+     *
+     * @param evictionListener eviction listener
+     * @return {@code true} if the listener was registered, {@code false} if another listener is kept
+     */
+    public synchronized boolean registerEvictionListener( SessionEvictionListener evictionListener ) {
+        if ( this.evictionListener != null ) {
+            return false;
+        }
+        this.evictionListener = evictionListener;
+        return true;
+    }
+
+    SessionEvictionListener getEvictionListener( ) {
+        return evictionListener;
+    }
+
+    /**
+     * Registers the listener which is notified of the sessions created, loaded and removed. Only one listener is kept,
+     * registering a listener replaces the previous one.
+     *
+     * @param changeListener change listener or {@code null} to stop notifying
+     */
+    public void setChangeListener( SessionChangeListener changeListener ) {
+        this.changeListener = changeListener;
+    }
+
+    SessionChangeListener getChangeListener( ) {
+        return changeListener;
+    }
+
+    /**
+     * Visits every session of the container, without extending their expiry. Sessions held off-heap are visited as
+     * decoded copies, so changes made to them are lost.
+     *
+     * @param action action called with every session
+     */
+    public void forEachSession( Consumer<Session> action ) {
+        for ( ContainerPartition partition : partitions ) {
+            partition.forEachSession( action );
+        }
+    }
+
+    /**
+     * Returns whether the container holds a session with the session id, without extending its expiry
+     *
+     * @param sessionId session id
+     * @return {@code true} if the session is held
+     */
+    public boolean containsSession( SessionId sessionId ) {
+        return partitionOf( sessionId ).containsSession( sessionId );
+    }
+
+    /**
+     * Stops the remover threads of a named container, drops its sessions without notifying the eviction listener and
+     * releases its name
+     *
+     * @throws IllegalStateException if this is the default container
+     */
+    public void close( ) {
+        if ( DEFAULT_CONTAINER_NAME.equals( name ) ) {
+            throw new IllegalStateException( "The default internal session container can not be closed" );
+        }
+        if ( CONTAINERS.remove( name, this ) ) {
+            for ( ContainerPartition partition : partitions ) {
+                partition.close( );
+            }
+        }
+    }
+
     /**
      * Loads the session from the session container object within the server.
      *
@@ -55,19 +344,18 @@ public class InternalSessionContainer {
      * @return {@link Session} session object
      */
     public Session loadSessionFromContainer( String sessionId ) {
-        try {
-            readLock.lock( );
-            if ( sessionContainer.containsKey( sessionId ) ) {
-                Session session = sessionContainer.get( sessionId );
-                session.setLastLoadedTimestamp( System.currentTimeMillis( ) );
-                return sessionContainer.get( sessionId );
-            }
-        } catch ( Exception e ) {
-            LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred while loading session from internal container" );
-        } finally {
-            readLock.unlock( );
-        }
-        return null;
+        SessionId parsedId = SessionId.parse( sessionId );
+        return parsedId != null ? loadSessionFromContainer( parsedId ) : null;
+    }
+
+    /**
+     * Loads the session from the session container object within the server.
+     *
+     * @param sessionId session id
+     * @return {@link Session} session object
+     */
+    public Session loadSessionFromContainer( SessionId sessionId ) {
+        return partitionOf( sessionId ).loadSession( sessionId );
     }
 
     /**
@@ -79,46 +367,178 @@ public class InternalSessionContainer {
      * @return {@link SessionResponse<String>} session response
      */
     public SessionResponse<String> createSession( String sessionClass, long timeoutInSeconds ) {
+        SessionType<? extends Session> sessionType;
+        try {
+            sessionType = sessionTypeRegistry.resolve( sessionClass );
+        } catch ( ClassNotFoundException | IllegalArgumentException e ) {
+            LOGGER.log( Level.SEVERE, e, ( ) -> "Error while resolving the session class " + sessionClass );
+            return new SessionResponse<>( "Error creating session : " + e.getMessage( ), SessionCode.ERROR, null );
+        }
+        return createSession( sessionType, timeoutInSeconds );
+    }
+
+    /**
+     * Creates a session object of the provided session-class with the provided timeout. This will add the
+     * newly created session to the session container within the server
+     *
+     * @param sessionClass     session-class
+     * @param timeoutInSeconds timeout in seconds
+     * @return {@link SessionResponse<String>} session response
+     */
+    public SessionResponse<String> createSession( Class<? extends Session> sessionClass, long timeoutInSeconds ) {
+        SessionType<? extends Session> sessionType;
         try {
-            writeLock.lock( );
+            sessionType = sessionTypeRegistry.resolve( sessionClass );
+        } catch ( IllegalArgumentException e ) {
+            LOGGER.log( Level.SEVERE, e, ( ) -> "Error while resolving the session class " + sessionClass.getName( ) );
+            return new SessionResponse<>( "Error creating session : " + e.getMessage( ), SessionCode.ERROR, null );
+        }
+        return createSession( sessionType, timeoutInSeconds );
+    }
+
+    /**
+     * Creates a session object of the provided session-class with the default timeout of the container
+     *
+     * @param sessionClass session-class
+     * @return {@link SessionResponse<String>} session response
+     */
+    public SessionResponse<String> createSession( Class<? extends Session> sessionClass ) {
+        return createSession( sessionClass, defaultTimeoutInSeconds );
+    }
+
+    /**
+     * Creates a session object of the provided registered session type with the provided timeout. This will add the
+     * newly created session to the session container within the server
+     *
+     * @param sessionType      session type resolved from the {@link SessionTypeRegistry}
+     * @param timeoutInSeconds timeout in seconds
+     * @return {@link SessionResponse<String>} session response
+     */
+    public SessionResponse<String> createSession( SessionType<? extends Session> sessionType, long timeoutInSeconds ) {
+        try {
+            Session sessionObject = sessionType.newSession( );
+            sessionObject.setTimeoutInSeconds( timeoutInSeconds );
+            sessionObject.setLastLoadedTimestamp( System.currentTimeMillis( ) );
 
-            String sessionId;
+            SessionId sessionId;
             int retryCounter = 0;
             boolean sessionContainedAlready;
 
+            // Collision free generators never produce an id which is already mapped, so they need a single attempt
             do {
-                sessionId = UUID.randomUUID( ).toString( );
-                sessionContainedAlready = sessionContainer.containsKey( sessionId );
+                sessionId = sessionIdGenerator.generateSessionId( );
+                sessionContainedAlready = !partitionOf( sessionId ).addNewSession( sessionId, sessionObject );
                 retryCounter++;
-            } while ( sessionContainedAlready && retryCounter <= SESSION_GENERATE_LIMIT );
+            } while ( sessionContainedAlready && !sessionIdGenerator.isCollisionFree( ) && retryCounter <= SESSION_GENERATE_LIMIT );
 
             if ( sessionContainedAlready ) {
-                LOGGER.log( Level.WARNING, ( ) -> "Error creating session. Session store contains generated sessionIDs. Tried " + SESSION_GENERATE_LIMIT + " times" );
+                LOGGER.log( Level.WARNING, "Error creating session. Session store contains generated sessionIDs. Tried {0} times", retryCounter );
                 return new SessionResponse<>( "Error creating session. Session store contains generated sessionIDs", SessionCode.ERROR, null );
             }
+            return new SessionResponse<>( "Session created successfully and added to local container", SessionCode.SUCCESS, sessionId.toString( ) );
 
-            Session sessionObject = ( Session ) Class.forName( sessionClass ).getDeclaredConstructor( ).newInstance( );
-            sessionObject.setSessionId( sessionId );
-            sessionObject.setTimeoutInSeconds( timeoutInSeconds );
-            sessionObject.setLastLoadedTimestamp( System.currentTimeMillis( ) );
+        } catch ( RuntimeException e ) {
+            LOGGER.log( Level.SEVERE, e, ( ) -> "Error while creating a session" );
+            return new SessionResponse<>( "Error creating session : " + e.getMessage( ), SessionCode.ERROR, null );
+        }
+    }
 
-            sessionContainer.put( sessionId, sessionObject );
-            boolean addToQueue = sessionQueue.add( sessionId );
-            if ( addToQueue ) {
-                return new SessionResponse<>( "Session created successfully and added to local container", SessionCode.SUCCESS, sessionId );
-            } else {
-                LOGGER.log( Level.WARNING, "Error adding sessionID for session queue. SessionID : {0}", sessionId );
+    /**
+     * Restores a session from its memento into the session container under its original session id. This is used to
+     * re-activate sessions which were saved to an external source. If the container already holds a session with the
+     * same id, that session is returned and the memento is ignored.
+     *
+     * @param sessionId session id the memento was saved with
+     * @param memento   memento of the session
+     * @return {@link SessionResponse<Session>} session response with the restored session
+     */
+    public SessionResponse<Session> restoreSession( String sessionId, SessionMemento memento ) {
+        SessionId parsedId = SessionId.parse( sessionId );
+        if ( parsedId == null ) {
+            return new SessionResponse<>( "Invalid session id : " + sessionId, SessionCode.ERROR, null );
+        }
+        SessionRestoreEvent restoreEvent = SessionMetrics.startRestore( );
+        SessionResponse<Session> sessionResponse = partitionOf( parsedId ).restoreSession( parsedId, memento );
+        SessionMetrics.endRestore( restoreEvent, sessionId, memento.getSessionClass( ) );
+        return sessionResponse;
+    }
 
-                removeSessionFromLocalContainer( sessionId );
-                return new SessionResponse<>( "Session could not add to local session queue", SessionCode.ERROR, sessionId );
-            }
+    /**
+     * Adds a session rebuilt outside the container, such as a session recovered from a journal, under its original
+     * session id. The session keeps its timeout and load timestamp, so it expires as if it had never left the
+     * container.
+     *
+     * @param sessionId session id the session was created with
+     * @param session   rebuilt session
+     * @return {@link SessionResponse<Session>} session response with the added session, which is an error response
+     * if the container already holds a session with the same id
+     */
+    public SessionResponse<Session> recoverSession( SessionId sessionId, Session session ) {
+        if ( !partitionOf( sessionId ).addNewSession( sessionId, session ) ) {
+            return new SessionResponse<>( "Session already present in local container", SessionCode.ERROR, null );
+        }
+        return new SessionResponse<>( "Session recovered and added to local container", SessionCode.SUCCESS, session );
+    }
 
-        } catch ( InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException | ClassNotFoundException e ) {
-            LOGGER.log( Level.SEVERE, e, ( ) -> "Error while creating a session" );
-            return new SessionResponse<>( "Error creating session : " + e.getCause( ).getMessage( ), SessionCode.ERROR, null );
-        } finally {
-            writeLock.unlock( );
+    /**
+     * Adds an evicted session back under its original session id, such as a session loaded again while it is still
+     * being passivated. The session is not reported as created to the change listener.
+     *
+     * @param sessionId session id the session was evicted with
+     * @param session   evicted session
+     * @return {@link SessionResponse<Session>} session response with the added session, which is an error response
+     * if the container already holds a session with the same id
+     */
+    public SessionResponse<Session> reactivateSession( SessionId sessionId, Session session ) {
+        if ( !partitionOf( sessionId ).reactivateSession( sessionId, session ) ) {
+            return new SessionResponse<>( "Session already present in local container", SessionCode.ERROR, null );
         }
+        return new SessionResponse<>( "Session reactivated and added to local container", SessionCode.SUCCESS, session );
+    }
+
+    /**
+     * Marks an evicted session as being passivated to an external source, so that loads can re-activate it with
+     * {@link #reactivatePassivatingSession(String)} until {@link #finishPassivation(Session)} is called. Eviction
+     * listeners call this before they return, so the session is never missing from both the container and the
+     * passivating sessions.
+     *
+     * @param session evicted session
+     */
+    public void startPassivation( Session session ) {
+        passivations.compute( session.getId( ), ( id, passivation ) -> passivation != null && passivation.session == session
+                ? passivation.started( )
+                : new Passivation( session ) );
+    }
+
+    /**
+     * Ends a passivation started with {@link #startPassivation(Session)}, once the session was saved or could not be
+     *
+     * @param session evicted session
+     */
+    public void finishPassivation( Session session ) {
+        passivations.computeIfPresent( session.getId( ), ( id, passivation ) -> passivation.session == session ? passivation.finished( ) : passivation );
+    }
+
+    /**
+     * Adds a session which is still being passivated back to the container under its original session id
+     *
+     * @param sessionId session id
+     * @return re-activated session or {@code null} if the session is not being passivated
+     */
+    public Session reactivatePassivatingSession( String sessionId ) {
+        SessionId parsedId = SessionId.parse( sessionId );
+        Passivation passivation = parsedId != null ? passivations.get( parsedId ) : null;
+        if ( passivation == null ) {
+            return null;
+        }
+        Session session = passivation.session;
+        session.setLastLoadedTimestamp( System.currentTimeMillis( ) );
+        if ( reactivateSession( parsedId, session ).isSuccess( ) ) {
+            LOGGER.log( Level.FINE, "Session {0} re-activated while it was passivated", sessionId );
+            return session;
+        }
+        // Re-activated by a concurrent load
+        return loadSessionFromContainer( parsedId );
     }
 
     /**
@@ -129,68 +549,193 @@ public class InternalSessionContainer {
      * @return {@link SessionResponse<Boolean>} session response
      */
     public SessionResponse<Boolean> removeSession( String sessionId ) {
-        try {
-            writeLock.lock( );
-            Session remove = removeSessionFromLocalContainer( sessionId );
-            if ( remove != null ) {
-                return new SessionResponse<>( "Session removed for id : " + sessionId, SessionCode.SUCCESS, true );
+        SessionId parsedId = SessionId.parse( sessionId );
+        if ( parsedId == null ) {
+            return new SessionResponse<>( "Session failed to removed for id : " + sessionId, SessionCode.ERROR, false );
+        }
+        return removeSession( parsedId );
+    }
+
+    /**
+     * Removes the session from the local session-container.
+     *
+     * @param sessionId session id
+     * @return {@link SessionResponse<Boolean>} session response
+     */
+    public SessionResponse<Boolean> removeSession( SessionId sessionId ) {
+        return partitionOf( sessionId ).removeSession( sessionId );
+    }
+
+    /**
+     * Returns the partition of the session id. The backing maps of the partitions index their tables with the low
+     * bits of the hash code, so the partition is picked with the high bits of the scrambled hash code.
+     */
+    private ContainerPartition partitionOf( SessionId sessionId ) {
+        if ( partitions.length == 1 ) {
+            return partitions[0];
+        }
+        long hash = ( sessionId.hashCode( ) * 0x9E3779B9 ) & 0xFFFFFFFFL;
+        return partitions[( int ) ( ( hash * partitions.length ) >>> 32 )];
+    }
+
+    /**
+     * Builder of named {@link InternalSessionContainer} objects
+     */
+    public static final class Builder {
+
+        private final String name;
+        private int partitions = Runtime.getRuntime( ).availableProcessors( );
+        private ContainerMode containerMode = ContainerMode.LOCK_FREE;
+        private long maximumWeight;
+        private long expiryTickMillis = DEFAULT_EXPIRY_TICK_MILLIS;
+        private long defaultTimeoutInSeconds = DEFAULT_SESSION_TIMEOUT_SECONDS;
+        private long offHeapCapacityBytes;
+        private long offHeapIdleMillis = DEFAULT_OFF_HEAP_IDLE_MILLIS;
+        private int offHeapSlabBytes = DEFAULT_OFF_HEAP_SLAB_BYTES;
+
+        private Builder( String name ) {
+            this.name = name;
+        }
+
+        /**
+         * @param partitions number of partitions the sessions are spread over, the number of processors by default
+         * @return this builder
+         */
+        public Builder partitions( int partitions ) {
+            if ( partitions <= 0 ) {
+                throw new IllegalArgumentException( "Partitions must be positive : " + partitions );
             }
-        } catch ( Exception e ) {
-            LOGGER.log( Level.SEVERE, e, ( ) -> "Error while removing th session from local container" );
-        } finally {
-            writeLock.unlock( );
-        }
-        return new SessionResponse<>( "Session failed to removed for id : " + sessionId, SessionCode.ERROR, false );
-    }
-
-    private Session removeSessionFromLocalContainer( String sessionId ) {
-        Session removedSession = sessionContainer.remove( sessionId );
-        if ( removedSession != null ) {
-            LOGGER.log( Level.FINE, "Session removed from local container. SessionID : ", sessionId );
-            sessionQueue.remove( removedSession.getSessionId( ) );
-        }
-        return removedSession;
-    }
-
-    /**
-     * This is an infinitely running thread which checks the session container for timed-out sessions.
-     * If this finds any timed out sessions, then they will be removed from the memory
-     */
-    private void runSessionRemoverThread( ) {
-        Thread sessionRemover = new Thread( ( ) -> {
-            while ( true ) {
-                int sessionsCount = sessionQueue.size( );
-                for ( int i = 0; i < sessionsCount; i++ ) {
-                    String polledSession = sessionQueue.poll( );
-                    if ( polledSession != null ) {
-                        Session session = sessionContainer.get( polledSession );
-                        if ( session != null ) {
-                            long sessionTimeout = session.getTimeoutInSeconds( );
-                            long sessionCreatedTimestamp = session.getLastLoadedTimestamp( );
-
-                            if ( ( System.currentTimeMillis( ) - sessionCreatedTimestamp ) > sessionTimeout * 1000 ) {
-                                removeSessionFromLocalContainer( session.getSessionId( ) );
-                                System.out.println( "Session expired for session : " + session.getSessionId( ) );
-                            }
-                        }
-                    }
-                }
-                synchronized ( this ) {
-                    try {
-                        wait( SESSION_REMOVER_WAIT_TIME_MILLIS );
-                    } catch ( InterruptedException e ) {
-                        LOGGER.log( Level.SEVERE, e.getMessage( ), e );
-                    }
-                }
+            this.partitions = partitions;
+            return this;
+        }
+
+        /**
+         * @param containerMode concurrency mode of the partitions
+         * @return this builder
+         */
+        public Builder containerMode( ContainerMode containerMode ) {
+            this.containerMode = containerMode;
+            return this;
+        }
+
+        /**
+         * @param maximumWeight maximum total weight of the sessions, split evenly between the partitions. Zero leaves
+         *                      the container unbounded.
+         * @return this builder
+         */
+        public Builder maximumWeight( long maximumWeight ) {
+            this.maximumWeight = Math.max( 0, maximumWeight );
+            return this;
+        }
+
+        /**
+         * @param expiryTickMillis tick of the expiry wheels
+         * @return this builder
+         */
+        public Builder expiryTickMillis( long expiryTickMillis ) {
+            if ( expiryTickMillis <= 0 ) {
+                throw new IllegalArgumentException( "Expiry tick must be positive : " + expiryTickMillis );
             }
-        } );
-        sessionRemover.setDaemon( true );
-        sessionRemover.setName( "session-remover-thread" );
-        sessionRemover.setUncaughtExceptionHandler( ( t, e ) -> LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred within the session remover thread" ) );
-        sessionRemover.start( );
+            this.expiryTickMillis = expiryTickMillis;
+            return this;
+        }
+
+        /**
+         * @param defaultTimeoutInSeconds timeout of sessions created without one
+         * @return this builder
+         */
+        public Builder defaultTimeoutInSeconds( long defaultTimeoutInSeconds ) {
+            this.defaultTimeoutInSeconds = defaultTimeoutInSeconds;
+            return this;
+        }
+
+        /**
+         * @param offHeapCapacityBytes direct memory for idle sessions, split evenly between the partitions. Every
+         *                             partition gets at least one slab. Zero keeps every session on the heap.
+         * @return this builder
+         */
+        public Builder offHeapCapacityBytes( long offHeapCapacityBytes ) {
+            this.offHeapCapacityBytes = Math.max( 0, offHeapCapacityBytes );
+            return this;
+        }
+
+        /**
+         * @param offHeapIdleMillis time since the last load after which a session is moved off-heap
+         * @return this builder
+         */
+        public Builder offHeapIdleMillis( long offHeapIdleMillis ) {
+            this.offHeapIdleMillis = offHeapIdleMillis;
+            return this;
+        }
+
+        /**
+         * @param offHeapSlabBytes size of a slab of the off-heap tiers
+         * @return this builder
+         */
+        public Builder offHeapSlabBytes( int offHeapSlabBytes ) {
+            this.offHeapSlabBytes = offHeapSlabBytes;
+            return this;
+        }
+
+        /**
+         * Builds and registers the container under its name
+         *
+         * @return {@link InternalSessionContainer} container
+         * @throws IllegalArgumentException if a container of the same name exists
+         */
+        public InternalSessionContainer build( ) {
+            return new InternalSessionContainer( this );
+        }
+
+        /**
+         * Creates the builder of the default container from the system properties
+         */
+        private static Builder fromSystemProperties( ) {
+            long tickMillis = Long.getLong( EXPIRY_TICK_MILLIS_PROPERTY, DEFAULT_EXPIRY_TICK_MILLIS );
+            Builder builder = new Builder( DEFAULT_CONTAINER_NAME );
+            builder.partitions = Math.max( 1, Integer.getInteger( PARTITIONS_PROPERTY, 1 ) );
+            builder.containerMode = ContainerMode.fromValue( System.getProperty( CONTAINER_MODE_PROPERTY ) );
+            builder.maximumWeight = Math.max( 0, Long.getLong( MAXIMUM_WEIGHT_PROPERTY, 0 ) );
+            builder.expiryTickMillis = tickMillis > 0 ? tickMillis : DEFAULT_EXPIRY_TICK_MILLIS;
+            builder.defaultTimeoutInSeconds = Long.getLong( SESSION_TIMEOUT_SECONDS_PROPERTY, DEFAULT_SESSION_TIMEOUT_SECONDS );
+            builder.offHeapCapacityBytes = Math.max( 0, Long.getLong( OFF_HEAP_CAPACITY_BYTES_PROPERTY, 0 ) );
+            builder.offHeapIdleMillis = Long.getLong( OFF_HEAP_IDLE_MILLIS_PROPERTY, DEFAULT_OFF_HEAP_IDLE_MILLIS );
+            builder.offHeapSlabBytes = Integer.getInteger( OFF_HEAP_SLAB_BYTES_PROPERTY, DEFAULT_OFF_HEAP_SLAB_BYTES );
+            return builder;
+        }
+    }
+
+    /**
+     * An evicted session with the number of its passivations which have not finished, as a session re-activated and
+     * evicted again can be passivated twice at once
+     */
+    private static final class Passivation {
+
+        private final Session session;
+        private final int running;
+
+        private Passivation( Session session ) {
+            this( session, 1 );
+        }
+
+        private Passivation( Session session, int running ) {
+            this.session = session;
+            this.running = running;
+        }
+
+        private Passivation started( ) {
+            return new Passivation( session, running + 1 );
+        }
+
+        /**
+         * @return passivation with one less running save, or {@code null} once every save finished
+         */
+        private Passivation finished( ) {
+            return running > 1 ? new Passivation( session, running - 1 ) : null;
+        }
     }
 
     private static class ResourceHolder {
-        private static final InternalSessionContainer LOCAL_SESSION_CONTAINER = new InternalSessionContainer( );
+        private static final InternalSessionContainer LOCAL_SESSION_CONTAINER = Builder.fromSystemProperties( ).build( );
     }
 }
@@ -0,0 +1,231 @@
+package com.kusalk.projects.session.handler.containers;
+
+import com.kusalk.projects.session.handler.codec.JavaSerializationMementoCodec;
+import com.kusalk.projects.session.handler.codec.MementoCodec;
+import com.kusalk.projects.session.handler.metrics.SessionCounter;
+import com.kusalk.projects.session.handler.metrics.SessionMetrics;
+import com.kusalk.projects.session.handler.offheap.SlabAllocator;
+import com.kusalk.projects.session.handler.session.Session;
+import com.kusalk.projects.session.handler.session.SessionMemento;
+import com.kusalk.projects.session.handler.session.SessionTypeRegistry;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The off-heap tier of the {@link InternalSessionContainer}. Idle sessions are serialized from their memento into a
+ * {@link SlabAllocator} and only the {@link SessionEntry} stub stays on the heap. A session is rehydrated with
+ * {@link Session#restore(SessionMemento)} on its next load, so state which is not part of the memento is lost.
+ * <p>
+ * When the capacity is used up, the sessions offloaded first are evicted from the container to make room, taking only
+ * sessions of the same size class so every eviction frees a usable chunk.
+ * <p>
+ * Sessions are offloaded by the remover thread of the container, which also owns the eviction queues. Rehydration and
+ * release run on any thread and synchronize on the entry.
+ */
+final class OffHeapTier {
+
+    private static final Logger LOGGER = Logger.getLogger( OffHeapTier.class.getName( ) );
+
+    private final SlabAllocator allocator;
+    private final long idleMillis;
+    private final Predicate<SessionEntry> evictor;
+    private final SessionTypeRegistry sessionTypeRegistry = SessionTypeRegistry.getInstance( );
+    private final ArrayDeque<OffHeapRecord>[] evictionQueues;
+    private volatile MementoCodec mementoCodec = new JavaSerializationMementoCodec( );
+
+    /**
+     * @param capacityBytes maximum bytes held off-heap
+     * @param slabSizeBytes size of a slab of the allocator
+     * @param idleMillis    time since the last load after which a session is moved off-heap
+     * @param evictor       removes an off-heap entry from the container to make room, returning {@code false} if the
+     *                      entry was already removed
+     */
+    OffHeapTier( long capacityBytes, int slabSizeBytes, long idleMillis, Predicate<SessionEntry> evictor ) {
+        this.allocator = new SlabAllocator( capacityBytes, slabSizeBytes );
+        this.idleMillis = idleMillis;
+        this.evictor = evictor;
+        @SuppressWarnings( "unchecked" )
+        ArrayDeque<OffHeapRecord>[] evictionQueues = ( ArrayDeque<OffHeapRecord>[] ) new ArrayDeque<?>[allocator.sizeClassOf( slabSizeBytes - Integer.BYTES ) + 1];
+        this.evictionQueues = evictionQueues;
+        for ( int i = 0; i < evictionQueues.length; i++ ) {
+            evictionQueues[i] = new ArrayDeque<>( );
+        }
+    }
+
+    void setMementoCodec( MementoCodec mementoCodec ) {
+        this.mementoCodec = mementoCodec;
+    }
+
+    long getIdleMillis( ) {
+        return idleMillis;
+    }
+
+    long getUsedBytes( ) {
+        return allocator.getUsedBytes( );
+    }
+
+    /**
+     * Moves the session of the entry off-heap if it was not loaded for the idle time and nobody holds its lock
+     *
+     * @return {@code true} if the session was moved off-heap
+     */
+    boolean offload( SessionEntry entry, long now ) {
+        synchronized ( entry ) {
+            Session session = entry.getSession( );
+            if ( session == null || entry.isRemoved( ) ) {
+                return false;
+            }
+            long loadedAt = session.getLastLoadedTimestamp( );
+            if ( now - loadedAt < idleMillis || !session.tryStartWritingSession( ) ) {
+                return false;
+            }
+            try {
+                // Loaders set the timestamp before checking the flag, so either they see the flag or this sees the timestamp
+                entry.setOffloading( true );
+                if ( session.getLastLoadedTimestamp( ) != loadedAt ) {
+                    return false;
+                }
+                byte[] data = encode( session );
+                long handle = allocate( data );
+                if ( handle == SlabAllocator.NO_HANDLE ) {
+                    return false;
+                }
+                entry.moveOffHeap( handle );
+                evictionQueues[allocator.sizeClassOfHandle( handle )].addLast( new OffHeapRecord( entry, handle ) );
+                SessionMetrics.increment( SessionCounter.OFFLOADED );
+                return true;
+            } catch ( IOException | RuntimeException e ) {
+                LOGGER.log( Level.WARNING, e, ( ) -> "Session " + session.getId( ) + " could not be moved off-heap" );
+                return false;
+            } finally {
+                entry.setOffloading( false );
+                session.endWritingSession( );
+            }
+        }
+    }
+
+    /**
+     * Brings the session of the entry back onto the heap
+     *
+     * @return rehydrated session or {@code null} if the entry was removed from the container
+     */
+    Session rehydrate( SessionEntry entry ) {
+        synchronized ( entry ) {
+            Session session = entry.getSession( );
+            if ( session != null || entry.isRemoved( ) || !entry.isOffHeap( ) ) {
+                return session;
+            }
+            long handle = entry.getOffHeapHandle( );
+            session = decode( entry, handle );
+            if ( !entry.isOffHeapModified( ) ) {
+                session.markPersisted( session.getVersion( ) );
+            }
+            entry.moveOnHeap( session );
+            allocator.free( handle );
+            SessionMetrics.increment( SessionCounter.REHYDRATED );
+            return session;
+        }
+    }
+
+    /**
+     * Decodes a copy of a session held off-heap, leaving the session off-heap
+     *
+     * @return copy of the session, the session itself if it is on the heap or {@code null} if the entry was removed
+     */
+    Session copy( SessionEntry entry ) {
+        synchronized ( entry ) {
+            Session session = entry.getSession( );
+            if ( session != null || entry.isRemoved( ) || !entry.isOffHeap( ) ) {
+                return session;
+            }
+            Session copy = decode( entry, entry.getOffHeapHandle( ) );
+            if ( !entry.isOffHeapModified( ) ) {
+                copy.markPersisted( copy.getVersion( ) );
+            }
+            return copy;
+        }
+    }
+
+    /**
+     * Frees the off-heap copy of an entry removed from the container, rehydrating it first if requested
+     *
+     * @return rehydrated session or {@code null} if it was not requested or the entry is not off-heap
+     */
+    Session release( SessionEntry entry, boolean rehydrate ) {
+        synchronized ( entry ) {
+            if ( !entry.isOffHeap( ) ) {
+                return null;
+            }
+            long handle = entry.getOffHeapHandle( );
+            try {
+                return rehydrate ? decode( entry, handle ) : null;
+            } finally {
+                entry.clearOffHeap( );
+                allocator.free( handle );
+            }
+        }
+    }
+
+    private long allocate( byte[] data ) {
+        int sizeClass = allocator.sizeClassOf( data.length );
+        if ( sizeClass < 0 ) {
+            return SlabAllocator.NO_HANDLE;
+        }
+        long handle = allocator.allocate( data );
+        ArrayDeque<OffHeapRecord> queue = evictionQueues[sizeClass];
+        while ( handle == SlabAllocator.NO_HANDLE && !queue.isEmpty( ) ) {
+            OffHeapRecord oldest = queue.pollFirst( );
+            // Records of entries rehydrated or removed since they were offloaded are skipped
+            if ( oldest.isCurrent( ) && evictor.test( oldest.entry ) ) {
+                SessionMetrics.increment( SessionCounter.OFF_HEAP_EVICTED );
+                handle = allocator.allocate( data );
+            }
+        }
+        return handle;
+    }
+
+    private byte[] encode( Session session ) throws IOException {
+        SessionMemento memento = session.createMemento( );
+        memento.setSessionClass( );
+        memento.setSessionTimeoutInSeconds( session.getTimeoutInSeconds( ) );
+        return mementoCodec.encode( memento );
+    }
+
+    private Session decode( SessionEntry entry, long handle ) {
+        try {
+            SessionMemento memento = mementoCodec.decode( allocator.read( handle ) );
+            Session session = sessionTypeRegistry.resolve( memento.getSessionClass( ) ).newSession( );
+            session.setSessionId( entry.getSessionId( ) );
+            session.setTimeoutInSeconds( memento.getSessionTimeoutInSeconds( ) );
+            session.restore( memento );
+            session.setLastLoadedTimestamp( entry.getExpiresAtMillis( ) - memento.getSessionTimeoutInSeconds( ) * 1000 );
+            return session;
+        } catch ( IOException | ClassNotFoundException e ) {
+            throw new IllegalStateException( "Off-heap session " + entry.getSessionId( ) + " could not be rehydrated", e );
+        }
+    }
+
+    /**
+     * An entry in the eviction queue of a size class, together with the handle it was offloaded with
+     */
+    private static final class OffHeapRecord {
+
+        private final SessionEntry entry;
+        private final long handle;
+
+        private OffHeapRecord( SessionEntry entry, long handle ) {
+            this.entry = entry;
+            this.handle = handle;
+        }
+
+        private boolean isCurrent( ) {
+            synchronized ( entry ) {
+                return entry.getOffHeapHandle( ) == handle;
+            }
+        }
+    }
+}
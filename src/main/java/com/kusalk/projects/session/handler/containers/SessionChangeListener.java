@@ -0,0 +1,34 @@
+package com.kusalk.projects.session.handler.containers;
+
+import com.kusalk.projects.session.handler.id.SessionId;
+import com.kusalk.projects.session.handler.session.Session;
+
+/**
+ * Listener notified of the sessions created, loaded and removed by an {@link InternalSessionContainer}, such as a
+ * journal keeping the container durable. The listener is called on the thread making the change, so it must not
+ * block. Sessions restored from an external source are not reported, the external source already holds their state.
+ */
+public interface SessionChangeListener {
+
+    /**
+     * Called after a new session was added to the container
+     *
+     * @param session created session
+     */
+    void onCreated( Session session );
+
+    /**
+     * Called after a session was loaded from the container, which extended its expiry
+     *
+     * @param session loaded session
+     */
+    void onLoaded( Session session );
+
+    /**
+     * Called after a session was removed from the container because it was removed by the application, saved to an
+     * external source, timed out or evicted
+     *
+     * @param sessionId id of the removed session
+     */
+    void onRemoved( SessionId sessionId );
+}
@@ -0,0 +1,152 @@
+package com.kusalk.projects.session.handler.containers;
+
+import com.kusalk.projects.session.handler.expiry.TimerNode;
+import com.kusalk.projects.session.handler.id.SessionId;
+import com.kusalk.projects.session.handler.offheap.SlabAllocator;
+import com.kusalk.projects.session.handler.session.Session;
+
+/**
+ * The value held for every session in the {@link InternalSessionContainer}. It doubles as the node scheduled in the
+ * expiry wheel so a session needs a single index entry.
+ * <p>
+ * When the container keeps idle sessions off-heap, the entry stays in the container with a small stub holding the id,
+ * the expiry time and the handle of the serialized session, and the session is rehydrated on its next load. The stub
+ * is only allocated once the session is first moved off-heap, so entries of sessions which stay on the heap carry a
+ * single reference for it.
+ */
+final class SessionEntry extends TimerNode {
+
+    private volatile Session session;
+    private volatile boolean removed;
+
+    /*
+     * Eviction policy state, only accessed while holding the eviction lock of the container
+     */
+    SessionEntry accessPrevious;
+    SessionEntry accessNext;
+    int policyQueue;
+    int weight;
+
+    /*
+     * Off-heap state, only written while holding the monitor of the entry. The stub is published by the volatile write
+     * of the session and kept once allocated, so a reader which found the session off-heap always finds the stub.
+     */
+    private volatile boolean offloading;
+    private OffHeapStub offHeap;
+
+    SessionEntry( Session session ) {
+        this.session = session;
+    }
+
+    /**
+     * Returns the session of the entry
+     *
+     * @return session or {@code null} while the session is held off-heap
+     */
+    Session getSession( ) {
+        return session;
+    }
+
+    SessionId getSessionId( ) {
+        Session current = session;
+        return current != null ? current.getId( ) : offHeap.sessionId;
+    }
+
+    long getTimeoutInSeconds( ) {
+        Session current = session;
+        return current != null ? current.getTimeoutInSeconds( ) : offHeap.timeoutInSeconds;
+    }
+
+    int getSessionWeight( ) {
+        Session current = session;
+        return current != null ? current.getWeight( ) : offHeap.weight;
+    }
+
+    /**
+     * Returns the time at which the session expires unless it is loaded again
+     *
+     * @return expiry time in epoch milliseconds
+     */
+    long getExpiresAtMillis( ) {
+        Session current = session;
+        return current != null
+                ? current.getLastLoadedTimestamp( ) + current.getTimeoutInSeconds( ) * 1000
+                : offHeap.expiresAtMillis;
+    }
+
+    boolean isRemoved( ) {
+        return removed;
+    }
+
+    void markRemoved( ) {
+        this.removed = true;
+    }
+
+    boolean isOffloading( ) {
+        return offloading;
+    }
+
+    void setOffloading( boolean offloading ) {
+        this.offloading = offloading;
+    }
+
+    boolean isOffHeap( ) {
+        OffHeapStub stub = offHeap;
+        return stub != null && stub.handle != SlabAllocator.NO_HANDLE;
+    }
+
+    long getOffHeapHandle( ) {
+        OffHeapStub stub = offHeap;
+        return stub != null ? stub.handle : SlabAllocator.NO_HANDLE;
+    }
+
+    boolean isOffHeapModified( ) {
+        return offHeap.modified;
+    }
+
+    /**
+     * Drops the session from the heap, keeping what the container needs to know about it while it is off-heap
+     */
+    void moveOffHeap( long handle ) {
+        Session current = session;
+        OffHeapStub stub = offHeap != null ? offHeap : new OffHeapStub( );
+        stub.handle = handle;
+        stub.sessionId = current.getId( );
+        stub.expiresAtMillis = current.getLastLoadedTimestamp( ) + current.getTimeoutInSeconds( ) * 1000;
+        stub.timeoutInSeconds = current.getTimeoutInSeconds( );
+        stub.weight = current.getWeight( );
+        stub.modified = current.isModified( );
+        this.offHeap = stub;
+        this.session = null;
+    }
+
+    /**
+     * Puts the session rehydrated from the off-heap tier back on the heap
+     */
+    void moveOnHeap( Session rehydratedSession ) {
+        offHeap.handle = SlabAllocator.NO_HANDLE;
+        this.session = rehydratedSession;
+    }
+
+    /**
+     * Forgets the off-heap copy of a session which was removed from the container
+     */
+    void clearOffHeap( ) {
+        if ( offHeap != null ) {
+            offHeap.handle = SlabAllocator.NO_HANDLE;
+        }
+    }
+
+    /**
+     * What the container needs to know about a session while it is held off-heap
+     */
+    private static final class OffHeapStub {
+
+        private long handle = SlabAllocator.NO_HANDLE;
+        private SessionId sessionId;
+        private long expiresAtMillis;
+        private long timeoutInSeconds;
+        private int weight;
+        private boolean modified;
+    }
+}
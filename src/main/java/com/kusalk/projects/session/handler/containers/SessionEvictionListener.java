@@ -0,0 +1,22 @@
+package com.kusalk.projects.session.handler.containers;
+
+import com.kusalk.projects.session.handler.session.Session;
+
+/**
+ * Listener notified when a bounded {@link InternalSessionContainer} evicts a session to stay within its maximum
+ * weight. The listener is called atomically with the removal of the session from the container, so the listener is
+ * the last chance to passivate it to an external source. It runs on the thread which triggered the eviction, often
+ * while that thread is working with another session, so it must only hand the session over and never block on it.
+ * Listeners passivating the session call {@link InternalSessionContainer#startPassivation(Session)} before they return,
+ * so loads re-activate the session until the passivation finishes.
+ */
+@FunctionalInterface
+public interface SessionEvictionListener {
+
+    /**
+     * Called once for every evicted session
+     *
+     * @param session evicted session
+     */
+    void onEviction( Session session );
+}
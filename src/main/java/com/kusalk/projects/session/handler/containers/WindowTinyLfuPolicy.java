@@ -0,0 +1,188 @@
+package com.kusalk.projects.session.handler.containers;
+
+import com.kusalk.projects.session.handler.eviction.FrequencySketch;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The W-TinyLFU eviction policy of a bounded {@link InternalSessionContainer}. New sessions enter a small LRU admission
+ * window. Sessions leaving the window become candidates of the main segmented LRU, which is split into a probation and a
+ * protected segment, and a candidate only displaces the probation victim if the {@link FrequencySketch} estimates that
+ * it is used more often. This keeps one-off sessions created by a burst from flushing out the sessions which are in
+ * active use.
+ * <p>
+ * This class is not thread safe and is guarded by the eviction lock of the container.
+ */
+final class WindowTinyLfuPolicy {
+
+    private static final int NONE = 0;
+    private static final int WINDOW = 1;
+    private static final int PROBATION = 2;
+    private static final int PROTECTED = 3;
+
+    private static final double WINDOW_PERCENTAGE = 0.01;
+    private static final double PROTECTED_PERCENTAGE = 0.8;
+    private static final int ADMIT_HASH_DOS_THRESHOLD = 6;
+
+    private final long maximumWeight;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final FrequencySketch sketch;
+
+    private final AccessOrderQueue window = new AccessOrderQueue( );
+    private final AccessOrderQueue probation = new AccessOrderQueue( );
+    private final AccessOrderQueue protectedQueue = new AccessOrderQueue( );
+
+    private long weightedSize;
+    private long windowWeight;
+    private long protectedWeight;
+
+    WindowTinyLfuPolicy( long maximumWeight ) {
+        this.maximumWeight = maximumWeight;
+        this.windowMaximum = Math.max( 1, ( long ) ( maximumWeight * WINDOW_PERCENTAGE ) );
+        this.protectedMaximum = ( long ) ( ( maximumWeight - windowMaximum ) * PROTECTED_PERCENTAGE );
+        this.sketch = new FrequencySketch( maximumWeight );
+    }
+
+    /**
+     * Adds a newly inserted entry to the admission window
+     */
+    void add( SessionEntry entry ) {
+        if ( entry.policyQueue != NONE ) {
+            return;
+        }
+        entry.weight = Math.max( 0, entry.getSessionWeight( ) );
+        entry.policyQueue = WINDOW;
+        window.addLast( entry );
+        windowWeight += entry.weight;
+        weightedSize += entry.weight;
+        sketch.increment( hash( entry ) );
+    }
+
+    /**
+     * Records an access of an entry
+     */
+    void access( SessionEntry entry ) {
+        switch ( entry.policyQueue ) {
+            case WINDOW:
+                window.moveToBack( entry );
+                break;
+            case PROBATION:
+                probation.remove( entry );
+                protectedQueue.addLast( entry );
+                entry.policyQueue = PROTECTED;
+                protectedWeight += entry.weight;
+                demoteFromProtected( );
+                break;
+            case PROTECTED:
+                protectedQueue.moveToBack( entry );
+                break;
+            default:
+                // The entry was removed from the policy already
+                return;
+        }
+        sketch.increment( hash( entry ) );
+    }
+
+    /**
+     * Removes an entry which left the container
+     */
+    void remove( SessionEntry entry ) {
+        switch ( entry.policyQueue ) {
+            case WINDOW:
+                window.remove( entry );
+                windowWeight -= entry.weight;
+                break;
+            case PROBATION:
+                probation.remove( entry );
+                break;
+            case PROTECTED:
+                protectedQueue.remove( entry );
+                protectedWeight -= entry.weight;
+                break;
+            default:
+                return;
+        }
+        weightedSize -= entry.weight;
+        entry.policyQueue = NONE;
+    }
+
+    /**
+     * Selects and removes entries from the policy until the weighted size fits within the maximum
+     *
+     * @param victims list collecting the evicted entries
+     */
+    void evict( List<SessionEntry> victims ) {
+        int candidates = 0;
+        while ( windowWeight > windowMaximum && !window.isEmpty( ) ) {
+            SessionEntry entry = window.peekFirst( );
+            window.remove( entry );
+            windowWeight -= entry.weight;
+            probation.addLast( entry );
+            entry.policyQueue = PROBATION;
+            candidates++;
+        }
+
+        while ( weightedSize > maximumWeight ) {
+            SessionEntry victim = probation.peekFirst( );
+            SessionEntry candidate = candidates > 0 ? probation.peekLast( ) : null;
+            if ( victim == null ) {
+                victim = !protectedQueue.isEmpty( ) ? protectedQueue.peekFirst( ) : window.peekFirst( );
+                if ( victim == null ) {
+                    return;
+                }
+            }
+
+            SessionEntry evicted;
+            if ( candidate == null || candidate == victim ) {
+                evicted = victim;
+            } else {
+                evicted = admit( candidate, victim ) ? victim : candidate;
+            }
+            if ( evicted == candidate ) {
+                candidates--;
+            }
+            remove( evicted );
+            victims.add( evicted );
+        }
+    }
+
+    long getWeightedSize( ) {
+        return weightedSize;
+    }
+
+    long getMaximumWeight( ) {
+        return maximumWeight;
+    }
+
+    private void demoteFromProtected( ) {
+        while ( protectedWeight > protectedMaximum ) {
+            SessionEntry demoted = protectedQueue.peekFirst( );
+            if ( demoted == null ) {
+                return;
+            }
+            protectedQueue.remove( demoted );
+            protectedWeight -= demoted.weight;
+            probation.addLast( demoted );
+            demoted.policyQueue = PROBATION;
+        }
+    }
+
+    /**
+     * Admits the candidate if it is estimated to be used more often than the victim. A warm candidate is occasionally
+     * admitted at random so an attacker cannot pin the victim by inflating its frequency.
+     */
+    private boolean admit( SessionEntry candidate, SessionEntry victim ) {
+        int candidateFrequency = sketch.frequency( hash( candidate ) );
+        int victimFrequency = sketch.frequency( hash( victim ) );
+        if ( candidateFrequency > victimFrequency ) {
+            return true;
+        }
+        return candidateFrequency >= ADMIT_HASH_DOS_THRESHOLD && ThreadLocalRandom.current( ).nextInt( 128 ) == 0;
+    }
+
+    private static int hash( SessionEntry entry ) {
+        return entry.getSessionId( ).hashCode( );
+    }
+}
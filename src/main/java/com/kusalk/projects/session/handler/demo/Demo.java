@@ -1,9 +1,13 @@
 package com.kusalk.projects.session.handler.demo;
 
 import com.kusalk.projects.session.handler.SessionServices;
+import com.kusalk.projects.session.handler.codec.BinaryMementoCodec;
+import com.kusalk.projects.session.handler.codec.CompressingMementoCodec;
+import com.kusalk.projects.session.handler.codec.MementoCodec;
 import com.kusalk.projects.session.handler.containers.ExternalSessionContainer;
 import com.kusalk.projects.session.handler.external.sources.SessionFileSource;
 import com.kusalk.projects.session.handler.session.Session;
+import com.kusalk.projects.session.handler.session.SessionTypeRegistry;
 import com.kusalk.projects.session.handler.util.SessionResponse;
 
 /**
@@ -14,14 +18,19 @@ import com.kusalk.projects.session.handler.util.SessionResponse;
  */
 public class Demo {
 
+    private static final MementoCodec MEMENTO_CODEC = CompressingMementoCodec
+            .builder( new BinaryMementoCodec( ).register( new PersonMementoSchema( ) ) )
+            .build( );
+
     public static void main( String[] args ) {
+        SessionTypeRegistry.getInstance( ).register( PersonSession.class, PersonSession::new );
         writeToExternalSource( );
         readSession( );
     }
 
     public static void writeToExternalSource( ) {
-        SessionServices sessionServices = new SessionServices( new ExternalSessionContainer( new SessionFileSource( ) ) );
-        SessionResponse<String> session = sessionServices.createSession( "com.kusalk.projects.session.handler.demo.PersonSession", 1500 );
+        SessionServices sessionServices = new SessionServices( new ExternalSessionContainer( new SessionFileSource( MEMENTO_CODEC ) ) );
+        SessionResponse<String> session = sessionServices.createSession( PersonSession.class, 1500 );
         if ( session.isSuccess( ) ) {
             SessionResponse<Session> sessionSessionResponse = sessionServices.loadSession( session.getData( ) );
             if ( sessionSessionResponse.isSuccess( ) ) {
@@ -46,7 +55,7 @@ public class Demo {
     }
 
     public static void readSession( ) {
-        SessionServices sessionServices = new SessionServices( new ExternalSessionContainer( new SessionFileSource( ) ) );
+        SessionServices sessionServices = new SessionServices( new ExternalSessionContainer( new SessionFileSource( MEMENTO_CODEC ) ) );
         SessionResponse<Session> sessionSessionResponse = sessionServices.loadSession( "d1e0b149-057b-4bae-84d8-73a0ded227d4" );
         if ( sessionSessionResponse.isSuccess( ) ) {
             Session sessionData = sessionSessionResponse.getData( );
@@ -10,6 +10,8 @@ import java.io.Serializable;
  */
 public class Person implements Serializable {
 
+    private static final long serialVersionUID = 3316972999273394068L;
+
     private String name;
     private int age;
     private int socialSecurityNumber;
@@ -10,6 +10,8 @@ import com.kusalk.projects.session.handler.session.SessionMemento;
  */
 public class PersonMemento extends SessionMemento {
 
+    private static final long serialVersionUID = -8676164944664247715L;
+
     private Person person;
 
     public Person getPerson( ) {
@@ -0,0 +1,51 @@
+package com.kusalk.projects.session.handler.demo;
+
+import com.kusalk.projects.session.handler.codec.BinaryReader;
+import com.kusalk.projects.session.handler.codec.BinaryWriter;
+import com.kusalk.projects.session.handler.codec.MementoSchema;
+
+import java.io.IOException;
+
+/**
+ * Demo binary schema of the {@link PersonMemento}
+ */
+public class PersonMementoSchema implements MementoSchema<PersonMemento> {
+
+    public static final int TYPE_ID = 1;
+
+    @Override
+    public int getTypeId( ) {
+        return TYPE_ID;
+    }
+
+    @Override
+    public Class<PersonMemento> getMementoClass( ) {
+        return PersonMemento.class;
+    }
+
+    @Override
+    public int getVersion( ) {
+        return 1;
+    }
+
+    @Override
+    public void write( PersonMemento memento, BinaryWriter writer ) {
+        Person person = memento.getPerson( );
+        writer.writeBoolean( person != null );
+        if ( person != null ) {
+            writer.writeString( person.getName( ) )
+                    .writeSignedVarInt( person.getAge( ) )
+                    .writeSignedVarInt( person.getSocialSecurityNumber( ) )
+                    .writeString( person.getAddress( ) );
+        }
+    }
+
+    @Override
+    public PersonMemento read( BinaryReader reader, int version ) throws IOException {
+        PersonMemento memento = new PersonMemento( );
+        if ( reader.readBoolean( ) ) {
+            memento.setPerson( new Person( reader.readString( ), reader.readSignedVarInt( ), reader.readSignedVarInt( ), reader.readString( ) ) );
+        }
+        return memento;
+    }
+}
@@ -22,7 +22,8 @@ public class PersonSession extends Session {
     @Override
     public SessionMemento createMemento( ) {
         PersonMemento memento = new PersonMemento( );
-        memento.setPerson( person );
+        // The memento is serialized outside the session lock, so it gets its own copy of the person
+        memento.setPerson( person != null ? new Person( person.getName( ), person.getAge( ), person.getSocialSecurityNumber( ), person.getAddress( ) ) : null );
         return memento;
     }
 
@@ -32,5 +33,11 @@ public class PersonSession extends Session {
 
     public void setPerson( Person person ) {
         this.person = person;
+        markModified( );
+    }
+
+    @Override
+    protected boolean tracksModifications( ) {
+        return true;
     }
 }
@@ -0,0 +1,254 @@
+package com.kusalk.projects.session.handler.durability;
+
+import com.kusalk.projects.session.handler.id.SessionId;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A record of the session journal or of a checkpoint. Every record is framed with its length and the CRC32 of its
+ * body, so a record torn by a crash is detected when the journal is replayed.
+ * <p>
+ * Every record carries a log sequence number. Sessions written to a checkpoint while the journal keeps running carry
+ * the sequence number current when they were snapshotted, so records of the same session which are older than the
+ * checkpoint are skipped on replay.
+ */
+final class JournalRecord {
+
+    static final byte CREATE = 1;
+    static final byte UPDATE = 2;
+    static final byte TOUCH = 3;
+    static final byte REMOVE = 4;
+    static final byte END = 5;
+
+    private static final int MAX_RECORD_BYTES = 64 * 1024 * 1024;
+
+    private final byte type;
+    private final long lsn;
+    private final SessionId sessionId;
+    private final long timeoutInSeconds;
+    private final long lastLoadedMillis;
+    private final String sessionClass;
+    private final byte[] memento;
+    private final List<SessionId> touchedSessionIds;
+
+    private JournalRecord( byte type, long lsn, SessionId sessionId, long timeoutInSeconds, long lastLoadedMillis, String sessionClass,
+                           byte[] memento, List<SessionId> touchedSessionIds ) {
+        this.type = type;
+        this.lsn = lsn;
+        this.sessionId = sessionId;
+        this.timeoutInSeconds = timeoutInSeconds;
+        this.lastLoadedMillis = lastLoadedMillis;
+        this.sessionClass = sessionClass;
+        this.memento = memento;
+        this.touchedSessionIds = touchedSessionIds;
+    }
+
+    /**
+     * A session created in the container, recovered without state
+     */
+    static JournalRecord create( long lsn, SessionId sessionId, long timeoutInSeconds, long createdAtMillis, String sessionClass ) {
+        return new JournalRecord( CREATE, lsn, sessionId, timeoutInSeconds, createdAtMillis, sessionClass, null, Collections.emptyList( ) );
+    }
+
+    /**
+     * The full state of a session, journaled on request or written to a checkpoint
+     */
+    static JournalRecord update( long lsn, SessionId sessionId, long timeoutInSeconds, long lastLoadedMillis, String sessionClass, byte[] memento ) {
+        return new JournalRecord( UPDATE, lsn, sessionId, timeoutInSeconds, lastLoadedMillis, sessionClass, memento, Collections.emptyList( ) );
+    }
+
+    /**
+     * Sessions loaded since the previous commit, all recorded with the time of the commit
+     */
+    static JournalRecord touch( long lsn, long loadedAtMillis, List<SessionId> sessionIds ) {
+        return new JournalRecord( TOUCH, lsn, null, 0, loadedAtMillis, null, null, sessionIds );
+    }
+
+    static JournalRecord remove( long lsn, SessionId sessionId ) {
+        return new JournalRecord( REMOVE, lsn, sessionId, 0, 0, null, null, Collections.emptyList( ) );
+    }
+
+    /**
+     * The last record of a complete checkpoint
+     */
+    static JournalRecord end( long lsn, int sessionCount ) {
+        return new JournalRecord( END, lsn, null, sessionCount, 0, null, null, Collections.emptyList( ) );
+    }
+
+    byte getType( ) {
+        return type;
+    }
+
+    long getLsn( ) {
+        return lsn;
+    }
+
+    SessionId getSessionId( ) {
+        return sessionId;
+    }
+
+    long getTimeoutInSeconds( ) {
+        return timeoutInSeconds;
+    }
+
+    long getLastLoadedMillis( ) {
+        return lastLoadedMillis;
+    }
+
+    String getSessionClass( ) {
+        return sessionClass;
+    }
+
+    /**
+     * Returns the encoded memento of an update
+     *
+     * @return memento bytes or {@code null} for other records
+     */
+    byte[] getMemento( ) {
+        return memento;
+    }
+
+    /**
+     * Returns the number of sessions of a checkpoint trailer
+     *
+     * @return session count
+     */
+    int getSessionCount( ) {
+        return ( int ) timeoutInSeconds;
+    }
+
+    List<SessionId> getTouchedSessionIds( ) {
+        return touchedSessionIds;
+    }
+
+    /**
+     * Encodes the record with its frame
+     *
+     * @return framed record
+     */
+    byte[] encode( ) {
+        try {
+            ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream( memento != null ? memento.length + 64 : 64 );
+            DataOutputStream body = new DataOutputStream( bodyBytes );
+            body.writeByte( type );
+            body.writeLong( lsn );
+            switch ( type ) {
+                case CREATE:
+                case UPDATE:
+                    writeSessionId( body, sessionId );
+                    body.writeLong( timeoutInSeconds );
+                    body.writeLong( lastLoadedMillis );
+                    body.writeUTF( sessionClass );
+                    if ( type == UPDATE ) {
+                        body.writeInt( memento.length );
+                        body.write( memento );
+                    }
+                    break;
+                case TOUCH:
+                    body.writeLong( lastLoadedMillis );
+                    body.writeInt( touchedSessionIds.size( ) );
+                    for ( SessionId touchedSessionId : touchedSessionIds ) {
+                        writeSessionId( body, touchedSessionId );
+                    }
+                    break;
+                case REMOVE:
+                    writeSessionId( body, sessionId );
+                    break;
+                default:
+                    body.writeLong( timeoutInSeconds );
+            }
+            byte[] encodedBody = bodyBytes.toByteArray( );
+            CRC32 crc = new CRC32( );
+            crc.update( encodedBody );
+
+            ByteArrayOutputStream frameBytes = new ByteArrayOutputStream( encodedBody.length + 8 );
+            DataOutputStream frame = new DataOutputStream( frameBytes );
+            frame.writeInt( encodedBody.length );
+            frame.writeInt( ( int ) crc.getValue( ) );
+            frame.write( encodedBody );
+            return frameBytes.toByteArray( );
+        } catch ( IOException e ) {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    /**
+     * Reads the next record
+     *
+     * @param in stream positioned at a record frame
+     * @return record or {@code null} at the end of the stream
+     * @throws IOException if the record is torn or corrupt
+     */
+    static JournalRecord read( DataInputStream in ) throws IOException {
+        int length;
+        try {
+            length = in.readInt( );
+        } catch ( EOFException e ) {
+            return null;
+        }
+        int checksum = in.readInt( );
+        if ( length <= 0 || length > MAX_RECORD_BYTES ) {
+            throw new IOException( "Corrupt journal record length : " + length );
+        }
+        byte[] encodedBody = new byte[length];
+        in.readFully( encodedBody );
+        CRC32 crc = new CRC32( );
+        crc.update( encodedBody );
+        if ( ( int ) crc.getValue( ) != checksum ) {
+            throw new IOException( "Journal record checksum mismatch" );
+        }
+
+        DataInputStream body = new DataInputStream( new ByteArrayInputStream( encodedBody ) );
+        byte type = body.readByte( );
+        long lsn = body.readLong( );
+        switch ( type ) {
+            case CREATE:
+            case UPDATE: {
+                SessionId sessionId = readSessionId( body );
+                long timeoutInSeconds = body.readLong( );
+                long lastLoadedMillis = body.readLong( );
+                String sessionClass = body.readUTF( );
+                if ( type == CREATE ) {
+                    return create( lsn, sessionId, timeoutInSeconds, lastLoadedMillis, sessionClass );
+                }
+                byte[] memento = new byte[body.readInt( )];
+                body.readFully( memento );
+                return update( lsn, sessionId, timeoutInSeconds, lastLoadedMillis, sessionClass, memento );
+            }
+            case TOUCH: {
+                long loadedAtMillis = body.readLong( );
+                int count = body.readInt( );
+                List<SessionId> sessionIds = new ArrayList<>( count );
+                for ( int i = 0; i < count; i++ ) {
+                    sessionIds.add( readSessionId( body ) );
+                }
+                return touch( lsn, loadedAtMillis, sessionIds );
+            }
+            case REMOVE:
+                return remove( lsn, readSessionId( body ) );
+            case END:
+                return end( lsn, ( int ) body.readLong( ) );
+            default:
+                throw new IOException( "Unknown journal record type : " + type );
+        }
+    }
+
+    private static void writeSessionId( DataOutputStream out, SessionId sessionId ) throws IOException {
+        out.writeLong( sessionId.getMostSignificantBits( ) );
+        out.writeLong( sessionId.getLeastSignificantBits( ) );
+    }
+
+    private static SessionId readSessionId( DataInputStream in ) throws IOException {
+        return new SessionId( in.readLong( ), in.readLong( ) );
+    }
+}
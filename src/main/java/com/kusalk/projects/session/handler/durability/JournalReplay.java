@@ -0,0 +1,217 @@
+package com.kusalk.projects.session.handler.durability;
+
+import com.kusalk.projects.session.handler.id.SessionId;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Rebuilds the state of the journaled sessions from the latest complete checkpoint and the journal segments written
+ * after it.
+ * <p>
+ * Checkpoints are taken while sessions keep changing, so a checkpoint and the segments replayed on top of it can hold
+ * records of the same session in either order. Every record carries its log sequence number and the record with the
+ * highest number wins. Removed sessions are kept as tombstones while replaying so an older record of the session
+ * does not bring it back.
+ */
+final class JournalReplay {
+
+    private static final Logger LOGGER = Logger.getLogger( JournalReplay.class.getName( ) );
+
+    private final Map<SessionId, RecoveredSession> sessions = new HashMap<>( );
+    private long lastLsn = -1;
+    private long lastSegment = -1;
+
+    private JournalReplay( ) {
+    }
+
+    /**
+     * Replays the journal directory
+     *
+     * @param directory journal directory
+     * @return replayed state
+     * @throws IOException if the directory could not be listed
+     */
+    static JournalReplay replay( Path directory ) throws IOException {
+        List<Long> checkpoints = listFiles( directory, "checkpoint-", ".ckp" );
+        List<Long> segments = listFiles( directory, "journal-", ".log" );
+
+        JournalReplay replay = new JournalReplay( );
+        long firstSegment = 0;
+        for ( int i = checkpoints.size( ) - 1; i >= 0; i-- ) {
+            Path checkpoint = SessionCheckpoint.checkpointPath( directory, checkpoints.get( i ) );
+            JournalReplay candidate = new JournalReplay( );
+            try {
+                SessionCheckpoint header = SessionCheckpoint.read( checkpoint, candidate::apply );
+                candidate.lastLsn = Math.max( candidate.lastLsn, header.getLsn( ) );
+                firstSegment = header.getSegment( );
+                replay = candidate;
+                break;
+            } catch ( IOException e ) {
+                LOGGER.log( Level.WARNING, e, ( ) -> "Skipped unusable checkpoint " + checkpoint );
+            }
+        }
+        for ( long segment : segments ) {
+            if ( segment >= firstSegment ) {
+                replay.replaySegment( SessionJournal.segmentPath( directory, segment ) );
+            }
+        }
+        replay.lastSegment = Math.max( segments.isEmpty( ) ? -1 : segments.get( segments.size( ) - 1 ),
+                checkpoints.isEmpty( ) ? -1 : checkpoints.get( checkpoints.size( ) - 1 ) );
+        replay.sessions.values( ).removeIf( RecoveredSession::isRemoved );
+        return replay;
+    }
+
+    /**
+     * @return sessions which were live when the journal was last written
+     */
+    Map<SessionId, RecoveredSession> getSessions( ) {
+        return sessions;
+    }
+
+    /**
+     * @return highest log sequence number found, or -1 if the journal is empty
+     */
+    long getLastLsn( ) {
+        return lastLsn;
+    }
+
+    /**
+     * @return highest segment or checkpoint number found, or -1 if the journal is empty
+     */
+    long getLastSegment( ) {
+        return lastSegment;
+    }
+
+    /**
+     * Lists the numbers of the journal files with the given prefix and suffix in ascending order
+     */
+    static List<Long> listFiles( Path directory, String prefix, String suffix ) throws IOException {
+        List<Long> numbers = new ArrayList<>( );
+        try ( DirectoryStream<Path> files = Files.newDirectoryStream( directory, prefix + "*" + suffix ) ) {
+            for ( Path file : files ) {
+                String name = file.getFileName( ).toString( );
+                try {
+                    numbers.add( Long.parseLong( name.substring( prefix.length( ), name.length( ) - suffix.length( ) ) ) );
+                } catch ( NumberFormatException e ) {
+                    LOGGER.log( Level.WARNING, "Ignored unexpected file {0} in the journal directory", file );
+                }
+            }
+        }
+        Collections.sort( numbers );
+        return numbers;
+    }
+
+    private void replaySegment( Path segment ) {
+        try ( DataInputStream in = new DataInputStream( new BufferedInputStream( Files.newInputStream( segment ), 64 * 1024 ) ) ) {
+            JournalRecord record;
+            while ( ( record = JournalRecord.read( in ) ) != null ) {
+                apply( record );
+            }
+        } catch ( IOException e ) {
+            // A crash can leave the last commit of a segment half written, the records before it are still complete
+            LOGGER.log( Level.WARNING, e, ( ) -> "Stopped replaying journal segment " + segment + " at a torn record" );
+        }
+    }
+
+    private void apply( JournalRecord record ) {
+        lastLsn = Math.max( lastLsn, record.getLsn( ) );
+        SessionId sessionId = record.getSessionId( );
+        switch ( record.getType( ) ) {
+            case JournalRecord.CREATE:
+            case JournalRecord.UPDATE: {
+                RecoveredSession current = sessions.get( sessionId );
+                if ( current == null || current.lsn < record.getLsn( ) ) {
+                    RecoveredSession recovered = new RecoveredSession( record );
+                    if ( current != null && !current.isRemoved( ) ) {
+                        recovered.lastLoadedMillis = Math.max( recovered.lastLoadedMillis, current.lastLoadedMillis );
+                        if ( recovered.memento == null ) {
+                            recovered.memento = current.memento;
+                        }
+                    }
+                    sessions.put( sessionId, recovered );
+                } else if ( !current.isRemoved( ) ) {
+                    current.lastLoadedMillis = Math.max( current.lastLoadedMillis, record.getLastLoadedMillis( ) );
+                }
+                break;
+            }
+            case JournalRecord.TOUCH:
+                for ( SessionId touchedSessionId : record.getTouchedSessionIds( ) ) {
+                    RecoveredSession current = sessions.get( touchedSessionId );
+                    if ( current != null && !current.isRemoved( ) ) {
+                        current.lastLoadedMillis = Math.max( current.lastLoadedMillis, record.getLastLoadedMillis( ) );
+                    }
+                }
+                break;
+            case JournalRecord.REMOVE: {
+                RecoveredSession current = sessions.get( sessionId );
+                if ( current == null || current.lsn < record.getLsn( ) ) {
+                    sessions.put( sessionId, new RecoveredSession( record ) );
+                }
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    /**
+     * State of a session rebuilt from the journal
+     */
+    static final class RecoveredSession {
+
+        private final long lsn;
+        private final boolean removed;
+        private final String sessionClass;
+        private final long timeoutInSeconds;
+        private long lastLoadedMillis;
+        private byte[] memento;
+
+        private RecoveredSession( JournalRecord record ) {
+            this.lsn = record.getLsn( );
+            this.removed = record.getType( ) == JournalRecord.REMOVE;
+            this.sessionClass = record.getSessionClass( );
+            this.timeoutInSeconds = record.getTimeoutInSeconds( );
+            this.lastLoadedMillis = record.getLastLoadedMillis( );
+            this.memento = record.getMemento( );
+        }
+
+        boolean isRemoved( ) {
+            return removed;
+        }
+
+        String getSessionClass( ) {
+            return sessionClass;
+        }
+
+        long getTimeoutInSeconds( ) {
+            return timeoutInSeconds;
+        }
+
+        long getLastLoadedMillis( ) {
+            return lastLoadedMillis;
+        }
+
+        /**
+         * @return encoded memento, or {@code null} for a session which was never journaled with its state
+         */
+        byte[] getMemento( ) {
+            return memento;
+        }
+
+        boolean isExpired( long now ) {
+            return timeoutInSeconds > 0 && lastLoadedMillis + timeoutInSeconds * 1000 < now;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.kusalk.projects.session.handler.durability;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Checkpoint file holding the full state of every session of an internal container. A checkpoint names the journal
+ * segment which was started when it was taken, so recovery replays that segment and the ones after it on top of the
+ * checkpoint.
+ * <p>
+ * A checkpoint is written to a temporary file, forced to disk and then moved in place, and it ends with a trailer
+ * carrying the number of sessions. A checkpoint without its trailer is never used.
+ */
+final class SessionCheckpoint {
+
+    static final String CHECKPOINT_FILE_FORMAT = "checkpoint-%020d.ckp";
+
+    private static final int MAGIC = 0x53434B50;
+    private static final int FORMAT_VERSION = 1;
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final long segment;
+    private final long lsn;
+
+    private SessionCheckpoint( long segment, long lsn ) {
+        this.segment = segment;
+        this.lsn = lsn;
+    }
+
+    static Path checkpointPath( Path directory, long segment ) {
+        return directory.resolve( String.format( CHECKPOINT_FILE_FORMAT, segment ) );
+    }
+
+    /**
+     * @return journal segment replayed on top of the checkpoint
+     */
+    long getSegment( ) {
+        return segment;
+    }
+
+    /**
+     * @return log sequence number at which the checkpoint was started
+     */
+    long getLsn( ) {
+        return lsn;
+    }
+
+    /**
+     * Writes a checkpoint
+     *
+     * @param directory journal directory
+     * @param segment   journal segment replayed on top of the checkpoint
+     * @param lsn       log sequence number at which the checkpoint was started
+     * @param writer    writes the session records of the checkpoint to the consumer it is handed, and returns the number
+     *                  of records written
+     * @return path of the written checkpoint
+     * @throws IOException if the checkpoint could not be written
+     */
+    static Path write( Path directory, long segment, long lsn, CheckpointWriter writer ) throws IOException {
+        Path checkpoint = checkpointPath( directory, segment );
+        Path temporary = checkpoint.resolveSibling( checkpoint.getFileName( ) + ".tmp" );
+        try ( FileChannel channel = FileChannel.open( temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING ) ) {
+            OutputStream out = new BufferedOutputStream( Channels.newOutputStream( channel ), BUFFER_BYTES );
+            DataOutputStream header = new DataOutputStream( out );
+            header.writeInt( MAGIC );
+            header.writeInt( FORMAT_VERSION );
+            header.writeLong( segment );
+            header.writeLong( lsn );
+            IOException[] failure = new IOException[1];
+            int count = writer.write( record -> {
+                if ( failure[0] == null ) {
+                    try {
+                        out.write( record.encode( ) );
+                    } catch ( IOException e ) {
+                        failure[0] = e;
+                    }
+                }
+            } );
+            if ( failure[0] != null ) {
+                throw failure[0];
+            }
+            out.write( JournalRecord.end( lsn, count ).encode( ) );
+            out.flush( );
+            channel.force( true );
+        } catch ( IOException e ) {
+            Files.deleteIfExists( temporary );
+            throw e;
+        }
+        return Files.move( temporary, checkpoint, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+    }
+
+    /**
+     * Reads a checkpoint
+     *
+     * @param checkpoint checkpoint file
+     * @param reader     consumer of the session records of the checkpoint
+     * @return checkpoint header
+     * @throws IOException if the checkpoint is unreadable, corrupt or incomplete
+     */
+    static SessionCheckpoint read( Path checkpoint, Consumer<JournalRecord> reader ) throws IOException {
+        try ( InputStream in = new BufferedInputStream( Files.newInputStream( checkpoint ), BUFFER_BYTES ) ) {
+            DataInputStream data = new DataInputStream( in );
+            if ( data.readInt( ) != MAGIC || data.readInt( ) != FORMAT_VERSION ) {
+                throw new IOException( "Not a session checkpoint : " + checkpoint );
+            }
+            SessionCheckpoint header = new SessionCheckpoint( data.readLong( ), data.readLong( ) );
+            int count = 0;
+            JournalRecord record;
+            while ( ( record = JournalRecord.read( data ) ) != null ) {
+                if ( record.getType( ) == JournalRecord.END ) {
+                    if ( record.getSessionCount( ) != count ) {
+                        throw new IOException( "Checkpoint holds " + count + " sessions but its trailer expects " + record.getSessionCount( ) );
+                    }
+                    return header;
+                }
+                reader.accept( record );
+                count++;
+            }
+            throw new IOException( "Checkpoint is incomplete : " + checkpoint );
+        }
+    }
+
+    /**
+     * Writes the session records of a checkpoint
+     */
+    @FunctionalInterface
+    interface CheckpointWriter {
+
+        int write( Consumer<JournalRecord> out ) throws IOException;
+    }
+}
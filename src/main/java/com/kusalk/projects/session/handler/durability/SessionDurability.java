@@ -0,0 +1,465 @@
+package com.kusalk.projects.session.handler.durability;
+
+import com.kusalk.projects.session.handler.codec.JavaSerializationMementoCodec;
+import com.kusalk.projects.session.handler.codec.MementoCodec;
+import com.kusalk.projects.session.handler.containers.InternalSessionContainer;
+import com.kusalk.projects.session.handler.containers.SessionChangeListener;
+import com.kusalk.projects.session.handler.id.SessionId;
+import com.kusalk.projects.session.handler.metrics.SessionMetrics;
+import com.kusalk.projects.session.handler.metrics.SessionTimer;
+import com.kusalk.projects.session.handler.session.Session;
+import com.kusalk.projects.session.handler.session.SessionMemento;
+import com.kusalk.projects.session.handler.session.SessionTypeRegistry;
+import com.kusalk.projects.session.handler.util.SessionCode;
+import com.kusalk.projects.session.handler.util.SessionResponse;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the sessions of an {@link InternalSessionContainer} durable across a crash of the process, so a restart
+ * rebuilds the container from local files instead of losing it or reading every session back from the external
+ * source.
+ * <ul>
+ * <li>Created and removed sessions are written to an append-only journal. Loads only extend the expiry of a session,
+ * so they are batched into a single touch record per group commit.</li>
+ * <li>Sessions created or loaded are tracked. Before every group commit, the state of each tracked session whose
+ * {@link Session#getVersion()} moved since it was last journaled is journaled. Sessions which are neither loaded nor
+ * modified between two commits are no longer tracked until their next load. Sessions which do not track their
+ * modifications never move their version, so they are only journaled by {@link #journalUpdate(Session)}.</li>
+ * <li>{@link #journalUpdate(Session)} journals the state of a session right away and returns once it is committed, for
+ * a change which must be durable before the application continues.</li>
+ * <li>Journal records are group committed: every commit interval the queued records are written and forced to disk
+ * together.</li>
+ * <li>A background thread checkpoints the state of every session of the container. A checkpoint starts a new journal
+ * segment and deletes the segments and checkpoints it replaces.</li>
+ * <li>{@link #start(InternalSessionContainer)} rebuilds the container from the latest checkpoint and the journal written
+ * after it before it starts journaling.</li>
+ * </ul>
+ * Restores of sessions from an external source are not journaled, the external source already holds their state, but
+ * restored sessions are written to the checkpoints like any other session. Recovered sessions are not marked persisted,
+ * so their next save to an external source writes them in full.
+ */
+public class SessionDurability implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger( SessionDurability.class.getName( ) );
+
+    public static final long DEFAULT_GROUP_COMMIT_MILLIS = 10;
+    public static final long DEFAULT_CHECKPOINT_INTERVAL_MILLIS = 300000;
+
+    private final Path directory;
+    private final MementoCodec mementoCodec;
+    private final long groupCommitMillis;
+    private final boolean forceOnCommit;
+    private final long checkpointIntervalMillis;
+
+    private final Object checkpointSignal = new Object( );
+    private final ConcurrentHashMap<SessionId, TrackedSession> trackedSessions = new ConcurrentHashMap<>( );
+    private InternalSessionContainer container;
+    private SessionJournal journal;
+    private Thread checkpointThread;
+    private volatile boolean closed;
+
+    private SessionDurability( Builder builder ) {
+        this.directory = builder.directory;
+        this.mementoCodec = builder.mementoCodec;
+        this.groupCommitMillis = builder.groupCommitMillis;
+        this.forceOnCommit = builder.forceOnCommit;
+        this.checkpointIntervalMillis = builder.checkpointIntervalMillis;
+    }
+
+    /**
+     * Creates a builder for a durability journal kept in the provided directory
+     *
+     * @param directory directory of the journal segments and checkpoints
+     * @return {@link Builder} builder
+     */
+    public static Builder builder( Path directory ) {
+        return new Builder( directory );
+    }
+
+    /**
+     * Recovers the sessions journaled in the directory into the container, then journals the changes of the container.
+     * Sessions which expired while the process was down are not recovered.
+     *
+     * @param internalSessionContainer container to be recovered and journaled
+     * @return {@link SessionResponse<Integer>} session response with the number of recovered sessions
+     */
+    public synchronized SessionResponse<Integer> start( InternalSessionContainer internalSessionContainer ) {
+        if ( journal != null || closed ) {
+            return new SessionResponse<>( "Session durability is already started", SessionCode.ERROR, null );
+        }
+        try {
+            Files.createDirectories( directory );
+            JournalReplay replay = JournalReplay.replay( directory );
+            int recovered = recover( internalSessionContainer, replay.getSessions( ) );
+
+            this.container = internalSessionContainer;
+            this.journal = new SessionJournal( directory, replay.getLastSegment( ) + 1, replay.getLastLsn( ) + 1, groupCommitMillis, forceOnCommit,
+                    this::journalModifiedSessions );
+            internalSessionContainer.setChangeListener( new JournalingListener( journal, trackedSessions ) );
+
+            this.checkpointThread = new Thread( this::runCheckpoints );
+            checkpointThread.setDaemon( true );
+            checkpointThread.setName( "session-checkpoint-thread" );
+            checkpointThread.setUncaughtExceptionHandler( ( t, e ) -> LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred within the session checkpoint thread" ) );
+            checkpointThread.start( );
+
+            LOGGER.log( Level.INFO, "Recovered {0} sessions into container {1} from {2}", new Object[]{ recovered, internalSessionContainer.getName( ), directory } );
+            return new SessionResponse<>( "Recovered " + recovered + " sessions from the session journal", SessionCode.SUCCESS, recovered );
+        } catch ( IOException | RuntimeException e ) {
+            LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred while recovering sessions from " + directory );
+            return new SessionResponse<>( "Error recovering sessions from the session journal : " + e.getMessage( ), SessionCode.ERROR, null );
+        }
+    }
+
+    /**
+     * Journals the current state of the session without waiting for the session to be found modified before a group
+     * commit. The state is captured under the write lock of the session, and the returned future completes once the
+     * record is forced to disk with the next group commit.
+     *
+     * @param session session held by the journaled container
+     * @return future of a {@link SessionResponse<Boolean>} session response, which is {@code false} if the session is no
+     * longer held by the container
+     */
+    public CompletableFuture<SessionResponse<Boolean>> journalUpdate( Session session ) {
+        SessionJournal currentJournal = journal;
+        if ( currentJournal == null || closed ) {
+            return CompletableFuture.completedFuture( new SessionResponse<>( "Session durability is not started", SessionCode.ERROR, false ) );
+        }
+        JournalRecord record;
+        long version = session.getVersion( );
+        try {
+            record = snapshot( session, currentJournal, true );
+        } catch ( IOException | RuntimeException e ) {
+            LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred while journaling session " + session.getSessionId( ) );
+            return CompletableFuture.completedFuture( new SessionResponse<>( "Error journaling session : " + e.getMessage( ), SessionCode.ERROR, false ) );
+        }
+        if ( record == null ) {
+            return CompletableFuture.completedFuture( new SessionResponse<>( "Session is not held by the journaled container", SessionCode.SUCCESS, false ) );
+        }
+        TrackedSession tracked = trackedSessions.get( session.getId( ) );
+        if ( tracked != null && tracked.session == session ) {
+            tracked.journaledVersion = version;
+        }
+        return currentJournal.append( record ).handle( ( committed, error ) -> error == null
+                ? new SessionResponse<>( "Session journaled", SessionCode.SUCCESS, true )
+                : new SessionResponse<>( "Error journaling session : " + error.getMessage( ), SessionCode.ERROR, false ) );
+    }
+
+    /**
+     * Writes a checkpoint of every session of the container and deletes the journal segments and checkpoints it
+     * replaces. Sessions keep changing while the checkpoint is written, their later changes are replayed from the new
+     * journal segment.
+     *
+     * @return {@link SessionResponse<Boolean>} session response
+     */
+    public SessionResponse<Boolean> checkpoint( ) {
+        SessionJournal currentJournal = journal;
+        if ( currentJournal == null || closed ) {
+            return new SessionResponse<>( "Session durability is not started", SessionCode.ERROR, false );
+        }
+        synchronized ( checkpointSignal ) {
+            long start = System.nanoTime( );
+            try {
+                long segment = currentJournal.rotate( );
+                long lsn = currentJournal.nextLsn( );
+                SessionCheckpoint.write( directory, segment, lsn, out -> {
+                    AtomicInteger count = new AtomicInteger( );
+                    try {
+                        container.forEachSession( session -> {
+                            try {
+                                JournalRecord record = snapshot( session, currentJournal, true );
+                                if ( record != null ) {
+                                    out.accept( record );
+                                    count.incrementAndGet( );
+                                }
+                            } catch ( IOException e ) {
+                                throw new UncheckedIOException( e );
+                            }
+                        } );
+                    } catch ( UncheckedIOException e ) {
+                        throw e.getCause( );
+                    }
+                    return count.get( );
+                } );
+                deleteReplacedFiles( segment );
+                SessionMetrics.record( SessionTimer.CHECKPOINT, System.nanoTime( ) - start );
+                return new SessionResponse<>( "Checkpoint written", SessionCode.SUCCESS, true );
+            } catch ( IOException | RuntimeException e ) {
+                LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred while writing a session checkpoint to " + directory );
+                return new SessionResponse<>( "Error writing checkpoint : " + e.getMessage( ), SessionCode.ERROR, false );
+            }
+        }
+    }
+
+    /**
+     * Stops journaling the container and commits the records journaled so far
+     */
+    @Override
+    public synchronized void close( ) {
+        if ( closed ) {
+            return;
+        }
+        closed = true;
+        synchronized ( checkpointSignal ) {
+            checkpointSignal.notifyAll( );
+        }
+        if ( journal != null ) {
+            container.setChangeListener( null );
+            journal.close( );
+        }
+    }
+
+    private int recover( InternalSessionContainer internalSessionContainer, Map<SessionId, JournalReplay.RecoveredSession> sessions ) {
+        long now = System.currentTimeMillis( );
+        AtomicInteger recovered = new AtomicInteger( );
+        sessions.entrySet( ).parallelStream( ).forEach( entry -> {
+            JournalReplay.RecoveredSession recoveredSession = entry.getValue( );
+            if ( recoveredSession.isExpired( now ) ) {
+                return;
+            }
+            try {
+                Session session = SessionTypeRegistry.getInstance( ).resolve( recoveredSession.getSessionClass( ) ).newSession( );
+                if ( recoveredSession.getMemento( ) != null ) {
+                    session.restore( mementoCodec.decode( recoveredSession.getMemento( ) ) );
+                }
+                session.setTimeoutInSeconds( recoveredSession.getTimeoutInSeconds( ) );
+                session.setLastLoadedTimestamp( recoveredSession.getLastLoadedMillis( ) );
+                if ( internalSessionContainer.recoverSession( entry.getKey( ), session ).isSuccess( ) ) {
+                    recovered.incrementAndGet( );
+                }
+            } catch ( ClassNotFoundException | IOException | RuntimeException e ) {
+                LOGGER.log( Level.WARNING, e, ( ) -> "Could not recover session " + entry.getKey( ) + " from the session journal" );
+            }
+        } );
+        return recovered.get( );
+    }
+
+    /**
+     * Journals the tracked sessions modified since they were last journaled and stops tracking the sessions which were
+     * neither loaded nor modified since the previous commit. Runs on the journal thread before every group commit.
+     * Sessions whose lock is held are journaled with a later commit, so the journal thread never waits for the
+     * application.
+     */
+    private void journalModifiedSessions( SessionJournal currentJournal ) {
+        for ( TrackedSession tracked : trackedSessions.values( ) ) {
+            Session session = tracked.session;
+            long version = session.getVersion( );
+            if ( version != tracked.journaledVersion ) {
+                try {
+                    JournalRecord record = snapshot( session, currentJournal, false );
+                    if ( record != null ) {
+                        currentJournal.append( record );
+                        // A change made while the snapshot was taken is journaled again with the next commit
+                        tracked.journaledVersion = version;
+                    }
+                } catch ( IOException | RuntimeException e ) {
+                    LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred while journaling session " + session.getSessionId( ) );
+                }
+            }
+            trackedSessions.computeIfPresent( session.getId( ), ( id, current ) -> {
+                if ( current != tracked ) {
+                    return current;
+                }
+                if ( current.loaded ) {
+                    current.loaded = false;
+                    return current;
+                }
+                return current.journaledVersion == session.getVersion( ) ? null : current;
+            } );
+        }
+    }
+
+    /**
+     * Captures the state of the session under its write lock
+     *
+     * @param wait whether to wait for the write lock, a session whose lock is held is skipped otherwise
+     * @return update record or {@code null} if the session is no longer held by the container or its lock was held
+     */
+    private JournalRecord snapshot( Session session, SessionJournal currentJournal, boolean wait ) throws IOException {
+        long lsn;
+        SessionMemento memento;
+        long lastLoadedMillis;
+        if ( wait ) {
+            session.startWritingSession( );
+        } else if ( !session.tryStartWritingSession( ) ) {
+            return null;
+        }
+        try {
+            lsn = currentJournal.nextLsn( );
+            memento = session.createMemento( );
+            memento.setSessionClass( );
+            memento.setSessionTimeoutInSeconds( session.getTimeoutInSeconds( ) );
+            lastLoadedMillis = session.getLastLoadedTimestamp( );
+        } finally {
+            session.endWritingSession( );
+        }
+        // A session removed before the sequence number was taken is journaled as removed after it, so it is skipped
+        if ( !container.containsSession( session.getId( ) ) ) {
+            return null;
+        }
+        return JournalRecord.update( lsn, session.getId( ), session.getTimeoutInSeconds( ), lastLoadedMillis, session.getClass( ).getName( ),
+                mementoCodec.encode( memento ) );
+    }
+
+    private void deleteReplacedFiles( long segment ) throws IOException {
+        for ( long replacedSegment : JournalReplay.listFiles( directory, "journal-", ".log" ) ) {
+            if ( replacedSegment < segment ) {
+                Files.deleteIfExists( SessionJournal.segmentPath( directory, replacedSegment ) );
+            }
+        }
+        for ( long replacedCheckpoint : JournalReplay.listFiles( directory, "checkpoint-", ".ckp" ) ) {
+            if ( replacedCheckpoint < segment ) {
+                Files.deleteIfExists( SessionCheckpoint.checkpointPath( directory, replacedCheckpoint ) );
+            }
+        }
+    }
+
+    private void runCheckpoints( ) {
+        while ( !closed ) {
+            synchronized ( checkpointSignal ) {
+                try {
+                    checkpointSignal.wait( checkpointIntervalMillis );
+                } catch ( InterruptedException e ) {
+                    LOGGER.log( Level.SEVERE, e.getMessage( ), e );
+                }
+            }
+            if ( !closed ) {
+                checkpoint( );
+            }
+        }
+    }
+
+    /**
+     * Journals the changes of the container and tracks the sessions which may be modified
+     */
+    private static final class JournalingListener implements SessionChangeListener {
+
+        private final SessionJournal journal;
+        private final ConcurrentHashMap<SessionId, TrackedSession> trackedSessions;
+
+        private JournalingListener( SessionJournal journal, ConcurrentHashMap<SessionId, TrackedSession> trackedSessions ) {
+            this.journal = journal;
+            this.trackedSessions = trackedSessions;
+        }
+
+        @Override
+        public void onCreated( Session session ) {
+            trackedSessions.put( session.getId( ), new TrackedSession( session ) );
+            journal.append( JournalRecord.create( journal.nextLsn( ), session.getId( ), session.getTimeoutInSeconds( ), session.getLastLoadedTimestamp( ),
+                    session.getClass( ).getName( ) ) );
+        }
+
+        @Override
+        public void onLoaded( Session session ) {
+            journal.touch( session.getId( ) );
+            trackedSessions.compute( session.getId( ), ( id, tracked ) -> {
+                if ( tracked == null || tracked.session != session ) {
+                    return new TrackedSession( session );
+                }
+                tracked.loaded = true;
+                return tracked;
+            } );
+        }
+
+        @Override
+        public void onRemoved( SessionId sessionId ) {
+            trackedSessions.remove( sessionId );
+            journal.append( JournalRecord.remove( journal.nextLsn( ), sessionId ) );
+        }
+    }
+
+    /**
+     * A session which may be modified, with the version of the state last journaled. The loaded flag is only changed
+     * while holding the map entry of the session.
+     */
+    private static final class TrackedSession {
+
+        private final Session session;
+        private volatile long journaledVersion;
+        private boolean loaded = true;
+
+        private TrackedSession( Session session ) {
+            this.session = session;
+            this.journaledVersion = session.getVersion( );
+        }
+    }
+
+    /**
+     * Builder of {@link SessionDurability} objects
+     */
+    public static final class Builder {
+
+        private final Path directory;
+        private MementoCodec mementoCodec = new JavaSerializationMementoCodec( );
+        private long groupCommitMillis = DEFAULT_GROUP_COMMIT_MILLIS;
+        private boolean forceOnCommit = true;
+        private long checkpointIntervalMillis = DEFAULT_CHECKPOINT_INTERVAL_MILLIS;
+
+        private Builder( Path directory ) {
+            if ( directory == null ) {
+                throw new IllegalArgumentException( "Journal directory is required" );
+            }
+            this.directory = directory;
+        }
+
+        /**
+         * @param mementoCodec codec of the session mementos written to the journal and checkpoints
+         * @return this builder
+         */
+        public Builder mementoCodec( MementoCodec mementoCodec ) {
+            if ( mementoCodec == null ) {
+                throw new IllegalArgumentException( "Memento codec is required" );
+            }
+            this.mementoCodec = mementoCodec;
+            return this;
+        }
+
+        /**
+         * @param groupCommitMillis maximum time a journal record waits before it is committed
+         * @return this builder
+         */
+        public Builder groupCommitMillis( long groupCommitMillis ) {
+            if ( groupCommitMillis <= 0 ) {
+                throw new IllegalArgumentException( "Group commit interval must be positive : " + groupCommitMillis );
+            }
+            this.groupCommitMillis = groupCommitMillis;
+            return this;
+        }
+
+        /**
+         * @param forceOnCommit whether every commit is forced to disk, without it a commit survives a crash of the
+         *                      process but not of the machine
+         * @return this builder
+         */
+        public Builder forceOnCommit( boolean forceOnCommit ) {
+            this.forceOnCommit = forceOnCommit;
+            return this;
+        }
+
+        /**
+         * @param checkpointIntervalMillis time between two background checkpoints
+         * @return this builder
+         */
+        public Builder checkpointIntervalMillis( long checkpointIntervalMillis ) {
+            if ( checkpointIntervalMillis <= 0 ) {
+                throw new IllegalArgumentException( "Checkpoint interval must be positive : " + checkpointIntervalMillis );
+            }
+            this.checkpointIntervalMillis = checkpointIntervalMillis;
+            return this;
+        }
+
+        public SessionDurability build( ) {
+            return new SessionDurability( this );
+        }
+    }
+}
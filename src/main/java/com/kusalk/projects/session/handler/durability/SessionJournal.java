@@ -0,0 +1,258 @@
+package com.kusalk.projects.session.handler.durability;
+
+import com.kusalk.projects.session.handler.id.SessionId;
+import com.kusalk.projects.session.handler.metrics.SessionMetrics;
+import com.kusalk.projects.session.handler.metrics.SessionTimer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only journal of the changes made to an internal session container, written to numbered segment files.
+ * <p>
+ * Records are encoded on the thread making the change and queued. A writer thread commits the queue every group
+ * commit interval: all queued records are written with a single write and forced to disk with a single
+ * {@link FileChannel#force(boolean)}, so the cost of the force is shared by every change of the interval. Loads of a
+ * session are not written one by one, the ids loaded since the previous commit are written as batched touch records
+ * at the end of the commit. Before every commit the writer thread hands the journal to the before commit action, which
+ * appends the records of the commit it derives from the container, such as the state of modified sessions.
+ */
+final class SessionJournal {
+
+    private static final Logger LOGGER = Logger.getLogger( SessionJournal.class.getName( ) );
+
+    static final String SEGMENT_FILE_FORMAT = "journal-%020d.log";
+    static final int MAX_TOUCHES_PER_RECORD = 4096;
+
+    private final Path directory;
+    private final long groupCommitMillis;
+    private final boolean forceOnCommit;
+    private final AtomicLong lsn;
+    private final Consumer<SessionJournal> beforeCommit;
+
+    private final ConcurrentLinkedQueue<PendingRecord> pendingRecords = new ConcurrentLinkedQueue<>( );
+    private final Set<SessionId> touchedSessionIds = ConcurrentHashMap.newKeySet( );
+    private final ReentrantLock commitLock = new ReentrantLock( );
+    private final Object writerSignal = new Object( );
+    private final Thread writerThread;
+    private FileChannel channel;
+    private long segment;
+    private volatile boolean closed;
+
+    SessionJournal( Path directory, long segment, long nextLsn, long groupCommitMillis, boolean forceOnCommit,
+                    Consumer<SessionJournal> beforeCommit ) throws IOException {
+        this.directory = directory;
+        this.groupCommitMillis = groupCommitMillis;
+        this.forceOnCommit = forceOnCommit;
+        this.lsn = new AtomicLong( nextLsn );
+        this.beforeCommit = beforeCommit;
+        this.segment = segment;
+        this.channel = openSegment( segment );
+
+        this.writerThread = new Thread( this::runWriter );
+        writerThread.setDaemon( true );
+        writerThread.setName( "session-journal-thread" );
+        writerThread.setUncaughtExceptionHandler( ( t, e ) -> LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred within the session journal thread" ) );
+        writerThread.start( );
+    }
+
+    static Path segmentPath( Path directory, long segment ) {
+        return directory.resolve( String.format( SEGMENT_FILE_FORMAT, segment ) );
+    }
+
+    /**
+     * @return the next log sequence number
+     */
+    long nextLsn( ) {
+        return lsn.getAndIncrement( );
+    }
+
+    /**
+     * Queues the record for the next commit
+     *
+     * @param record record to be written
+     * @return future completed once the record is committed
+     */
+    CompletableFuture<Void> append( JournalRecord record ) {
+        CompletableFuture<Void> committed = new CompletableFuture<>( );
+        if ( closed ) {
+            committed.completeExceptionally( new IOException( "Session journal is closed" ) );
+            return committed;
+        }
+        pendingRecords.add( new PendingRecord( record.encode( ), committed ) );
+        return committed;
+    }
+
+    /**
+     * Records a load of the session, written as a touch with the next commit
+     *
+     * @param sessionId loaded session id
+     */
+    void touch( SessionId sessionId ) {
+        if ( !closed ) {
+            touchedSessionIds.add( sessionId );
+        }
+    }
+
+    /**
+     * Writes and forces everything queued so far
+     *
+     * @throws IOException if the records could not be written, the records of the commit are failed as well
+     */
+    void commit( ) throws IOException {
+        commitLock.lock( );
+        try {
+            List<PendingRecord> records = new ArrayList<>( );
+            PendingRecord pendingRecord;
+            while ( ( pendingRecord = pendingRecords.poll( ) ) != null ) {
+                records.add( pendingRecord );
+            }
+            List<byte[]> touches = drainTouches( );
+            if ( records.isEmpty( ) && touches.isEmpty( ) ) {
+                return;
+            }
+            long start = System.nanoTime( );
+            int size = 0;
+            for ( PendingRecord record : records ) {
+                size += record.bytes.length;
+            }
+            for ( byte[] touch : touches ) {
+                size += touch.length;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate( size );
+            records.forEach( record -> buffer.put( record.bytes ) );
+            touches.forEach( buffer::put );
+            buffer.flip( );
+            try {
+                while ( buffer.hasRemaining( ) ) {
+                    channel.write( buffer );
+                }
+                if ( forceOnCommit ) {
+                    channel.force( false );
+                }
+            } catch ( IOException e ) {
+                records.forEach( record -> record.committed.completeExceptionally( e ) );
+                throw e;
+            }
+            SessionMetrics.record( SessionTimer.JOURNAL_COMMIT, System.nanoTime( ) - start );
+            records.forEach( record -> record.committed.complete( null ) );
+        } finally {
+            commitLock.unlock( );
+        }
+    }
+
+    /**
+     * Commits the current segment and continues the journal in the next one
+     *
+     * @return number of the new segment
+     * @throws IOException if the current segment could not be committed or the new one could not be created
+     */
+    long rotate( ) throws IOException {
+        commitLock.lock( );
+        try {
+            commit( );
+            FileChannel nextChannel = openSegment( segment + 1 );
+            channel.close( );
+            channel = nextChannel;
+            return ++segment;
+        } finally {
+            commitLock.unlock( );
+        }
+    }
+
+    /**
+     * Commits everything queued so far and closes the journal
+     */
+    void close( ) {
+        if ( closed ) {
+            return;
+        }
+        closed = true;
+        synchronized ( writerSignal ) {
+            writerSignal.notifyAll( );
+        }
+        commitLock.lock( );
+        try {
+            commit( );
+            channel.close( );
+        } catch ( IOException e ) {
+            LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred while closing the session journal" );
+        } finally {
+            commitLock.unlock( );
+        }
+    }
+
+    private List<byte[]> drainTouches( ) {
+        if ( touchedSessionIds.isEmpty( ) ) {
+            return new ArrayList<>( );
+        }
+        long now = System.currentTimeMillis( );
+        List<byte[]> touches = new ArrayList<>( );
+        List<SessionId> batch = new ArrayList<>( );
+        Iterator<SessionId> iterator = touchedSessionIds.iterator( );
+        while ( iterator.hasNext( ) ) {
+            batch.add( iterator.next( ) );
+            iterator.remove( );
+            if ( batch.size( ) == MAX_TOUCHES_PER_RECORD ) {
+                touches.add( JournalRecord.touch( nextLsn( ), now, batch ).encode( ) );
+                batch = new ArrayList<>( );
+            }
+        }
+        if ( !batch.isEmpty( ) ) {
+            touches.add( JournalRecord.touch( nextLsn( ), now, batch ).encode( ) );
+        }
+        return touches;
+    }
+
+    private FileChannel openSegment( long segmentNumber ) throws IOException {
+        return FileChannel.open( segmentPath( directory, segmentNumber ), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND );
+    }
+
+    private void runWriter( ) {
+        while ( !closed ) {
+            synchronized ( writerSignal ) {
+                try {
+                    writerSignal.wait( groupCommitMillis );
+                } catch ( InterruptedException e ) {
+                    LOGGER.log( Level.SEVERE, e.getMessage( ), e );
+                }
+            }
+            if ( closed ) {
+                return;
+            }
+            try {
+                beforeCommit.accept( this );
+                commit( );
+            } catch ( IOException e ) {
+                LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred while committing the session journal" );
+            }
+        }
+    }
+
+    private static final class PendingRecord {
+
+        private final byte[] bytes;
+        private final CompletableFuture<Void> committed;
+
+        private PendingRecord( byte[] bytes, CompletableFuture<Void> committed ) {
+            this.bytes = bytes;
+            this.committed = committed;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.kusalk.projects.session.handler.eviction;
+
+/**
+ * A probabilistic estimate of how often an element was accessed recently, used as the admission filter of the
+ * W-TinyLFU eviction policy. This is a count-min sketch with four 4-bit counters per element packed into {@code long}
+ * values, so the frequency of an element saturates at 15. All counters are halved once the number of recorded
+ * accesses reaches ten times the table width, so the sketch favours recent popularity over historic popularity.
+ * <p>
+ * This class is not thread safe and is expected to be guarded by the lock of the eviction policy.
+ */
+public final class FrequencySketch {
+
+    private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final int MAX_TABLE_SIZE = 1 << 26;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int size;
+
+    /**
+     * Creates a sketch sized for the provided number of elements
+     *
+     * @param maximumSize expected maximum number of elements
+     */
+    public FrequencySketch( long maximumSize ) {
+        int tableSize = ( int ) Math.min( Long.highestOneBit( Math.max( maximumSize, 16 ) - 1 ) << 1, MAX_TABLE_SIZE );
+        this.table = new long[tableSize];
+        this.tableMask = tableSize - 1;
+        this.sampleSize = 10 * tableSize;
+    }
+
+    /**
+     * Returns the estimated number of recent accesses of the element
+     *
+     * @param hashCode hash code of the element
+     * @return estimated frequency between 0 and 15
+     */
+    public int frequency( int hashCode ) {
+        int hash = spread( hashCode );
+        int start = ( hash & 3 ) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for ( int i = 0; i < 4; i++ ) {
+            int index = indexOf( hash, i );
+            int count = ( int ) ( ( table[index] >>> ( ( start + i ) << 2 ) ) & 0xFL );
+            frequency = Math.min( frequency, count );
+        }
+        return frequency;
+    }
+
+    /**
+     * Records an access of the element
+     *
+     * @param hashCode hash code of the element
+     */
+    public void increment( int hashCode ) {
+        int hash = spread( hashCode );
+        int start = ( hash & 3 ) << 2;
+        boolean added = false;
+        for ( int i = 0; i < 4; i++ ) {
+            added |= incrementAt( indexOf( hash, i ), start + i );
+        }
+        if ( added && ++size == sampleSize ) {
+            reset( );
+        }
+    }
+
+    private boolean incrementAt( int index, int counter ) {
+        int offset = counter << 2;
+        long mask = 0xFL << offset;
+        if ( ( table[index] & mask ) != mask ) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    private void reset( ) {
+        int oddCounters = 0;
+        for ( int i = 0; i < table.length; i++ ) {
+            oddCounters += Long.bitCount( table[i] & ONE_MASK );
+            table[i] = ( table[i] >>> 1 ) & RESET_MASK;
+        }
+        size = ( size >>> 1 ) - ( oddCounters >>> 2 );
+    }
+
+    private int indexOf( int hash, int depth ) {
+        long h = ( hash + SEEDS[depth] ) * SEEDS[depth];
+        h += h >>> 32;
+        return ( int ) h & tableMask;
+    }
+
+    private static int spread( int hashCode ) {
+        int h = hashCode * 0x9E3779B9;
+        return h ^ ( h >>> 16 );
+    }
+}
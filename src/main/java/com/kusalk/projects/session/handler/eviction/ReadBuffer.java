@@ -0,0 +1,78 @@
+package com.kusalk.projects.session.handler.eviction;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A striped, lossy buffer of read events. Readers record accesses without taking the lock of the eviction policy and
+ * the events are replayed against the policy in batches by whoever holds that lock. When a stripe is full new events
+ * are dropped, which is acceptable because the policy only needs a sample of the accesses.
+ */
+public final class ReadBuffer<E> {
+
+    private static final int STRIPE_SIZE = 32;
+    private static final int STRIPE_MASK = STRIPE_SIZE - 1;
+
+    private final Stripe<E>[] stripes;
+    private final int stripeMask;
+
+    public ReadBuffer( ) {
+        int stripeCount = Integer.highestOneBit( Math.max( Runtime.getRuntime( ).availableProcessors( ) * 2 - 1, 1 ) ) << 1;
+        @SuppressWarnings( "unchecked" )
+        Stripe<E>[] stripes = ( Stripe<E>[] ) new Stripe<?>[stripeCount];
+        this.stripes = stripes;
+        for ( int i = 0; i < stripeCount; i++ ) {
+            stripes[i] = new Stripe<>( );
+        }
+        this.stripeMask = stripeCount - 1;
+    }
+
+    /**
+     * Records a read of the element
+     *
+     * @param element element which was read
+     * @return {@code true} if the stripe of the calling thread is full and should be drained
+     */
+    public boolean offer( E element ) {
+        Stripe<E> stripe = stripes[( int ) Thread.currentThread( ).getId( ) & stripeMask];
+        long writeCount = stripe.writeCounter.get( );
+        if ( writeCount - stripe.readCounter >= STRIPE_SIZE ) {
+            return true;
+        }
+        if ( stripe.writeCounter.compareAndSet( writeCount, writeCount + 1 ) ) {
+            stripe.slots.lazySet( ( int ) ( writeCount & STRIPE_MASK ), element );
+        }
+        return writeCount + 1 - stripe.readCounter >= STRIPE_SIZE;
+    }
+
+    /**
+     * Hands every buffered element to the consumer. This must only be called while holding the lock of the policy.
+     *
+     * @param consumer consumer of the buffered reads
+     */
+    public void drainTo( Consumer<E> consumer ) {
+        for ( Stripe<E> stripe : stripes ) {
+            long readCount = stripe.readCounter;
+            long writeCount = stripe.writeCounter.get( );
+            while ( readCount < writeCount ) {
+                int index = ( int ) ( readCount & STRIPE_MASK );
+                E element = stripe.slots.get( index );
+                if ( element == null ) {
+                    // The writer claimed the slot but has not published the element yet
+                    break;
+                }
+                stripe.slots.lazySet( index, null );
+                consumer.accept( element );
+                readCount++;
+            }
+            stripe.readCounter = readCount;
+        }
+    }
+
+    private static final class Stripe<E> {
+        private final AtomicLong writeCounter = new AtomicLong( );
+        private final AtomicReferenceArray<E> slots = new AtomicReferenceArray<>( STRIPE_SIZE );
+        private volatile long readCounter;
+    }
+}
@@ -0,0 +1,30 @@
+package com.kusalk.projects.session.handler.expiry;
+
+/**
+ * An element that can be scheduled in a {@link TimerWheel}. The links are intrusive so scheduling, rescheduling and
+ * cancelling a node never allocates and never searches the wheel.
+ */
+public class TimerNode {
+
+    TimerNode previous;
+    TimerNode next;
+    long deadlineMillis;
+
+    /**
+     * Returns the deadline this node was last scheduled with
+     *
+     * @return deadline in epoch milliseconds
+     */
+    public long getDeadlineMillis( ) {
+        return deadlineMillis;
+    }
+
+    /**
+     * Returns whether this node is currently linked into a wheel bucket
+     *
+     * @return {@code true} if the node is scheduled
+     */
+    public boolean isScheduled( ) {
+        return next != null;
+    }
+}
@@ -0,0 +1,173 @@
+package com.kusalk.projects.session.handler.expiry;
+
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timing wheel which keeps {@link TimerNode} objects bucketed by their deadline. Each level has
+ * {@value #BUCKETS} buckets and every bucket of a level spans {@value #BUCKETS} times the ticks of a bucket in the level
+ * below it, so with a one second tick the wheel covers roughly 194 days before deadlines are clamped to the last level.
+ * <p>
+ * Scheduling, rescheduling and cancelling are constant time. Advancing the wheel only visits the buckets whose time has
+ * come, so the cost of expiry is proportional to the nodes that actually expire (plus the nodes cascading down a level).
+ * Nodes are never expired before their deadline and at most one tick after it.
+ * <p>
+ * This class is not thread safe. Callers must confine a wheel to a single thread or guard it with a lock.
+ */
+public final class TimerWheel<N extends TimerNode> {
+
+    private static final int BUCKET_BITS = 6;
+    private static final int BUCKETS = 1 << BUCKET_BITS;
+    private static final int BUCKET_MASK = BUCKETS - 1;
+    private static final int LEVELS = 4;
+    private static final long MAX_DELTA_TICKS = ( 1L << ( BUCKET_BITS * LEVELS ) ) - 1;
+
+    private final long tickMillis;
+    private final TimerNode[][] wheels = new TimerNode[LEVELS][BUCKETS];
+    private long currentTick;
+    private int size;
+
+    /**
+     * Creates a timer wheel with the provided tick resolution
+     *
+     * @param tickMillis resolution of the wheel in milliseconds
+     * @param nowMillis  current time in epoch milliseconds
+     */
+    public TimerWheel( long tickMillis, long nowMillis ) {
+        if ( tickMillis <= 0 ) {
+            throw new IllegalArgumentException( "Timer wheel tick must be positive : " + tickMillis );
+        }
+        this.tickMillis = tickMillis;
+        this.currentTick = nowMillis / tickMillis;
+        for ( TimerNode[] wheel : wheels ) {
+            for ( int i = 0; i < BUCKETS; i++ ) {
+                TimerNode sentinel = new TimerNode( );
+                sentinel.previous = sentinel;
+                sentinel.next = sentinel;
+                wheel[i] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Schedules the node to expire at the provided deadline. If the node is already scheduled it is moved to the bucket
+     * of the new deadline.
+     *
+     * @param node           node to be scheduled
+     * @param deadlineMillis deadline in epoch milliseconds
+     */
+    public void schedule( N node, long deadlineMillis ) {
+        if ( node.isScheduled( ) ) {
+            unlink( node );
+        } else {
+            size++;
+        }
+        node.deadlineMillis = deadlineMillis;
+        link( node );
+    }
+
+    /**
+     * Cancels the node if it is scheduled
+     *
+     * @param node node to be cancelled
+     * @return {@code true} if the node was scheduled
+     */
+    public boolean cancel( N node ) {
+        if ( !node.isScheduled( ) ) {
+            return false;
+        }
+        unlink( node );
+        size--;
+        return true;
+    }
+
+    /**
+     * Advances the wheel up to the provided time and hands every node whose deadline has passed to the consumer. The
+     * node is no longer scheduled when the consumer sees it, so the consumer may schedule it again.
+     *
+     * @param nowMillis current time in epoch milliseconds
+     * @param onExpired consumer of the expired nodes
+     * @return number of expired nodes
+     */
+    public int advance( long nowMillis, Consumer<N> onExpired ) {
+        long targetTick = nowMillis / tickMillis;
+        if ( size == 0 ) {
+            currentTick = Math.max( currentTick, targetTick );
+            return 0;
+        }
+        int expired = 0;
+        while ( currentTick < targetTick ) {
+            currentTick++;
+            for ( int level = 0; level < LEVELS; level++ ) {
+                int shift = BUCKET_BITS * level;
+                if ( level > 0 && ( currentTick & ( ( 1L << shift ) - 1 ) ) != 0 ) {
+                    break;
+                }
+                int index = ( int ) ( ( currentTick >>> shift ) & BUCKET_MASK );
+                expired += expireBucket( wheels[level][index], onExpired );
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Returns the number of scheduled nodes
+     *
+     * @return scheduled node count
+     */
+    public int size( ) {
+        return size;
+    }
+
+    public long getTickMillis( ) {
+        return tickMillis;
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private int expireBucket( TimerNode sentinel, Consumer<N> onExpired ) {
+        TimerNode node = sentinel.next;
+        sentinel.next = sentinel;
+        sentinel.previous = sentinel;
+
+        int expired = 0;
+        while ( node != sentinel ) {
+            TimerNode next = node.next;
+            node.previous = null;
+            node.next = null;
+            if ( deadlineTick( node ) <= currentTick ) {
+                size--;
+                expired++;
+                onExpired.accept( ( N ) node );
+            } else {
+                link( node );
+            }
+            node = next;
+        }
+        return expired;
+    }
+
+    private void link( TimerNode node ) {
+        long delta = Math.min( Math.max( deadlineTick( node ) - currentTick, 1 ), MAX_DELTA_TICKS );
+        int level = 0;
+        while ( level < LEVELS - 1 && delta >= 1L << ( BUCKET_BITS * ( level + 1 ) ) ) {
+            level++;
+        }
+        int index = ( int ) ( ( ( currentTick + delta ) >>> ( BUCKET_BITS * level ) ) & BUCKET_MASK );
+
+        TimerNode sentinel = wheels[level][index];
+        node.previous = sentinel.previous;
+        node.next = sentinel;
+        sentinel.previous.next = node;
+        sentinel.previous = node;
+    }
+
+    private void unlink( TimerNode node ) {
+        node.previous.next = node.next;
+        node.next.previous = node.previous;
+        node.previous = null;
+        node.next = null;
+    }
+
+    private long deadlineTick( TimerNode node ) {
+        return Math.floorDiv( node.deadlineMillis + tickMillis - 1, tickMillis );
+    }
+}
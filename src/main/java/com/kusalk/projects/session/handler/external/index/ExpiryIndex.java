@@ -0,0 +1,262 @@
+package com.kusalk.projects.session.handler.external.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Index of when the sessions of an external source expire, the time they were written plus their timeout. Session ids
+ * are grouped into buckets of their expiry time, so a sweep only visits the buckets which already expired instead of
+ * every stored session.
+ * <p>
+ * A persistent index appends the entries of every bucket to a small bucket file in its directory, so a restarted
+ * source can sweep what it wrote before without listing and reading all of its sessions. Entries are appended with
+ * {@link #flush()} and a bucket file is deleted once its bucket was swept. A session written several times can have
+ * stale entries in older buckets, the source confirms every expiry before it reclaims a session.
+ */
+public final class ExpiryIndex {
+
+    private static final Logger LOGGER = Logger.getLogger( ExpiryIndex.class.getName( ) );
+
+    public static final long DEFAULT_BUCKET_MILLIS = 60000;
+
+    private static final String BUCKET_FILE_PREFIX = "expiry-";
+    private static final String BUCKET_FILE_SUFFIX = ".idx";
+
+    private final Path directory;
+    private final long bucketMillis;
+    private final ConcurrentHashMap<String, Long> expiryTimes = new ConcurrentHashMap<>( );
+    private final ConcurrentSkipListMap<Long, Set<String>> buckets = new ConcurrentSkipListMap<>( );
+    private final ConcurrentLinkedQueue<PendingEntry> pendingEntries = new ConcurrentLinkedQueue<>( );
+
+    /**
+     * Creates an index kept in memory only
+     *
+     * @param bucketMillis span of expiry times grouped into one bucket
+     */
+    public ExpiryIndex( long bucketMillis ) {
+        this( null, bucketMillis );
+    }
+
+    /**
+     * Creates an index persisted to bucket files in the provided directory, loading the bucket files already there
+     *
+     * @param directory    directory of the bucket files, or {@code null} to keep the index in memory only
+     * @param bucketMillis span of expiry times grouped into one bucket
+     */
+    public ExpiryIndex( Path directory, long bucketMillis ) {
+        if ( bucketMillis <= 0 ) {
+            throw new IllegalArgumentException( "Expiry bucket span must be positive : " + bucketMillis );
+        }
+        this.directory = directory;
+        this.bucketMillis = bucketMillis;
+        if ( directory != null ) {
+            try {
+                load( );
+            } catch ( IOException e ) {
+                throw new UncheckedIOException( "Error loading the expiry index in " + directory, e );
+            }
+        }
+    }
+
+    /**
+     * Records when the session expires, replacing what was recorded for it before
+     *
+     * @param sessionId       session id
+     * @param expiresAtMillis expiry time in epoch milliseconds, or {@code 0} for a session which never expires
+     */
+    public void record( String sessionId, long expiresAtMillis ) {
+        if ( expiresAtMillis <= 0 ) {
+            expiryTimes.remove( sessionId );
+            return;
+        }
+        expiryTimes.put( sessionId, expiresAtMillis );
+        addToBucket( sessionId, expiresAtMillis );
+        if ( directory != null ) {
+            pendingEntries.add( new PendingEntry( sessionId, expiresAtMillis ) );
+        }
+    }
+
+    /**
+     * Forgets the session, for example because it was deleted
+     *
+     * @param sessionId session id
+     */
+    public void remove( String sessionId ) {
+        expiryTimes.remove( sessionId );
+    }
+
+    /**
+     * Returns whether the session is known to have expired
+     *
+     * @param sessionId session id
+     * @param now       current time in epoch milliseconds
+     * @return {@code true} if the session expired, {@code false} if it is live or not indexed
+     */
+    public boolean isExpired( String sessionId, long now ) {
+        Long expiresAt = expiryTimes.get( sessionId );
+        return expiresAt != null && expiresAt <= now;
+    }
+
+    /**
+     * Returns the number of sessions with a recorded expiry
+     *
+     * @return indexed session count
+     */
+    public int size( ) {
+        return expiryTimes.size( );
+    }
+
+    /**
+     * Hands the expired sessions of the buckets which already expired to the reclaimer, the oldest bucket first. The
+     * reclaimer confirms the expiry against the stored session and removes it, returning whether it did. Entries
+     * which are stale because the session was written again are dropped without calling the reclaimer.
+     *
+     * @param now         current time in epoch milliseconds
+     * @param maxSessions maximum number of sessions handed to the reclaimer, the rest is left for the next sweep
+     * @param reclaimer   removes an expired session from the source
+     * @return number of sessions reclaimed
+     */
+    public int sweep( long now, int maxSessions, Predicate<String> reclaimer ) {
+        int visited = 0;
+        int reclaimed = 0;
+        for ( Map.Entry<Long, Set<String>> bucket : buckets.headMap( now, true ).entrySet( ) ) {
+            Iterator<String> sessionIds = bucket.getValue( ).iterator( );
+            while ( sessionIds.hasNext( ) ) {
+                if ( visited >= maxSessions ) {
+                    return reclaimed;
+                }
+                String sessionId = sessionIds.next( );
+                Long expiresAt = expiryTimes.get( sessionId );
+                if ( expiresAt != null && expiresAt > now && bucketOf( expiresAt ) == bucket.getKey( ) ) {
+                    // The bucket expires partly, the session is swept once the rest of it expired
+                    continue;
+                }
+                sessionIds.remove( );
+                if ( expiresAt == null || expiresAt > now ) {
+                    continue;
+                }
+                visited++;
+                if ( reclaimer.test( sessionId ) ) {
+                    reclaimed++;
+                }
+                expiryTimes.remove( sessionId, expiresAt );
+            }
+            if ( bucket.getValue( ).isEmpty( ) && buckets.remove( bucket.getKey( ), bucket.getValue( ) ) ) {
+                deleteBucketFile( bucket.getKey( ) );
+            }
+        }
+        return reclaimed;
+    }
+
+    /**
+     * Appends the entries recorded since the last flush to their bucket files. An index kept in memory has nothing to
+     * flush.
+     *
+     * @throws IOException if a bucket file could not be written
+     */
+    public void flush( ) throws IOException {
+        if ( directory == null || pendingEntries.isEmpty( ) ) {
+            return;
+        }
+        Map<Long, List<PendingEntry>> entriesByBucket = new HashMap<>( );
+        PendingEntry entry;
+        while ( ( entry = pendingEntries.poll( ) ) != null ) {
+            entriesByBucket.computeIfAbsent( bucketOf( entry.expiresAtMillis ), bucket -> new ArrayList<>( ) ).add( entry );
+        }
+        for ( Map.Entry<Long, List<PendingEntry>> bucket : entriesByBucket.entrySet( ) ) {
+            try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( Files.newOutputStream( bucketFile( bucket.getKey( ) ),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND ) ) ) ) {
+                for ( PendingEntry pendingEntry : bucket.getValue( ) ) {
+                    out.writeUTF( pendingEntry.sessionId );
+                    out.writeLong( pendingEntry.expiresAtMillis );
+                }
+            }
+        }
+    }
+
+    private void addToBucket( String sessionId, long expiresAtMillis ) {
+        long bucket = bucketOf( expiresAtMillis );
+        while ( true ) {
+            Set<String> sessionIds = buckets.computeIfAbsent( bucket, key -> ConcurrentHashMap.newKeySet( ) );
+            sessionIds.add( sessionId );
+            // A sweep may have dropped the bucket meanwhile, the id is then added to a new one
+            if ( buckets.get( bucket ) == sessionIds ) {
+                return;
+            }
+        }
+    }
+
+    private long bucketOf( long expiresAtMillis ) {
+        return expiresAtMillis - Math.floorMod( expiresAtMillis, bucketMillis );
+    }
+
+    private Path bucketFile( long bucket ) {
+        return directory.resolve( BUCKET_FILE_PREFIX + bucket + BUCKET_FILE_SUFFIX );
+    }
+
+    private void deleteBucketFile( long bucket ) {
+        if ( directory == null ) {
+            return;
+        }
+        try {
+            Files.deleteIfExists( bucketFile( bucket ) );
+        } catch ( IOException e ) {
+            LOGGER.log( Level.WARNING, e, ( ) -> "Error occurred while deleting expiry bucket file " + bucketFile( bucket ) );
+        }
+    }
+
+    /**
+     * Loads the bucket files. The latest expiry of a session wins, a stale later expiry only delays its sweep.
+     */
+    private void load( ) throws IOException {
+        Files.createDirectories( directory );
+        try ( DirectoryStream<Path> files = Files.newDirectoryStream( directory, BUCKET_FILE_PREFIX + "*" + BUCKET_FILE_SUFFIX ) ) {
+            for ( Path file : files ) {
+                try ( DataInputStream in = new DataInputStream( new BufferedInputStream( Files.newInputStream( file ) ) ) ) {
+                    while ( true ) {
+                        String sessionId = in.readUTF( );
+                        long expiresAtMillis = in.readLong( );
+                        if ( expiryTimes.merge( sessionId, expiresAtMillis, Math::max ) == expiresAtMillis ) {
+                            addToBucket( sessionId, expiresAtMillis );
+                        }
+                    }
+                } catch ( EOFException e ) {
+                    // End of the bucket file, or an entry torn by a crash while it was appended
+                }
+            }
+        }
+        LOGGER.log( Level.FINE, "Loaded the expiry of {0} sessions from {1}", new Object[]{ expiryTimes.size( ), directory } );
+    }
+
+    private static final class PendingEntry {
+
+        private final String sessionId;
+        private final long expiresAtMillis;
+
+        private PendingEntry( String sessionId, long expiresAtMillis ) {
+            this.sessionId = sessionId;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+}
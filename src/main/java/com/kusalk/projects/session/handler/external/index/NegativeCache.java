@@ -0,0 +1,87 @@
+package com.kusalk.projects.session.handler.external.index;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A bounded cache of session ids recently found missing from the external source. Entries expire after a short time
+ * to live, so an id written to the store by another process is found again soon after.
+ * <p>
+ * When the cache is full, expired entries are purged first and then a tenth of the remaining entries is dropped, which
+ * keeps the cache bounded under a flood of unknown ids without any per-entry bookkeeping.
+ */
+public final class NegativeCache {
+
+    private final int maximumSize;
+    private final long timeToLiveMillis;
+    private final ConcurrentHashMap<String, Long> expiryTimes;
+
+    /**
+     * @param maximumSize      maximum number of cached session ids
+     * @param timeToLiveMillis time a session id stays cached
+     */
+    public NegativeCache( int maximumSize, long timeToLiveMillis ) {
+        if ( maximumSize <= 0 || timeToLiveMillis <= 0 ) {
+            throw new IllegalArgumentException( "Negative cache size and time to live must be positive" );
+        }
+        this.maximumSize = maximumSize;
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.expiryTimes = new ConcurrentHashMap<>( Math.min( maximumSize, 1024 ) );
+    }
+
+    /**
+     * Records that the session id is missing from the external source
+     *
+     * @param sessionId session id
+     */
+    public void put( String sessionId ) {
+        long now = System.currentTimeMillis( );
+        if ( expiryTimes.size( ) >= maximumSize ) {
+            makeRoom( now );
+        }
+        expiryTimes.put( sessionId, now + timeToLiveMillis );
+    }
+
+    /**
+     * Returns whether the session id was recently found missing
+     *
+     * @param sessionId session id
+     * @return {@code true} if the id is known to be missing
+     */
+    public boolean contains( String sessionId ) {
+        Long expiresAt = expiryTimes.get( sessionId );
+        if ( expiresAt == null ) {
+            return false;
+        }
+        if ( expiresAt <= System.currentTimeMillis( ) ) {
+            expiryTimes.remove( sessionId, expiresAt );
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Forgets the session id, for example because it was just written to the external source
+     *
+     * @param sessionId session id
+     */
+    public void remove( String sessionId ) {
+        expiryTimes.remove( sessionId );
+    }
+
+    public int size( ) {
+        return expiryTimes.size( );
+    }
+
+    private void makeRoom( long now ) {
+        expiryTimes.values( ).removeIf( expiresAt -> expiresAt <= now );
+        // Drop a tenth of the entries in iteration order, which is as good as random for session ids
+        int excess = expiryTimes.size( ) - maximumSize + Math.max( 1, maximumSize / 10 );
+        Iterator<Map.Entry<String, Long>> entries = expiryTimes.entrySet( ).iterator( );
+        while ( excess-- > 0 && entries.hasNext( ) ) {
+            entries.next( );
+            entries.remove( );
+        }
+    }
+}
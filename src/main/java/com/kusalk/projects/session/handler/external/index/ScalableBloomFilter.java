@@ -0,0 +1,171 @@
+package com.kusalk.projects.session.handler.external.index;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter of session ids which grows with the number of ids added to it. The filter is a chain of fixed size
+ * Bloom filters, each one twice the capacity of the previous one and with half its false positive probability, so the
+ * overall false positive probability stays below twice the one of the first filter however many ids are added.
+ * <p>
+ * {@link #mightContain(String)} never answers {@code false} for an id which was added. Ids can not be removed, the
+ * filter has to be rebuilt to forget them.
+ * <p>
+ * Adding and querying are thread safe and lock-free, only starting a new filter in the chain takes a lock.
+ */
+public final class ScalableBloomFilter {
+
+    private static final int GROWTH_FACTOR = 2;
+    private static final double TIGHTENING_RATIO = 0.5;
+
+    private final double falsePositiveProbability;
+    private volatile Stage[] stages;
+
+    /**
+     * @param expectedIds              expected number of ids, the capacity of the first filter in the chain
+     * @param falsePositiveProbability false positive probability of the first filter in the chain
+     */
+    public ScalableBloomFilter( long expectedIds, double falsePositiveProbability ) {
+        if ( falsePositiveProbability <= 0 || falsePositiveProbability >= 1 ) {
+            throw new IllegalArgumentException( "False positive probability must be within (0, 1) : " + falsePositiveProbability );
+        }
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.stages = new Stage[]{ new Stage( Math.max( expectedIds, 64 ), falsePositiveProbability ) };
+    }
+
+    /**
+     * Adds the session id to the filter
+     *
+     * @param sessionId session id
+     */
+    public void add( String sessionId ) {
+        long hash = hash( sessionId );
+        Stage[] current = stages;
+        Stage stage = current[current.length - 1];
+        if ( stage.count.incrementAndGet( ) > stage.capacity ) {
+            stage = grow( current );
+        }
+        stage.add( hash );
+    }
+
+    /**
+     * Returns whether the session id might have been added to the filter
+     *
+     * @param sessionId session id
+     * @return {@code false} if the id was definitely never added
+     */
+    public boolean mightContain( String sessionId ) {
+        long hash = hash( sessionId );
+        for ( Stage stage : stages ) {
+            if ( stage.mightContain( hash ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the approximate number of ids added to the filter
+     *
+     * @return id count
+     */
+    public long getApproximateCount( ) {
+        long count = 0;
+        for ( Stage stage : stages ) {
+            count += Math.min( stage.count.get( ), stage.capacity );
+        }
+        return count;
+    }
+
+    /**
+     * Returns the memory used by the bit arrays of the filter
+     *
+     * @return size in bytes
+     */
+    public long getSizeInBytes( ) {
+        long bytes = 0;
+        for ( Stage stage : stages ) {
+            bytes += stage.bits.length( ) * 8L;
+        }
+        return bytes;
+    }
+
+    private synchronized Stage grow( Stage[] observed ) {
+        Stage[] current = stages;
+        if ( current != observed ) {
+            // Another thread already added a stage
+            return current[current.length - 1];
+        }
+        Stage last = current[current.length - 1];
+        double probability = falsePositiveProbability * Math.pow( TIGHTENING_RATIO, current.length );
+        Stage next = new Stage( last.capacity * GROWTH_FACTOR, probability );
+        next.count.incrementAndGet( );
+        Stage[] grown = new Stage[current.length + 1];
+        System.arraycopy( current, 0, grown, 0, current.length );
+        grown[current.length] = next;
+        stages = grown;
+        return next;
+    }
+
+    /**
+     * 64-bit hash of the session id, mixing the characters with the finalizer of MurmurHash3
+     */
+    private static long hash( String sessionId ) {
+        long hash = 0x9E3779B97F4A7C15L;
+        for ( int i = 0; i < sessionId.length( ); i++ ) {
+            hash = ( hash ^ sessionId.charAt( i ) ) * 0x100000001B3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * One fixed size Bloom filter of the chain. The bit positions of an id are derived from its hash by double hashing.
+     */
+    private static final class Stage {
+
+        private final long capacity;
+        private final long bitCount;
+        private final int hashCount;
+        private final AtomicLongArray bits;
+        private final AtomicLong count = new AtomicLong( );
+
+        private Stage( long capacity, double falsePositiveProbability ) {
+            long optimalBits = ( long ) Math.ceil( -capacity * Math.log( falsePositiveProbability ) / ( Math.log( 2 ) * Math.log( 2 ) ) );
+            this.capacity = capacity;
+            this.bits = new AtomicLongArray( ( int ) Math.min( Integer.MAX_VALUE - 8, ( optimalBits + 63 ) >>> 6 ) );
+            this.bitCount = bits.length( ) * 64L;
+            this.hashCount = Math.max( 1, ( int ) Math.round( ( double ) bitCount / capacity * Math.log( 2 ) ) );
+        }
+
+        private void add( long hash ) {
+            int first = ( int ) hash;
+            int second = ( int ) ( hash >>> 32 );
+            for ( int i = 0; i < hashCount; i++ ) {
+                long bit = Math.floorMod( first + ( long ) i * second, bitCount );
+                int index = ( int ) ( bit >>> 6 );
+                long mask = 1L << bit;
+                long word = bits.get( index );
+                while ( ( word & mask ) == 0 && !bits.compareAndSet( index, word, word | mask ) ) {
+                    word = bits.get( index );
+                }
+            }
+        }
+
+        private boolean mightContain( long hash ) {
+            int first = ( int ) hash;
+            int second = ( int ) ( hash >>> 32 );
+            for ( int i = 0; i < hashCount; i++ ) {
+                long bit = Math.floorMod( first + ( long ) i * second, bitCount );
+                if ( ( bits.get( ( int ) ( bit >>> 6 ) ) & ( 1L << bit ) ) == 0 ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.kusalk.projects.session.handler.external.sources;
+
+import com.kusalk.projects.session.handler.metrics.SessionCounter;
+import com.kusalk.projects.session.handler.metrics.SessionMetrics;
+import com.kusalk.projects.session.handler.util.SessionResponse;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background thread deleting expired mementos from an {@link ExternalSessionSource} through
+ * {@link ExternalSessionSource#sweepExpiredSessions(int)}. Every sweep interval it reclaims at most the configured
+ * number of sessions, so a large backlog of expired sessions is worked off over several sweeps instead of competing
+ * with the reads and writes of the source all at once. A sweep reaching the limit means the sweeper is behind, the
+ * sweeper reports for how long it has been behind as its lag.
+ */
+public class ExpirySweeper implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger( ExpirySweeper.class.getName( ) );
+
+    public static final long DEFAULT_SWEEP_INTERVAL_MILLIS = 10000;
+    public static final int DEFAULT_MAX_SESSIONS_PER_SWEEP = 1000;
+
+    private final ExternalSessionSource source;
+    private final long sweepIntervalMillis;
+    private final int maxSessionsPerSweep;
+
+    private final Object sweeperSignal = new Object( );
+    private final Thread sweeperThread;
+    private final LongAdder sweptSessions = new LongAdder( );
+    private volatile long behindSinceMillis;
+    private volatile boolean closed;
+
+    private ExpirySweeper( Builder builder ) {
+        this.source = builder.source;
+        this.sweepIntervalMillis = builder.sweepIntervalMillis;
+        this.maxSessionsPerSweep = builder.maxSessionsPerSweep;
+
+        this.sweeperThread = new Thread( this::runSweeper );
+        sweeperThread.setDaemon( true );
+        sweeperThread.setName( "session-expiry-sweeper-thread" );
+        sweeperThread.setUncaughtExceptionHandler( ( t, e ) -> LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred within the expiry sweeper thread" ) );
+        sweeperThread.start( );
+    }
+
+    /**
+     * Creates a builder for a sweeper of the provided source
+     *
+     * @param source source the expired mementos are deleted from
+     * @return {@link Builder} builder
+     */
+    public static Builder builder( ExternalSessionSource source ) {
+        return new Builder( source );
+    }
+
+    /**
+     * Runs a sweep now, limited like the sweeps of the background thread
+     *
+     * @return {@link SessionResponse<Integer>} response with the number of reclaimed mementos
+     */
+    public SessionResponse<Integer> sweep( ) {
+        long start = System.currentTimeMillis( );
+        SessionResponse<Integer> sweepResponse = source.sweepExpiredSessions( maxSessionsPerSweep );
+        int swept = sweepResponse.getData( ) != null ? sweepResponse.getData( ) : 0;
+        if ( swept > 0 ) {
+            sweptSessions.add( swept );
+            SessionMetrics.add( SessionCounter.EXTERNAL_SESSIONS_SWEPT, swept );
+            LOGGER.log( Level.FINE, "Swept {0} expired sessions", swept );
+        }
+        if ( swept < maxSessionsPerSweep ) {
+            behindSinceMillis = 0;
+        } else if ( behindSinceMillis == 0 ) {
+            behindSinceMillis = start;
+        }
+        return sweepResponse;
+    }
+
+    /**
+     * Returns for how long the sweeper has been behind, since the first of the latest sweeps which all reached their
+     * limit
+     *
+     * @return lag in milliseconds, zero if the last sweep reclaimed every expired session it found
+     */
+    public long getLagMillis( ) {
+        long behindSince = behindSinceMillis;
+        return behindSince == 0 ? 0 : System.currentTimeMillis( ) - behindSince;
+    }
+
+    /**
+     * Returns the number of expired sessions reclaimed by this sweeper
+     *
+     * @return swept session count
+     */
+    public long getSweptSessions( ) {
+        return sweptSessions.sum( );
+    }
+
+    /**
+     * Stops the sweeper thread
+     */
+    @Override
+    public void close( ) {
+        closed = true;
+        synchronized ( sweeperSignal ) {
+            sweeperSignal.notifyAll( );
+        }
+    }
+
+    private void runSweeper( ) {
+        while ( !closed ) {
+            synchronized ( sweeperSignal ) {
+                try {
+                    sweeperSignal.wait( sweepIntervalMillis );
+                } catch ( InterruptedException e ) {
+                    LOGGER.log( Level.SEVERE, e.getMessage( ), e );
+                }
+            }
+            if ( !closed ) {
+                sweep( );
+            }
+        }
+    }
+
+    /**
+     * Builder of {@link ExpirySweeper} objects
+     */
+    public static final class Builder {
+
+        private final ExternalSessionSource source;
+        private long sweepIntervalMillis = DEFAULT_SWEEP_INTERVAL_MILLIS;
+        private int maxSessionsPerSweep = DEFAULT_MAX_SESSIONS_PER_SWEEP;
+
+        private Builder( ExternalSessionSource source ) {
+            if ( source == null ) {
+                throw new IllegalArgumentException( "Session source is required" );
+            }
+            this.source = source;
+        }
+
+        /**
+         * @param sweepIntervalMillis time between two sweeps
+         * @return this builder
+         */
+        public Builder sweepIntervalMillis( long sweepIntervalMillis ) {
+            if ( sweepIntervalMillis <= 0 ) {
+                throw new IllegalArgumentException( "Sweep interval must be positive : " + sweepIntervalMillis );
+            }
+            this.sweepIntervalMillis = sweepIntervalMillis;
+            return this;
+        }
+
+        /**
+         * @param maxSessionsPerSweep maximum number of expired sessions reclaimed by one sweep
+         * @return this builder
+         */
+        public Builder maxSessionsPerSweep( int maxSessionsPerSweep ) {
+            if ( maxSessionsPerSweep <= 0 ) {
+                throw new IllegalArgumentException( "Maximum sessions per sweep must be positive : " + maxSessionsPerSweep );
+            }
+            this.maxSessionsPerSweep = maxSessionsPerSweep;
+            return this;
+        }
+
+        public ExpirySweeper build( ) {
+            return new ExpirySweeper( this );
+        }
+    }
+}
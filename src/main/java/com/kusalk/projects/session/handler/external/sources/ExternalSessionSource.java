@@ -1,8 +1,15 @@
 package com.kusalk.projects.session.handler.external.sources;
 
+import com.kusalk.projects.session.handler.session.DeltaMemento;
 import com.kusalk.projects.session.handler.session.SessionMemento;
+import com.kusalk.projects.session.handler.util.SessionCode;
 import com.kusalk.projects.session.handler.util.SessionResponse;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
 /**
  * Session data can be stored to an external source so that they can be retrieved later and restored.
  * This interface contains the functionality any such external source should implement.
@@ -29,4 +36,142 @@ public interface ExternalSessionSource {
      * @return {@link SessionResponse<Boolean>} response with data set to {@code true} if success
      */
     SessionResponse<Boolean> writeSessionMemento( String sessionId, SessionMemento memento );
+
+    /**
+     * This method appends a delta to the memento stored for the session id. Sources supporting deltas fold the
+     * appended deltas into the stored memento when it is read, so {@link #readSessionMemento(String)} always returns
+     * a full memento. Sources which do not support deltas return an error response and the session is written in
+     * full instead, which is the default.
+     *
+     * @param sessionId session id of the memento
+     * @param delta     delta memento
+     * @return {@link SessionResponse<Boolean>} response with data set to {@code true} if success
+     */
+    default SessionResponse<Boolean> appendSessionDelta( String sessionId, DeltaMemento delta ) {
+        return new SessionResponse<>( "Session deltas are not supported by " + getClass( ).getSimpleName( ), SessionCode.ERROR, false );
+    }
+
+    /**
+     * This method reads the session mementos of the provided session ids from the external source. Sources which can
+     * read several mementos cheaper than one by one should override this method, the default reads them one by one.
+     *
+     * @param sessionIds session ids of the mementos to be read
+     * @return {@link SessionResponse} response with the mementos found, keyed by session id. Session ids which could
+     * not be read are missing from the map.
+     */
+    default SessionResponse<Map<String, SessionMemento>> readSessionMementos( Collection<String> sessionIds ) {
+        Map<String, SessionMemento> mementos = new HashMap<>( );
+        for ( String sessionId : sessionIds ) {
+            SessionResponse<SessionMemento> readResponse = readSessionMemento( sessionId );
+            if ( readResponse.isSuccess( ) ) {
+                mementos.put( sessionId, readResponse.getData( ) );
+            }
+        }
+        return new SessionResponse<>( "Read " + mementos.size( ) + " of " + sessionIds.size( ) + " sessions", SessionCode.SUCCESS, mementos );
+    }
+
+    /**
+     * This method writes the provided session mementos to the external source. Sources which can write several
+     * mementos cheaper than one by one should override this method, the default writes them one by one.
+     *
+     * @param mementos memento objects keyed by their session id
+     * @return {@link SessionResponse} response holding the outcome of every write keyed by session id, which is an
+     * error response if any of the writes failed
+     */
+    default SessionResponse<Map<String, Boolean>> writeSessionMementos( Map<String, SessionMemento> mementos ) {
+        Map<String, Boolean> results = new HashMap<>( );
+        int failedWrites = 0;
+        for ( Map.Entry<String, SessionMemento> entry : mementos.entrySet( ) ) {
+            boolean written = writeSessionMemento( entry.getKey( ), entry.getValue( ) ).isSuccess( );
+            results.put( entry.getKey( ), written );
+            failedWrites += written ? 0 : 1;
+        }
+        return batchWriteResponse( results, failedWrites );
+    }
+
+    /**
+     * Creates the response of a batch write
+     *
+     * @param results      outcome of every write keyed by session id
+     * @param failedWrites number of failed writes
+     * @return {@link SessionResponse} batch write response
+     */
+    static SessionResponse<Map<String, Boolean>> batchWriteResponse( Map<String, Boolean> results, int failedWrites ) {
+        if ( failedWrites > 0 ) {
+            return new SessionResponse<>( failedWrites + " of " + results.size( ) + " session writes failed", SessionCode.ERROR, results );
+        }
+        return new SessionResponse<>( results.size( ) + " sessions written", SessionCode.SUCCESS, results );
+    }
+
+    /**
+     * This method deletes the session memento of the provided session id from the external source
+     *
+     * @param sessionId session id of the memento
+     * @return {@link SessionResponse<Boolean>} response with data set to {@code true} if a memento was deleted
+     */
+    default SessionResponse<Boolean> deleteSessionMemento( String sessionId ) {
+        return new SessionResponse<>( "Deleting sessions is not supported by " + getClass( ).getSimpleName( ), SessionCode.ERROR, false );
+    }
+
+    /**
+     * This method hands the session id of every memento stored in the external source to the provided action. It is
+     * used to build an in-memory index of the stored session ids, sources which can not list their session ids return
+     * an error response.
+     *
+     * @param action action receiving the session ids
+     * @return {@link SessionResponse<Boolean>} response with data set to {@code true} if every session id was listed
+     */
+    default SessionResponse<Boolean> forEachSessionId( Consumer<String> action ) {
+        return new SessionResponse<>( "Listing session ids is not supported by " + getClass( ).getSimpleName( ), SessionCode.ERROR, false );
+    }
+
+    /**
+     * This method hands every memento stored in the external source to the provided action, with when it was written
+     * and its timeout where the source keeps them. It is used to warm up the internal session container after a
+     * restart. Sources may call the action from several threads at once. The default lists the session ids with
+     * {@link #forEachSessionId(Consumer)}, leaving the write time and the timeout {@link StoredSession#UNKNOWN}.
+     *
+     * @param action action receiving the stored sessions
+     * @return {@link SessionResponse<Boolean>} response with data set to {@code true} if every memento was listed
+     */
+    default SessionResponse<Boolean> forEachStoredSession( Consumer<StoredSession> action ) {
+        return forEachSessionId( sessionId -> action.accept( new StoredSession( sessionId, StoredSession.UNKNOWN, StoredSession.UNKNOWN ) ) );
+    }
+
+    /**
+     * This method removes mementos whose timeout passed since they were written. Sources tracking the expiry of their
+     * mementos reclaim at most the provided number of expired mementos per call, so a caller sweeping periodically
+     * limits the load it adds to the source. Sources which do not expire their mementos reclaim nothing, which is the
+     * default.
+     *
+     * @param maxSessions maximum number of expired mementos reclaimed
+     * @return {@link SessionResponse<Integer>} response with the number of reclaimed mementos
+     */
+    default SessionResponse<Integer> sweepExpiredSessions( int maxSessions ) {
+        return new SessionResponse<>( "Session expiry is not tracked by " + getClass( ).getSimpleName( ), SessionCode.SUCCESS, 0 );
+    }
+
+    /**
+     * This method extends the expiry of a stored memento as if it was written now, for a session which was used but not
+     * modified since it was last saved. Sources which expire their mementos and can not refresh a memento in place
+     * return {@code false}, so the caller writes the memento again. Sources which do not expire their mementos have
+     * nothing to refresh, which is the default.
+     *
+     * @param sessionId        session id of the memento
+     * @param timeoutInSeconds timeout of the session
+     * @return {@link SessionResponse<Boolean>} response with data set to {@code true} if the stored memento does not
+     * expire before the timeout passed from now
+     */
+    default SessionResponse<Boolean> touchSessionMemento( String sessionId, long timeoutInSeconds ) {
+        return new SessionResponse<>( "Session expiry is not tracked by " + getClass( ).getSimpleName( ), SessionCode.SUCCESS, true );
+    }
+
+    /**
+     * This method makes every write accepted so far durable. Sources which write synchronously have nothing to flush.
+     *
+     * @return {@link SessionResponse<Boolean>} response with data set to {@code true} if every accepted write is durable
+     */
+    default SessionResponse<Boolean> flush( ) {
+        return new SessionResponse<>( "Nothing to flush", SessionCode.SUCCESS, true );
+    }
 }
@@ -0,0 +1,92 @@
+package com.kusalk.projects.session.handler.external.sources;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A consistent hash ring of shard names. Every shard is placed on the ring at a number of virtual node positions, and
+ * a session id is owned by the shards of the first distinct virtual nodes found clockwise from the hash of the id.
+ * Adding or removing a shard only moves the ids between that shard and its ring neighbours.
+ */
+final class HashRing {
+
+    private final long[] positions;
+    private final String[] owners;
+    private final int shardCount;
+
+    HashRing( Collection<String> shardNames, int virtualNodes ) {
+        TreeMap<Long, String> ring = new TreeMap<>( );
+        for ( String shardName : shardNames ) {
+            for ( int i = 0; i < virtualNodes; i++ ) {
+                ring.putIfAbsent( hash( shardName + "#" + i ), shardName );
+            }
+        }
+        this.positions = new long[ring.size( )];
+        this.owners = new String[ring.size( )];
+        int index = 0;
+        for ( Map.Entry<Long, String> node : ring.entrySet( ) ) {
+            positions[index] = node.getKey( );
+            owners[index++] = node.getValue( );
+        }
+        this.shardCount = shardNames.size( );
+    }
+
+    /**
+     * Returns the shards owning the session id, the first one being its primary shard
+     *
+     * @param sessionId session id
+     * @param count     number of replicas, capped by the number of shards
+     * @return shard names
+     */
+    List<String> replicasOf( String sessionId, int count ) {
+        int replicas = Math.min( count, shardCount );
+        List<String> shards = new ArrayList<>( replicas );
+        if ( replicas == 0 ) {
+            return shards;
+        }
+        int index = indexOf( hash( sessionId ) );
+        for ( int visited = 0; visited < positions.length && shards.size( ) < replicas; visited++ ) {
+            String owner = owners[( index + visited ) % positions.length];
+            if ( !shards.contains( owner ) ) {
+                shards.add( owner );
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * Returns the index of the first virtual node at or after the hash, wrapping around the ring
+     */
+    private int indexOf( long hash ) {
+        int low = 0;
+        int high = positions.length - 1;
+        while ( low <= high ) {
+            int middle = ( low + high ) >>> 1;
+            if ( positions[middle] < hash ) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low == positions.length ? 0 : low;
+    }
+
+    /**
+     * 64-bit hash of the text, FNV-1a over the characters followed by the finalizer of MurmurHash3
+     */
+    static long hash( String text ) {
+        long hash = 0xCBF29CE484222325L;
+        for ( int i = 0; i < text.length( ); i++ ) {
+            hash = ( hash ^ text.charAt( i ) ) * 0x100000001B3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,101 @@
+package com.kusalk.projects.session.handler.external.sources;
+
+/**
+ * Location of the latest record of a session within the segments of a {@link SegmentedSessionSource}. When the latest
+ * record is a delta, the location links to the location of the record the delta was appended to, down to the full
+ * memento the chain starts with.
+ */
+final class RecordLocation {
+
+    private final Segment segment;
+    private final int offset;
+    private final int length;
+    private final long writtenAtMillis;
+    private final long timeoutInSeconds;
+    private final RecordLocation previous;
+    private final int chainLength;
+
+    RecordLocation( Segment segment, int offset, int length, long writtenAtMillis, long timeoutInSeconds ) {
+        this( segment, offset, length, writtenAtMillis, timeoutInSeconds, null );
+    }
+
+    private RecordLocation( Segment segment, int offset, int length, long writtenAtMillis, long timeoutInSeconds, RecordLocation previous ) {
+        this.segment = segment;
+        this.offset = offset;
+        this.length = length;
+        this.writtenAtMillis = writtenAtMillis;
+        this.timeoutInSeconds = timeoutInSeconds;
+        this.previous = previous;
+        this.chainLength = previous == null ? 1 : previous.chainLength + 1;
+    }
+
+    /**
+     * Returns the location of this delta record appended to the provided record
+     */
+    RecordLocation appendedTo( RecordLocation previous ) {
+        return new RecordLocation( segment, offset, length, writtenAtMillis, timeoutInSeconds, previous );
+    }
+
+    /**
+     * Returns whether this record or one of the records it was appended to is stored in the provided segment
+     */
+    boolean isChainedIn( Segment segment ) {
+        for ( RecordLocation location = this; location != null; location = location.previous ) {
+            if ( location.segment == segment ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Counts every record of the chain as garbage of its segment
+     */
+    void discardChain( ) {
+        for ( RecordLocation location = this; location != null; location = location.previous ) {
+            location.segment.addGarbage( location.length );
+        }
+    }
+
+    Segment getSegment( ) {
+        return segment;
+    }
+
+    int getOffset( ) {
+        return offset;
+    }
+
+    int getLength( ) {
+        return length;
+    }
+
+    long getWrittenAtMillis( ) {
+        return writtenAtMillis;
+    }
+
+    long getTimeoutInSeconds( ) {
+        return timeoutInSeconds;
+    }
+
+    /**
+     * Returns when the session expires, the write time of its latest record plus its timeout
+     *
+     * @return expiry time in epoch milliseconds, or {@code 0} for a session which never expires
+     */
+    long getExpiresAtMillis( ) {
+        return timeoutInSeconds > 0 ? writtenAtMillis + timeoutInSeconds * 1000 : 0;
+    }
+
+    boolean isExpired( long now ) {
+        long expiresAt = getExpiresAtMillis( );
+        return expiresAt > 0 && expiresAt <= now;
+    }
+
+    RecordLocation getPrevious( ) {
+        return previous;
+    }
+
+    int getChainLength( ) {
+        return chainLength;
+    }
+}
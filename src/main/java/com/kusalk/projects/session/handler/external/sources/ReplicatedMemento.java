@@ -0,0 +1,65 @@
+package com.kusalk.projects.session.handler.external.sources;
+
+import com.kusalk.projects.session.handler.session.SessionMemento;
+
+/**
+ * The envelope the {@link ShardedSessionSource} stores in every replica, versioning the memento so replicas holding
+ * different writes can be told apart. The newest version wins. A delete stores a tombstone, an envelope without a
+ * memento, so a replica which missed the delete can not bring the memento back.
+ */
+final class ReplicatedMemento extends SessionMemento {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long version;
+    private final SessionMemento memento;
+
+    ReplicatedMemento( long version, SessionMemento memento ) {
+        this( version, memento, memento.getSessionTimeoutInSeconds( ) );
+    }
+
+    private ReplicatedMemento( long version, SessionMemento memento, long timeoutInSeconds ) {
+        this.version = version;
+        this.memento = memento;
+        setSessionClass( );
+        setSessionTimeoutInSeconds( timeoutInSeconds );
+    }
+
+    /**
+     * Creates the tombstone of a deleted memento, which sources expiring their mementos reclaim after the timeout
+     */
+    static ReplicatedMemento tombstone( long version, long timeoutInSeconds ) {
+        return new ReplicatedMemento( version, null, timeoutInSeconds );
+    }
+
+    /**
+     * Returns whether a memento read from a replica is the tombstone of a deleted memento
+     */
+    static boolean isTombstone( SessionMemento memento ) {
+        return memento instanceof ReplicatedMemento && ( ( ReplicatedMemento ) memento ).memento == null;
+    }
+
+    /**
+     * Returns the version of a memento read from a replica. Mementos written before the source was sharded are older
+     * than any replicated write.
+     */
+    static long versionOf( SessionMemento memento ) {
+        return memento instanceof ReplicatedMemento ? ( ( ReplicatedMemento ) memento ).version : 0;
+    }
+
+    /**
+     * Returns the memento of a memento read from a replica, {@code null} for a tombstone
+     */
+    static SessionMemento unwrap( SessionMemento memento ) {
+        return memento instanceof ReplicatedMemento ? ( ( ReplicatedMemento ) memento ).memento : memento;
+    }
+
+    long getVersion( ) {
+        return version;
+    }
+
+    @Override
+    public void setSessionClass( ) {
+        this.sessionClass = memento != null ? memento.getSessionClass( ) : null;
+    }
+}
@@ -0,0 +1,225 @@
+package com.kusalk.projects.session.handler.external.sources;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * A fixed size, memory-mapped segment file of the {@link SegmentedSessionSource}. Records are appended one after the
+ * other and are never modified. Every record starts with the following header, followed by the session id and the
+ * serialized memento:
+ * <pre>
+ * int   record length, including the header
+ * int   CRC32 of the record after this field
+ * byte  record type, {@link #PUT}, {@link #DELTA} or {@link #DELETE}
+ * long  write time in epoch milliseconds
+ * long  session timeout in seconds
+ * short session id length
+ * int   payload length (after the session id)
+ * </pre>
+ * The record length is written last, so a record torn by a crash is either zero-length or fails its checksum, and the
+ * scan of the segment stops there.
+ */
+final class Segment {
+
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+    static final byte DELTA = 3;
+    static final int HEADER_SIZE = 31;
+
+    private static final int CHECKSUM_OFFSET = 4;
+    private static final int TYPE_OFFSET = 8;
+    private static final int WRITTEN_AT_OFFSET = 9;
+    private static final int TIMEOUT_OFFSET = 17;
+    private static final int ID_LENGTH_OFFSET = 25;
+    private static final int PAYLOAD_LENGTH_OFFSET = 27;
+
+    private final long segmentId;
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final AtomicLong garbageBytes = new AtomicLong( );
+    private int writePosition;
+    private volatile boolean dirty;
+
+    private Segment( long segmentId, Path path, MappedByteBuffer buffer ) {
+        this.segmentId = segmentId;
+        this.path = path;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Creates a new, empty segment file of the provided capacity
+     */
+    static Segment create( Path path, long segmentId, int capacity ) throws IOException {
+        try ( FileChannel channel = FileChannel.open( path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE ) ) {
+            return new Segment( segmentId, path, channel.map( FileChannel.MapMode.READ_WRITE, 0, capacity ) );
+        }
+    }
+
+    /**
+     * Maps an existing segment file. The write position is found by scanning the records.
+     */
+    static Segment open( Path path, long segmentId ) throws IOException {
+        try ( FileChannel channel = FileChannel.open( path, StandardOpenOption.READ, StandardOpenOption.WRITE ) ) {
+            return new Segment( segmentId, path, channel.map( FileChannel.MapMode.READ_WRITE, 0, channel.size( ) ) );
+        }
+    }
+
+    /**
+     * Encodes a record, leaving the record length to be written by {@link #append(ByteBuffer)}
+     */
+    static ByteBuffer encodeRecord( byte type, byte[] sessionId, long writtenAtMillis, long timeoutInSeconds, byte[] payload ) {
+        int length = HEADER_SIZE + sessionId.length + payload.length;
+        ByteBuffer record = ByteBuffer.allocate( length );
+        record.putInt( 0, length );
+        record.put( TYPE_OFFSET, type );
+        record.putLong( WRITTEN_AT_OFFSET, writtenAtMillis );
+        record.putLong( TIMEOUT_OFFSET, timeoutInSeconds );
+        record.putShort( ID_LENGTH_OFFSET, ( short ) sessionId.length );
+        record.putInt( PAYLOAD_LENGTH_OFFSET, payload.length );
+        record.position( HEADER_SIZE );
+        record.put( sessionId );
+        record.put( payload );
+
+        CRC32 crc = new CRC32( );
+        crc.update( record.array( ), TYPE_OFFSET, length - TYPE_OFFSET );
+        record.putInt( CHECKSUM_OFFSET, ( int ) crc.getValue( ) );
+        record.clear( );
+        return record;
+    }
+
+    /**
+     * Appends the encoded record. Must be called while holding the append lock of the source.
+     *
+     * @return offset of the record or {@code -1} if the segment does not have enough space left
+     */
+    int append( ByteBuffer record ) {
+        int length = record.remaining( );
+        if ( length > remaining( ) ) {
+            return -1;
+        }
+        int offset = writePosition;
+        ByteBuffer target = buffer.duplicate( );
+        target.position( offset + CHECKSUM_OFFSET );
+        target.put( record.duplicate( ).position( record.position( ) + CHECKSUM_OFFSET ) );
+        target.putInt( offset, length );
+        writePosition += length;
+        dirty = true;
+        return offset;
+    }
+
+    /**
+     * Scans the records of the segment from the start, handing every valid record to the visitor. The scan stops at
+     * the first empty or corrupted record, which becomes the write position of the segment.
+     */
+    void scan( RecordVisitor visitor ) {
+        int position = 0;
+        int capacity = buffer.capacity( );
+        CRC32 crc = new CRC32( );
+        while ( position + HEADER_SIZE <= capacity ) {
+            int length = buffer.getInt( position );
+            if ( length < HEADER_SIZE || position + length > capacity ) {
+                break;
+            }
+            ByteBuffer checked = buffer.duplicate( );
+            checked.position( position + TYPE_OFFSET ).limit( position + length );
+            crc.reset( );
+            crc.update( checked );
+            if ( ( int ) crc.getValue( ) != buffer.getInt( position + CHECKSUM_OFFSET ) ) {
+                break;
+            }
+            visitor.visit( this, position, length, buffer.get( position + TYPE_OFFSET ), readSessionId( position ),
+                    buffer.getLong( position + WRITTEN_AT_OFFSET ), buffer.getLong( position + TIMEOUT_OFFSET ) );
+            position += length;
+        }
+        writePosition = position;
+    }
+
+    /**
+     * Returns a read-only view of the payload of the record at the provided offset
+     */
+    ByteBuffer payload( int offset ) {
+        int idLength = buffer.getShort( offset + ID_LENGTH_OFFSET );
+        int payloadLength = buffer.getInt( offset + PAYLOAD_LENGTH_OFFSET );
+        ByteBuffer payload = buffer.asReadOnlyBuffer( );
+        payload.position( offset + HEADER_SIZE + idLength ).limit( offset + HEADER_SIZE + idLength + payloadLength );
+        return payload;
+    }
+
+    /**
+     * Returns a read-only view of the whole record at the provided offset
+     */
+    ByteBuffer record( int offset, int length ) {
+        ByteBuffer record = buffer.asReadOnlyBuffer( );
+        record.position( offset ).limit( offset + length );
+        return record;
+    }
+
+    /**
+     * Returns the location of the record at the provided offset
+     */
+    RecordLocation locate( int offset, int length ) {
+        return new RecordLocation( this, offset, length, buffer.getLong( offset + WRITTEN_AT_OFFSET ), buffer.getLong( offset + TIMEOUT_OFFSET ) );
+    }
+
+    String readSessionId( int offset ) {
+        int idLength = buffer.getShort( offset + ID_LENGTH_OFFSET );
+        byte[] idBytes = new byte[idLength];
+        ByteBuffer idBuffer = buffer.duplicate( );
+        idBuffer.position( offset + HEADER_SIZE );
+        idBuffer.get( idBytes );
+        return new String( idBytes, StandardCharsets.UTF_8 );
+    }
+
+    /**
+     * Forces the written records of the segment to the storage device
+     */
+    void force( ) {
+        if ( dirty ) {
+            dirty = false;
+            buffer.force( );
+        }
+    }
+
+    void delete( ) throws IOException {
+        Files.deleteIfExists( path );
+    }
+
+    void addGarbage( int bytes ) {
+        garbageBytes.addAndGet( bytes );
+    }
+
+    /**
+     * Returns the share of the written bytes which belong to superseded or deleted records
+     */
+    double garbageRatio( ) {
+        return writePosition == 0 ? 0 : ( double ) garbageBytes.get( ) / writePosition;
+    }
+
+    int remaining( ) {
+        return buffer.capacity( ) - writePosition;
+    }
+
+    long getSegmentId( ) {
+        return segmentId;
+    }
+
+    Path getPath( ) {
+        return path;
+    }
+
+    /**
+     * Visitor of the records found while scanning a segment
+     */
+    @FunctionalInterface
+    interface RecordVisitor {
+        void visit( Segment segment, int offset, int length, byte type, String sessionId, long writtenAtMillis, long timeoutInSeconds );
+    }
+}
@@ -0,0 +1,691 @@
+package com.kusalk.projects.session.handler.external.sources;
+
+import com.kusalk.projects.session.handler.codec.JavaSerializationMementoCodec;
+import com.kusalk.projects.session.handler.codec.MementoCodec;
+import com.kusalk.projects.session.handler.external.index.ExpiryIndex;
+import com.kusalk.projects.session.handler.session.DeltaMemento;
+import com.kusalk.projects.session.handler.session.SessionMemento;
+import com.kusalk.projects.session.handler.util.SessionCode;
+import com.kusalk.projects.session.handler.util.SessionResponse;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A log-structured {@link ExternalSessionSource} which appends session mementos to large memory-mapped segment files
+ * instead of writing a file per session.
+ * <ul>
+ * <li>An in-memory index maps every session id to the segment and offset of its latest record. Reads decode the
+ * memento straight from the mapped segment using the configured {@link MementoCodec}.</li>
+ * <li>Saving a session again appends a new record and deleting a session appends a tombstone, the superseded records
+ * become garbage.</li>
+ * <li>Deltas of a session are appended after its latest record and applied when the session is read. Once a session
+ * spans more records than the maximum delta chain length, its records are folded into a new full memento.</li>
+ * <li>A background compactor rewrites the live records of segments whose garbage ratio passed the compaction threshold
+ * to the active segment and deletes the old segment files.</li>
+ * <li>On startup the index is rebuilt by scanning the segments in the order they were written.</li>
+ * <li>Every record carries its write time and the session timeout. Reads of sessions whose timeout passed since their
+ * latest record are rejected without decoding the memento, and {@link #sweepExpiredSessions(int)} deletes expired
+ * sessions in bulk from an {@link ExpiryIndex}, leaving their records to the compactor.</li>
+ * </ul>
+ * Records are forced to the storage device when a segment is full and on {@link #flush()}.
+ */
+public class SegmentedSessionSource implements ExternalSessionSource, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger( SegmentedSessionSource.class.getName( ) );
+
+    public static final int DEFAULT_SEGMENT_SIZE_BYTES = 64 * 1024 * 1024;
+    public static final long DEFAULT_COMPACTION_INTERVAL_MILLIS = 60000;
+    public static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+    public static final int DEFAULT_MAX_DELTA_CHAIN_LENGTH = 16;
+
+    private static final String SEGMENT_FILE_PREFIX = "segment-";
+    private static final String SEGMENT_FILE_SUFFIX = ".log";
+    private static final byte[] NO_PAYLOAD = new byte[0];
+
+    private final Path directory;
+    private final int segmentSizeBytes;
+    private final long compactionIntervalMillis;
+    private final double compactionThreshold;
+    private final MementoCodec mementoCodec;
+    private final int maxDeltaChainLength;
+
+    private final ConcurrentHashMap<String, RecordLocation> index = new ConcurrentHashMap<>( );
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>( );
+    private final ExpiryIndex expiryIndex = new ExpiryIndex( ExpiryIndex.DEFAULT_BUCKET_MILLIS );
+    private final ReentrantLock appendLock = new ReentrantLock( );
+    private final Thread compactorThread;
+    private Segment activeSegment;
+    private long nextSegmentId;
+    private volatile boolean closed;
+
+    private SegmentedSessionSource( Builder builder ) {
+        this.directory = builder.directory;
+        this.segmentSizeBytes = builder.segmentSizeBytes;
+        this.compactionIntervalMillis = builder.compactionIntervalMillis;
+        this.compactionThreshold = builder.compactionThreshold;
+        this.mementoCodec = builder.mementoCodec;
+        this.maxDeltaChainLength = builder.maxDeltaChainLength;
+        try {
+            Files.createDirectories( directory );
+            loadSegments( );
+        } catch ( IOException e ) {
+            throw new UncheckedIOException( "Error opening session segments in " + directory, e );
+        }
+
+        this.compactorThread = new Thread( this::runCompactor );
+        compactorThread.setDaemon( true );
+        compactorThread.setName( "session-segment-compactor-thread" );
+        compactorThread.setUncaughtExceptionHandler( ( t, e ) -> LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred within the segment compactor thread" ) );
+        compactorThread.start( );
+    }
+
+    /**
+     * Creates a builder for a segmented source keeping its segment files in the provided directory
+     *
+     * @param directory directory of the segment files
+     * @return {@link Builder} builder
+     */
+    public static Builder builder( Path directory ) {
+        return new Builder( directory );
+    }
+
+    @Override
+    public SessionResponse<SessionMemento> readSessionMemento( String sessionId ) {
+        RecordLocation location = index.get( sessionId );
+        if ( location == null ) {
+            LOGGER.log( Level.FINE, "No session memento found in segments for session : {0}", sessionId );
+            return new SessionResponse<>( "No session found in segments for session : " + sessionId, SessionCode.ERROR, null );
+        }
+        if ( location.isExpired( System.currentTimeMillis( ) ) ) {
+            LOGGER.log( Level.FINE, "Session memento in segments expired for session : {0}", sessionId );
+            return new SessionResponse<>( "Session expired in segments for session : " + sessionId, SessionCode.ERROR, null );
+        }
+        try {
+            SessionMemento memento = readChain( location );
+            return new SessionResponse<>( "Successful reading session from segments for session : " + sessionId, SessionCode.SUCCESS, memento );
+        } catch ( Exception e ) {
+            LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred while reading session memento : " + sessionId );
+        }
+        return new SessionResponse<>( "Error reading session from segments for session : " + sessionId, SessionCode.ERROR, null );
+    }
+
+    @Override
+    public SessionResponse<Boolean> writeSessionMemento( String sessionId, SessionMemento memento ) {
+        try {
+            byte[] payload = mementoCodec.encode( memento );
+            ByteBuffer record = Segment.encodeRecord( Segment.PUT, sessionId.getBytes( StandardCharsets.UTF_8 ), System.currentTimeMillis( ),
+                    memento.getSessionTimeoutInSeconds( ), payload );
+            appendLock.lock( );
+            try {
+                RecordLocation location = appendRecord( record );
+                RecordLocation previous = index.put( sessionId, location );
+                if ( previous != null ) {
+                    previous.discardChain( );
+                }
+                expiryIndex.record( sessionId, location.getExpiresAtMillis( ) );
+            } finally {
+                appendLock.unlock( );
+            }
+            return new SessionResponse<>( "Session successfully appended to segments", SessionCode.SUCCESS, true );
+        } catch ( Exception e ) {
+            LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred while writing session memento : " + sessionId );
+        }
+        return new SessionResponse<>( "Session writing to segments failed", SessionCode.ERROR, false );
+    }
+
+    /**
+     * Encodes the mementos first and then appends all of them while holding the append lock once
+     */
+    @Override
+    public SessionResponse<Map<String, Boolean>> writeSessionMementos( Map<String, SessionMemento> mementos ) {
+        Map<String, Boolean> results = new HashMap<>( );
+        Map<String, ByteBuffer> records = new LinkedHashMap<>( );
+        long now = System.currentTimeMillis( );
+        for ( Map.Entry<String, SessionMemento> entry : mementos.entrySet( ) ) {
+            try {
+                records.put( entry.getKey( ), Segment.encodeRecord( Segment.PUT, entry.getKey( ).getBytes( StandardCharsets.UTF_8 ), now,
+                        entry.getValue( ).getSessionTimeoutInSeconds( ), mementoCodec.encode( entry.getValue( ) ) ) );
+            } catch ( Exception e ) {
+                LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred while writing session memento : " + entry.getKey( ) );
+                results.put( entry.getKey( ), false );
+            }
+        }
+
+        appendLock.lock( );
+        try {
+            for ( Map.Entry<String, ByteBuffer> entry : records.entrySet( ) ) {
+                RecordLocation location = appendRecord( entry.getValue( ) );
+                RecordLocation previous = index.put( entry.getKey( ), location );
+                if ( previous != null ) {
+                    previous.discardChain( );
+                }
+                expiryIndex.record( entry.getKey( ), location.getExpiresAtMillis( ) );
+                results.put( entry.getKey( ), true );
+            }
+        } catch ( IOException e ) {
+            LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred while appending a batch of session mementos" );
+        } finally {
+            appendLock.unlock( );
+        }
+        records.keySet( ).forEach( sessionId -> results.putIfAbsent( sessionId, false ) );
+        return ExternalSessionSource.batchWriteResponse( results, ( int ) results.values( ).stream( ).filter( written -> !written ).count( ) );
+    }
+
+    /**
+     * Appends the delta after the latest record of the session. Once the chain of deltas is longer than the maximum
+     * delta chain length, the chain is folded into a new full memento.
+     */
+    @Override
+    public SessionResponse<Boolean> appendSessionDelta( String sessionId, DeltaMemento delta ) {
+        RecordLocation location;
+        try {
+            ByteBuffer record = Segment.encodeRecord( Segment.DELTA, sessionId.getBytes( StandardCharsets.UTF_8 ), System.currentTimeMillis( ),
+                    delta.getSessionTimeoutInSeconds( ), mementoCodec.encode( delta ) );
+            appendLock.lock( );
+            try {
+                RecordLocation previous = index.get( sessionId );
+                if ( previous == null ) {
+                    return new SessionResponse<>( "No session memento in segments to append the delta to", SessionCode.ERROR, false );
+                }
+                location = appendRecord( record ).appendedTo( previous );
+                index.put( sessionId, location );
+                expiryIndex.record( sessionId, location.getExpiresAtMillis( ) );
+            } finally {
+                appendLock.unlock( );
+            }
+        } catch ( Exception e ) {
+            LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred while appending session delta : " + sessionId );
+            return new SessionResponse<>( "Session delta appending to segments failed", SessionCode.ERROR, false );
+        }
+        if ( location.getChainLength( ) > maxDeltaChainLength ) {
+            foldChain( sessionId, location );
+        }
+        return new SessionResponse<>( "Session delta appended to segments", SessionCode.SUCCESS, true );
+    }
+
+    @Override
+    public SessionResponse<Boolean> deleteSessionMemento( String sessionId ) {
+        ByteBuffer tombstone = Segment.encodeRecord( Segment.DELETE, sessionId.getBytes( StandardCharsets.UTF_8 ), System.currentTimeMillis( ), 0, NO_PAYLOAD );
+        appendLock.lock( );
+        try {
+            RecordLocation previous = index.remove( sessionId );
+            if ( previous == null ) {
+                return new SessionResponse<>( "No session found in segments", SessionCode.SUCCESS, false );
+            }
+            previous.discardChain( );
+            expiryIndex.remove( sessionId );
+            // The tombstone is only needed until the segment holding the deleted record is compacted
+            appendRecord( tombstone ).getSegment( ).addGarbage( tombstone.remaining( ) );
+            return new SessionResponse<>( "Session deleted from segments", SessionCode.SUCCESS, true );
+        } catch ( Exception e ) {
+            LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred while deleting session memento : " + sessionId );
+        } finally {
+            appendLock.unlock( );
+        }
+        return new SessionResponse<>( "Session deleting from segments failed", SessionCode.ERROR, false );
+    }
+
+    /**
+     * Records are never modified, so the expiry of a session which expires can only be refreshed by writing the session
+     * again
+     */
+    @Override
+    public SessionResponse<Boolean> touchSessionMemento( String sessionId, long timeoutInSeconds ) {
+        RecordLocation location = index.get( sessionId );
+        if ( location != null && location.getTimeoutInSeconds( ) <= 0 && timeoutInSeconds <= 0 ) {
+            return new SessionResponse<>( "Session in segments never expires", SessionCode.SUCCESS, true );
+        }
+        return new SessionResponse<>( "Session records in segments are not refreshed in place", SessionCode.SUCCESS, false );
+    }
+
+    @Override
+    public SessionResponse<Boolean> forEachSessionId( Consumer<String> action ) {
+        index.keySet( ).forEach( action );
+        return new SessionResponse<>( "Listed the session ids of the segments", SessionCode.SUCCESS, true );
+    }
+
+    @Override
+    public SessionResponse<Boolean> forEachStoredSession( Consumer<StoredSession> action ) {
+        index.forEach( ( sessionId, location ) -> action.accept( new StoredSession( sessionId, location.getWrittenAtMillis( ), location.getTimeoutInSeconds( ) ) ) );
+        return new SessionResponse<>( "Listed the sessions of the segments", SessionCode.SUCCESS, true );
+    }
+
+    /**
+     * Deletes expired sessions while holding the append lock once. Every deleted session gets a tombstone, so an older
+     * record of the session with a longer timeout can not come back when the segment of its latest record is
+     * compacted. The records become garbage reclaimed by the compactor.
+     */
+    @Override
+    public SessionResponse<Integer> sweepExpiredSessions( int maxSessions ) {
+        long now = System.currentTimeMillis( );
+        int swept;
+        appendLock.lock( );
+        try {
+            swept = expiryIndex.sweep( now, maxSessions, sessionId -> {
+                RecordLocation location = index.get( sessionId );
+                if ( location == null || !location.isExpired( now ) ) {
+                    return false;
+                }
+                ByteBuffer tombstone = Segment.encodeRecord( Segment.DELETE, sessionId.getBytes( StandardCharsets.UTF_8 ), now, 0, NO_PAYLOAD );
+                try {
+                    appendRecord( tombstone ).getSegment( ).addGarbage( tombstone.remaining( ) );
+                } catch ( IOException e ) {
+                    LOGGER.log( Level.WARNING, e, ( ) -> "Error occurred while deleting expired session : " + sessionId );
+                    return false;
+                }
+                index.remove( sessionId );
+                location.discardChain( );
+                return true;
+            } );
+        } finally {
+            appendLock.unlock( );
+        }
+        return new SessionResponse<>( "Deleted " + swept + " expired sessions from segments", SessionCode.SUCCESS, swept );
+    }
+
+    /**
+     * Forces every record written so far to the storage device
+     */
+    @Override
+    public SessionResponse<Boolean> flush( ) {
+        try {
+            segments.values( ).forEach( Segment::force );
+            return new SessionResponse<>( "Session segments flushed", SessionCode.SUCCESS, true );
+        } catch ( Exception e ) {
+            LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred while flushing session segments" );
+        }
+        return new SessionResponse<>( "Session segments flush failed", SessionCode.ERROR, false );
+    }
+
+    /**
+     * Stops the compactor and flushes the segments
+     */
+    @Override
+    public void close( ) {
+        closed = true;
+        compactorThread.interrupt( );
+        flush( );
+    }
+
+    /**
+     * Returns the number of sessions stored in the segments
+     *
+     * @return session count
+     */
+    public int getSessionCount( ) {
+        return index.size( );
+    }
+
+    /**
+     * Returns the number of segment files
+     *
+     * @return segment count
+     */
+    public int getSegmentCount( ) {
+        return segments.size( );
+    }
+
+    /**
+     * Compacts every sealed segment whose garbage ratio passed the compaction threshold. This runs periodically on the
+     * compactor thread and can also be called directly.
+     */
+    public void compact( ) {
+        for ( Segment segment : segments.values( ) ) {
+            if ( segment.garbageRatio( ) >= compactionThreshold && isSealed( segment ) ) {
+                try {
+                    compactSegment( segment );
+                } catch ( IOException | UncheckedIOException e ) {
+                    LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred while compacting segment " + segment.getPath( ) );
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the live records of the segment to the active segment and deletes the segment. Sessions with deltas in
+     * the segment are folded into a full memento instead. Tombstones are copied as well while an older segment may
+     * still hold a record they delete. The segment is checked again before it is deleted, as it may have been
+     * compacted by another call meanwhile.
+     */
+    private void compactSegment( Segment segment ) throws IOException {
+        if ( !isSealed( segment ) ) {
+            return;
+        }
+        boolean olderSegmentsExist = segments.firstKey( ) < segment.getSegmentId( );
+        segment.scan( ( source, offset, length, type, sessionId, writtenAtMillis, timeoutInSeconds ) -> {
+            appendLock.lock( );
+            try {
+                if ( type == Segment.PUT || type == Segment.DELTA ) {
+                    RecordLocation location = index.get( sessionId );
+                    if ( location != null && location.getChainLength( ) == 1 && location.getSegment( ) == source && location.getOffset( ) == offset ) {
+                        index.put( sessionId, appendRecord( source.record( offset, length ) ) );
+                    } else if ( location != null && location.getChainLength( ) > 1 && location.isChainedIn( source ) ) {
+                        // Deltas are not moved one by one, the whole chain is folded into a full memento
+                        index.put( sessionId, appendRecord( encodeFolded( sessionId, location ) ) );
+                        location.discardChain( );
+                    }
+                } else if ( olderSegmentsExist && !index.containsKey( sessionId ) ) {
+                    appendRecord( source.record( offset, length ) ).getSegment( ).addGarbage( length );
+                }
+            } catch ( IOException e ) {
+                throw new UncheckedIOException( e );
+            } finally {
+                appendLock.unlock( );
+            }
+        } );
+
+        appendLock.lock( );
+        try {
+            if ( segment == activeSegment || !segments.remove( segment.getSegmentId( ), segment ) ) {
+                return;
+            }
+            activeSegment.force( );
+        } finally {
+            appendLock.unlock( );
+        }
+        segment.delete( );
+        LOGGER.log( Level.FINE, "Compacted session segment {0}", segment.getPath( ) );
+    }
+
+    /**
+     * Returns whether the segment is still one of the segments and no longer receives appends. The active segment is
+     * only replaced while holding the append lock.
+     */
+    private boolean isSealed( Segment segment ) {
+        appendLock.lock( );
+        try {
+            return segment != activeSegment && segments.get( segment.getSegmentId( ) ) == segment;
+        } finally {
+            appendLock.unlock( );
+        }
+    }
+
+    /**
+     * Appends the record to the active segment, rolling over to a new segment when it is full. Must be called while
+     * holding the append lock.
+     */
+    private RecordLocation appendRecord( ByteBuffer record ) throws IOException {
+        int length = record.remaining( );
+        int offset = activeSegment.append( record );
+        if ( offset < 0 ) {
+            rollSegment( length );
+            offset = activeSegment.append( record );
+        }
+        return activeSegment.locate( offset, length );
+    }
+
+    /**
+     * Replaces the chain of the session with a full memento, unless the session was written again meanwhile
+     */
+    private void foldChain( String sessionId, RecordLocation location ) {
+        try {
+            ByteBuffer record = encodeFolded( sessionId, location );
+            appendLock.lock( );
+            try {
+                if ( index.get( sessionId ) == location ) {
+                    index.put( sessionId, appendRecord( record ) );
+                    location.discardChain( );
+                }
+            } finally {
+                appendLock.unlock( );
+            }
+        } catch ( IOException e ) {
+            // The chain stays readable, folding is retried with the next delta
+            LOGGER.log( Level.WARNING, e, ( ) -> "Error occurred while folding the deltas of session : " + sessionId );
+        }
+    }
+
+    /**
+     * Encodes the full memento of a chain as a new record
+     */
+    private ByteBuffer encodeFolded( String sessionId, RecordLocation location ) throws IOException {
+        SessionMemento memento = readChain( location );
+        return Segment.encodeRecord( Segment.PUT, sessionId.getBytes( StandardCharsets.UTF_8 ), location.getWrittenAtMillis( ),
+                location.getTimeoutInSeconds( ), mementoCodec.encode( memento ) );
+    }
+
+    /**
+     * Decodes the full memento the chain starts with and applies the deltas of the chain to it in the order they were
+     * written
+     */
+    private SessionMemento readChain( RecordLocation location ) throws IOException {
+        RecordLocation[] chain = new RecordLocation[location.getChainLength( )];
+        RecordLocation current = location;
+        for ( int i = chain.length - 1; i >= 0; i--, current = current.getPrevious( ) ) {
+            chain[i] = current;
+        }
+        SessionMemento memento = mementoCodec.decode( chain[0].getSegment( ).payload( chain[0].getOffset( ) ) );
+        for ( int i = 1; i < chain.length; i++ ) {
+            DeltaMemento delta = ( DeltaMemento ) mementoCodec.decode( chain[i].getSegment( ).payload( chain[i].getOffset( ) ) );
+            memento = delta.applyTo( memento );
+        }
+        memento.setSessionTimeoutInSeconds( location.getTimeoutInSeconds( ) );
+        return memento;
+    }
+
+    private void rollSegment( int minimumCapacity ) throws IOException {
+        if ( activeSegment != null ) {
+            activeSegment.force( );
+        }
+        long segmentId = nextSegmentId++;
+        Segment segment = Segment.create( directory.resolve( segmentFileName( segmentId ) ), segmentId, Math.max( segmentSizeBytes, minimumCapacity ) );
+        segments.put( segmentId, segment );
+        activeSegment = segment;
+    }
+
+    /**
+     * Maps the existing segment files and rebuilds the index by replaying their records in the order they were written
+     */
+    private void loadSegments( ) throws IOException {
+        List<Long> segmentIds = new ArrayList<>( );
+        try ( DirectoryStream<Path> files = Files.newDirectoryStream( directory, SEGMENT_FILE_PREFIX + "*" + SEGMENT_FILE_SUFFIX ) ) {
+            for ( Path file : files ) {
+                String fileName = file.getFileName( ).toString( );
+                try {
+                    segmentIds.add( Long.parseLong( fileName.substring( SEGMENT_FILE_PREFIX.length( ), fileName.length( ) - SEGMENT_FILE_SUFFIX.length( ) ) ) );
+                } catch ( NumberFormatException e ) {
+                    LOGGER.log( Level.WARNING, "Ignoring unexpected file {0} in the segment directory", file );
+                }
+            }
+        }
+        segmentIds.sort( Long::compare );
+
+        // Segments are mapped and scanned in parallel, the records are then applied to the index in the order they were written
+        List<ScannedSegment> scannedSegments;
+        try {
+            scannedSegments = segmentIds.parallelStream( ).map( this::scanSegment ).collect( Collectors.toList( ) );
+        } catch ( UncheckedIOException e ) {
+            throw e.getCause( );
+        }
+        for ( ScannedSegment scanned : scannedSegments ) {
+            for ( ScannedRecord record : scanned.records ) {
+                RecordLocation previous;
+                if ( record.type == Segment.PUT ) {
+                    previous = index.put( record.sessionId, record.location );
+                } else if ( record.type == Segment.DELTA ) {
+                    previous = null;
+                    RecordLocation base = index.get( record.sessionId );
+                    if ( base != null ) {
+                        index.put( record.sessionId, record.location.appendedTo( base ) );
+                    } else {
+                        scanned.segment.addGarbage( record.length );
+                    }
+                } else {
+                    previous = index.remove( record.sessionId );
+                    scanned.segment.addGarbage( record.length );
+                }
+                if ( previous != null ) {
+                    previous.discardChain( );
+                }
+            }
+            segments.put( scanned.segment.getSegmentId( ), scanned.segment );
+            activeSegment = scanned.segment;
+            nextSegmentId = scanned.segment.getSegmentId( ) + 1;
+        }
+        if ( activeSegment == null ) {
+            rollSegment( segmentSizeBytes );
+        }
+        index.forEach( ( sessionId, location ) -> expiryIndex.record( sessionId, location.getExpiresAtMillis( ) ) );
+        LOGGER.log( Level.INFO, "Loaded {0} sessions from {1} segments in {2}", new Object[]{ index.size( ), segments.size( ), directory } );
+    }
+
+    private ScannedSegment scanSegment( long segmentId ) {
+        try {
+            Segment segment = Segment.open( directory.resolve( segmentFileName( segmentId ) ), segmentId );
+            List<ScannedRecord> records = new ArrayList<>( );
+            segment.scan( ( source, offset, length, type, sessionId, writtenAtMillis, timeoutInSeconds ) ->
+                    records.add( new ScannedRecord( type, sessionId, length, type == Segment.DELETE ? null : source.locate( offset, length ) ) ) );
+            return new ScannedSegment( segment, records );
+        } catch ( IOException e ) {
+            throw new UncheckedIOException( "Error opening session segment " + segmentId, e );
+        }
+    }
+
+    private void runCompactor( ) {
+        while ( !closed ) {
+            try {
+                Thread.sleep( compactionIntervalMillis );
+                compact( );
+            } catch ( InterruptedException e ) {
+                Thread.currentThread( ).interrupt( );
+                return;
+            }
+        }
+    }
+
+    private static String segmentFileName( long segmentId ) {
+        return String.format( "%s%016d%s", SEGMENT_FILE_PREFIX, segmentId, SEGMENT_FILE_SUFFIX );
+    }
+
+    /**
+     * The records of a segment in the order they were written, as found when loading the segments
+     */
+    private static final class ScannedSegment {
+
+        private final Segment segment;
+        private final List<ScannedRecord> records;
+
+        private ScannedSegment( Segment segment, List<ScannedRecord> records ) {
+            this.segment = segment;
+            this.records = records;
+        }
+    }
+
+    private static final class ScannedRecord {
+
+        private final byte type;
+        private final String sessionId;
+        private final int length;
+        private final RecordLocation location;
+
+        private ScannedRecord( byte type, String sessionId, int length, RecordLocation location ) {
+            this.type = type;
+            this.sessionId = sessionId;
+            this.length = length;
+            this.location = location;
+        }
+    }
+
+    /**
+     * Builder of {@link SegmentedSessionSource} objects
+     */
+    public static final class Builder {
+
+        private final Path directory;
+        private int segmentSizeBytes = DEFAULT_SEGMENT_SIZE_BYTES;
+        private long compactionIntervalMillis = DEFAULT_COMPACTION_INTERVAL_MILLIS;
+        private double compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+        private MementoCodec mementoCodec = new JavaSerializationMementoCodec( );
+        private int maxDeltaChainLength = DEFAULT_MAX_DELTA_CHAIN_LENGTH;
+
+        private Builder( Path directory ) {
+            if ( directory == null ) {
+                throw new IllegalArgumentException( "Segment directory is required" );
+            }
+            this.directory = directory;
+        }
+
+        /**
+         * @param segmentSizeBytes size of a segment file, records larger than this get a segment of their own
+         * @return this builder
+         */
+        public Builder segmentSizeBytes( int segmentSizeBytes ) {
+            if ( segmentSizeBytes < Segment.HEADER_SIZE ) {
+                throw new IllegalArgumentException( "Segment size is too small : " + segmentSizeBytes );
+            }
+            this.segmentSizeBytes = segmentSizeBytes;
+            return this;
+        }
+
+        /**
+         * @param compactionIntervalMillis time between two compaction runs
+         * @return this builder
+         */
+        public Builder compactionIntervalMillis( long compactionIntervalMillis ) {
+            if ( compactionIntervalMillis <= 0 ) {
+                throw new IllegalArgumentException( "Compaction interval must be positive : " + compactionIntervalMillis );
+            }
+            this.compactionIntervalMillis = compactionIntervalMillis;
+            return this;
+        }
+
+        /**
+         * @param compactionThreshold share of garbage bytes above which a sealed segment is compacted
+         * @return this builder
+         */
+        public Builder compactionThreshold( double compactionThreshold ) {
+            if ( compactionThreshold <= 0 || compactionThreshold > 1 ) {
+                throw new IllegalArgumentException( "Compaction threshold must be within (0, 1] : " + compactionThreshold );
+            }
+            this.compactionThreshold = compactionThreshold;
+            return this;
+        }
+
+        /**
+         * @param mementoCodec codec of the mementos stored in the segments, Java serialization by default
+         * @return this builder
+         */
+        public Builder mementoCodec( MementoCodec mementoCodec ) {
+            if ( mementoCodec == null ) {
+                throw new IllegalArgumentException( "Memento codec is required" );
+            }
+            this.mementoCodec = mementoCodec;
+            return this;
+        }
+
+        /**
+         * @param maxDeltaChainLength number of records a session can span, its full memento and the deltas appended to
+         *                            it, before the deltas are folded into a new full memento
+         * @return this builder
+         */
+        public Builder maxDeltaChainLength( int maxDeltaChainLength ) {
+            if ( maxDeltaChainLength < 1 ) {
+                throw new IllegalArgumentException( "Maximum delta chain length must be positive : " + maxDeltaChainLength );
+            }
+            this.maxDeltaChainLength = maxDeltaChainLength;
+            return this;
+        }
+
+        public SegmentedSessionSource build( ) {
+            return new SegmentedSessionSource( this );
+        }
+    }
+}
@@ -1,16 +1,52 @@
 package com.kusalk.projects.session.handler.external.sources;
 
+import com.kusalk.projects.session.handler.codec.JavaSerializationMementoCodec;
+import com.kusalk.projects.session.handler.codec.MementoCodec;
+import com.kusalk.projects.session.handler.external.index.ExpiryIndex;
 import com.kusalk.projects.session.handler.session.SessionMemento;
 import com.kusalk.projects.session.handler.util.SessionCode;
 import com.kusalk.projects.session.handler.util.SessionResponse;
 
-import java.io.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * This is a simple implementation of an {@link ExternalSessionSource} where session memento objects
- * are serialized to a file.
+ * are encoded to a file using a {@link MementoCodec}. Java serialization is used unless another codec is provided.
+ * The files are kept in the working directory unless another directory is provided.
+ * <p>
+ * Batch reads and writes are split into chunks handled in parallel by a small pool of I/O threads, which is created
+ * the first time a batch is large enough to be split.
+ * <p>
+ * Every session file starts with a small header holding the time the session expires, its write time plus the timeout
+ * of its memento. {@link #touchSessionMemento(String, long)} rewrites only the header of a session which was used but
+ * not modified. Reads of expired sessions are rejected from the header, or from the {@link ExpiryIndex} kept in the
+ * same directory, without decoding the memento. {@link #sweepExpiredSessions(int)} deletes the files of expired
+ * sessions bucket by bucket from the index. Files written before the header was introduced are read as before and never
+ * expire.
  * <p>
  * Created By : Kusal Kankanamge
  * Created On : 5/29/2021
@@ -19,15 +55,87 @@ public class SessionFileSource implements ExternalSessionSource {
 
     private static final Logger LOGGER = Logger.getLogger( SessionFileSource.class.getName( ) );
 
+    public static final int DEFAULT_IO_THREADS = Math.min( 4, Runtime.getRuntime( ).availableProcessors( ) );
+    private static final int MIN_BATCH_CHUNK_SIZE = 16;
+    private static final String SESSION_FILE_SUFFIX = ".ser";
+    private static final String SWEPT_FILE_SUFFIX = ".swept";
+    private static final int EXPIRY_HEADER_MAGIC = 0x53455850;
+    private static final int EXPIRY_HEADER_SIZE = 12;
+
+    private final Path directory;
+    private final MementoCodec mementoCodec;
+    private final int ioThreads;
+    private final ExpiryIndex expiryIndex;
+    private ExecutorService ioExecutor;
+
+    public SessionFileSource( ) {
+        this( new JavaSerializationMementoCodec( ) );
+    }
+
+    public SessionFileSource( MementoCodec mementoCodec ) {
+        this( mementoCodec, DEFAULT_IO_THREADS );
+    }
+
+    /**
+     * @param mementoCodec codec of the memento files
+     * @param ioThreads    maximum number of threads reading or writing the files of one batch
+     */
+    public SessionFileSource( MementoCodec mementoCodec, int ioThreads ) {
+        this( Paths.get( "" ), mementoCodec, ioThreads );
+    }
+
+    /**
+     * @param directory    directory of the memento files, created if it does not exist
+     * @param mementoCodec codec of the memento files
+     */
+    public SessionFileSource( Path directory, MementoCodec mementoCodec ) {
+        this( directory, mementoCodec, DEFAULT_IO_THREADS );
+    }
+
+    /**
+     * @param directory    directory of the memento files, created if it does not exist
+     * @param mementoCodec codec of the memento files
+     * @param ioThreads    maximum number of threads reading or writing the files of one batch
+     */
+    public SessionFileSource( Path directory, MementoCodec mementoCodec, int ioThreads ) {
+        if ( ioThreads <= 0 ) {
+            throw new IllegalArgumentException( "I/O thread count must be positive : " + ioThreads );
+        }
+        try {
+            Files.createDirectories( directory.toAbsolutePath( ) );
+        } catch ( IOException e ) {
+            throw new UncheckedIOException( "Error creating the session file directory " + directory, e );
+        }
+        this.directory = directory;
+        this.mementoCodec = mementoCodec;
+        this.ioThreads = ioThreads;
+        this.expiryIndex = new ExpiryIndex( directory.toAbsolutePath( ), ExpiryIndex.DEFAULT_BUCKET_MILLIS );
+    }
+
     @Override
     public SessionResponse<SessionMemento> readSessionMemento( String sessionId ) {
-        try ( BufferedInputStream bufferedInputStream = new BufferedInputStream( new FileInputStream( sessionId + ".ser" ) );
-              ObjectInputStream objectInputStream = new ObjectInputStream( bufferedInputStream ) ) {
-
-            SessionMemento memento = ( SessionMemento ) objectInputStream.readObject( );
+        long now = System.currentTimeMillis( );
+        if ( expiryIndex.isExpired( sessionId, now ) ) {
+            LOGGER.log( Level.FINE, "Session file of session {0} expired", sessionId );
+            return new SessionResponse<>( "Session expired in external source : " + sessionId, SessionCode.ERROR, null );
+        }
+        try {
+            ByteBuffer file = ByteBuffer.wrap( Files.readAllBytes( sessionFile( sessionId ) ) );
+            long expiresAt = readExpiryHeader( file );
+            if ( isExpired( expiresAt, now ) ) {
+                // Files written by an earlier run are swept once they are indexed
+                expiryIndex.record( sessionId, expiresAt );
+                LOGGER.log( Level.FINE, "Session file of session {0} expired", sessionId );
+                return new SessionResponse<>( "Session expired in external source : " + sessionId, SessionCode.ERROR, null );
+            }
+            SessionMemento memento = mementoCodec.decode( file.slice( ) );
 
             return new SessionResponse<>( "Successful reading session from file for session : " + sessionId, SessionCode.SUCCESS, memento );
 
+        } catch ( NoSuchFileException e ) {
+            // Unknown and expired session ids are expected, they are not worth a stack trace
+            LOGGER.log( Level.FINE, "No session file found for session : {0}", sessionId );
+            return new SessionResponse<>( "No session file found for session : " + sessionId, SessionCode.ERROR, null );
         } catch ( Exception e ) {
             LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred while reading session memento : " + sessionId );
         }
@@ -36,10 +144,14 @@ public class SessionFileSource implements ExternalSessionSource {
 
     @Override
     public SessionResponse<Boolean> writeSessionMemento( String sessionId, SessionMemento memento ) {
-        try ( BufferedOutputStream bufferedOutputStream = new BufferedOutputStream( new FileOutputStream( sessionId + ".ser" ) );
-              ObjectOutputStream objectOutputStream = new ObjectOutputStream( bufferedOutputStream ) ) {
-            objectOutputStream.writeObject( memento );
-            objectOutputStream.flush( );
+        try {
+            long timeoutInSeconds = memento.getSessionTimeoutInSeconds( );
+            long expiresAt = timeoutInSeconds > 0 ? System.currentTimeMillis( ) + timeoutInSeconds * 1000 : 0;
+            byte[] payload = mementoCodec.encode( memento );
+            ByteBuffer file = ByteBuffer.allocate( EXPIRY_HEADER_SIZE + payload.length );
+            file.putInt( EXPIRY_HEADER_MAGIC ).putLong( expiresAt ).put( payload );
+            Files.write( sessionFile( sessionId ), file.array( ) );
+            expiryIndex.record( sessionId, expiresAt );
 
             return new SessionResponse<>( "Session successfully written to external source", SessionCode.SUCCESS, true );
 
@@ -49,4 +161,251 @@ public class SessionFileSource implements ExternalSessionSource {
 
         return new SessionResponse<>( "Session writing to external source failed", SessionCode.ERROR, false );
     }
+
+    /**
+     * Rewrites the expiry header of the session file in place. Files which already expired are left to be written
+     * again, as the sweeper may be deleting them.
+     */
+    @Override
+    public SessionResponse<Boolean> touchSessionMemento( String sessionId, long timeoutInSeconds ) {
+        long now = System.currentTimeMillis( );
+        long expiresAt = timeoutInSeconds > 0 ? now + timeoutInSeconds * 1000 : 0;
+        Path sessionFile = sessionFile( sessionId );
+        try ( FileChannel channel = FileChannel.open( sessionFile, StandardOpenOption.READ, StandardOpenOption.WRITE ) ) {
+            ByteBuffer header = ByteBuffer.allocate( EXPIRY_HEADER_SIZE );
+            int read = 0;
+            while ( header.hasRemaining( ) && read >= 0 ) {
+                read = channel.read( header, header.position( ) );
+            }
+            header.flip( );
+            if ( header.remaining( ) < EXPIRY_HEADER_SIZE || header.getInt( 0 ) != EXPIRY_HEADER_MAGIC ) {
+                // Files written before the header was introduced never expire
+                return new SessionResponse<>( "Session file has no expiry to refresh", SessionCode.SUCCESS, true );
+            }
+            if ( isExpired( header.getLong( 4 ), now ) ) {
+                return new SessionResponse<>( "Session file already expired : " + sessionId, SessionCode.SUCCESS, false );
+            }
+            ByteBuffer expiry = ByteBuffer.allocate( Long.BYTES ).putLong( 0, expiresAt );
+            while ( expiry.hasRemaining( ) ) {
+                channel.write( expiry, Integer.BYTES + expiry.position( ) );
+            }
+            expiryIndex.record( sessionId, expiresAt );
+        } catch ( NoSuchFileException e ) {
+            return new SessionResponse<>( "No session file found for session : " + sessionId, SessionCode.SUCCESS, false );
+        } catch ( Exception e ) {
+            LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred while refreshing the expiry of session memento : " + sessionId );
+            return new SessionResponse<>( "Refreshing the session expiry failed", SessionCode.ERROR, false );
+        }
+        // The sweeper moves a file aside before it reads its header again, so a file still in place kept the new expiry
+        if ( !Files.exists( sessionFile ) ) {
+            return new SessionResponse<>( "Session file was swept while it was refreshed : " + sessionId, SessionCode.SUCCESS, false );
+        }
+        return new SessionResponse<>( "Session expiry refreshed", SessionCode.SUCCESS, true );
+    }
+
+    @Override
+    public SessionResponse<Map<String, SessionMemento>> readSessionMementos( Collection<String> sessionIds ) {
+        Map<String, SessionMemento> mementos = new ConcurrentHashMap<>( );
+        forEachInParallel( new ArrayList<>( sessionIds ), sessionId -> {
+            SessionResponse<SessionMemento> readResponse = readSessionMemento( sessionId );
+            if ( readResponse.isSuccess( ) ) {
+                mementos.put( sessionId, readResponse.getData( ) );
+            }
+        } );
+        return new SessionResponse<>( "Read " + mementos.size( ) + " of " + sessionIds.size( ) + " sessions from files", SessionCode.SUCCESS, mementos );
+    }
+
+    @Override
+    public SessionResponse<Map<String, Boolean>> writeSessionMementos( Map<String, SessionMemento> mementos ) {
+        Map<String, Boolean> results = new ConcurrentHashMap<>( );
+        forEachInParallel( new ArrayList<>( mementos.entrySet( ) ),
+                entry -> results.put( entry.getKey( ), writeSessionMemento( entry.getKey( ), entry.getValue( ) ).isSuccess( ) ) );
+
+        AtomicInteger failedWrites = new AtomicInteger( );
+        mementos.keySet( ).forEach( sessionId -> {
+            if ( !results.computeIfAbsent( sessionId, id -> false ) ) {
+                failedWrites.incrementAndGet( );
+            }
+        } );
+        return ExternalSessionSource.batchWriteResponse( results, failedWrites.get( ) );
+    }
+
+    @Override
+    public SessionResponse<Boolean> deleteSessionMemento( String sessionId ) {
+        try {
+            boolean deleted = Files.deleteIfExists( sessionFile( sessionId ) );
+            expiryIndex.remove( sessionId );
+            return new SessionResponse<>( deleted ? "Session deleted from external source" : "No session found in external source", SessionCode.SUCCESS, deleted );
+        } catch ( Exception e ) {
+            LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred while deleting session memento : " + sessionId );
+        }
+        return new SessionResponse<>( "Session deleting from external source failed", SessionCode.ERROR, false );
+    }
+
+    @Override
+    public SessionResponse<Boolean> forEachSessionId( Consumer<String> action ) {
+        try ( DirectoryStream<Path> files = Files.newDirectoryStream( directory.toAbsolutePath( ), "*" + SESSION_FILE_SUFFIX ) ) {
+            for ( Path file : files ) {
+                String fileName = file.getFileName( ).toString( );
+                action.accept( fileName.substring( 0, fileName.length( ) - SESSION_FILE_SUFFIX.length( ) ) );
+            }
+            return new SessionResponse<>( "Listed the session ids of the session files", SessionCode.SUCCESS, true );
+        } catch ( Exception e ) {
+            LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred while listing session files" );
+        }
+        return new SessionResponse<>( "Listing the session files failed", SessionCode.ERROR, false );
+    }
+
+    /**
+     * Lists the session files and reads their modification times in parallel on the I/O threads. The timeout of a
+     * session is only known after decoding its memento, so it is left unknown. Sessions indexed as expired are left
+     * out.
+     */
+    @Override
+    public SessionResponse<Boolean> forEachStoredSession( Consumer<StoredSession> action ) {
+        List<Path> sessionFiles = new ArrayList<>( );
+        try ( DirectoryStream<Path> files = Files.newDirectoryStream( directory.toAbsolutePath( ), "*" + SESSION_FILE_SUFFIX ) ) {
+            files.forEach( sessionFiles::add );
+        } catch ( Exception e ) {
+            LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred while listing session files" );
+            return new SessionResponse<>( "Listing the session files failed", SessionCode.ERROR, false );
+        }
+        long now = System.currentTimeMillis( );
+        forEachInParallel( sessionFiles, file -> {
+            String fileName = file.getFileName( ).toString( );
+            String sessionId = fileName.substring( 0, fileName.length( ) - SESSION_FILE_SUFFIX.length( ) );
+            if ( expiryIndex.isExpired( sessionId, now ) ) {
+                return;
+            }
+            try {
+                action.accept( new StoredSession( sessionId, Files.getLastModifiedTime( file ).toMillis( ), StoredSession.UNKNOWN ) );
+            } catch ( NoSuchFileException e ) {
+                LOGGER.log( Level.FINE, "Session file {0} was deleted while listing", file );
+            } catch ( IOException e ) {
+                throw new UncheckedIOException( e );
+            }
+        } );
+        return new SessionResponse<>( "Listed the session files", SessionCode.SUCCESS, true );
+    }
+
+    /**
+     * Deletes the files of expired sessions, the sessions which expired first first. The expiry of every file is read
+     * again from its header before it is deleted, a session written again since it was indexed is kept.
+     */
+    @Override
+    public SessionResponse<Integer> sweepExpiredSessions( int maxSessions ) {
+        int swept = expiryIndex.sweep( System.currentTimeMillis( ), maxSessions, this::deleteIfExpired );
+        try {
+            expiryIndex.flush( );
+        } catch ( IOException e ) {
+            LOGGER.log( Level.WARNING, e, ( ) -> "Error occurred while writing the expiry index of the session files" );
+        }
+        return new SessionResponse<>( "Deleted " + swept + " expired session files", SessionCode.SUCCESS, swept );
+    }
+
+    /**
+     * Deletes the session file if its header says it expired. The file is moved aside before it is deleted, so a file
+     * written again between reading its header and deleting it is moved back instead.
+     */
+    private boolean deleteIfExpired( String sessionId ) {
+        Path sessionFile = sessionFile( sessionId );
+        Path sweptFile = sessionFile.resolveSibling( sessionFile.getFileName( ) + SWEPT_FILE_SUFFIX );
+        try {
+            long now = System.currentTimeMillis( );
+            if ( !isExpired( readExpiryHeader( sessionFile ), now ) ) {
+                return false;
+            }
+            Files.move( sessionFile, sweptFile, StandardCopyOption.ATOMIC_MOVE );
+            if ( isExpired( readExpiryHeader( sweptFile ), now ) ) {
+                Files.delete( sweptFile );
+                return true;
+            }
+            try {
+                Files.move( sweptFile, sessionFile, StandardCopyOption.ATOMIC_MOVE );
+            } catch ( FileAlreadyExistsException e ) {
+                // The session was written again after the file was moved aside, the newer file is kept
+                Files.delete( sweptFile );
+            }
+        } catch ( NoSuchFileException e ) {
+            LOGGER.log( Level.FINE, "Expired session file of session {0} was already deleted", sessionId );
+        } catch ( IOException e ) {
+            LOGGER.log( Level.WARNING, e, ( ) -> "Error occurred while deleting the expired session file of session : " + sessionId );
+        }
+        return false;
+    }
+
+    private Path sessionFile( String sessionId ) {
+        return directory.resolve( sessionId + SESSION_FILE_SUFFIX );
+    }
+
+    /**
+     * Reads the expiry header of a session file, leaving the buffer positioned at the encoded memento
+     *
+     * @return expiry time in epoch milliseconds, or {@code 0} for a session which never expires
+     */
+    private static long readExpiryHeader( ByteBuffer file ) {
+        if ( file.remaining( ) >= EXPIRY_HEADER_SIZE && file.getInt( 0 ) == EXPIRY_HEADER_MAGIC ) {
+            file.position( EXPIRY_HEADER_SIZE );
+            return file.getLong( 4 );
+        }
+        return 0;
+    }
+
+    private static long readExpiryHeader( Path file ) throws IOException {
+        try ( FileChannel channel = FileChannel.open( file, StandardOpenOption.READ ) ) {
+            ByteBuffer header = ByteBuffer.allocate( EXPIRY_HEADER_SIZE );
+            int read = 0;
+            while ( header.hasRemaining( ) && read >= 0 ) {
+                read = channel.read( header );
+            }
+            header.flip( );
+            return readExpiryHeader( header );
+        }
+    }
+
+    private static boolean isExpired( long expiresAt, long now ) {
+        return expiresAt > 0 && expiresAt <= now;
+    }
+
+    /**
+     * Applies the action to every item, splitting the items into chunks handled by the I/O threads. The first chunk is
+     * handled by the calling thread.
+     */
+    private <T> void forEachInParallel( List<T> items, Consumer<T> action ) {
+        int chunks = Math.min( ioThreads, ( items.size( ) + MIN_BATCH_CHUNK_SIZE - 1 ) / MIN_BATCH_CHUNK_SIZE );
+        if ( chunks <= 1 ) {
+            items.forEach( action );
+            return;
+        }
+        int chunkSize = ( items.size( ) + chunks - 1 ) / chunks;
+        ExecutorService executor = ioExecutor( );
+        List<Future<?>> futures = new ArrayList<>( chunks );
+        for ( int start = chunkSize; start < items.size( ); start += chunkSize ) {
+            List<T> chunk = items.subList( start, Math.min( items.size( ), start + chunkSize ) );
+            futures.add( executor.submit( ( ) -> chunk.forEach( action ) ) );
+        }
+        items.subList( 0, chunkSize ).forEach( action );
+        for ( Future<?> future : futures ) {
+            try {
+                future.get( );
+            } catch ( InterruptedException e ) {
+                Thread.currentThread( ).interrupt( );
+                return;
+            } catch ( ExecutionException e ) {
+                LOGGER.log( Level.SEVERE, e.getCause( ), ( ) -> "Error occurred while handling a batch of session files" );
+            }
+        }
+    }
+
+    private synchronized ExecutorService ioExecutor( ) {
+        if ( ioExecutor == null ) {
+            AtomicInteger threadCount = new AtomicInteger( );
+            ioExecutor = Executors.newFixedThreadPool( ioThreads, runnable -> {
+                Thread thread = new Thread( runnable, "session-file-io-thread-" + threadCount.incrementAndGet( ) );
+                thread.setDaemon( true );
+                return thread;
+            } );
+        }
+        return ioExecutor;
+    }
 }
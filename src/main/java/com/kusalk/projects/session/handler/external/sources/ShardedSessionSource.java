@@ -0,0 +1,711 @@
+package com.kusalk.projects.session.handler.external.sources;
+
+import com.kusalk.projects.session.handler.session.SessionMemento;
+import com.kusalk.projects.session.handler.util.SessionCode;
+import com.kusalk.projects.session.handler.util.SessionExecutors;
+import com.kusalk.projects.session.handler.util.SessionResponse;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An {@link ExternalSessionSource} which spreads session mementos over several shard sources with a consistent hash
+ * ring and keeps every memento on a number of replica shards.
+ * <ul>
+ * <li>Every shard is placed on the ring at a number of virtual nodes. The replicas of a session id are the first
+ * distinct shards found clockwise from the hash of the id, so adding or removing a shard only moves the mementos of the
+ * ids between the shard and its ring neighbours.</li>
+ * <li>Mementos are stored in a versioned envelope. Saves are sent to every replica in parallel and succeed once the
+ * write quorum of replicas stored the memento.</li>
+ * <li>Reads are sent to every replica in parallel and return the newest memento among the first read quorum of
+ * replies. With read repair enabled, replicas holding an older memento or none are rewritten in the background once
+ * every replica replied.</li>
+ * <li>{@link #addShard(String, ExternalSessionSource)} and {@link #removeShard(String)} copy the mementos to the
+ * replicas gained by the new ring before switching to it, and delete them from the shards which are no longer
+ * replicas afterwards. Saves made meanwhile are sent to the replicas of both rings.</li>
+ * </ul>
+ * Versions are taken from the wall clock, so the last save wins between processes sharing the shards. Choosing read and
+ * write quorums adding up to more than the replication factor makes every read see the latest successful save.
+ * <p>
+ * Deltas are not supported, sessions are always saved in full. Deletes write a versioned tombstone to every replica,
+ * which wins over older mementos on reads, read repair and rebalancing, so a replica which missed a delete can not bring
+ * the memento back. Tombstones expire after {@link Builder#tombstoneTimeoutInSeconds(long)} on shards which expire
+ * their mementos. Mementos are wrapped in an envelope which the codec of a shard encodes with its fallback codec.
+ */
+public class ShardedSessionSource implements ExternalSessionSource {
+
+    private static final Logger LOGGER = Logger.getLogger( ShardedSessionSource.class.getName( ) );
+
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+    public static final int DEFAULT_REPLICATION_FACTOR = 1;
+    public static final long DEFAULT_TOMBSTONE_TIMEOUT_SECONDS = 24 * 60 * 60;
+
+    private final int virtualNodes;
+    private final int replicationFactor;
+    private final int readQuorum;
+    private final int writeQuorum;
+    private final boolean readRepair;
+    private final long tombstoneTimeoutInSeconds;
+    private final Executor executor;
+    private final AtomicLong lastVersion = new AtomicLong( );
+    private volatile Topology topology;
+    private volatile Topology pendingTopology;
+
+    private ShardedSessionSource( Builder builder ) {
+        this.virtualNodes = builder.virtualNodes;
+        this.replicationFactor = builder.replicationFactor;
+        this.readQuorum = builder.readQuorum > 0 ? builder.readQuorum : replicationFactor / 2 + 1;
+        this.writeQuorum = builder.writeQuorum > 0 ? builder.writeQuorum : replicationFactor / 2 + 1;
+        this.readRepair = builder.readRepair;
+        this.tombstoneTimeoutInSeconds = builder.tombstoneTimeoutInSeconds;
+        this.executor = builder.executor;
+        this.topology = new Topology( builder.shards, virtualNodes );
+    }
+
+    /**
+     * Creates a builder of a sharded source
+     *
+     * @return {@link Builder} builder
+     */
+    public static Builder builder( ) {
+        return new Builder( );
+    }
+
+    @Override
+    public SessionResponse<SessionMemento> readSessionMemento( String sessionId ) {
+        Topology current = topology;
+        List<String> replicas = current.replicasOf( sessionId, replicationFactor );
+        if ( replicas.size( ) == 1 ) {
+            SessionResponse<SessionMemento> readResponse = current.shard( replicas.get( 0 ) ).readSessionMemento( sessionId );
+            return readResponse.isSuccess( ) ? resultOf( sessionId, readResponse.getData( ) ) : notFound( sessionId );
+        }
+
+        List<CompletableFuture<SessionResponse<SessionMemento>>> reads = new ArrayList<>( replicas.size( ) );
+        for ( String replica : replicas ) {
+            ExternalSessionSource shard = current.shard( replica );
+            reads.add( submit( ( ) -> shard.readSessionMemento( sessionId ) ) );
+        }
+        boolean quorum = awaitQuorum( reads, Math.min( readQuorum, replicas.size( ) ), response -> true );
+        if ( readRepair ) {
+            CompletableFuture.allOf( reads.toArray( new CompletableFuture<?>[0] ) )
+                    .whenCompleteAsync( ( ignored, e ) -> repair( current, sessionId, replicas, reads ), executor );
+        }
+        if ( !quorum ) {
+            return new SessionResponse<>( "Read quorum not reached for session : " + sessionId, SessionCode.ERROR, null );
+        }
+
+        SessionMemento newest = null;
+        for ( CompletableFuture<SessionResponse<SessionMemento>> read : reads ) {
+            newest = newer( newest, replyOf( read ) );
+        }
+        return resultOf( sessionId, newest );
+    }
+
+    @Override
+    public SessionResponse<Boolean> writeSessionMemento( String sessionId, SessionMemento memento ) {
+        ReplicatedMemento envelope = new ReplicatedMemento( nextVersion( ), memento );
+        Topology current = topology;
+        Topology pending = pendingTopology;
+        List<String> replicas = current.replicasOf( sessionId, replicationFactor );
+        if ( replicas.size( ) == 1 && pending == null ) {
+            return current.shard( replicas.get( 0 ) ).writeSessionMemento( sessionId, envelope );
+        }
+
+        List<CompletableFuture<SessionResponse<Boolean>>> writes = new ArrayList<>( replicas.size( ) );
+        for ( String replica : replicas ) {
+            ExternalSessionSource shard = current.shard( replica );
+            writes.add( submit( ( ) -> shard.writeSessionMemento( sessionId, envelope ) ) );
+        }
+        if ( pending != null ) {
+            for ( String replica : pending.replicasOf( sessionId, replicationFactor ) ) {
+                if ( !replicas.contains( replica ) ) {
+                    ExternalSessionSource shard = pending.shard( replica );
+                    submit( ( ) -> shard.writeSessionMemento( sessionId, envelope ) );
+                }
+            }
+        }
+        if ( awaitQuorum( writes, Math.min( writeQuorum, replicas.size( ) ), SessionResponse::isSuccess ) ) {
+            return new SessionResponse<>( "Session written to the write quorum of shards", SessionCode.SUCCESS, true );
+        }
+        return new SessionResponse<>( "Write quorum not reached for session : " + sessionId, SessionCode.ERROR, false );
+    }
+
+    /**
+     * Reads the session ids of every shard with one batch read per shard and waits for every shard to reply
+     */
+    @Override
+    public SessionResponse<Map<String, SessionMemento>> readSessionMementos( Collection<String> sessionIds ) {
+        Topology current = topology;
+        Map<String, List<String>> replicasById = new HashMap<>( );
+        Map<String, List<String>> idsByShard = new HashMap<>( );
+        for ( String sessionId : sessionIds ) {
+            List<String> replicas = current.replicasOf( sessionId, replicationFactor );
+            replicasById.put( sessionId, replicas );
+            replicas.forEach( replica -> idsByShard.computeIfAbsent( replica, shard -> new ArrayList<>( ) ).add( sessionId ) );
+        }
+
+        Map<String, CompletableFuture<SessionResponse<Map<String, SessionMemento>>>> reads = new HashMap<>( );
+        for ( Map.Entry<String, List<String>> entry : idsByShard.entrySet( ) ) {
+            ExternalSessionSource shard = current.shard( entry.getKey( ) );
+            reads.put( entry.getKey( ), submit( ( ) -> shard.readSessionMementos( entry.getValue( ) ) ) );
+        }
+        Map<String, Map<String, SessionMemento>> mementosByShard = new HashMap<>( );
+        for ( Map.Entry<String, CompletableFuture<SessionResponse<Map<String, SessionMemento>>>> read : reads.entrySet( ) ) {
+            SessionResponse<Map<String, SessionMemento>> readResponse = read.getValue( ).exceptionally( e -> null ).join( );
+            mementosByShard.put( read.getKey( ), readResponse != null && readResponse.isSuccess( ) ? readResponse.getData( ) : Collections.emptyMap( ) );
+        }
+
+        Map<String, SessionMemento> mementos = new HashMap<>( );
+        Map<String, Map<String, SessionMemento>> repairsByShard = new HashMap<>( );
+        for ( Map.Entry<String, List<String>> entry : replicasById.entrySet( ) ) {
+            SessionMemento newest = null;
+            for ( String replica : entry.getValue( ) ) {
+                newest = newer( newest, mementosByShard.get( replica ).get( entry.getKey( ) ) );
+            }
+            if ( newest == null ) {
+                continue;
+            }
+            if ( !ReplicatedMemento.isTombstone( newest ) ) {
+                mementos.put( entry.getKey( ), ReplicatedMemento.unwrap( newest ) );
+            }
+            for ( String replica : entry.getValue( ) ) {
+                SessionMemento stored = mementosByShard.get( replica ).get( entry.getKey( ) );
+                if ( readRepair && ( stored == null || ReplicatedMemento.versionOf( stored ) < ReplicatedMemento.versionOf( newest ) ) ) {
+                    repairsByShard.computeIfAbsent( replica, shard -> new HashMap<>( ) ).put( entry.getKey( ), envelopeOf( newest ) );
+                }
+            }
+        }
+        repairsByShard.forEach( ( replica, repairs ) -> submit( ( ) -> current.shard( replica ).writeSessionMementos( repairs ) ) );
+        return new SessionResponse<>( "Read " + mementos.size( ) + " of " + sessionIds.size( ) + " sessions", SessionCode.SUCCESS, mementos );
+    }
+
+    /**
+     * Writes the mementos with one batch write per shard and waits for every shard to reply
+     */
+    @Override
+    public SessionResponse<Map<String, Boolean>> writeSessionMementos( Map<String, SessionMemento> mementos ) {
+        Topology current = topology;
+        Topology pending = pendingTopology;
+        Map<String, List<String>> replicasById = new HashMap<>( );
+        Map<String, Map<String, SessionMemento>> envelopesByShard = new HashMap<>( );
+        Map<String, Map<String, SessionMemento>> pendingEnvelopesByShard = new HashMap<>( );
+        for ( Map.Entry<String, SessionMemento> entry : mementos.entrySet( ) ) {
+            ReplicatedMemento envelope = new ReplicatedMemento( nextVersion( ), entry.getValue( ) );
+            List<String> replicas = current.replicasOf( entry.getKey( ), replicationFactor );
+            replicasById.put( entry.getKey( ), replicas );
+            replicas.forEach( replica -> envelopesByShard.computeIfAbsent( replica, shard -> new HashMap<>( ) ).put( entry.getKey( ), envelope ) );
+            if ( pending != null ) {
+                pending.replicasOf( entry.getKey( ), replicationFactor ).stream( )
+                        .filter( replica -> !replicas.contains( replica ) )
+                        .forEach( replica -> pendingEnvelopesByShard.computeIfAbsent( replica, shard -> new HashMap<>( ) ).put( entry.getKey( ), envelope ) );
+            }
+        }
+
+        Map<String, CompletableFuture<SessionResponse<Map<String, Boolean>>>> writes = new HashMap<>( );
+        for ( Map.Entry<String, Map<String, SessionMemento>> entry : envelopesByShard.entrySet( ) ) {
+            ExternalSessionSource shard = current.shard( entry.getKey( ) );
+            writes.put( entry.getKey( ), submit( ( ) -> shard.writeSessionMementos( entry.getValue( ) ) ) );
+        }
+        pendingEnvelopesByShard.forEach( ( replica, envelopes ) -> submit( ( ) -> pending.shard( replica ).writeSessionMementos( envelopes ) ) );
+        Map<String, Map<String, Boolean>> resultsByShard = new HashMap<>( );
+        for ( Map.Entry<String, CompletableFuture<SessionResponse<Map<String, Boolean>>>> write : writes.entrySet( ) ) {
+            SessionResponse<Map<String, Boolean>> writeResponse = write.getValue( ).exceptionally( e -> null ).join( );
+            resultsByShard.put( write.getKey( ), writeResponse != null && writeResponse.getData( ) != null ? writeResponse.getData( ) : Collections.emptyMap( ) );
+        }
+
+        Map<String, Boolean> results = new HashMap<>( );
+        int failedWrites = 0;
+        for ( Map.Entry<String, List<String>> entry : replicasById.entrySet( ) ) {
+            long written = entry.getValue( ).stream( )
+                    .filter( replica -> Boolean.TRUE.equals( resultsByShard.get( replica ).get( entry.getKey( ) ) ) )
+                    .count( );
+            boolean quorum = written >= Math.min( writeQuorum, entry.getValue( ).size( ) );
+            results.put( entry.getKey( ), quorum );
+            failedWrites += quorum ? 0 : 1;
+        }
+        return ExternalSessionSource.batchWriteResponse( results, failedWrites );
+    }
+
+    /**
+     * Refreshes the memento on every replica. The memento is only reported refreshed if every replica refreshed it, so
+     * a replica which can not refresh it gets it written again.
+     */
+    @Override
+    public SessionResponse<Boolean> touchSessionMemento( String sessionId, long timeoutInSeconds ) {
+        Topology current = topology;
+        List<String> replicas = current.replicasOf( sessionId, replicationFactor );
+        if ( replicas.size( ) == 1 && pendingTopology == null ) {
+            return current.shard( replicas.get( 0 ) ).touchSessionMemento( sessionId, timeoutInSeconds );
+        }
+
+        List<CompletableFuture<SessionResponse<Boolean>>> touches = new ArrayList<>( replicas.size( ) );
+        for ( String replica : replicas ) {
+            ExternalSessionSource shard = current.shard( replica );
+            touches.add( submit( ( ) -> shard.touchSessionMemento( sessionId, timeoutInSeconds ) ) );
+        }
+        for ( CompletableFuture<SessionResponse<Boolean>> touch : touches ) {
+            SessionResponse<Boolean> touchResponse = touch.exceptionally( e -> null ).join( );
+            if ( touchResponse == null || !Boolean.TRUE.equals( touchResponse.getData( ) ) ) {
+                return new SessionResponse<>( "Session expiry not refreshed on every replica for session : " + sessionId, SessionCode.SUCCESS, false );
+            }
+        }
+        return new SessionResponse<>( "Session expiry refreshed on every replica", SessionCode.SUCCESS, true );
+    }
+
+    /**
+     * Replaces the memento with a tombstone on every replica. A single replica outside of a rebalance has no other
+     * replica to bring the memento back, so the memento is deleted from it instead. The response is an error response
+     * if any replica failed to store the tombstone.
+     */
+    @Override
+    public SessionResponse<Boolean> deleteSessionMemento( String sessionId ) {
+        Topology current = topology;
+        Topology pending = pendingTopology;
+        List<String> currentReplicas = current.replicasOf( sessionId, replicationFactor );
+        if ( currentReplicas.size( ) == 1 && pending == null ) {
+            return current.shard( currentReplicas.get( 0 ) ).deleteSessionMemento( sessionId );
+        }
+        Map<String, ExternalSessionSource> replicas = new LinkedHashMap<>( );
+        currentReplicas.forEach( replica -> replicas.put( replica, current.shard( replica ) ) );
+        if ( pending != null ) {
+            pending.replicasOf( sessionId, replicationFactor ).forEach( replica -> replicas.putIfAbsent( replica, pending.shard( replica ) ) );
+        }
+
+        ReplicatedMemento tombstone = ReplicatedMemento.tombstone( nextVersion( ), tombstoneTimeoutInSeconds );
+        List<CompletableFuture<SessionResponse<Boolean>>> deletes = new ArrayList<>( replicas.size( ) );
+        replicas.values( ).forEach( shard -> deletes.add( submit( ( ) -> shard.writeSessionMemento( sessionId, tombstone ) ) ) );
+        boolean failed = false;
+        for ( CompletableFuture<SessionResponse<Boolean>> delete : deletes ) {
+            SessionResponse<Boolean> deleteResponse = delete.exceptionally( e -> null ).join( );
+            failed |= deleteResponse == null || !deleteResponse.isSuccess( );
+        }
+        if ( failed ) {
+            return new SessionResponse<>( "Session deleting failed on a replica for session : " + sessionId, SessionCode.ERROR, false );
+        }
+        return new SessionResponse<>( "Session deleted from shards", SessionCode.SUCCESS, true );
+    }
+
+    /**
+     * Lists the session ids of every shard. A session id is handed to the action once for every replica holding it.
+     */
+    @Override
+    public SessionResponse<Boolean> forEachSessionId( Consumer<String> action ) {
+        boolean listed = true;
+        for ( Map.Entry<String, ExternalSessionSource> shard : topology.shards.entrySet( ) ) {
+            if ( !shard.getValue( ).forEachSessionId( action ).isSuccess( ) ) {
+                LOGGER.log( Level.WARNING, "Session ids of shard {0} could not be listed", shard.getKey( ) );
+                listed = false;
+            }
+        }
+        if ( listed ) {
+            return new SessionResponse<>( "Listed the session ids of every shard", SessionCode.SUCCESS, true );
+        }
+        return new SessionResponse<>( "Listing the session ids of a shard failed", SessionCode.ERROR, false );
+    }
+
+    /**
+     * Lists the sessions of every shard in parallel. A session is handed to the action once for every replica holding
+     * it.
+     */
+    @Override
+    public SessionResponse<Boolean> forEachStoredSession( Consumer<StoredSession> action ) {
+        List<CompletableFuture<SessionResponse<Boolean>>> listings = new ArrayList<>( );
+        topology.shards.values( ).forEach( shard -> listings.add( submit( ( ) -> shard.forEachStoredSession( action ) ) ) );
+        boolean listed = true;
+        for ( CompletableFuture<SessionResponse<Boolean>> listing : listings ) {
+            SessionResponse<Boolean> listResponse = listing.exceptionally( e -> null ).join( );
+            listed &= listResponse != null && listResponse.isSuccess( );
+        }
+        if ( listed ) {
+            return new SessionResponse<>( "Listed the sessions of every shard", SessionCode.SUCCESS, true );
+        }
+        return new SessionResponse<>( "Listing the sessions of a shard failed", SessionCode.ERROR, false );
+    }
+
+    /**
+     * Sweeps every shard with the same limit, each shard reclaiming the expired replicas it holds
+     */
+    @Override
+    public SessionResponse<Integer> sweepExpiredSessions( int maxSessions ) {
+        int swept = 0;
+        for ( ExternalSessionSource shard : topology.shards.values( ) ) {
+            SessionResponse<Integer> sweepResponse = shard.sweepExpiredSessions( maxSessions );
+            if ( sweepResponse.getData( ) != null ) {
+                swept += sweepResponse.getData( );
+            }
+        }
+        return new SessionResponse<>( "Deleted " + swept + " expired replicas from the shards", SessionCode.SUCCESS, swept );
+    }
+
+    @Override
+    public SessionResponse<Boolean> flush( ) {
+        boolean flushed = true;
+        for ( ExternalSessionSource shard : topology.shards.values( ) ) {
+            flushed &= shard.flush( ).isSuccess( );
+        }
+        if ( flushed ) {
+            return new SessionResponse<>( "Flushed every shard", SessionCode.SUCCESS, true );
+        }
+        return new SessionResponse<>( "Flushing a shard failed", SessionCode.ERROR, false );
+    }
+
+    /**
+     * Returns the names of the shards holding the replicas of the session id, the primary shard first
+     *
+     * @param sessionId session id
+     * @return shard names
+     */
+    public List<String> getReplicas( String sessionId ) {
+        return topology.replicasOf( sessionId, replicationFactor );
+    }
+
+    public Set<String> getShardNames( ) {
+        return topology.shards.keySet( );
+    }
+
+    /**
+     * Adds a shard to the ring and copies the mementos it becomes a replica of from their current replicas
+     *
+     * @param name   shard name
+     * @param source shard source
+     * @return {@link SessionResponse} response with the number of mementos copied
+     * @throws IllegalArgumentException if a shard of the same name exists
+     */
+    public synchronized SessionResponse<Integer> addShard( String name, ExternalSessionSource source ) {
+        Topology current = topology;
+        if ( current.shards.containsKey( name ) ) {
+            throw new IllegalArgumentException( "Shard already exists : " + name );
+        }
+        Map<String, ExternalSessionSource> shards = new LinkedHashMap<>( current.shards );
+        shards.put( name, source );
+        return rebalance( current, new Topology( shards, virtualNodes ) );
+    }
+
+    /**
+     * Removes a shard from the ring after copying its mementos to the replicas taking them over. The mementos are not
+     * deleted from the removed shard.
+     *
+     * @param name shard name
+     * @return {@link SessionResponse} response with the number of mementos copied
+     * @throws IllegalArgumentException if there is no shard of the name or it is the last shard
+     */
+    public synchronized SessionResponse<Integer> removeShard( String name ) {
+        Topology current = topology;
+        if ( !current.shards.containsKey( name ) || current.shards.size( ) == 1 ) {
+            throw new IllegalArgumentException( "Shard can not be removed : " + name );
+        }
+        Map<String, ExternalSessionSource> shards = new LinkedHashMap<>( current.shards );
+        shards.remove( name );
+        return rebalance( current, new Topology( shards, virtualNodes ) );
+    }
+
+    /**
+     * Moves the source from the current to the next ring. Saves are sent to the replicas of both rings while the
+     * mementos are copied, so nothing saved meanwhile is missing from the next ring when it takes over.
+     */
+    private SessionResponse<Integer> rebalance( Topology current, Topology next ) {
+        pendingTopology = next;
+        Set<String> sessionIds = ConcurrentHashMap.newKeySet( );
+        for ( Map.Entry<String, ExternalSessionSource> shard : current.shards.entrySet( ) ) {
+            if ( !shard.getValue( ).forEachSessionId( sessionIds::add ).isSuccess( ) ) {
+                pendingTopology = null;
+                return new SessionResponse<>( "Session ids of shard " + shard.getKey( ) + " could not be listed", SessionCode.ERROR, 0 );
+            }
+        }
+
+        int copied = 0;
+        for ( String sessionId : sessionIds ) {
+            List<String> replicas = current.replicasOf( sessionId, replicationFactor );
+            Set<String> gained = new LinkedHashSet<>( next.replicasOf( sessionId, replicationFactor ) );
+            gained.removeAll( replicas );
+            if ( gained.isEmpty( ) ) {
+                continue;
+            }
+            SessionMemento newest = null;
+            for ( String replica : replicas ) {
+                SessionResponse<SessionMemento> readResponse = current.shard( replica ).readSessionMemento( sessionId );
+                newest = newer( newest, readResponse.isSuccess( ) ? readResponse.getData( ) : null );
+            }
+            if ( newest == null ) {
+                continue;
+            }
+            for ( String replica : gained ) {
+                // The gained replica may already hold a newer memento saved while the mementos are copied
+                SessionResponse<SessionMemento> stored = next.shard( replica ).readSessionMemento( sessionId );
+                if ( stored.isSuccess( ) && ReplicatedMemento.versionOf( stored.getData( ) ) >= ReplicatedMemento.versionOf( newest ) ) {
+                    continue;
+                }
+                if ( next.shard( replica ).writeSessionMemento( sessionId, envelopeOf( newest ) ).isSuccess( ) ) {
+                    copied++;
+                } else {
+                    LOGGER.log( Level.WARNING, "Session {0} could not be copied to shard {1}", new Object[]{ sessionId, replica } );
+                }
+            }
+        }
+
+        topology = next;
+        pendingTopology = null;
+        for ( String sessionId : sessionIds ) {
+            Set<String> lost = new HashSet<>( current.replicasOf( sessionId, replicationFactor ) );
+            lost.removeAll( next.replicasOf( sessionId, replicationFactor ) );
+            lost.retainAll( next.shards.keySet( ) );
+            lost.forEach( replica -> next.shard( replica ).deleteSessionMemento( sessionId ) );
+        }
+        LOGGER.log( Level.INFO, "Shards changed to {0}, copied {1} session mementos", new Object[]{ next.shards.keySet( ), copied } );
+        return new SessionResponse<>( "Copied " + copied + " session mementos to their new replicas", SessionCode.SUCCESS, copied );
+    }
+
+    /**
+     * Rewrites the newest memento to the replicas which replied with an older one or none. A newest tombstone is
+     * rewritten as it is, so the repair spreads the delete. A save racing the repair may be overwritten on a replica,
+     * which the next read repairs again as long as the quorums overlap.
+     */
+    private void repair( Topology current, String sessionId, List<String> replicas,
+                         List<CompletableFuture<SessionResponse<SessionMemento>>> reads ) {
+        SessionMemento newest = null;
+        for ( CompletableFuture<SessionResponse<SessionMemento>> read : reads ) {
+            newest = newer( newest, replyOf( read ) );
+        }
+        if ( newest == null ) {
+            return;
+        }
+        for ( int i = 0; i < replicas.size( ); i++ ) {
+            SessionMemento stored = replyOf( reads.get( i ) );
+            if ( stored == null || ReplicatedMemento.versionOf( stored ) < ReplicatedMemento.versionOf( newest ) ) {
+                LOGGER.log( Level.FINE, "Repairing session {0} on shard {1}", new Object[]{ sessionId, replicas.get( i ) } );
+                current.shard( replicas.get( i ) ).writeSessionMemento( sessionId, envelopeOf( newest ) );
+            }
+        }
+    }
+
+    private long nextVersion( ) {
+        long now = System.currentTimeMillis( ) * 1000;
+        return lastVersion.updateAndGet( last -> Math.max( now, last + 1 ) );
+    }
+
+    private <T> CompletableFuture<T> submit( Supplier<T> call ) {
+        CompletableFuture<T> future = CompletableFuture.supplyAsync( call, executor );
+        future.whenComplete( ( result, e ) -> {
+            if ( e != null ) {
+                LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred while calling a shard" );
+            }
+        } );
+        return future;
+    }
+
+    /**
+     * Waits until the quorum of calls returned a counted response or every call completed
+     *
+     * @return {@code true} if the quorum was reached
+     */
+    private static <T> boolean awaitQuorum( List<CompletableFuture<T>> calls, int quorum, Predicate<T> counted ) {
+        CompletableFuture<Boolean> reached = new CompletableFuture<>( );
+        AtomicInteger countedCalls = new AtomicInteger( );
+        AtomicInteger completedCalls = new AtomicInteger( );
+        for ( CompletableFuture<T> call : calls ) {
+            call.whenComplete( ( response, e ) -> {
+                if ( e == null && counted.test( response ) && countedCalls.incrementAndGet( ) == quorum ) {
+                    reached.complete( true );
+                }
+                if ( completedCalls.incrementAndGet( ) == calls.size( ) ) {
+                    reached.complete( false );
+                }
+            } );
+        }
+        return reached.join( );
+    }
+
+    /**
+     * Returns the memento a completed read returned, or {@code null} if the read did not complete or found nothing
+     */
+    private static SessionMemento replyOf( CompletableFuture<SessionResponse<SessionMemento>> read ) {
+        if ( !read.isDone( ) || read.isCompletedExceptionally( ) ) {
+            return null;
+        }
+        SessionResponse<SessionMemento> readResponse = read.join( );
+        return readResponse.isSuccess( ) ? readResponse.getData( ) : null;
+    }
+
+    private static SessionMemento newer( SessionMemento newest, SessionMemento memento ) {
+        if ( memento == null ) {
+            return newest;
+        }
+        return newest == null || ReplicatedMemento.versionOf( memento ) > ReplicatedMemento.versionOf( newest ) ? memento : newest;
+    }
+
+    private static ReplicatedMemento envelopeOf( SessionMemento memento ) {
+        return memento instanceof ReplicatedMemento ? ( ReplicatedMemento ) memento : new ReplicatedMemento( 0, memento );
+    }
+
+    /**
+     * Returns the memento read from the replicas, or a not found response if there was none or it was deleted
+     */
+    private static SessionResponse<SessionMemento> resultOf( String sessionId, SessionMemento newest ) {
+        return newest != null && !ReplicatedMemento.isTombstone( newest ) ? found( sessionId, newest ) : notFound( sessionId );
+    }
+
+    private static SessionResponse<SessionMemento> found( String sessionId, SessionMemento memento ) {
+        return new SessionResponse<>( "Successful reading session from shards for session : " + sessionId, SessionCode.SUCCESS,
+                ReplicatedMemento.unwrap( memento ) );
+    }
+
+    private static SessionResponse<SessionMemento> notFound( String sessionId ) {
+        LOGGER.log( Level.FINE, "No session memento found in shards for session : {0}", sessionId );
+        return new SessionResponse<>( "No session found in shards for session : " + sessionId, SessionCode.ERROR, null );
+    }
+
+    /**
+     * An immutable set of shards together with their ring
+     */
+    private static final class Topology {
+
+        private final Map<String, ExternalSessionSource> shards;
+        private final HashRing ring;
+
+        private Topology( Map<String, ExternalSessionSource> shards, int virtualNodes ) {
+            this.shards = Collections.unmodifiableMap( new LinkedHashMap<>( shards ) );
+            this.ring = new HashRing( shards.keySet( ), virtualNodes );
+        }
+
+        private List<String> replicasOf( String sessionId, int replicationFactor ) {
+            return ring.replicasOf( sessionId, replicationFactor );
+        }
+
+        private ExternalSessionSource shard( String name ) {
+            return shards.get( name );
+        }
+    }
+
+    /**
+     * Builder of {@link ShardedSessionSource} objects
+     */
+    public static final class Builder {
+
+        private final Map<String, ExternalSessionSource> shards = new LinkedHashMap<>( );
+        private int virtualNodes = DEFAULT_VIRTUAL_NODES;
+        private int replicationFactor = DEFAULT_REPLICATION_FACTOR;
+        private int readQuorum;
+        private int writeQuorum;
+        private boolean readRepair = true;
+        private long tombstoneTimeoutInSeconds = DEFAULT_TOMBSTONE_TIMEOUT_SECONDS;
+        private Executor executor = SessionExecutors.defaultIoExecutor( );
+
+        private Builder( ) {
+        }
+
+        /**
+         * @param name   name of the shard, which places it on the ring and must stay the same between restarts
+         * @param source shard source
+         * @return this builder
+         */
+        public Builder shard( String name, ExternalSessionSource source ) {
+            if ( name == null || source == null || shards.putIfAbsent( name, source ) != null ) {
+                throw new IllegalArgumentException( "Shard needs a source and a unique name : " + name );
+            }
+            return this;
+        }
+
+        /**
+         * @param virtualNodes number of ring positions of every shard
+         * @return this builder
+         */
+        public Builder virtualNodes( int virtualNodes ) {
+            if ( virtualNodes <= 0 ) {
+                throw new IllegalArgumentException( "Virtual nodes must be positive : " + virtualNodes );
+            }
+            this.virtualNodes = virtualNodes;
+            return this;
+        }
+
+        /**
+         * @param replicationFactor number of shards holding every memento
+         * @return this builder
+         */
+        public Builder replicationFactor( int replicationFactor ) {
+            if ( replicationFactor <= 0 ) {
+                throw new IllegalArgumentException( "Replication factor must be positive : " + replicationFactor );
+            }
+            this.replicationFactor = replicationFactor;
+            return this;
+        }
+
+        /**
+         * @param readQuorum number of replicas a read waits for, a majority of the replication factor by default
+         * @return this builder
+         */
+        public Builder readQuorum( int readQuorum ) {
+            this.readQuorum = readQuorum;
+            return this;
+        }
+
+        /**
+         * @param writeQuorum number of replicas which must store a memento for a save to succeed, a majority of the
+         *                    replication factor by default
+         * @return this builder
+         */
+        public Builder writeQuorum( int writeQuorum ) {
+            this.writeQuorum = writeQuorum;
+            return this;
+        }
+
+        /**
+         * @param readRepair whether reads rewrite the newest memento to replicas holding an older one
+         * @return this builder
+         */
+        public Builder readRepair( boolean readRepair ) {
+            this.readRepair = readRepair;
+            return this;
+        }
+
+        /**
+         * @param tombstoneTimeoutInSeconds time after which shards expiring their mementos reclaim the tombstone of a
+         *                                  deleted memento, which should be longer than the longest session timeout
+         * @return this builder
+         */
+        public Builder tombstoneTimeoutInSeconds( long tombstoneTimeoutInSeconds ) {
+            if ( tombstoneTimeoutInSeconds <= 0 ) {
+                throw new IllegalArgumentException( "Tombstone timeout must be positive : " + tombstoneTimeoutInSeconds );
+            }
+            this.tombstoneTimeoutInSeconds = tombstoneTimeoutInSeconds;
+            return this;
+        }
+
+        /**
+         * @param executor executor calling the replicas in parallel
+         * @return this builder
+         */
+        public Builder executor( Executor executor ) {
+            this.executor = executor;
+            return this;
+        }
+
+        public ShardedSessionSource build( ) {
+            if ( shards.isEmpty( ) ) {
+                throw new IllegalArgumentException( "At least one shard is required" );
+            }
+            if ( readQuorum < 0 || readQuorum > replicationFactor || writeQuorum < 0 || writeQuorum > replicationFactor ) {
+                throw new IllegalArgumentException( "Quorums must be within the replication factor " + replicationFactor
+                        + " : read " + readQuorum + ", write " + writeQuorum );
+            }
+            return new ShardedSessionSource( this );
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.kusalk.projects.session.handler.external.sources;
+
+/**
+ * A session memento listed by {@link ExternalSessionSource#forEachStoredSession(java.util.function.Consumer)}, with
+ * when it was written and its timeout where the source knows them.
+ */
+public final class StoredSession {
+
+    /**
+     * Value of the write time and the timeout when the source does not know them
+     */
+    public static final long UNKNOWN = 0;
+
+    private final String sessionId;
+    private final long writtenAtMillis;
+    private final long timeoutInSeconds;
+
+    public StoredSession( String sessionId, long writtenAtMillis, long timeoutInSeconds ) {
+        this.sessionId = sessionId;
+        this.writtenAtMillis = writtenAtMillis;
+        this.timeoutInSeconds = timeoutInSeconds;
+    }
+
+    public String getSessionId( ) {
+        return sessionId;
+    }
+
+    public long getWrittenAtMillis( ) {
+        return writtenAtMillis;
+    }
+
+    public long getTimeoutInSeconds( ) {
+        return timeoutInSeconds;
+    }
+
+    /**
+     * Returns whether the session timed out since it was written. Sessions whose write time or timeout is unknown
+     * never count as expired.
+     *
+     * @param now current time in milliseconds
+     * @return {@code true} if the session expired
+     */
+    public boolean isExpired( long now ) {
+        return writtenAtMillis != UNKNOWN && timeoutInSeconds > 0 && now > writtenAtMillis + timeoutInSeconds * 1000;
+    }
+
+    /**
+     * Returns the newer of two listings of the same session id
+     *
+     * @param other other listing
+     * @return the listing written last
+     */
+    public StoredSession newer( StoredSession other ) {
+        return other == null || writtenAtMillis >= other.writtenAtMillis ? this : other;
+    }
+}
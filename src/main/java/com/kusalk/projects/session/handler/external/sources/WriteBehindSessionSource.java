@@ -0,0 +1,511 @@
+package com.kusalk.projects.session.handler.external.sources;
+
+import com.kusalk.projects.session.handler.session.SessionMemento;
+import com.kusalk.projects.session.handler.util.SessionCode;
+import com.kusalk.projects.session.handler.util.SessionResponse;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An {@link ExternalSessionSource} which queues writes in memory and writes them to a delegate source from a background
+ * writer thread, so callers do not pay the latency of the delegate.
+ * <ul>
+ * <li>Repeated saves of the same session id before it is written are coalesced, only the latest memento is written.</li>
+ * <li>The writer flushes the queue every flush interval, or earlier once a full batch is queued. Queued writes are
+ * handed to the delegate in batches through {@link ExternalSessionSource#writeSessionMementos(Map)}.</li>
+ * <li>The number of queued session ids is bounded. What happens when the queue is full is decided by the
+ * {@link BackPressurePolicy}.</li>
+ * <li>Reads see queued and in-flight mementos before they reach the delegate.</li>
+ * <li>{@link #flush()} writes everything queued so far, and {@link #close()} flushes and stops the writer. A save which
+ * succeeds is written by the time {@link #close()} returns, or by the save itself when it races the close. A shutdown
+ * hook closing the source when the JVM exits can be registered through {@link Builder#registerShutdownHook(boolean)}.
+ * </li>
+ * </ul>
+ * The queued memento is the object handed to {@link #writeSessionMemento(String, SessionMemento)}, so it must not be
+ * modified after it is saved.
+ */
+public class WriteBehindSessionSource implements ExternalSessionSource, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger( WriteBehindSessionSource.class.getName( ) );
+
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+    public static final int DEFAULT_MAX_PENDING_WRITES = 10000;
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    /**
+     * What a save does when the write queue is full
+     */
+    public enum BackPressurePolicy {
+        /**
+         * The caller waits until the writer frees a slot in the queue
+         */
+        BLOCK,
+        /**
+         * The caller writes the memento to the delegate source itself
+         */
+        CALLER_RUNS,
+        /**
+         * The save fails with an error response
+         */
+        REJECT
+    }
+
+    private final ExternalSessionSource delegate;
+    private final long flushIntervalMillis;
+    private final int batchSize;
+    private final BackPressurePolicy backPressurePolicy;
+
+    private final ConcurrentHashMap<String, SessionMemento> pendingWrites = new ConcurrentHashMap<>( );
+    private final ConcurrentHashMap<String, SessionMemento> inFlightWrites = new ConcurrentHashMap<>( );
+    private final ConcurrentLinkedQueue<String> writeQueue = new ConcurrentLinkedQueue<>( );
+    private final Semaphore queueCapacity;
+    private final ReentrantLock drainLock = new ReentrantLock( );
+    private final Object writerSignal = new Object( );
+    private final Thread writerThread;
+    private final Thread shutdownHook;
+    private volatile boolean closed;
+
+    private WriteBehindSessionSource( Builder builder ) {
+        this.delegate = builder.delegate;
+        this.flushIntervalMillis = builder.flushIntervalMillis;
+        this.batchSize = builder.batchSize;
+        this.backPressurePolicy = builder.backPressurePolicy;
+        this.queueCapacity = new Semaphore( builder.maxPendingWrites );
+
+        this.writerThread = new Thread( this::runWriter );
+        writerThread.setDaemon( true );
+        writerThread.setName( "session-write-behind-thread" );
+        writerThread.setUncaughtExceptionHandler( ( t, e ) -> LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred within the write-behind thread" ) );
+        writerThread.start( );
+
+        if ( builder.registerShutdownHook ) {
+            this.shutdownHook = new Thread( this::close, "session-write-behind-shutdown" );
+            Runtime.getRuntime( ).addShutdownHook( shutdownHook );
+        } else {
+            this.shutdownHook = null;
+        }
+    }
+
+    /**
+     * Creates a builder for a write-behind source writing to the provided delegate
+     *
+     * @param delegate source the queued mementos are written to
+     * @return {@link Builder} builder
+     */
+    public static Builder builder( ExternalSessionSource delegate ) {
+        return new Builder( delegate );
+    }
+
+    @Override
+    public SessionResponse<SessionMemento> readSessionMemento( String sessionId ) {
+        SessionMemento memento = pendingWrites.get( sessionId );
+        if ( memento == null ) {
+            memento = inFlightWrites.get( sessionId );
+        }
+        if ( memento != null ) {
+            return new SessionResponse<>( "Session read from the write-behind queue for session : " + sessionId, SessionCode.SUCCESS, memento );
+        }
+        return delegate.readSessionMemento( sessionId );
+    }
+
+    @Override
+    public SessionResponse<Boolean> writeSessionMemento( String sessionId, SessionMemento memento ) {
+        if ( closed ) {
+            return delegate.writeSessionMemento( sessionId, memento );
+        }
+        // A session id which is already queued only needs its memento replaced
+        if ( pendingWrites.replace( sessionId, memento ) != null ) {
+            return writtenIfClosed( sessionId, memento, "Session write coalesced in the write-behind queue" );
+        }
+        if ( !acquireQueueSlot( ) ) {
+            if ( closed || backPressurePolicy == BackPressurePolicy.CALLER_RUNS ) {
+                return delegate.writeSessionMemento( sessionId, memento );
+            }
+            LOGGER.log( Level.WARNING, "Write-behind queue is full. Rejected write of session {0}", sessionId );
+            return new SessionResponse<>( "Write-behind queue is full", SessionCode.ERROR, false );
+        }
+        if ( pendingWrites.put( sessionId, memento ) != null ) {
+            // Another thread queued the same session id meanwhile, so the slot is not needed
+            queueCapacity.release( );
+        } else {
+            writeQueue.add( sessionId );
+            if ( pendingWrites.size( ) % batchSize == 0 ) {
+                signalWriter( );
+            }
+        }
+        return writtenIfClosed( sessionId, memento, "Session write queued in the write-behind queue" );
+    }
+
+    /**
+     * Completes a save which was queued. A save queued before the source was closed is written by the flush of
+     * {@link #close()}, but a save which raced the close may have been queued after that flush drained the queue, so
+     * it drains the queue itself.
+     */
+    private SessionResponse<Boolean> writtenIfClosed( String sessionId, SessionMemento memento, String message ) {
+        if ( !closed ) {
+            return new SessionResponse<>( message, SessionCode.SUCCESS, true );
+        }
+        flush( );
+        // A failed write is queued again, so a memento which is still pending was not written
+        if ( pendingWrites.get( sessionId ) == memento ) {
+            return new SessionResponse<>( "Write-behind source closed before the session was written", SessionCode.ERROR, false );
+        }
+        return new SessionResponse<>( "Session written after the write-behind source was closed", SessionCode.SUCCESS, true );
+    }
+
+    @Override
+    public SessionResponse<Map<String, SessionMemento>> readSessionMementos( Collection<String> sessionIds ) {
+        Map<String, SessionMemento> mementos = new HashMap<>( );
+        List<String> unqueuedSessionIds = new ArrayList<>( );
+        for ( String sessionId : sessionIds ) {
+            SessionMemento memento = pendingWrites.get( sessionId );
+            if ( memento == null ) {
+                memento = inFlightWrites.get( sessionId );
+            }
+            if ( memento != null ) {
+                mementos.put( sessionId, memento );
+            } else {
+                unqueuedSessionIds.add( sessionId );
+            }
+        }
+        if ( !unqueuedSessionIds.isEmpty( ) ) {
+            SessionResponse<Map<String, SessionMemento>> delegateResponse = delegate.readSessionMementos( unqueuedSessionIds );
+            if ( delegateResponse.getData( ) != null ) {
+                mementos.putAll( delegateResponse.getData( ) );
+            }
+        }
+        return new SessionResponse<>( "Read " + mementos.size( ) + " of " + sessionIds.size( ) + " sessions", SessionCode.SUCCESS, mementos );
+    }
+
+    /**
+     * Lists the queued and in-flight session ids as well as the session ids of the delegate source. A session id can
+     * be listed more than once.
+     */
+    @Override
+    public SessionResponse<Boolean> forEachSessionId( Consumer<String> action ) {
+        pendingWrites.keySet( ).forEach( action );
+        inFlightWrites.keySet( ).forEach( action );
+        return delegate.forEachSessionId( action );
+    }
+
+    /**
+     * Lists the queued and in-flight writes as written now, followed by the sessions of the delegate source
+     */
+    @Override
+    public SessionResponse<Boolean> forEachStoredSession( Consumer<StoredSession> action ) {
+        long now = System.currentTimeMillis( );
+        pendingWrites.forEach( ( sessionId, memento ) -> action.accept( new StoredSession( sessionId, now, memento.getSessionTimeoutInSeconds( ) ) ) );
+        inFlightWrites.forEach( ( sessionId, memento ) -> action.accept( new StoredSession( sessionId, now, memento.getSessionTimeoutInSeconds( ) ) ) );
+        return delegate.forEachStoredSession( action );
+    }
+
+    /**
+     * Sweeps the delegate source. A queued write of a swept session still reaches the delegate with a new write time.
+     */
+    @Override
+    public SessionResponse<Integer> sweepExpiredSessions( int maxSessions ) {
+        return delegate.sweepExpiredSessions( maxSessions );
+    }
+
+    /**
+     * A queued write of the session reaches the delegate with a new write time, other sessions are refreshed by the
+     * delegate source
+     */
+    @Override
+    public SessionResponse<Boolean> touchSessionMemento( String sessionId, long timeoutInSeconds ) {
+        if ( pendingWrites.containsKey( sessionId ) || inFlightWrites.containsKey( sessionId ) ) {
+            return new SessionResponse<>( "Session write is queued", SessionCode.SUCCESS, true );
+        }
+        return delegate.touchSessionMemento( sessionId, timeoutInSeconds );
+    }
+
+    /**
+     * Drops any queued write of the session and deletes it from the delegate source. The delete waits for a write of
+     * the same session which is in flight, so the deleted memento cannot be written again afterwards.
+     */
+    @Override
+    public SessionResponse<Boolean> deleteSessionMemento( String sessionId ) {
+        drainLock.lock( );
+        try {
+            if ( pendingWrites.remove( sessionId ) != null ) {
+                queueCapacity.release( );
+            }
+            return delegate.deleteSessionMemento( sessionId );
+        } finally {
+            drainLock.unlock( );
+        }
+    }
+
+    /**
+     * Writes every memento queued so far to the delegate source and flushes the delegate
+     *
+     * @return {@link SessionResponse<Boolean>} response with data set to {@code true} if every queued write succeeded
+     */
+    @Override
+    public SessionResponse<Boolean> flush( ) {
+        drainLock.lock( );
+        try {
+            int failedWrites = drain( Integer.MAX_VALUE );
+            SessionResponse<Boolean> delegateFlush = delegate.flush( );
+            if ( failedWrites > 0 || delegateFlush.isError( ) ) {
+                return new SessionResponse<>( "Write-behind flush failed for " + failedWrites + " sessions", SessionCode.ERROR, false );
+            }
+            return new SessionResponse<>( "Write-behind queue flushed", SessionCode.SUCCESS, true );
+        } finally {
+            drainLock.unlock( );
+        }
+    }
+
+    /**
+     * Stops the writer thread and flushes the queue. Saves made after closing are written to the delegate directly.
+     */
+    @Override
+    public void close( ) {
+        if ( closed ) {
+            return;
+        }
+        closed = true;
+        signalWriter( );
+        if ( shutdownHook != null && Thread.currentThread( ) != shutdownHook ) {
+            try {
+                Runtime.getRuntime( ).removeShutdownHook( shutdownHook );
+            } catch ( IllegalStateException e ) {
+                // The JVM is already shutting down and runs the hook, which finds the source closed
+            }
+        }
+        SessionResponse<Boolean> flushResponse = flush( );
+        if ( flushResponse.isError( ) ) {
+            LOGGER.log( Level.SEVERE, "Write-behind source closed with unwritten sessions : {0}", flushResponse.getMessage( ) );
+        }
+    }
+
+    /**
+     * Returns the number of session ids waiting to be written
+     *
+     * @return queued write count
+     */
+    public int getPendingWriteCount( ) {
+        return pendingWrites.size( );
+    }
+
+    private boolean acquireQueueSlot( ) {
+        if ( backPressurePolicy != BackPressurePolicy.BLOCK ) {
+            return queueCapacity.tryAcquire( );
+        }
+        try {
+            while ( !queueCapacity.tryAcquire( flushIntervalMillis, TimeUnit.MILLISECONDS ) ) {
+                // The writer stops once the source is closed, so a closed source does not free slots any more
+                if ( closed ) {
+                    return false;
+                }
+                signalWriter( );
+            }
+            return true;
+        } catch ( InterruptedException e ) {
+            Thread.currentThread( ).interrupt( );
+            return false;
+        }
+    }
+
+    private void runWriter( ) {
+        while ( !closed ) {
+            synchronized ( writerSignal ) {
+                try {
+                    writerSignal.wait( flushIntervalMillis );
+                } catch ( InterruptedException e ) {
+                    LOGGER.log( Level.SEVERE, e.getMessage( ), e );
+                }
+            }
+            drainLock.lock( );
+            try {
+                int queued = pendingWrites.size( );
+                while ( queued > 0 && !closed ) {
+                    drain( Math.min( queued, batchSize ) );
+                    queued -= batchSize;
+                }
+            } finally {
+                drainLock.unlock( );
+            }
+        }
+    }
+
+    private void signalWriter( ) {
+        synchronized ( writerSignal ) {
+            writerSignal.notifyAll( );
+        }
+    }
+
+    /**
+     * Writes up to the provided number of queued session ids, handing them to the delegate in batches of the batch
+     * size. Failed writes are queued again unless a newer memento was saved meanwhile. Must be called while holding
+     * the drain lock.
+     *
+     * @return number of failed writes
+     */
+    private int drain( int maxWrites ) {
+        int failedWrites = 0;
+        // Every queued session id is pending exactly once, and ids queued again by failed writes wait for the next drain
+        int remaining = Math.min( pendingWrites.size( ), maxWrites );
+        while ( remaining > 0 ) {
+            Map<String, SessionMemento> batch = new LinkedHashMap<>( );
+            while ( remaining > 0 && batch.size( ) < batchSize ) {
+                String sessionId = writeQueue.poll( );
+                if ( sessionId == null ) {
+                    remaining = 0;
+                    break;
+                }
+                remaining--;
+                SessionMemento memento = takePendingWrite( sessionId );
+                if ( memento != null ) {
+                    batch.put( sessionId, memento );
+                }
+            }
+            if ( !batch.isEmpty( ) ) {
+                failedWrites += writeBatch( batch );
+            }
+        }
+        return failedWrites;
+    }
+
+    private int writeBatch( Map<String, SessionMemento> batch ) {
+        Map<String, Boolean> results;
+        try {
+            results = delegate.writeSessionMementos( batch ).getData( );
+        } catch ( RuntimeException e ) {
+            LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred while writing " + batch.size( ) + " sessions behind" );
+            results = null;
+        }
+        int failedWrites = 0;
+        for ( Map.Entry<String, SessionMemento> entry : batch.entrySet( ) ) {
+            if ( results == null || !Boolean.TRUE.equals( results.get( entry.getKey( ) ) ) ) {
+                failedWrites++;
+                requeue( entry.getKey( ), entry.getValue( ) );
+            }
+            inFlightWrites.remove( entry.getKey( ), entry.getValue( ) );
+        }
+        return failedWrites;
+    }
+
+    /**
+     * Moves the latest memento of the session id from the pending to the in-flight writes. The memento is published
+     * as in-flight before it leaves the pending writes so readers never miss it.
+     */
+    private SessionMemento takePendingWrite( String sessionId ) {
+        while ( true ) {
+            SessionMemento memento = pendingWrites.get( sessionId );
+            if ( memento == null ) {
+                return null;
+            }
+            inFlightWrites.put( sessionId, memento );
+            if ( pendingWrites.remove( sessionId, memento ) ) {
+                queueCapacity.release( );
+                return memento;
+            }
+        }
+    }
+
+    private void requeue( String sessionId, SessionMemento memento ) {
+        if ( queueCapacity.tryAcquire( ) ) {
+            if ( pendingWrites.putIfAbsent( sessionId, memento ) == null ) {
+                writeQueue.add( sessionId );
+            } else {
+                queueCapacity.release( );
+            }
+        } else {
+            LOGGER.log( Level.SEVERE, "Write-behind queue is full. Dropped failed write of session {0}", sessionId );
+        }
+    }
+
+    /**
+     * Builder of {@link WriteBehindSessionSource} objects
+     */
+    public static final class Builder {
+
+        private final ExternalSessionSource delegate;
+        private long flushIntervalMillis = DEFAULT_FLUSH_INTERVAL_MILLIS;
+        private int maxPendingWrites = DEFAULT_MAX_PENDING_WRITES;
+        private int batchSize = DEFAULT_BATCH_SIZE;
+        private BackPressurePolicy backPressurePolicy = BackPressurePolicy.BLOCK;
+        private boolean registerShutdownHook;
+
+        private Builder( ExternalSessionSource delegate ) {
+            if ( delegate == null ) {
+                throw new IllegalArgumentException( "Delegate session source is required" );
+            }
+            this.delegate = delegate;
+        }
+
+        /**
+         * @param flushIntervalMillis maximum time a queued write waits before the writer flushes it
+         * @return this builder
+         */
+        public Builder flushIntervalMillis( long flushIntervalMillis ) {
+            if ( flushIntervalMillis <= 0 ) {
+                throw new IllegalArgumentException( "Flush interval must be positive : " + flushIntervalMillis );
+            }
+            this.flushIntervalMillis = flushIntervalMillis;
+            return this;
+        }
+
+        /**
+         * @param maxPendingWrites maximum number of distinct session ids waiting to be written
+         * @return this builder
+         */
+        public Builder maxPendingWrites( int maxPendingWrites ) {
+            if ( maxPendingWrites <= 0 ) {
+                throw new IllegalArgumentException( "Maximum pending writes must be positive : " + maxPendingWrites );
+            }
+            this.maxPendingWrites = maxPendingWrites;
+            return this;
+        }
+
+        /**
+         * @param batchSize number of queued writes which wakes the writer before the flush interval passes, and the
+         *                  maximum number of writes handed to the delegate at once
+         * @return this builder
+         */
+        public Builder batchSize( int batchSize ) {
+            if ( batchSize <= 0 ) {
+                throw new IllegalArgumentException( "Batch size must be positive : " + batchSize );
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * @param backPressurePolicy what a save does when the queue is full
+         * @return this builder
+         */
+        public Builder backPressurePolicy( BackPressurePolicy backPressurePolicy ) {
+            this.backPressurePolicy = backPressurePolicy;
+            return this;
+        }
+
+        /**
+         * @param registerShutdownHook whether a JVM shutdown hook should close the source. The hook keeps the source
+         *                             reachable until it is closed, so it is not registered by default.
+         * @return this builder
+         */
+        public Builder registerShutdownHook( boolean registerShutdownHook ) {
+            this.registerShutdownHook = registerShutdownHook;
+            return this;
+        }
+
+        public WriteBehindSessionSource build( ) {
+            return new WriteBehindSessionSource( this );
+        }
+    }
+}
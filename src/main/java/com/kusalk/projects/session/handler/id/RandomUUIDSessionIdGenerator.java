@@ -0,0 +1,16 @@
+package com.kusalk.projects.session.handler.id;
+
+import java.util.UUID;
+
+/**
+ * Generates random version 4 UUIDs using {@link UUID#randomUUID()}. All threads share the single secure random
+ * generator of {@link UUID}, so this generator is mainly kept for compatibility.
+ */
+public class RandomUUIDSessionIdGenerator implements SessionIdGenerator {
+
+    @Override
+    public SessionId generateSessionId( ) {
+        UUID uuid = UUID.randomUUID( );
+        return new SessionId( uuid.getMostSignificantBits( ), uuid.getLeastSignificantBits( ) );
+    }
+}
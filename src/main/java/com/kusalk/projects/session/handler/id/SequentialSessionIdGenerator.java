@@ -0,0 +1,79 @@
+package com.kusalk.projects.session.handler.id;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates session ids without any shared hot spot. The most significant half of an id holds a 16-bit node id and a
+ * 48-bit sequence number, and the least significant half holds 64 random bits.
+ * <ul>
+ * <li>Sequence numbers are handed out to threads in blocks, so the shared counter is touched once every
+ * {@value #SEQUENCE_BLOCK_SIZE} ids. The counter starts from the current time, so a restarted node does not normally reuse the sequence numbers of an
+ * earlier run.</li>
+ * <li>The random bits come from a secure random generator owned by the generating thread.</li>
+ * </ul>
+ * Within a node no two ids share the same sequence number, so ids are collision free by construction. The node id is
+ * read from the {@value #NODE_ID_PROPERTY} system property and is random if the property is not set.
+ */
+public class SequentialSessionIdGenerator implements SessionIdGenerator {
+
+    public static final String NODE_ID_PROPERTY = "session.handler.node.id";
+
+    private static final int SEQUENCE_BITS = 48;
+    private static final long SEQUENCE_MASK = ( 1L << SEQUENCE_BITS ) - 1;
+    private static final int SEQUENCE_BLOCK_SIZE = 1024;
+
+    private final long nodeBits;
+    private final AtomicLong nextSequenceBlock;
+    private final ThreadLocal<GeneratorState> threadState = ThreadLocal.withInitial( GeneratorState::new );
+
+    public SequentialSessionIdGenerator( ) {
+        this( Integer.getInteger( NODE_ID_PROPERTY, new SecureRandom( ).nextInt( ) ) );
+    }
+
+    /**
+     * Creates a generator for the provided node id. Only the lower 16 bits of the node id are used.
+     *
+     * @param nodeId node id
+     */
+    public SequentialSessionIdGenerator( int nodeId ) {
+        this.nodeBits = ( long ) ( nodeId & 0xFFFF ) << SEQUENCE_BITS;
+        this.nextSequenceBlock = new AtomicLong( System.currentTimeMillis( ) << 6 );
+    }
+
+    @Override
+    public SessionId generateSessionId( ) {
+        GeneratorState state = threadState.get( );
+        if ( state.nextSequence == state.sequenceLimit ) {
+            state.nextSequence = nextSequenceBlock.getAndAdd( SEQUENCE_BLOCK_SIZE );
+            state.sequenceLimit = state.nextSequence + SEQUENCE_BLOCK_SIZE;
+        }
+        long sequence = state.nextSequence++ & SEQUENCE_MASK;
+        return new SessionId( nodeBits | sequence, state.random.nextLong( ) );
+    }
+
+    @Override
+    public boolean isCollisionFree( ) {
+        return true;
+    }
+
+    private static final class GeneratorState {
+
+        private final SecureRandom random = newSecureRandom( );
+        private long nextSequence;
+        private long sequenceLimit;
+
+        /*
+         * The default secure random of some platforms synchronizes on a single shared source, so a DRBG instance is
+         * preferred as it only locks on itself.
+         */
+        private static SecureRandom newSecureRandom( ) {
+            try {
+                return SecureRandom.getInstance( "DRBG" );
+            } catch ( NoSuchAlgorithmException e ) {
+                return new SecureRandom( );
+            }
+        }
+    }
+}
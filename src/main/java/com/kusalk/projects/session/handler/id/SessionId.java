@@ -0,0 +1,137 @@
+package com.kusalk.projects.session.handler.id;
+
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * A 128-bit session id held as two {@code long} values. Session ids are kept in this form inside the session
+ * containers and are only encoded to text at the API boundary, using the {@link SessionIdFormat} selected with the
+ * {@value #ID_FORMAT_PROPERTY} system property.
+ */
+public final class SessionId {
+
+    public static final String ID_FORMAT_PROPERTY = "session.handler.id.format";
+
+    private static final SessionIdFormat TEXT_FORMAT = SessionIdFormat.fromValue( System.getProperty( ID_FORMAT_PROPERTY ) );
+    private static final int UUID_TEXT_LENGTH = 36;
+    private static final int COMPACT_TEXT_LENGTH = 22;
+
+    private final long mostSignificantBits;
+    private final long leastSignificantBits;
+
+    public SessionId( long mostSignificantBits, long leastSignificantBits ) {
+        this.mostSignificantBits = mostSignificantBits;
+        this.leastSignificantBits = leastSignificantBits;
+    }
+
+    /**
+     * Parses a session id from either the {@link SessionIdFormat#UUID} or the {@link SessionIdFormat#COMPACT} text
+     * form, regardless of the configured format
+     *
+     * @param text session id text
+     * @return {@link SessionId} session id or {@code null} if the text is not a valid session id
+     */
+    public static SessionId parse( String text ) {
+        if ( text == null ) {
+            return null;
+        }
+        try {
+            if ( text.length( ) == UUID_TEXT_LENGTH ) {
+                UUID uuid = UUID.fromString( text );
+                return new SessionId( uuid.getMostSignificantBits( ), uuid.getLeastSignificantBits( ) );
+            }
+            if ( text.length( ) == COMPACT_TEXT_LENGTH ) {
+                byte[] bytes = Base64.getUrlDecoder( ).decode( text );
+                return new SessionId( readLong( bytes, 0 ), readLong( bytes, 8 ) );
+            }
+        } catch ( IllegalArgumentException e ) {
+            return null;
+        }
+        return null;
+    }
+
+    /**
+     * Parses a session id like {@link #parse(String)} and encodes it again using the configured
+     * {@link SessionIdFormat}. The same session id can be written as text in several ways, such as in upper case or
+     * in the other format, so session ids received as text are normalised before they are used as the key of an
+     * external source.
+     *
+     * @param text session id text
+     * @return canonical session id text or {@code null} if the text is not a valid session id
+     */
+    public static String normalize( String text ) {
+        SessionId sessionId = parse( text );
+        return sessionId != null ? sessionId.toString( ) : null;
+    }
+
+    public long getMostSignificantBits( ) {
+        return mostSignificantBits;
+    }
+
+    public long getLeastSignificantBits( ) {
+        return leastSignificantBits;
+    }
+
+    /**
+     * Encodes the id in the 36 character {@link SessionIdFormat#UUID} form
+     *
+     * @return id text
+     */
+    public String toUuidString( ) {
+        return new UUID( mostSignificantBits, leastSignificantBits ).toString( );
+    }
+
+    /**
+     * Encodes the id in the 22 character, URL safe {@link SessionIdFormat#COMPACT} form
+     *
+     * @return id text
+     */
+    public String toCompactString( ) {
+        byte[] bytes = new byte[16];
+        writeLong( bytes, 0, mostSignificantBits );
+        writeLong( bytes, 8, leastSignificantBits );
+        return Base64.getUrlEncoder( ).withoutPadding( ).encodeToString( bytes );
+    }
+
+    /**
+     * Encodes the id using the configured {@link SessionIdFormat}
+     *
+     * @return id text
+     */
+    @Override
+    public String toString( ) {
+        return TEXT_FORMAT == SessionIdFormat.COMPACT ? toCompactString( ) : toUuidString( );
+    }
+
+    @Override
+    public boolean equals( Object o ) {
+        if ( this == o ) {
+            return true;
+        }
+        if ( !( o instanceof SessionId ) ) {
+            return false;
+        }
+        SessionId sessionId = ( SessionId ) o;
+        return mostSignificantBits == sessionId.mostSignificantBits && leastSignificantBits == sessionId.leastSignificantBits;
+    }
+
+    @Override
+    public int hashCode( ) {
+        return Long.hashCode( mostSignificantBits ^ leastSignificantBits );
+    }
+
+    private static long readLong( byte[] bytes, int offset ) {
+        long value = 0;
+        for ( int i = offset; i < offset + 8; i++ ) {
+            value = ( value << 8 ) | ( bytes[i] & 0xFF );
+        }
+        return value;
+    }
+
+    private static void writeLong( byte[] bytes, int offset, long value ) {
+        for ( int i = offset + 7; i >= offset; i-- ) {
+            bytes[i] = ( byte ) value;
+            value >>>= 8;
+        }
+    }
+}
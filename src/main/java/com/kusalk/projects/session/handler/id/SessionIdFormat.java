@@ -0,0 +1,34 @@
+package com.kusalk.projects.session.handler.id;
+
+/**
+ * Text encodings of a {@link SessionId}
+ */
+public enum SessionIdFormat {
+
+    /**
+     * 36 character hexadecimal form, for example {@code d1e0b149-057b-4bae-84d8-73a0ded227d4}
+     */
+    UUID,
+
+    /**
+     * 22 character URL safe base64 form, for example {@code 0eCxSQV7S66E2HOg3tIn1A}
+     */
+    COMPACT;
+
+    /**
+     * Resolves the format from the given value, falling back to {@link #UUID} for unknown values
+     *
+     * @param value format name
+     * @return {@link SessionIdFormat} id format
+     */
+    public static SessionIdFormat fromValue( String value ) {
+        if ( value != null ) {
+            for ( SessionIdFormat format : values( ) ) {
+                if ( format.name( ).equalsIgnoreCase( value.trim( ) ) ) {
+                    return format;
+                }
+            }
+        }
+        return UUID;
+    }
+}
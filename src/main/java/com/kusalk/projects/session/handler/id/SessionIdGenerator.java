@@ -0,0 +1,59 @@
+package com.kusalk.projects.session.handler.id;
+
+import java.util.Iterator;
+import java.util.ServiceLoader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Generates the ids of newly created sessions. Implementations must be thread safe and should produce ids which are
+ * hard to guess, as a session id is the only credential of a session.
+ * <p>
+ * The generator used by the session containers is resolved by {@link #load()}.
+ */
+public interface SessionIdGenerator {
+
+    String ID_GENERATOR_PROPERTY = "session.handler.id.generator";
+
+    /**
+     * Generates a new session id
+     *
+     * @return {@link SessionId} session id
+     */
+    SessionId generateSessionId( );
+
+    /**
+     * Returns whether the ids of this generator can never collide within the running application. Session containers
+     * skip collision retries for such generators.
+     *
+     * @return {@code true} if generated ids are unique by construction
+     */
+    default boolean isCollisionFree( ) {
+        return false;
+    }
+
+    /**
+     * Resolves the session id generator. The generator class named by the {@value #ID_GENERATOR_PROPERTY} system
+     * property is used if set, otherwise the first generator registered through {@link ServiceLoader} and finally the
+     * {@link SequentialSessionIdGenerator}.
+     *
+     * @return {@link SessionIdGenerator} session id generator
+     */
+    static SessionIdGenerator load( ) {
+        Logger logger = Logger.getLogger( SessionIdGenerator.class.getName( ) );
+        String generatorClass = System.getProperty( ID_GENERATOR_PROPERTY );
+        if ( generatorClass != null && !generatorClass.isBlank( ) ) {
+            try {
+                return ( SessionIdGenerator ) Class.forName( generatorClass.trim( ) ).getDeclaredConstructor( ).newInstance( );
+            } catch ( ReflectiveOperationException | ClassCastException e ) {
+                logger.log( Level.SEVERE, e, ( ) -> "Error creating session id generator " + generatorClass + ". Using the default generator" );
+            }
+        } else {
+            Iterator<SessionIdGenerator> generators = ServiceLoader.load( SessionIdGenerator.class ).iterator( );
+            if ( generators.hasNext( ) ) {
+                return generators.next( );
+            }
+        }
+        return new SequentialSessionIdGenerator( );
+    }
+}
@@ -0,0 +1,22 @@
+package com.kusalk.projects.session.handler.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event of a session memento read from the external source
+ */
+@Name( "com.kusalk.projects.session.handler.ExternalLoad" )
+@Label( "External Session Load" )
+@Category( { "Session Handler" } )
+@Description( "A session memento read from the external source" )
+public final class ExternalLoadEvent extends SessionEvent {
+
+    @Label( "Session Id" )
+    String sessionId;
+
+    @Label( "Found" )
+    boolean found;
+}
@@ -0,0 +1,30 @@
+package com.kusalk.projects.session.handler.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event of session mementos or deltas written to the external source
+ */
+@Name( "com.kusalk.projects.session.handler.ExternalSave" )
+@Label( "External Session Save" )
+@Category( { "Session Handler" } )
+@Description( "Session mementos or deltas written to the external source" )
+public final class ExternalSaveEvent extends SessionEvent {
+
+    @Label( "Session Id" )
+    @Description( "Id of the saved session, not set for batch writes" )
+    String sessionId;
+
+    @Label( "Session Count" )
+    int sessionCount;
+
+    @Label( "Failures" )
+    @Description( "Number of sessions which could not be written" )
+    int failures;
+
+    @Label( "Delta" )
+    boolean delta;
+}
@@ -0,0 +1,118 @@
+package com.kusalk.projects.session.handler.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of latencies with log-linear buckets, in the style of HdrHistogram. Every power of two range is
+ * split into {@value #SUB_BUCKETS} linear buckets, so recorded values keep a relative precision of about three percent
+ * from a nanosecond up to the largest trackable value of about 18 minutes. Larger values are counted in the last bucket.
+ * <p>
+ * Recording is wait-free and allocation free. Percentiles read while other threads record are not an atomic snapshot,
+ * but every completed recording is seen.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKET_COUNT = ( MAX_EXPONENT - SUB_BUCKET_BITS + 2 ) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray( BUCKET_COUNT );
+    private final LongAdder totalCount = new LongAdder( );
+    private final LongAdder totalValue = new LongAdder( );
+    private final LongAccumulator maxValue = new LongAccumulator( Math::max, 0 );
+
+    /**
+     * Records a latency
+     *
+     * @param value latency in nanoseconds, negative values are recorded as zero
+     */
+    public void record( long value ) {
+        long recorded = Math.max( 0, value );
+        counts.incrementAndGet( bucketOf( recorded ) );
+        totalCount.increment( );
+        totalValue.add( recorded );
+        maxValue.accumulate( recorded );
+    }
+
+    public long getCount( ) {
+        return totalCount.sum( );
+    }
+
+    public long getMax( ) {
+        return maxValue.get( );
+    }
+
+    /**
+     * Returns the mean of the recorded latencies
+     *
+     * @return mean in nanoseconds or zero if nothing was recorded
+     */
+    public double getMean( ) {
+        long count = totalCount.sum( );
+        return count == 0 ? 0 : ( double ) totalValue.sum( ) / count;
+    }
+
+    /**
+     * Returns the latency below which the provided percentage of the recorded latencies fall
+     *
+     * @param percentile percentile within [0, 100]
+     * @return latency in nanoseconds, the upper bound of the bucket holding the percentile, or zero if nothing was
+     * recorded
+     */
+    public long getValueAtPercentile( double percentile ) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long count = 0;
+        for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+            snapshot[i] = counts.get( i );
+            count += snapshot[i];
+        }
+        if ( count == 0 ) {
+            return 0;
+        }
+        long rank = Math.max( 1, ( long ) Math.ceil( Math.min( 100, Math.max( 0, percentile ) ) / 100 * count ) );
+        long seen = 0;
+        for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+            seen += snapshot[i];
+            if ( seen >= rank ) {
+                return Math.min( upperBoundOf( i ), getMax( ) );
+            }
+        }
+        return getMax( );
+    }
+
+    /**
+     * Forgets every recorded latency. Recordings running concurrently may be partially kept.
+     */
+    public void reset( ) {
+        for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+            counts.set( i, 0 );
+        }
+        totalCount.reset( );
+        totalValue.reset( );
+        maxValue.reset( );
+    }
+
+    static int bucketOf( long value ) {
+        if ( value < SUB_BUCKETS ) {
+            return ( int ) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros( value );
+        if ( exponent > MAX_EXPONENT ) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = ( int ) ( value >>> ( exponent - SUB_BUCKET_BITS ) ) & ( SUB_BUCKETS - 1 );
+        return ( exponent - SUB_BUCKET_BITS + 1 ) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBoundOf( int bucket ) {
+        if ( bucket < SUB_BUCKETS ) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return ( ( SUB_BUCKETS + subBucket + 1 ) << ( exponent - SUB_BUCKET_BITS ) ) - 1;
+    }
+}
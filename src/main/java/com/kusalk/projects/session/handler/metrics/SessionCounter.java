@@ -0,0 +1,84 @@
+package com.kusalk.projects.session.handler.metrics;
+
+/**
+ * Events counted by {@link SessionMetrics}
+ */
+public enum SessionCounter {
+
+    /**
+     * Sessions created in the internal container
+     */
+    CREATED,
+    /**
+     * Sessions restored from a memento into the internal container
+     */
+    RESTORED,
+    /**
+     * Loads answered by the internal container
+     */
+    CONTAINER_HITS,
+    /**
+     * Loads of session ids the internal container does not hold
+     */
+    CONTAINER_MISSES,
+    /**
+     * Sessions removed from the internal container by the application or after being saved
+     */
+    REMOVED,
+    /**
+     * Sessions removed from the internal container because they timed out
+     */
+    EXPIRED,
+    /**
+     * Sessions evicted from a bounded internal container or to make room in its off-heap tier
+     */
+    EVICTED,
+    /**
+     * Idle sessions moved to the off-heap tier of the internal container
+     */
+    OFFLOADED,
+    /**
+     * Sessions brought back onto the heap from the off-heap tier
+     */
+    REHYDRATED,
+    /**
+     * Sessions evicted from the internal container to make room in the off-heap tier
+     */
+    OFF_HEAP_EVICTED,
+    /**
+     * Mementos read from the external source
+     */
+    EXTERNAL_LOADS,
+    /**
+     * Reads of session ids the external source does not hold
+     */
+    EXTERNAL_LOAD_MISSES,
+    /**
+     * Loads answered without reading the external source because the session id is known to be missing
+     */
+    EXTERNAL_LOADS_FILTERED,
+    /**
+     * Mementos and deltas written to the external source
+     */
+    EXTERNAL_SAVES,
+    /**
+     * Writes to the external source which failed
+     */
+    EXTERNAL_SAVE_FAILURES,
+    /**
+     * Loads which joined a load of the same session id already in flight
+     */
+    LOADS_COALESCED,
+    /**
+     * Saves skipped because the session was not modified since it was last persisted
+     */
+    SAVES_SKIPPED,
+    /**
+     * Optimistic reads of a session run again under its read lock because the session was locked for writing
+     */
+    OPTIMISTIC_READ_RETRIES,
+    /**
+     * Expired mementos deleted from the external source by an expiry sweeper
+     */
+    EXTERNAL_SESSIONS_SWEPT
+}
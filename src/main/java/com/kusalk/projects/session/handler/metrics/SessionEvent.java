@@ -0,0 +1,28 @@
+package com.kusalk.projects.session.handler.metrics;
+
+import jdk.jfr.Event;
+
+/**
+ * Base of the JFR events timing a session operation. The start time is kept alongside the event so the same timing
+ * feeds the {@link LatencyHistogram} of the operation, and it is not recorded since transient fields are skipped.
+ */
+public abstract class SessionEvent extends Event {
+
+    private transient long startNanos;
+
+    void start( ) {
+        begin( );
+        startNanos = System.nanoTime( );
+    }
+
+    /**
+     * Ends the event
+     *
+     * @return nanoseconds elapsed since the event was started
+     */
+    long finish( ) {
+        long elapsed = System.nanoTime( ) - startNanos;
+        end( );
+        return elapsed;
+    }
+}
@@ -0,0 +1,25 @@
+package com.kusalk.projects.session.handler.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event of a session removed from the internal container because it timed out
+ */
+@Name( "com.kusalk.projects.session.handler.SessionExpired" )
+@Label( "Session Expired" )
+@Category( { "Session Handler" } )
+@Description( "A session removed from the internal container because it timed out" )
+public final class SessionExpiredEvent extends Event {
+
+    @Label( "Session Id" )
+    String sessionId;
+
+    @Label( "Timeout" )
+    @Timespan( Timespan.SECONDS )
+    long timeoutInSeconds;
+}
@@ -0,0 +1,253 @@
+package com.kusalk.projects.session.handler.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Instrumentation of the session operations: striped {@link LongAdder} counters of every {@link SessionCounter},
+ * {@link LatencyHistogram} latency histograms of every {@link SessionTimer}, JFR events of external loads and saves,
+ * restores and expiries, and a {@link SessionMetricsMXBean} registered as {@value #OBJECT_NAME}.
+ * <p>
+ * Metrics are enabled with the {@value #ENABLED_PROPERTY} system property. The flag is a static final constant, so when
+ * metrics are disabled the JIT compiler removes every instrumentation call and nothing is counted, timed or allocated.
+ */
+public final class SessionMetrics {
+
+    private static final Logger LOGGER = Logger.getLogger( SessionMetrics.class.getName( ) );
+
+    public static final String ENABLED_PROPERTY = "session.handler.metrics.enabled";
+    public static final String OBJECT_NAME = "com.kusalk.projects.session.handler:type=SessionMetrics";
+    public static final boolean ENABLED = Boolean.getBoolean( ENABLED_PROPERTY );
+
+    private static final LongAdder[] COUNTERS = new LongAdder[SessionCounter.values( ).length];
+    private static final LatencyHistogram[] HISTOGRAMS = new LatencyHistogram[SessionTimer.values( ).length];
+
+    private static volatile IntSupplier liveSessionCount = ( ) -> 0;
+    private static volatile LongSupplier estimatedMemoryBytes = ( ) -> 0;
+
+    static {
+        for ( int i = 0; i < COUNTERS.length; i++ ) {
+            COUNTERS[i] = new LongAdder( );
+        }
+        for ( int i = 0; i < HISTOGRAMS.length; i++ ) {
+            HISTOGRAMS[i] = new LatencyHistogram( );
+        }
+    }
+
+    private SessionMetrics( ) {
+    }
+
+    /**
+     * Registers the metrics MBean, reporting the live sessions and the memory estimate of the internal container
+     *
+     * @param sessionCount    supplier of the number of sessions in the container
+     * @param memoryEstimator supplier of the memory estimate of the container in bytes
+     */
+    public static void registerContainer( IntSupplier sessionCount, LongSupplier memoryEstimator ) {
+        if ( !ENABLED ) {
+            return;
+        }
+        liveSessionCount = sessionCount;
+        estimatedMemoryBytes = memoryEstimator;
+        try {
+            ManagementFactory.getPlatformMBeanServer( ).registerMBean( new SessionMetricsView( ), new ObjectName( OBJECT_NAME ) );
+        } catch ( InstanceAlreadyExistsException e ) {
+            LOGGER.log( Level.FINE, "Session metrics MBean already registered" );
+        } catch ( JMException e ) {
+            LOGGER.log( Level.WARNING, e, ( ) -> "Error while registering the session metrics MBean" );
+        }
+    }
+
+    public static void increment( SessionCounter counter ) {
+        if ( ENABLED ) {
+            COUNTERS[counter.ordinal( )].increment( );
+        }
+    }
+
+    public static void add( SessionCounter counter, long amount ) {
+        if ( ENABLED ) {
+            COUNTERS[counter.ordinal( )].add( amount );
+        }
+    }
+
+    /**
+     * Acquires the lock, recording the time spent waiting for it
+     *
+     * @param lock  lock to acquire
+     * @param timer timer of the lock wait
+     */
+    public static void lock( Lock lock, SessionTimer timer ) {
+        if ( !ENABLED ) {
+            lock.lock( );
+            return;
+        }
+        long start = System.nanoTime( );
+        lock.lock( );
+        HISTOGRAMS[timer.ordinal( )].record( System.nanoTime( ) - start );
+    }
+
+    /**
+     * Records a duration measured by the caller
+     *
+     * @param timer timer of the duration
+     * @param nanos duration in nanoseconds
+     */
+    public static void record( SessionTimer timer, long nanos ) {
+        if ( ENABLED ) {
+            HISTOGRAMS[timer.ordinal( )].record( nanos );
+        }
+    }
+
+    /**
+     * Starts timing a read from the external source
+     *
+     * @return event to hand to {@link #endExternalLoad(ExternalLoadEvent, String, boolean)}, or {@code null} when
+     * metrics are disabled
+     */
+    public static ExternalLoadEvent startExternalLoad( ) {
+        if ( !ENABLED ) {
+            return null;
+        }
+        ExternalLoadEvent event = new ExternalLoadEvent( );
+        event.start( );
+        return event;
+    }
+
+    public static void endExternalLoad( ExternalLoadEvent event, String sessionId, boolean found ) {
+        if ( !ENABLED || event == null ) {
+            return;
+        }
+        HISTOGRAMS[SessionTimer.EXTERNAL_LOAD.ordinal( )].record( event.finish( ) );
+        COUNTERS[SessionCounter.EXTERNAL_LOADS.ordinal( )].increment( );
+        if ( !found ) {
+            COUNTERS[SessionCounter.EXTERNAL_LOAD_MISSES.ordinal( )].increment( );
+        }
+        if ( event.shouldCommit( ) ) {
+            event.sessionId = sessionId;
+            event.found = found;
+            event.commit( );
+        }
+    }
+
+    /**
+     * Starts timing a write to the external source
+     *
+     * @return event to hand to {@link #endExternalSave(ExternalSaveEvent, String, int, int, boolean)}, or
+     * {@code null} when metrics are disabled
+     */
+    public static ExternalSaveEvent startExternalSave( ) {
+        if ( !ENABLED ) {
+            return null;
+        }
+        ExternalSaveEvent event = new ExternalSaveEvent( );
+        event.start( );
+        return event;
+    }
+
+    /**
+     * Ends timing a write to the external source
+     *
+     * @param event        event returned by {@link #startExternalSave()}
+     * @param sessionId    id of the saved session or {@code null} for batch writes
+     * @param sessionCount number of sessions written
+     * @param failures     number of sessions which could not be written
+     * @param delta        whether a delta was appended
+     */
+    public static void endExternalSave( ExternalSaveEvent event, String sessionId, int sessionCount, int failures, boolean delta ) {
+        if ( !ENABLED || event == null ) {
+            return;
+        }
+        HISTOGRAMS[SessionTimer.EXTERNAL_SAVE.ordinal( )].record( event.finish( ) );
+        COUNTERS[SessionCounter.EXTERNAL_SAVES.ordinal( )].add( sessionCount );
+        COUNTERS[SessionCounter.EXTERNAL_SAVE_FAILURES.ordinal( )].add( failures );
+        if ( event.shouldCommit( ) ) {
+            event.sessionId = sessionId;
+            event.sessionCount = sessionCount;
+            event.failures = failures;
+            event.delta = delta;
+            event.commit( );
+        }
+    }
+
+    /**
+     * Starts timing the restore of a session from its memento
+     *
+     * @return event to hand to {@link #endRestore(SessionRestoreEvent, String, String)}, or {@code null} when metrics
+     * are disabled
+     */
+    public static SessionRestoreEvent startRestore( ) {
+        if ( !ENABLED ) {
+            return null;
+        }
+        SessionRestoreEvent event = new SessionRestoreEvent( );
+        event.start( );
+        return event;
+    }
+
+    public static void endRestore( SessionRestoreEvent event, String sessionId, String sessionClass ) {
+        if ( !ENABLED || event == null ) {
+            return;
+        }
+        HISTOGRAMS[SessionTimer.RESTORE.ordinal( )].record( event.finish( ) );
+        if ( event.shouldCommit( ) ) {
+            event.sessionId = sessionId;
+            event.sessionClass = sessionClass;
+            event.commit( );
+        }
+    }
+
+    /**
+     * Records a session removed from the internal container because it timed out
+     *
+     * @param sessionId        session id
+     * @param timeoutInSeconds timeout of the session
+     */
+    public static void sessionExpired( String sessionId, long timeoutInSeconds ) {
+        if ( !ENABLED ) {
+            return;
+        }
+        COUNTERS[SessionCounter.EXPIRED.ordinal( )].increment( );
+        SessionExpiredEvent event = new SessionExpiredEvent( );
+        if ( event.shouldCommit( ) ) {
+            event.sessionId = sessionId;
+            event.timeoutInSeconds = timeoutInSeconds;
+            event.commit( );
+        }
+    }
+
+    public static long getCount( SessionCounter counter ) {
+        return COUNTERS[counter.ordinal( )].sum( );
+    }
+
+    public static LatencyHistogram getHistogram( SessionTimer timer ) {
+        return HISTOGRAMS[timer.ordinal( )];
+    }
+
+    static int getLiveSessionCount( ) {
+        return liveSessionCount.getAsInt( );
+    }
+
+    static long getEstimatedMemoryBytes( ) {
+        return estimatedMemoryBytes.getAsLong( );
+    }
+
+    /**
+     * Resets every counter and latency histogram
+     */
+    public static void reset( ) {
+        for ( LongAdder counter : COUNTERS ) {
+            counter.reset( );
+        }
+        for ( LatencyHistogram histogram : HISTOGRAMS ) {
+            histogram.reset( );
+        }
+    }
+}
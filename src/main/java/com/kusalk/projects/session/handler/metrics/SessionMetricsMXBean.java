@@ -0,0 +1,50 @@
+package com.kusalk.projects.session.handler.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link SessionMetrics}, registered as {@value SessionMetrics#OBJECT_NAME} when metrics are enabled
+ */
+public interface SessionMetricsMXBean {
+
+    /**
+     * Returns the number of sessions held in the internal container
+     *
+     * @return session count
+     */
+    int getLiveSessionCount( );
+
+    /**
+     * Returns an estimate of the memory the internal container holds for its sessions
+     *
+     * @return memory estimate in bytes
+     */
+    long getEstimatedMemoryBytes( );
+
+    /**
+     * Returns the share of loads answered by the internal container
+     *
+     * @return hit ratio within [0, 1]
+     */
+    double getHitRatio( );
+
+    /**
+     * Returns the value of every {@link SessionCounter}
+     *
+     * @return counts keyed by counter name
+     */
+    Map<String, Long> getCounters( );
+
+    /**
+     * Returns the count, mean, median, 99th and 99.9th percentile and maximum of every {@link SessionTimer}, keyed
+     * like {@code EXTERNAL_LOAD.p99}
+     *
+     * @return latencies in nanoseconds
+     */
+    Map<String, Long> getLatencies( );
+
+    /**
+     * Resets every counter and latency histogram
+     */
+    void reset( );
+}
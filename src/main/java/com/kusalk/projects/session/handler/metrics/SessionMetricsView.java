@@ -0,0 +1,56 @@
+package com.kusalk.projects.session.handler.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The {@link SessionMetricsMXBean} registered by {@link SessionMetrics}
+ */
+final class SessionMetricsView implements SessionMetricsMXBean {
+
+    @Override
+    public int getLiveSessionCount( ) {
+        return SessionMetrics.getLiveSessionCount( );
+    }
+
+    @Override
+    public long getEstimatedMemoryBytes( ) {
+        return SessionMetrics.getEstimatedMemoryBytes( );
+    }
+
+    @Override
+    public double getHitRatio( ) {
+        long hits = SessionMetrics.getCount( SessionCounter.CONTAINER_HITS );
+        long loads = hits + SessionMetrics.getCount( SessionCounter.CONTAINER_MISSES );
+        return loads == 0 ? 0 : ( double ) hits / loads;
+    }
+
+    @Override
+    public Map<String, Long> getCounters( ) {
+        Map<String, Long> counters = new LinkedHashMap<>( );
+        for ( SessionCounter counter : SessionCounter.values( ) ) {
+            counters.put( counter.name( ), SessionMetrics.getCount( counter ) );
+        }
+        return counters;
+    }
+
+    @Override
+    public Map<String, Long> getLatencies( ) {
+        Map<String, Long> latencies = new LinkedHashMap<>( );
+        for ( SessionTimer timer : SessionTimer.values( ) ) {
+            LatencyHistogram histogram = SessionMetrics.getHistogram( timer );
+            latencies.put( timer.name( ) + ".count", histogram.getCount( ) );
+            latencies.put( timer.name( ) + ".mean", Math.round( histogram.getMean( ) ) );
+            latencies.put( timer.name( ) + ".p50", histogram.getValueAtPercentile( 50 ) );
+            latencies.put( timer.name( ) + ".p99", histogram.getValueAtPercentile( 99 ) );
+            latencies.put( timer.name( ) + ".p999", histogram.getValueAtPercentile( 99.9 ) );
+            latencies.put( timer.name( ) + ".max", histogram.getMax( ) );
+        }
+        return latencies;
+    }
+
+    @Override
+    public void reset( ) {
+        SessionMetrics.reset( );
+    }
+}
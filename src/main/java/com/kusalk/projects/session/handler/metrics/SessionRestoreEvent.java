@@ -0,0 +1,22 @@
+package com.kusalk.projects.session.handler.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event of a session restored from its memento into the internal container
+ */
+@Name( "com.kusalk.projects.session.handler.SessionRestore" )
+@Label( "Session Restore" )
+@Category( { "Session Handler" } )
+@Description( "A session restored from its memento into the internal container" )
+public final class SessionRestoreEvent extends SessionEvent {
+
+    @Label( "Session Id" )
+    String sessionId;
+
+    @Label( "Session Class" )
+    String sessionClass;
+}
@@ -0,0 +1,37 @@
+package com.kusalk.projects.session.handler.metrics;
+
+/**
+ * Latencies recorded by {@link SessionMetrics}, all of them in nanoseconds
+ */
+public enum SessionTimer {
+
+    /**
+     * Reading a memento from the external source
+     */
+    EXTERNAL_LOAD,
+    /**
+     * Writing a memento, a delta or a batch of mementos to the external source
+     */
+    EXTERNAL_SAVE,
+    /**
+     * Restoring a session from its memento into the internal container
+     */
+    RESTORE,
+    /**
+     * Waiting for the container-wide lock in {@link com.kusalk.projects.session.handler.containers.ContainerMode#LOCKED}
+     * mode
+     */
+    CONTAINER_LOCK_WAIT,
+    /**
+     * Waiting for the read or write lock of a session
+     */
+    SESSION_LOCK_WAIT,
+    /**
+     * Writing and forcing a group commit of the session journal
+     */
+    JOURNAL_COMMIT,
+    /**
+     * Writing a checkpoint of the internal container
+     */
+    CHECKPOINT
+}
@@ -0,0 +1,199 @@
+package com.kusalk.projects.session.handler.offheap;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A slab allocator storing byte arrays outside of the Java heap, in direct {@link ByteBuffer} slabs of a fixed size.
+ * <p>
+ * Stored arrays are rounded up to a size class, the size classes growing by a quarter from {@value #MIN_CHUNK_SIZE}
+ * bytes up to the slab size. Each slab is carved into chunks of a single size class when it is first needed, and freed
+ * chunks are reused for the same size class only, so the allocator never fragments. Slabs are allocated lazily until the
+ * capacity is reached and are never released.
+ * <p>
+ * An allocation is identified by a handle holding the slab index and the offset of the chunk. All methods are
+ * thread safe.
+ */
+public final class SlabAllocator {
+
+    public static final long NO_HANDLE = -1;
+
+    private static final int MIN_CHUNK_SIZE = 64;
+    private static final double GROWTH_FACTOR = 1.25;
+    private static final int LENGTH_PREFIX_BYTES = Integer.BYTES;
+
+    private final int slabSizeBytes;
+    private final int[] chunkSizes;
+    private final ByteBuffer[] slabs;
+    private final int[] slabSizeClasses;
+    private final long[][] freeChunks;
+    private final int[] freeChunkCounts;
+    private int slabCount;
+    private long usedBytes;
+
+    /**
+     * @param capacityBytes maximum number of bytes allocated outside of the heap, rounded down to whole slabs
+     * @param slabSizeBytes size of a slab, which is also the largest chunk
+     */
+    public SlabAllocator( long capacityBytes, int slabSizeBytes ) {
+        if ( slabSizeBytes < MIN_CHUNK_SIZE || capacityBytes < slabSizeBytes ) {
+            throw new IllegalArgumentException( "Off-heap capacity " + capacityBytes + " must hold at least one slab of " + slabSizeBytes + " bytes" );
+        }
+        this.slabSizeBytes = slabSizeBytes;
+        this.chunkSizes = chunkSizes( slabSizeBytes );
+        int maximumSlabs = ( int ) Math.min( Integer.MAX_VALUE - 8, capacityBytes / slabSizeBytes );
+        this.slabs = new ByteBuffer[maximumSlabs];
+        this.slabSizeClasses = new int[maximumSlabs];
+        this.freeChunks = new long[chunkSizes.length][];
+        this.freeChunkCounts = new int[chunkSizes.length];
+        for ( int i = 0; i < chunkSizes.length; i++ ) {
+            freeChunks[i] = new long[16];
+        }
+    }
+
+    /**
+     * Returns the size class the data of the provided length is stored in
+     *
+     * @param length length of the data
+     * @return size class or -1 if the data does not fit into a slab
+     */
+    public int sizeClassOf( int length ) {
+        int chunkSize = length + LENGTH_PREFIX_BYTES;
+        if ( chunkSize > slabSizeBytes ) {
+            return -1;
+        }
+        int sizeClass = Arrays.binarySearch( chunkSizes, chunkSize );
+        return sizeClass >= 0 ? sizeClass : -sizeClass - 1;
+    }
+
+    /**
+     * Returns the size class of an allocation
+     *
+     * @param handle allocation handle
+     * @return size class
+     */
+    public synchronized int sizeClassOfHandle( long handle ) {
+        return slabSizeClasses[slabIndex( handle )];
+    }
+
+    /**
+     * Copies the data into a free chunk
+     *
+     * @param data data to be stored
+     * @return handle of the allocation or {@link #NO_HANDLE} if the data does not fit into a slab or no chunk of its size
+     * class is free and the capacity is used up
+     */
+    public synchronized long allocate( byte[] data ) {
+        int sizeClass = sizeClassOf( data.length );
+        if ( sizeClass < 0 || ( freeChunkCounts[sizeClass] == 0 && !addSlab( sizeClass ) ) ) {
+            return NO_HANDLE;
+        }
+        long handle = freeChunks[sizeClass][--freeChunkCounts[sizeClass]];
+        ByteBuffer slab = slabs[slabIndex( handle )];
+        slab.position( offset( handle ) );
+        slab.putInt( data.length );
+        slab.put( data );
+        usedBytes += chunkSizes[sizeClass];
+        return handle;
+    }
+
+    /**
+     * Copies the data of an allocation back onto the heap
+     *
+     * @param handle allocation handle
+     * @return stored data
+     */
+    public synchronized byte[] read( long handle ) {
+        ByteBuffer slab = slabs[slabIndex( handle )];
+        slab.position( offset( handle ) );
+        byte[] data = new byte[slab.getInt( )];
+        slab.get( data );
+        return data;
+    }
+
+    /**
+     * Returns the chunk of an allocation to the free chunks of its size class
+     *
+     * @param handle allocation handle
+     */
+    public synchronized void free( long handle ) {
+        int sizeClass = slabSizeClasses[slabIndex( handle )];
+        pushFreeChunk( sizeClass, handle );
+        usedBytes -= chunkSizes[sizeClass];
+    }
+
+    /**
+     * Returns the bytes held by live allocations, including the rounding to their size class
+     *
+     * @return used bytes
+     */
+    public synchronized long getUsedBytes( ) {
+        return usedBytes;
+    }
+
+    /**
+     * Returns the bytes of the slabs allocated so far
+     *
+     * @return allocated bytes
+     */
+    public synchronized long getAllocatedBytes( ) {
+        return ( long ) slabCount * slabSizeBytes;
+    }
+
+    public long getCapacityBytes( ) {
+        return ( long ) slabs.length * slabSizeBytes;
+    }
+
+    private boolean addSlab( int sizeClass ) {
+        if ( slabCount == slabs.length ) {
+            return false;
+        }
+        int slabIndex = slabCount++;
+        slabs[slabIndex] = ByteBuffer.allocateDirect( slabSizeBytes );
+        slabSizeClasses[slabIndex] = sizeClass;
+        int chunkSize = chunkSizes[sizeClass];
+        // Pushed in reverse so chunks are handed out from the start of the slab
+        for ( int offset = ( slabSizeBytes / chunkSize - 1 ) * chunkSize; offset >= 0; offset -= chunkSize ) {
+            pushFreeChunk( sizeClass, ( ( long ) slabIndex << 32 ) | offset );
+        }
+        return true;
+    }
+
+    private void pushFreeChunk( int sizeClass, long handle ) {
+        long[] chunks = freeChunks[sizeClass];
+        if ( freeChunkCounts[sizeClass] == chunks.length ) {
+            chunks = Arrays.copyOf( chunks, chunks.length * 2 );
+            freeChunks[sizeClass] = chunks;
+        }
+        chunks[freeChunkCounts[sizeClass]++] = handle;
+    }
+
+    private static int slabIndex( long handle ) {
+        return ( int ) ( handle >>> 32 );
+    }
+
+    private static int offset( long handle ) {
+        return ( int ) handle;
+    }
+
+    private static int[] chunkSizes( int slabSizeBytes ) {
+        int[] sizes = new int[128];
+        int count = 0;
+        double size = MIN_CHUNK_SIZE;
+        while ( size < slabSizeBytes ) {
+            // Chunks are kept aligned to eight bytes
+            int chunkSize = ( ( int ) Math.ceil( size ) + 7 ) & ~7;
+            if ( chunkSize >= slabSizeBytes ) {
+                break;
+            }
+            if ( count == 0 || chunkSize > sizes[count - 1] ) {
+                sizes[count++] = chunkSize;
+            }
+            size *= GROWTH_FACTOR;
+        }
+        if ( count == 0 || sizes[count - 1] < slabSizeBytes ) {
+            sizes[count++] = slabSizeBytes;
+        }
+        return Arrays.copyOf( sizes, count );
+    }
+}
@@ -0,0 +1,18 @@
+package com.kusalk.projects.session.handler.session;
+
+/**
+ * A memento holding only the changes made to a session since its state was last persisted. External sources
+ * supporting deltas append them after the full memento of the session and fold them into it when the session is read.
+ */
+public abstract class DeltaMemento extends SessionMemento {
+
+    private static final long serialVersionUID = 5325117147697446798L;
+
+    /**
+     * Applies the changes of this delta to the provided memento
+     *
+     * @param base full memento of the session state the delta was taken against
+     * @return full memento of the session state after the delta, which can be the updated base memento
+     */
+    public abstract SessionMemento applyTo( SessionMemento base );
+}
@@ -1,26 +1,70 @@
 package com.kusalk.projects.session.handler.session;
 
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import com.kusalk.projects.session.handler.id.SessionId;
+import com.kusalk.projects.session.handler.metrics.SessionCounter;
+import com.kusalk.projects.session.handler.metrics.SessionMetrics;
+import com.kusalk.projects.session.handler.metrics.SessionTimer;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * This is the parent class of all sessions within the application.
  * <p>
+ * Sessions can track their modifications so that unchanged sessions are not written to the external source again.
+ * Such sessions override {@link #tracksModifications()} to return {@code true} and call {@link #markModified()} from
+ * every method changing their state, which must only be called between {@link #startReadingSession()} and
+ * {@link #endReadingSession()}. Sessions which also override {@link #createDeltaMemento()} are saved as deltas to
+ * external sources supporting them.
+ * <p>
+ * The session is guarded by a {@link StampedLock}. Working with the session takes its read lock, which is shared, and
+ * persisting it takes the write lock only while its memento is created, so {@link #createMemento()} must return a
+ * snapshot which does not share mutable state with the session. Serializing and writing the memento run outside the
+ * lock, ordered by {@link #startPersistingSession()}. Read-mostly access can use {@link #readOptimistically(Supplier)},
+ * which does not lock at all unless the session is being snapshotted or restored. The locks are not reentrant.
+ * <p>
+ * Millions of sessions can be held at once and most of them are idle, so the locks are only allocated when they are
+ * first used, installed with a single compare-and-set.
+ * <p>
  * Created By : Kusal Kanakanamge
  * Created On : 5/29/2021
  */
 public abstract class Session {
 
     private static final Logger LOGGER = Logger.getLogger( Session.class.getName( ) );
+    private static final AtomicLongFieldUpdater<Session> VERSION_UPDATER = AtomicLongFieldUpdater.newUpdater( Session.class, "version" );
+    private static final VarHandle SESSION_LOCK;
+    private static final VarHandle PERSIST_LOCK;
+    private static final long NEVER_PERSISTED = -1;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup( );
+            SESSION_LOCK = lookup.findVarHandle( Session.class, "sessionLock", StampedLock.class );
+            PERSIST_LOCK = lookup.findVarHandle( Session.class, "persistLock", ReentrantLock.class );
+        } catch ( ReflectiveOperationException e ) {
+            throw new ExceptionInInitializerError( e );
+        }
+    }
 
-    private final ReentrantReadWriteLock sessionLock = new ReentrantReadWriteLock( );
-    private final Lock writeLock = sessionLock.writeLock( );
-    private final Lock readLock = sessionLock.readLock( );
+    private volatile StampedLock sessionLock;
+    private volatile ReentrantLock persistLock;
     protected long timeoutInSeconds;
-    protected long lastLoadedTimestamp;
-    private String sessionId;
+    protected volatile long lastLoadedTimestamp;
+    private SessionId sessionId;
+    /*
+     * Session id set as text which is not a valid session id, kept as it was set for sessions created outside the
+     * session containers
+     */
+    private String customSessionId;
+    private volatile long version;
+    private volatile long persistedVersion = NEVER_PERSISTED;
 
     /**
      * This is used to restore the session state from the memento object
@@ -30,19 +74,135 @@ public abstract class Session {
     public abstract void restore( SessionMemento memento );
 
     /**
-     * This creates an returns a memento object from the data held in the session
+     * This creates an returns a memento object from the data held in the session. It is called under the write lock
+     * of the session, but the memento is serialized after the lock is released while the session may already be
+     * modified again, so mutable parts of the session must be copied into the memento.
      *
      * @return {@link SessionMemento} memento object
      */
     public abstract SessionMemento createMemento( );
 
+    /**
+     * Creates a memento holding only the changes made since the session was last persisted. Sessions which return a
+     * delta must also track the changed parts themselves and forget them in {@link #onPersisted()}.
+     *
+     * @return {@link DeltaMemento} delta memento or {@code null} if the session can only be saved in full, which is the
+     * default
+     */
+    public DeltaMemento createDeltaMemento( ) {
+        return null;
+    }
+
+    /**
+     * Returns whether the session calls {@link #markModified()} on every change. Sessions which do not track their
+     * modifications are always considered modified.
+     *
+     * @return {@code false} by default
+     */
+    protected boolean tracksModifications( ) {
+        return false;
+    }
+
+    /**
+     * Records a modification of the session state
+     */
+    protected void markModified( ) {
+        VERSION_UPDATER.incrementAndGet( this );
+    }
+
+    /**
+     * Called after the session state was persisted, so sessions tracking changed parts for
+     * {@link #createDeltaMemento()} can forget them
+     */
+    protected void onPersisted( ) {
+    }
+
+    /**
+     * Returns the modification counter of the session
+     *
+     * @return version
+     */
+    public long getVersion( ) {
+        return version;
+    }
+
+    /**
+     * Returns whether the session changed since it was last persisted or restored
+     *
+     * @return {@code true} if the session has to be written to the external source
+     */
+    public boolean isModified( ) {
+        return !tracksModifications( ) || version != persistedVersion;
+    }
+
+    /**
+     * Returns whether the session state was ever persisted to or restored from an external source
+     *
+     * @return {@code true} if the external source holds a state of the session
+     */
+    public boolean isPersisted( ) {
+        return persistedVersion != NEVER_PERSISTED;
+    }
+
+    /**
+     * Records that the state of the provided version was persisted. Nothing is recorded if the session was modified
+     * after the version was taken.
+     *
+     * @param persistedVersion version of the persisted state, as returned by {@link #getVersion()} before creating
+     *                         the memento
+     */
+    public void markPersisted( long persistedVersion ) {
+        if ( version == persistedVersion ) {
+            this.persistedVersion = persistedVersion;
+            onPersisted( );
+        }
+    }
+
+    /**
+     * Returns the session id encoded as text, or the custom session id the session was given if it is not a valid
+     * session id
+     *
+     * @return session id
+     */
     public String getSessionId( ) {
+        return sessionId != null ? sessionId.toString( ) : customSessionId;
+    }
+
+    public SessionId getId( ) {
         return sessionId;
     }
 
+    /**
+     * Sets the session id from its text form. The session id can be set only once, while a blank custom session id
+     * can still be replaced.
+     * <p>
+     * Text which is not a valid {@link SessionId} is kept as a custom session id, returned by {@link #getSessionId()}
+     * while {@link #getId()} returns {@code null}. Such sessions can be used on their own, but the session containers
+     * only hold sessions with a valid session id and replace a custom session id with the id they add the session
+     * under.
+     *
+     * @param sessionId session id
+     */
     public void setSessionId( String sessionId ) {
-        if ( this.sessionId == null || this.sessionId.isBlank( ) ) {
+        if ( this.sessionId == null && ( customSessionId == null || customSessionId.isBlank( ) ) ) {
+            SessionId parsedId = SessionId.parse( sessionId );
+            if ( parsedId != null ) {
+                this.sessionId = parsedId;
+            } else {
+                this.customSessionId = sessionId;
+            }
+        }
+    }
+
+    /**
+     * Sets the session id. The session id can be set only once, and replaces a custom session id.
+     *
+     * @param sessionId session id
+     */
+    public void setSessionId( SessionId sessionId ) {
+        if ( this.sessionId == null ) {
             this.sessionId = sessionId;
+            this.customSessionId = null;
         }
     }
 
@@ -59,7 +219,23 @@ public abstract class Session {
      */
     public void startWritingSession( ) {
         LOGGER.log( Level.FINE, "Started writing session {0} to external source", new Object[]{ sessionId } );
-        writeLock.lock( );
+        StampedLock lock = sessionLock( );
+        if ( !SessionMetrics.ENABLED ) {
+            lock.writeLock( );
+            return;
+        }
+        long start = System.nanoTime( );
+        lock.writeLock( );
+        SessionMetrics.record( SessionTimer.SESSION_LOCK_WAIT, System.nanoTime( ) - start );
+    }
+
+    /**
+     * Starts writing the session only if no other thread is reading or writing it
+     *
+     * @return {@code true} if the write lock was acquired, in which case {@link #endWritingSession()} must be called
+     */
+    public boolean tryStartWritingSession( ) {
+        return sessionLock( ).tryWriteLock( ) != 0;
     }
 
     /**
@@ -67,7 +243,9 @@ public abstract class Session {
      */
     public void endWritingSession( ) {
         LOGGER.log( Level.FINE, "Finished writing session {0} to external source", new Object[]{ sessionId } );
-        writeLock.unlock( );
+        if ( !sessionLock( ).tryUnlockWrite( ) ) {
+            throw new IllegalMonitorStateException( "Session " + sessionId + " is not locked for writing" );
+        }
     }
 
     /**
@@ -75,7 +253,14 @@ public abstract class Session {
      */
     public void startReadingSession( ) {
         LOGGER.log( Level.FINE, "Started reading session {0} to external source", new Object[]{ sessionId } );
-        readLock.lock( );
+        StampedLock lock = sessionLock( );
+        if ( !SessionMetrics.ENABLED ) {
+            lock.readLock( );
+            return;
+        }
+        long start = System.nanoTime( );
+        lock.readLock( );
+        SessionMetrics.record( SessionTimer.SESSION_LOCK_WAIT, System.nanoTime( ) - start );
     }
 
     /**
@@ -83,7 +268,86 @@ public abstract class Session {
      */
     public void endReadingSession( ) {
         LOGGER.log( Level.FINE, "Finished reading session {0} to external source", new Object[]{ sessionId } );
-        readLock.unlock( );
+        if ( !sessionLock( ).tryUnlockRead( ) ) {
+            throw new IllegalMonitorStateException( "Session " + sessionId + " is not locked for reading" );
+        }
+    }
+
+    /**
+     * Reads from the session without locking it. The reader runs optimistically and is run again under the read lock
+     * if the session was snapshotted or restored meanwhile, so it must not have side effects and must tolerate seeing
+     * the session half changed, including exceptions thrown from such a state.
+     *
+     * @param reader reader of the session state
+     * @param <T>    type of the value read
+     * @return value read
+     */
+    public <T> T readOptimistically( Supplier<T> reader ) {
+        StampedLock lock = sessionLock( );
+        long stamp = lock.tryOptimisticRead( );
+        if ( stamp != 0 ) {
+            try {
+                T value = reader.get( );
+                if ( lock.validate( stamp ) ) {
+                    return value;
+                }
+            } catch ( RuntimeException e ) {
+                if ( lock.validate( stamp ) ) {
+                    throw e;
+                }
+            }
+        }
+        SessionMetrics.increment( SessionCounter.OPTIMISTIC_READ_RETRIES );
+        startReadingSession( );
+        try {
+            return reader.get( );
+        } finally {
+            endReadingSession( );
+        }
+    }
+
+    /**
+     * Orders the writes of the session to the external source, so an older snapshot cannot overwrite a newer one. This
+     * does not block working with the session and should be called before the snapshot is taken.
+     */
+    public void startPersistingSession( ) {
+        persistLock( ).lock( );
+    }
+
+    /**
+     * This method should be called after the snapshot taken after {@link #startPersistingSession()} was written
+     */
+    public void endPersistingSession( ) {
+        persistLock( ).unlock( );
+    }
+
+    private StampedLock sessionLock( ) {
+        StampedLock lock = sessionLock;
+        if ( lock == null ) {
+            StampedLock created = new StampedLock( );
+            lock = SESSION_LOCK.compareAndSet( this, null, created ) ? created : sessionLock;
+        }
+        return lock;
+    }
+
+    private ReentrantLock persistLock( ) {
+        ReentrantLock lock = persistLock;
+        if ( lock == null ) {
+            ReentrantLock created = new ReentrantLock( );
+            lock = PERSIST_LOCK.compareAndSet( this, null, created ) ? created : persistLock;
+        }
+        return lock;
+    }
+
+    /**
+     * Returns the weight of this session, used when the internal session container is bounded by a maximum weight.
+     * Every session weighs one by default so the bound is a session count. Sessions holding large object graphs can
+     * override this with an estimate of their size.
+     *
+     * @return weight of the session
+     */
+    public int getWeight( ) {
+        return 1;
     }
 
     public long getLastLoadedTimestamp( ) {
@@ -11,6 +11,8 @@ import java.io.Serializable;
  */
 public abstract class SessionMemento implements Serializable {
 
+    private static final long serialVersionUID = -4628716538842906768L;
+
     protected String sessionClass;
     private long sessionTimeoutInSeconds;
 
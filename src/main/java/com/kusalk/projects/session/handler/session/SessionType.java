@@ -0,0 +1,49 @@
+package com.kusalk.projects.session.handler.session;
+
+import java.util.function.Supplier;
+
+/**
+ * A session class registered in the {@link SessionTypeRegistry}. It holds the interned type id of the session class
+ * and the pre-resolved factory used to create new session objects of that class.
+ */
+public final class SessionType<T extends Session> {
+
+    private final int typeId;
+    private final Class<T> sessionClass;
+    private final Supplier<T> factory;
+
+    SessionType( int typeId, Class<T> sessionClass, Supplier<T> factory ) {
+        this.typeId = typeId;
+        this.sessionClass = sessionClass;
+        this.factory = factory;
+    }
+
+    /**
+     * Creates a new, empty session object of this type
+     *
+     * @return new session object
+     */
+    public T newSession( ) {
+        return factory.get( );
+    }
+
+    public int getTypeId( ) {
+        return typeId;
+    }
+
+    public Class<T> getSessionClass( ) {
+        return sessionClass;
+    }
+
+    public String getSessionClassName( ) {
+        return sessionClass.getName( );
+    }
+
+    @Override
+    public String toString( ) {
+        return "SessionType{" +
+                "typeId=" + typeId +
+                ", sessionClass=" + sessionClass.getName( ) +
+                '}';
+    }
+}
@@ -0,0 +1,177 @@
+package com.kusalk.projects.session.handler.session;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Registry of the session classes known to the application. Each session class is resolved once into a
+ * {@link SessionType} holding an interned type id and a factory, so creating or restoring a session does not need
+ * {@code Class.forName} or reflective constructor calls.
+ * <p>
+ * Session classes should be registered at startup with {@link #register(Class, Supplier)}, for example
+ * {@code register( PersonSession.class, PersonSession::new )}. Classes which were not registered are resolved and
+ * registered the first time they are looked up.
+ */
+public class SessionTypeRegistry {
+
+    private static final Logger LOGGER = Logger.getLogger( SessionTypeRegistry.class.getName( ) );
+
+    private final ConcurrentHashMap<String, SessionType<?>> typesByClassName = new ConcurrentHashMap<>( );
+    private volatile SessionType<?>[] typesById = new SessionType<?>[0];
+
+    private SessionTypeRegistry( ) {
+    }
+
+    /**
+     * Single registry instance is shared by all the session containers
+     *
+     * @return {@link SessionTypeRegistry} instance
+     */
+    public static SessionTypeRegistry getInstance( ) {
+        return ResourceHolder.SESSION_TYPE_REGISTRY;
+    }
+
+    /**
+     * Registers the session class with the provided factory. Registering a class again returns the existing type.
+     *
+     * @param sessionClass session class
+     * @param factory      factory creating empty session objects, usually the constructor reference of the class
+     * @return {@link SessionType} registered session type
+     */
+    @SuppressWarnings( "unchecked" )
+    public <T extends Session> SessionType<T> register( Class<T> sessionClass, Supplier<T> factory ) {
+        SessionType<?> sessionType = typesByClassName.get( sessionClass.getName( ) );
+        if ( sessionType == null ) {
+            synchronized ( this ) {
+                sessionType = typesByClassName.get( sessionClass.getName( ) );
+                if ( sessionType == null ) {
+                    SessionType<?>[] types = typesById;
+                    sessionType = new SessionType<>( types.length, sessionClass, factory );
+                    SessionType<?>[] newTypes = Arrays.copyOf( types, types.length + 1 );
+                    newTypes[sessionType.getTypeId( )] = sessionType;
+                    typesById = newTypes;
+                    typesByClassName.put( sessionClass.getName( ), sessionType );
+                    LOGGER.log( Level.FINE, "Registered session type {0}", sessionType );
+                }
+            }
+        }
+        return ( SessionType<T> ) sessionType;
+    }
+
+    /**
+     * Registers the session class using its no-argument constructor. Public constructors are called directly, while
+     * non-public constructors are called through their method handle, which needs the package of the session class
+     * to be open to this registry.
+     *
+     * @param sessionClass session class
+     * @return {@link SessionType} registered session type
+     * @throws IllegalArgumentException if the class does not have an accessible no-argument constructor
+     */
+    public <T extends Session> SessionType<T> register( Class<T> sessionClass ) {
+        SessionType<T> sessionType = lookup( sessionClass );
+        return sessionType != null ? sessionType : register( sessionClass, createFactory( sessionClass ) );
+    }
+
+    /**
+     * Resolves the session type of the provided session class, registering it if needed
+     *
+     * @param sessionClass session class
+     * @return {@link SessionType} session type
+     */
+    public <T extends Session> SessionType<T> resolve( Class<T> sessionClass ) {
+        return register( sessionClass );
+    }
+
+    /**
+     * Resolves the session type of the provided session class name, registering it if needed
+     *
+     * @param sessionClassName fully qualified session class name
+     * @return {@link SessionType} session type
+     * @throws ClassNotFoundException   if the class cannot be found
+     * @throws IllegalArgumentException if the class is not a {@link Session} or cannot be instantiated
+     */
+    public SessionType<? extends Session> resolve( String sessionClassName ) throws ClassNotFoundException {
+        SessionType<?> sessionType = typesByClassName.get( sessionClassName );
+        if ( sessionType != null ) {
+            return sessionType;
+        }
+        Class<?> loadedClass = Class.forName( sessionClassName );
+        if ( !Session.class.isAssignableFrom( loadedClass ) ) {
+            throw new IllegalArgumentException( sessionClassName + " is not a session class" );
+        }
+        return register( loadedClass.asSubclass( Session.class ) );
+    }
+
+    /**
+     * Returns the session type registered with the provided type id
+     *
+     * @param typeId interned type id
+     * @return {@link SessionType} session type or {@code null} if no such type is registered
+     */
+    public SessionType<? extends Session> getSessionType( int typeId ) {
+        SessionType<?>[] types = typesById;
+        return typeId >= 0 && typeId < types.length ? types[typeId] : null;
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private <T extends Session> SessionType<T> lookup( Class<T> sessionClass ) {
+        SessionType<?> sessionType = typesByClassName.get( sessionClass.getName( ) );
+        return sessionType != null && sessionType.getSessionClass( ) == sessionClass ? ( SessionType<T> ) sessionType : null;
+    }
+
+    /**
+     * Spins a {@link Supplier} which calls the constructor directly. If the lambda cannot be generated for the class,
+     * which is the case for constructors not accessible to this registry, the constructor method handle is invoked
+     * instead.
+     */
+    @SuppressWarnings( "unchecked" )
+    private static <T extends Session> Supplier<T> createFactory( Class<T> sessionClass ) {
+        MethodHandle constructor = findConstructor( sessionClass );
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup( );
+            CallSite callSite = LambdaMetafactory.metafactory( lookup, "get", MethodType.methodType( Supplier.class ),
+                    MethodType.methodType( Object.class ), constructor, MethodType.methodType( sessionClass ) );
+            return ( Supplier<T> ) callSite.getTarget( ).invoke( );
+        } catch ( Throwable e ) {
+            LOGGER.log( Level.FINE, e, ( ) -> "Falling back to a method handle factory for session class " + sessionClass.getName( ) );
+            MethodHandle genericConstructor = constructor.asType( MethodType.methodType( Session.class ) );
+            return ( ) -> {
+                try {
+                    return ( T ) genericConstructor.invokeExact( );
+                } catch ( RuntimeException | Error e1 ) {
+                    throw e1;
+                } catch ( Throwable e1 ) {
+                    throw new IllegalStateException( "Error creating session of class " + sessionClass.getName( ), e1 );
+                }
+            };
+        }
+    }
+
+    private static MethodHandle findConstructor( Class<? extends Session> sessionClass ) {
+        MethodType constructorType = MethodType.methodType( void.class );
+        try {
+            return MethodHandles.publicLookup( ).findConstructor( sessionClass, constructorType );
+        } catch ( NoSuchMethodException e ) {
+            throw new IllegalArgumentException( "Session class " + sessionClass.getName( ) + " needs a no-argument constructor", e );
+        } catch ( IllegalAccessException e ) {
+            LOGGER.log( Level.FINE, "Session class {0} does not have a public no-argument constructor", sessionClass.getName( ) );
+        }
+        try {
+            return MethodHandles.privateLookupIn( sessionClass, MethodHandles.lookup( ) ).findConstructor( sessionClass, constructorType );
+        } catch ( NoSuchMethodException | IllegalAccessException e ) {
+            throw new IllegalArgumentException( "Session class " + sessionClass.getName( ) + " needs an accessible no-argument constructor", e );
+        }
+    }
+
+    private static class ResourceHolder {
+        private static final SessionTypeRegistry SESSION_TYPE_REGISTRY = new SessionTypeRegistry( );
+    }
+}
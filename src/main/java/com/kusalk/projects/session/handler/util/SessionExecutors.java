@@ -0,0 +1,72 @@
+package com.kusalk.projects.session.handler.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Executors used to run blocking external source calls off the caller's thread.
+ * <p>
+ * The default executor starts a virtual thread per task when the JVM supports virtual threads (JDK 21 and later), so
+ * thousands of concurrent external loads do not need thousands of platform threads. The project is compiled for
+ * Java 11, so the virtual thread executor is looked up reflectively. On older JVMs a fixed pool of daemon threads is
+ * used instead.
+ */
+public class SessionExecutors {
+
+    private static final Logger LOGGER = Logger.getLogger( SessionExecutors.class.getName( ) );
+
+    public static final int DEFAULT_PLATFORM_IO_THREADS = Math.max( 16, Runtime.getRuntime( ).availableProcessors( ) * 4 );
+
+    private SessionExecutors( ) {
+    }
+
+    /**
+     * Returns the shared default executor of external source calls
+     *
+     * @return {@link ExecutorService} default executor
+     */
+    public static ExecutorService defaultIoExecutor( ) {
+        return DefaultIoExecutorHolder.EXECUTOR;
+    }
+
+    /**
+     * Returns whether the default executor runs tasks on virtual threads
+     *
+     * @return {@code true} if virtual threads are used
+     */
+    public static boolean usesVirtualThreads( ) {
+        return DefaultIoExecutorHolder.VIRTUAL_THREADS;
+    }
+
+    private static ExecutorService createVirtualThreadExecutor( ) {
+        try {
+            Method factory = Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+            return ( ExecutorService ) factory.invoke( null );
+        } catch ( NoSuchMethodException e ) {
+            return null;
+        } catch ( ReflectiveOperationException | RuntimeException e ) {
+            LOGGER.log( Level.WARNING, e, ( ) -> "Virtual threads are not available, using platform threads for external session I/O" );
+            return null;
+        }
+    }
+
+    private static ExecutorService createPlatformThreadExecutor( ) {
+        AtomicInteger threadCount = new AtomicInteger( );
+        return Executors.newFixedThreadPool( DEFAULT_PLATFORM_IO_THREADS, runnable -> {
+            Thread thread = new Thread( runnable, "session-io-thread-" + threadCount.incrementAndGet( ) );
+            thread.setDaemon( true );
+            return thread;
+        } );
+    }
+
+    private static final class DefaultIoExecutorHolder {
+
+        private static final ExecutorService VIRTUAL_THREAD_EXECUTOR = createVirtualThreadExecutor( );
+        private static final boolean VIRTUAL_THREADS = VIRTUAL_THREAD_EXECUTOR != null;
+        private static final ExecutorService EXECUTOR = VIRTUAL_THREADS ? VIRTUAL_THREAD_EXECUTOR : createPlatformThreadExecutor( );
+    }
+}
@@ -0,0 +1,151 @@
+package com.kusalk.projects.session.handler.warmup;
+
+import com.kusalk.projects.session.handler.containers.ExternalSessionContainer;
+import com.kusalk.projects.session.handler.containers.InternalSessionContainer;
+import com.kusalk.projects.session.handler.external.sources.StoredSession;
+import com.kusalk.projects.session.handler.session.SessionMemento;
+import com.kusalk.projects.session.handler.util.SessionResponse;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Warms up the {@link InternalSessionContainer} after a restart, so the first requests of the users do not all read
+ * their session from the external source.
+ * <ul>
+ * <li>The stored sessions are listed from the external source, which lists them in parallel where it can, and the
+ * sessions whose timeout passed since they were written are told apart from the live ones.</li>
+ * <li>The most recently written live sessions are read in batches on the executor and restored into the internal
+ * session container. Restored sessions get a full timeout from the warm-up.</li>
+ * <li>The remaining sessions are kept as lazy references, read from the external source on their first load. Loads of
+ * sessions referenced as expired are answered without reading the external source.</li>
+ * </ul>
+ * The references are taken from the listing, so a warm-up should run before other processes save sessions to the
+ * same external source. A bounded internal session container evicts hydrated sessions once it is full, so the number
+ * of sessions hydrated should stay within its maximum weight.
+ */
+public final class SessionWarmer {
+
+    private static final Logger LOGGER = Logger.getLogger( SessionWarmer.class.getName( ) );
+
+    public static final int HYDRATION_BATCH_SIZE = 256;
+
+    private final InternalSessionContainer internalSessionContainer;
+    private final ExternalSessionContainer externalSessionContainer;
+    private final Executor executor;
+    private final ConcurrentHashMap<String, StoredSession> lazyReferences = new ConcurrentHashMap<>( );
+    private final AtomicBoolean started = new AtomicBoolean( );
+    private final WarmUpProgress progress = new WarmUpProgress( );
+
+    /**
+     * @param internalSessionContainer container the sessions are restored into
+     * @param externalSessionContainer container of the external source the sessions are read from
+     * @param executor                 executor the batches of sessions are hydrated on
+     */
+    public SessionWarmer( InternalSessionContainer internalSessionContainer, ExternalSessionContainer externalSessionContainer, Executor executor ) {
+        this.internalSessionContainer = internalSessionContainer;
+        this.externalSessionContainer = externalSessionContainer;
+        this.executor = executor;
+    }
+
+    /**
+     * Runs the warm-up and waits for it to finish. A warmer warms up once, later calls return the progress of the
+     * first warm-up right away.
+     *
+     * @param hydrateCount number of the most recently written live sessions restored into the internal container
+     * @return {@link WarmUpProgress} final progress
+     */
+    public WarmUpProgress warmUp( int hydrateCount ) {
+        if ( !started.compareAndSet( false, true ) ) {
+            return progress;
+        }
+        progress.startScan( );
+        ConcurrentHashMap<String, StoredSession> storedSessions = new ConcurrentHashMap<>( );
+        SessionResponse<Boolean> listResponse = externalSessionContainer.forEachStoredSession( storedSession -> {
+            progress.sessionScanned( );
+            storedSessions.merge( storedSession.getSessionId( ), storedSession, StoredSession::newer );
+        } );
+        if ( listResponse.isError( ) ) {
+            LOGGER.log( Level.WARNING, "Session warm-up failed, the external session source can not list its sessions : {0}", listResponse.getMessage( ) );
+            progress.finish( WarmUpProgress.Phase.FAILED );
+            return progress;
+        }
+
+        long now = System.currentTimeMillis( );
+        List<StoredSession> liveSessions = new ArrayList<>( );
+        long expiredSessions = 0;
+        for ( StoredSession storedSession : storedSessions.values( ) ) {
+            if ( storedSession.isExpired( now ) ) {
+                lazyReferences.put( storedSession.getSessionId( ), storedSession );
+                expiredSessions++;
+            } else {
+                liveSessions.add( storedSession );
+            }
+        }
+        liveSessions.sort( Comparator.comparingLong( StoredSession::getWrittenAtMillis ).reversed( ) );
+        int sessionsToHydrate = Math.min( Math.max( 0, hydrateCount ), liveSessions.size( ) );
+        for ( StoredSession storedSession : liveSessions.subList( sessionsToHydrate, liveSessions.size( ) ) ) {
+            lazyReferences.put( storedSession.getSessionId( ), storedSession );
+        }
+        progress.startHydration( liveSessions.size( ), expiredSessions, sessionsToHydrate );
+        LOGGER.log( Level.INFO, "Scanned {0} stored sessions in {1}ms, {2} live and {3} expired. Hydrating {4} sessions",
+                new Object[]{ storedSessions.size( ), progress.getScanMillis( ), liveSessions.size( ), expiredSessions, sessionsToHydrate } );
+
+        List<CompletableFuture<Void>> batches = new ArrayList<>( );
+        for ( int start = 0; start < sessionsToHydrate; start += HYDRATION_BATCH_SIZE ) {
+            List<StoredSession> batch = liveSessions.subList( start, Math.min( sessionsToHydrate, start + HYDRATION_BATCH_SIZE ) );
+            batches.add( CompletableFuture.runAsync( ( ) -> hydrate( batch ), executor ).exceptionally( e -> {
+                LOGGER.log( Level.SEVERE, e, ( ) -> "Error occurred while hydrating a batch of sessions" );
+                return null;
+            } ) );
+        }
+        CompletableFuture.allOf( batches.toArray( new CompletableFuture<?>[0] ) ).join( );
+        progress.finish( WarmUpProgress.Phase.COMPLETED );
+        LOGGER.log( Level.INFO, "Session warm-up completed in {0}ms : {1}", new Object[]{ progress.getTotalMillis( ), progress } );
+        return progress;
+    }
+
+    private void hydrate( List<StoredSession> batch ) {
+        List<String> sessionIds = new ArrayList<>( batch.size( ) );
+        batch.forEach( storedSession -> sessionIds.add( storedSession.getSessionId( ) ) );
+        Map<String, SessionMemento> mementos = externalSessionContainer.loadSessions( sessionIds ).getData( );
+        for ( String sessionId : sessionIds ) {
+            SessionMemento memento = mementos != null ? mementos.get( sessionId ) : null;
+            progress.sessionHydrated( memento != null && internalSessionContainer.restoreSession( sessionId, memento ).isSuccess( ) );
+        }
+        LOGGER.log( Level.FINE, "Hydrated {0} of {1} sessions", new Object[]{ progress.getHydratedSessions( ), progress.getSessionsToHydrate( ) } );
+    }
+
+    /**
+     * Takes the lazy reference of a session which was not hydrated. The reference is dropped, so it is only consulted
+     * on the first load of the session.
+     *
+     * @param sessionId session id
+     * @return {@link StoredSession} reference or {@code null} if the session was hydrated, already loaded or not listed
+     */
+    public StoredSession takeLazyReference( String sessionId ) {
+        return lazyReferences.isEmpty( ) ? null : lazyReferences.remove( sessionId );
+    }
+
+    /**
+     * Returns the number of sessions referenced lazily which were not loaded yet
+     *
+     * @return reference count
+     */
+    public int getLazyReferenceCount( ) {
+        return lazyReferences.size( );
+    }
+
+    public WarmUpProgress getProgress( ) {
+        return progress;
+    }
+
+}
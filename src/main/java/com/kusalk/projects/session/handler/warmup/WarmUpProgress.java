@@ -0,0 +1,144 @@
+package com.kusalk.projects.session.handler.warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Progress of a warm-up run by a {@link SessionWarmer}. The counts are updated while the warm-up runs, so the object
+ * can be polled from another thread, and hold the final report once the phase is {@link Phase#COMPLETED}.
+ */
+public final class WarmUpProgress {
+
+    /**
+     * Phases of a warm-up
+     */
+    public enum Phase {
+        NOT_STARTED,
+        /**
+         * The stored sessions are listed from the external source
+         */
+        SCANNING,
+        /**
+         * The most recently used live sessions are restored into the internal session container
+         */
+        HYDRATING,
+        COMPLETED,
+        /**
+         * The external source could not list its sessions
+         */
+        FAILED
+    }
+
+    private final LongAdder scannedSessions = new LongAdder( );
+    private final LongAdder hydratedSessions = new LongAdder( );
+    private final LongAdder failedHydrations = new LongAdder( );
+    private volatile Phase phase = Phase.NOT_STARTED;
+    private volatile long liveSessions;
+    private volatile long expiredSessions;
+    private volatile long sessionsToHydrate;
+    private volatile long startedAtNanos;
+    private volatile long scannedAtNanos;
+    private volatile long finishedAtNanos;
+
+    void startScan( ) {
+        startedAtNanos = System.nanoTime( );
+        phase = Phase.SCANNING;
+    }
+
+    void sessionScanned( ) {
+        scannedSessions.increment( );
+    }
+
+    void startHydration( long liveSessions, long expiredSessions, long sessionsToHydrate ) {
+        this.liveSessions = liveSessions;
+        this.expiredSessions = expiredSessions;
+        this.sessionsToHydrate = sessionsToHydrate;
+        scannedAtNanos = System.nanoTime( );
+        phase = Phase.HYDRATING;
+    }
+
+    void sessionHydrated( boolean hydrated ) {
+        ( hydrated ? hydratedSessions : failedHydrations ).increment( );
+    }
+
+    void finish( Phase phase ) {
+        finishedAtNanos = System.nanoTime( );
+        if ( scannedAtNanos == 0 ) {
+            scannedAtNanos = finishedAtNanos;
+        }
+        this.phase = phase;
+    }
+
+    public Phase getPhase( ) {
+        return phase;
+    }
+
+    public boolean isDone( ) {
+        return phase == Phase.COMPLETED || phase == Phase.FAILED;
+    }
+
+    /**
+     * Returns the number of stored sessions listed so far. Sessions listed by several replicas count once per replica.
+     *
+     * @return scanned session count
+     */
+    public long getScannedSessions( ) {
+        return scannedSessions.sum( );
+    }
+
+    public long getLiveSessions( ) {
+        return liveSessions;
+    }
+
+    public long getExpiredSessions( ) {
+        return expiredSessions;
+    }
+
+    public long getSessionsToHydrate( ) {
+        return sessionsToHydrate;
+    }
+
+    public long getHydratedSessions( ) {
+        return hydratedSessions.sum( );
+    }
+
+    public long getFailedHydrations( ) {
+        return failedHydrations.sum( );
+    }
+
+    /**
+     * Returns the time spent listing the stored sessions
+     *
+     * @return milliseconds, up to now while scanning
+     */
+    public long getScanMillis( ) {
+        return millisBetween( startedAtNanos, scannedAtNanos );
+    }
+
+    /**
+     * Returns the time spent hydrating sessions
+     *
+     * @return milliseconds, up to now while hydrating
+     */
+    public long getHydrationMillis( ) {
+        return scannedAtNanos == 0 ? 0 : millisBetween( scannedAtNanos, finishedAtNanos );
+    }
+
+    public long getTotalMillis( ) {
+        return millisBetween( startedAtNanos, finishedAtNanos );
+    }
+
+    private static long millisBetween( long fromNanos, long toNanos ) {
+        if ( fromNanos == 0 ) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMillis( ( toNanos != 0 ? toNanos : System.nanoTime( ) ) - fromNanos );
+    }
+
+    @Override
+    public String toString( ) {
+        return "WarmUpProgress{phase=" + phase + ", scanned=" + getScannedSessions( ) + ", live=" + liveSessions + ", expired=" + expiredSessions
+                + ", hydrated=" + getHydratedSessions( ) + "/" + sessionsToHydrate + ", failed=" + getFailedHydrations( )
+                + ", scanMillis=" + getScanMillis( ) + ", hydrationMillis=" + getHydrationMillis( ) + "}";
+    }
+}
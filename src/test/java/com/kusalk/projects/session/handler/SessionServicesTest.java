@@ -0,0 +1,693 @@
+package com.kusalk.projects.session.handler;
+
+import com.kusalk.projects.session.handler.codec.JavaSerializationMementoCodec;
+import com.kusalk.projects.session.handler.containers.ExternalSessionContainer;
+import com.kusalk.projects.session.handler.containers.InternalSessionContainer;
+import com.kusalk.projects.session.handler.demo.Person;
+import com.kusalk.projects.session.handler.demo.PersonMemento;
+import com.kusalk.projects.session.handler.demo.PersonSession;
+import com.kusalk.projects.session.handler.external.sources.ExternalSessionSource;
+import com.kusalk.projects.session.handler.external.sources.SegmentedSessionSource;
+import com.kusalk.projects.session.handler.id.RandomUUIDSessionIdGenerator;
+import com.kusalk.projects.session.handler.id.SessionId;
+import com.kusalk.projects.session.handler.session.DeltaMemento;
+import com.kusalk.projects.session.handler.session.Session;
+import com.kusalk.projects.session.handler.session.SessionMemento;
+import com.kusalk.projects.session.handler.session.SessionTypeRegistry;
+import com.kusalk.projects.session.handler.util.SessionCode;
+import com.kusalk.projects.session.handler.util.SessionResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link SessionServices}
+ */
+public class SessionServicesTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldNotBlockReadersWhileWritingASnapshot( ) throws Exception {
+        SessionTypeRegistry.getInstance( ).register( PersonSession.class, PersonSession::new );
+        InternalSessionContainer container = InternalSessionContainer.builder( "snapshots" ).partitions( 1 ).build( );
+        try {
+            BlockingSource source = new BlockingSource( );
+            SessionServices sessionServices = new SessionServices( container, new ExternalSessionContainer( source ), Runnable::run );
+            PersonSession session = ( PersonSession ) sessionServices.loadSession( sessionServices.createSession( PersonSession.class ).getData( ) ).getData( );
+            Person person = new Person( "Kusal", 27, 0, "Matara" );
+            session.startReadingSession( );
+            session.setPerson( person );
+            session.endReadingSession( );
+
+            CompletableFuture<SessionResponse<Boolean>> save = CompletableFuture.supplyAsync( ( ) -> sessionServices.saveSessionToExternalSource( session ) );
+            assertTrue( source.writing.await( 10, TimeUnit.SECONDS ) );
+
+            // The write is stalled inside the external source, the session can still be read and changed
+            assertEquals( "Kusal", session.readOptimistically( ( ) -> session.getPerson( ).getName( ) ) );
+            session.startReadingSession( );
+            person.setName( "Kusal Kankanamge" );
+            session.endReadingSession( );
+            assertFalse( save.isDone( ) );
+
+            source.release.countDown( );
+            assertTrue( save.get( 10, TimeUnit.SECONDS ).isSuccess( ) );
+            assertEquals( "Kusal", ( ( PersonMemento ) source.written ).getPerson( ).getName( ) );
+        } finally {
+            container.close( );
+        }
+    }
+
+    @Test
+    public void shouldSaveAgainWhenModifiedWhileSaving( ) throws Exception {
+        SessionTypeRegistry.getInstance( ).register( PersonSession.class, PersonSession::new );
+        InternalSessionContainer container = InternalSessionContainer.builder( "resave" ).partitions( 1 ).build( );
+        try {
+            BlockingSource source = new BlockingSource( );
+            SessionServices sessionServices = new SessionServices( container, new ExternalSessionContainer( source ), Runnable::run );
+            String sessionId = sessionServices.createSession( PersonSession.class ).getData( );
+            PersonSession session = ( PersonSession ) sessionServices.loadSession( sessionId ).getData( );
+            session.startReadingSession( );
+            session.setPerson( new Person( "Kusal", 27, 0, "Matara" ) );
+            session.endReadingSession( );
+
+            CompletableFuture<SessionResponse<Boolean>> save = CompletableFuture.supplyAsync( ( ) -> sessionServices.saveSessionToExternalSource( session ) );
+            assertTrue( source.writing.await( 10, TimeUnit.SECONDS ) );
+
+            // Modified after the snapshot was taken, so the session must be saved again before it is removed
+            session.startReadingSession( );
+            session.setPerson( new Person( "Kusal Kankanamge", 27, 0, "Matara" ) );
+            session.endReadingSession( );
+
+            source.release.countDown( );
+            assertTrue( save.get( 10, TimeUnit.SECONDS ).isSuccess( ) );
+            assertEquals( "Kusal Kankanamge", ( ( PersonMemento ) source.written ).getPerson( ).getName( ) );
+            assertNull( container.loadSessionFromContainer( sessionId ) );
+        } finally {
+            container.close( );
+        }
+    }
+
+    @Test
+    public void shouldKeepEvictedSessionsLoadableWhilePassivating( ) throws Exception {
+        SessionTypeRegistry.getInstance( ).register( PersonSession.class, PersonSession::new );
+        InternalSessionContainer container = InternalSessionContainer.builder( "passivation" ).partitions( 1 ).maximumWeight( 1 ).build( );
+        try {
+            BlockingSource source = new BlockingSource( );
+            AtomicInteger passivations = new AtomicInteger( );
+            Executor ioExecutor = command -> {
+                passivations.incrementAndGet( );
+                new Thread( command ).start( );
+            };
+            SessionServices sessionServices = new SessionServices( container, new ExternalSessionContainer( source ), ioExecutor );
+            // Further session services of the container share its passivating sessions
+            SessionServices otherSessionServices = new SessionServices( container, new ExternalSessionContainer( source ), Runnable::run );
+            Map<String, Session> sessions = new ConcurrentHashMap<>( );
+            String first = sessionServices.createSession( PersonSession.class ).getData( );
+            Session session = sessionServices.loadSession( first ).getData( );
+            sessions.put( first, session );
+
+            // Evicting a session while this thread holds its lock must not save it on this thread
+            session.startReadingSession( );
+            CompletableFuture<String> second = CompletableFuture.supplyAsync( ( ) -> {
+                String sessionId = sessionServices.createSession( PersonSession.class ).getData( );
+                sessions.put( sessionId, sessionServices.loadSession( sessionId ).getData( ) );
+                return sessionId;
+            } );
+            second.get( 10, TimeUnit.SECONDS );
+            session.endReadingSession( );
+
+            // The write of the evicted session is stalled on the I/O executor, loading it re-activates the same session
+            assertTrue( source.writing.await( 10, TimeUnit.SECONDS ) );
+            assertEquals( 1, passivations.get( ) );
+            String evicted = source.writtenSessionId;
+            SessionResponse<Session> loaded = otherSessionServices.loadSession( evicted );
+            assertTrue( loaded.isSuccess( ) );
+            assertSame( sessions.get( evicted ), loaded.getData( ) );
+            assertSame( loaded.getData( ), sessionServices.loadSession( evicted ).getData( ) );
+            source.release.countDown( );
+        } finally {
+            container.close( );
+        }
+    }
+
+    @Test
+    public void shouldLoadAndSaveSessionsUnderTheirNormalizedId( ) {
+        SessionTypeRegistry.getInstance( ).register( PersonSession.class, PersonSession::new );
+        InternalSessionContainer container = InternalSessionContainer.builder( "normalized-ids" ).partitions( 1 ).build( );
+        try {
+            CountingSource source = new CountingSource( );
+            SessionServices sessionServices = new SessionServices( container, new ExternalSessionContainer( source ), Runnable::run );
+            String sessionId = sessionServices.createSession( PersonSession.class ).getData( );
+            PersonSession session = ( PersonSession ) sessionServices.loadSession( sessionId ).getData( );
+            session.startReadingSession( );
+            session.setPerson( new Person( "Kusal", 27, 0, "Matara" ) );
+            session.endReadingSession( );
+            assertTrue( sessionServices.saveSessionToExternalSource( session ).isSuccess( ) );
+
+            // Loaded under another spelling of its id, the session is read and saved again under its own id
+            String otherSpelling = SessionId.parse( sessionId ).toCompactString( );
+            PersonSession loaded = ( PersonSession ) sessionServices.loadSession( otherSpelling ).getData( );
+            assertEquals( sessionId, loaded.getSessionId( ) );
+            loaded.startReadingSession( );
+            loaded.setPerson( new Person( "Kusal Kankanamge", 27, 0, "Matara" ) );
+            loaded.endReadingSession( );
+            assertTrue( sessionServices.saveSessionToExternalSource( loaded ).isSuccess( ) );
+
+            Map<String, Session> sessions = sessionServices.loadSessions( Arrays.asList( sessionId.toUpperCase( ), "custom-session-id" ) ).getData( );
+            assertEquals( Set.of( sessionId.toUpperCase( ) ), sessions.keySet( ) );
+            assertFalse( sessionServices.loadSession( "custom-session-id" ).isSuccess( ) );
+            assertEquals( Set.of( sessionId ), source.mementos.keySet( ) );
+            assertEquals( Set.of( sessionId ), source.readSessionIds );
+        } finally {
+            container.close( );
+        }
+    }
+
+    @Test
+    public void shouldReadTheExternalSourceOnceForConcurrentMisses( ) throws Exception {
+        SessionTypeRegistry.getInstance( ).register( PersonSession.class, PersonSession::new );
+        InternalSessionContainer container = InternalSessionContainer.builder( "coalesced-loads" ).partitions( 1 ).build( );
+        ExecutorService loaders = Executors.newFixedThreadPool( 8 );
+        try {
+            CountingSource source = new CountingSource( );
+            String sessionId = new RandomUUIDSessionIdGenerator( ).generateSessionId( ).toString( );
+            source.mementos.put( sessionId, personMemento( "Kusal" ) );
+            SessionServices sessionServices = new SessionServices( container, new ExternalSessionContainer( source ), Runnable::run );
+
+            // The read is held until every loader missed the session in the container
+            source.readReleased = new CountDownLatch( 1 );
+            CountDownLatch started = new CountDownLatch( 8 );
+            List<Future<SessionResponse<Session>>> loads = new ArrayList<>( );
+            for ( int i = 0; i < 8; i++ ) {
+                loads.add( loaders.submit( ( ) -> {
+                    started.countDown( );
+                    return sessionServices.loadSession( sessionId );
+                } ) );
+            }
+            assertTrue( started.await( 10, TimeUnit.SECONDS ) );
+            Thread.sleep( 200 );
+            source.readReleased.countDown( );
+
+            Session session = loads.get( 0 ).get( 10, TimeUnit.SECONDS ).getData( );
+            for ( Future<SessionResponse<Session>> load : loads ) {
+                assertSame( session, load.get( 10, TimeUnit.SECONDS ).getData( ) );
+            }
+            assertEquals( 1, source.reads.get( ) );
+            assertEquals( sessionId, session.getSessionId( ) );
+            assertEquals( "Kusal", ( ( PersonSession ) session ).getPerson( ).getName( ) );
+            assertSame( session, sessionServices.loadContainerLocalSession( sessionId ).getData( ) );
+            assertEquals( 1, source.reads.get( ) );
+        } finally {
+            loaders.shutdownNow( );
+            container.close( );
+        }
+    }
+
+    @Test
+    public void shouldSkipWritingUnchangedSessions( ) {
+        SessionTypeRegistry.getInstance( ).register( PersonSession.class, PersonSession::new );
+        InternalSessionContainer container = InternalSessionContainer.builder( "unchanged-sessions" ).partitions( 1 ).build( );
+        try {
+            CountingSource source = new CountingSource( );
+            SessionServices sessionServices = new SessionServices( container, new ExternalSessionContainer( source ), Runnable::run );
+            String sessionId = sessionServices.createSession( PersonSession.class ).getData( );
+            PersonSession session = ( PersonSession ) sessionServices.loadSession( sessionId ).getData( );
+            session.startReadingSession( );
+            session.setPerson( new Person( "Kusal", 27, 0, "Matara" ) );
+            session.endReadingSession( );
+            assertTrue( sessionServices.saveSessionToExternalSource( session ).isSuccess( ) );
+            assertEquals( 1, source.writes.get( ) );
+
+            // A restored session which was not modified only has its expiry refreshed and is still removed
+            PersonSession restored = ( PersonSession ) sessionServices.loadSession( sessionId ).getData( );
+            assertFalse( restored.isModified( ) );
+            assertTrue( sessionServices.saveSessionToExternalSource( restored ).isSuccess( ) );
+            assertEquals( 1, source.writes.get( ) );
+            assertEquals( 1, source.touches.get( ) );
+            assertTrue( sessionServices.loadContainerLocalSession( sessionId ).isError( ) );
+
+            // Unless the external source cannot refresh the expiry
+            source.failTouches = true;
+            restored = ( PersonSession ) sessionServices.loadSession( sessionId ).getData( );
+            assertTrue( sessionServices.saveSessionToExternalSource( restored ).isSuccess( ) );
+            assertEquals( 2, source.writes.get( ) );
+
+            restored = ( PersonSession ) sessionServices.loadSession( sessionId ).getData( );
+            restored.startReadingSession( );
+            restored.setPerson( new Person( "Kusal Kankanamge", 27, 0, "Matara" ) );
+            restored.endReadingSession( );
+            assertTrue( restored.isModified( ) );
+            assertTrue( sessionServices.saveSessionToExternalSource( restored ).isSuccess( ) );
+            assertEquals( 3, source.writes.get( ) );
+            assertEquals( "Kusal Kankanamge", ( ( PersonMemento ) source.mementos.get( sessionId ) ).getPerson( ).getName( ) );
+        } finally {
+            container.close( );
+        }
+    }
+
+    @Test
+    public void shouldAppendDeltasToSourcesSupportingThem( ) {
+        SessionTypeRegistry.getInstance( ).register( TaggedSession.class, TaggedSession::new );
+        InternalSessionContainer container = InternalSessionContainer.builder( "delta-sessions" ).partitions( 1 ).build( );
+        try {
+            CountingSource source = new CountingSource( );
+            source.supportsDeltas = true;
+            SessionServices sessionServices = new SessionServices( container, new ExternalSessionContainer( source ), Runnable::run );
+            String sessionId = sessionServices.createSession( TaggedSession.class ).getData( );
+
+            // The first save has nothing to append to, so it is written in full
+            addTagAndSave( sessionServices, sessionId, "first" );
+            addTagAndSave( sessionServices, sessionId, "second" );
+            addTagAndSave( sessionServices, sessionId, "third" );
+
+            assertEquals( 1, source.writes.get( ) );
+            assertEquals( 2, source.deltas.get( ) );
+            assertEquals( Arrays.asList( "first", "second", "third" ), tagsOf( sessionServices, sessionId ) );
+        } finally {
+            container.close( );
+        }
+    }
+
+    @Test
+    public void shouldWriteInFullWhenTheSourceDoesNotSupportDeltas( ) {
+        SessionTypeRegistry.getInstance( ).register( TaggedSession.class, TaggedSession::new );
+        InternalSessionContainer container = InternalSessionContainer.builder( "delta-fallback" ).partitions( 1 ).build( );
+        try {
+            CountingSource source = new CountingSource( );
+            SessionServices sessionServices = new SessionServices( container, new ExternalSessionContainer( source ), Runnable::run );
+            String sessionId = sessionServices.createSession( TaggedSession.class ).getData( );
+
+            addTagAndSave( sessionServices, sessionId, "first" );
+            addTagAndSave( sessionServices, sessionId, "second" );
+            addTagAndSave( sessionServices, sessionId, "third" );
+
+            // Every delta was offered to the source and written in full once it was not accepted
+            assertEquals( 2, source.deltas.get( ) );
+            assertEquals( 3, source.writes.get( ) );
+            assertEquals( Arrays.asList( "first", "second", "third" ), tagsOf( sessionServices, sessionId ) );
+        } finally {
+            container.close( );
+        }
+    }
+
+    @Test
+    public void shouldFoldSavedDeltasAtTheMaximumChainLength( ) {
+        SessionTypeRegistry.getInstance( ).register( TaggedSession.class, TaggedSession::new );
+        InternalSessionContainer container = InternalSessionContainer.builder( "folded-deltas" ).partitions( 1 ).build( );
+        CountingCodec codec = new CountingCodec( );
+        try ( SegmentedSessionSource source = SegmentedSessionSource.builder( directory ).mementoCodec( codec ).maxDeltaChainLength( 3 ).build( ) ) {
+            SessionServices sessionServices = new SessionServices( container, new ExternalSessionContainer( source ), Runnable::run );
+            String sessionId = sessionServices.createSession( TaggedSession.class ).getData( );
+            List<String> tags = new ArrayList<>( );
+            for ( int i = 0; i <= 5; i++ ) {
+                tags.add( "tag-" + i );
+                addTagAndSave( sessionServices, sessionId, "tag-" + i );
+            }
+
+            // The full memento was followed by five deltas, folded with the third one, so the memento folded then
+            // and the two deltas after it are decoded
+            codec.decodes.set( 0 );
+            assertEquals( tags, tagsOf( sessionServices, sessionId ) );
+            assertEquals( 3, codec.decodes.get( ) );
+        } finally {
+            container.close( );
+        }
+    }
+
+    @Test
+    public void shouldLoadBatchesOfLocalStoredAndMissingSessions( ) {
+        SessionTypeRegistry.getInstance( ).register( PersonSession.class, PersonSession::new );
+        InternalSessionContainer container = InternalSessionContainer.builder( "batch-loads" ).partitions( 1 ).build( );
+        try {
+            CountingSource source = new CountingSource( );
+            SessionServices sessionServices = new SessionServices( container, new ExternalSessionContainer( source ), Runnable::run );
+            String local = sessionServices.createSession( PersonSession.class ).getData( );
+            RandomUUIDSessionIdGenerator generator = new RandomUUIDSessionIdGenerator( );
+            String stored = generator.generateSessionId( ).toString( );
+            String missing = generator.generateSessionId( ).toString( );
+            source.mementos.put( stored, personMemento( "Kusal" ) );
+
+            SessionResponse<Map<String, Session>> loadResponse = sessionServices.loadSessions( Arrays.asList( local, stored, missing, "custom-session-id" ) );
+
+            assertTrue( loadResponse.isSuccess( ) );
+            assertEquals( Set.of( local, stored ), loadResponse.getData( ).keySet( ) );
+            assertSame( sessionServices.loadContainerLocalSession( local ).getData( ), loadResponse.getData( ).get( local ) );
+            assertEquals( "Kusal", ( ( PersonSession ) loadResponse.getData( ).get( stored ) ).getPerson( ).getName( ) );
+            // Only the sessions missing from the container are read, and the restored session stays in the container
+            assertEquals( Set.of( stored, missing ), source.readSessionIds );
+            assertSame( loadResponse.getData( ).get( stored ), sessionServices.loadContainerLocalSession( stored ).getData( ) );
+            assertTrue( sessionServices.loadSessions( Arrays.asList( missing, "custom-session-id" ) ).getData( ).isEmpty( ) );
+        } finally {
+            container.close( );
+        }
+    }
+
+    @Test
+    public void shouldReportEveryFailedSaveOfABatch( ) {
+        SessionTypeRegistry.getInstance( ).register( PersonSession.class, PersonSession::new );
+        InternalSessionContainer container = InternalSessionContainer.builder( "batch-saves" ).partitions( 1 ).build( );
+        try {
+            CountingSource source = new CountingSource( );
+            SessionServices sessionServices = new SessionServices( container, new ExternalSessionContainer( source ), Runnable::run );
+            List<Session> sessions = new ArrayList<>( );
+            for ( String name : new String[]{ "Kusal", "Saman", "Nimal" } ) {
+                PersonSession session = ( PersonSession ) sessionServices.loadSession( sessionServices.createSession( PersonSession.class ).getData( ) ).getData( );
+                session.startReadingSession( );
+                session.setPerson( new Person( name, 27, 0, "Matara" ) );
+                session.endReadingSession( );
+                sessions.add( session );
+            }
+            String failing = sessions.get( 1 ).getSessionId( );
+            source.failingSessionIds.add( failing );
+
+            SessionResponse<Map<String, Boolean>> saveResponse = sessionServices.saveSessions( sessions );
+
+            assertTrue( saveResponse.isError( ) );
+            assertEquals( Map.of( sessions.get( 0 ).getSessionId( ), true, failing, false, sessions.get( 2 ).getSessionId( ), true ), saveResponse.getData( ) );
+            // Saved sessions leave the container, the session which failed stays there modified
+            assertTrue( sessionServices.loadContainerLocalSession( sessions.get( 0 ).getSessionId( ) ).isError( ) );
+            assertSame( sessions.get( 1 ), sessionServices.loadContainerLocalSession( failing ).getData( ) );
+            assertTrue( sessions.get( 1 ).isModified( ) );
+            assertEquals( Set.of( sessions.get( 0 ).getSessionId( ), sessions.get( 2 ).getSessionId( ) ), source.mementos.keySet( ) );
+
+            // Once the source accepts it, the failed session is saved with a restored session which did not change
+            source.failingSessionIds.clear( );
+            Session restored = sessionServices.loadSession( sessions.get( 0 ).getSessionId( ) ).getData( );
+            int writes = source.writes.get( );
+            saveResponse = sessionServices.saveSessions( Arrays.asList( restored, sessions.get( 1 ) ) );
+            assertTrue( saveResponse.isSuccess( ) );
+            assertEquals( Map.of( restored.getSessionId( ), true, failing, true ), saveResponse.getData( ) );
+            assertEquals( writes + 1, source.writes.get( ) );
+            assertEquals( 3, source.mementos.size( ) );
+        } finally {
+            container.close( );
+        }
+    }
+
+    @Test
+    public void shouldLoadAndSaveAsynchronouslyOnTheIoExecutor( ) throws Exception {
+        SessionTypeRegistry.getInstance( ).register( PersonSession.class, PersonSession::new );
+        InternalSessionContainer container = InternalSessionContainer.builder( "async-io" ).partitions( 1 ).build( );
+        try {
+            CountingSource source = new CountingSource( );
+            String stored = new RandomUUIDSessionIdGenerator( ).generateSessionId( ).toString( );
+            source.mementos.put( stored, personMemento( "Kusal" ) );
+            AtomicInteger executed = new AtomicInteger( );
+            Executor ioExecutor = command -> {
+                executed.incrementAndGet( );
+                new Thread( command, "async-io-thread" ).start( );
+            };
+            SessionServices sessionServices = new SessionServices( container, new ExternalSessionContainer( source ), ioExecutor );
+
+            // Sessions in the container are returned without the I/O executor
+            String local = sessionServices.createSession( PersonSession.class ).getData( );
+            CompletableFuture<SessionResponse<Session>> localLoad = sessionServices.loadSessionAsync( local );
+            assertTrue( localLoad.isDone( ) );
+            assertTrue( localLoad.get( ).isSuccess( ) );
+            assertEquals( 0, executed.get( ) );
+
+            source.readReleased = new CountDownLatch( 1 );
+            CompletableFuture<SessionResponse<Session>> storedLoad = sessionServices.loadSessionAsync( stored );
+            assertFalse( storedLoad.isDone( ) );
+            source.readReleased.countDown( );
+            Session session = storedLoad.get( 10, TimeUnit.SECONDS ).getData( );
+            assertEquals( "Kusal", ( ( PersonSession ) session ).getPerson( ).getName( ) );
+            assertEquals( 1, executed.get( ) );
+            assertEquals( Set.of( "async-io-thread" ), source.readThreads );
+
+            ( ( PersonSession ) session ).startReadingSession( );
+            ( ( PersonSession ) session ).setPerson( new Person( "Kusal Kankanamge", 27, 0, "Matara" ) );
+            ( ( PersonSession ) session ).endReadingSession( );
+            assertTrue( sessionServices.saveSessionToExternalSourceAsync( session ).get( 10, TimeUnit.SECONDS ).isSuccess( ) );
+            assertEquals( 2, executed.get( ) );
+            assertEquals( Set.of( "async-io-thread" ), source.writeThreads );
+            assertEquals( "Kusal Kankanamge", ( ( PersonMemento ) source.mementos.get( stored ) ).getPerson( ).getName( ) );
+        } finally {
+            container.close( );
+        }
+    }
+
+    @Test
+    public void shouldCompleteAsynchronousCallsRejectedByTheIoExecutor( ) {
+        SessionTypeRegistry.getInstance( ).register( PersonSession.class, PersonSession::new );
+        InternalSessionContainer container = InternalSessionContainer.builder( "rejected-async-io" ).partitions( 1 ).build( );
+        try {
+            CountingSource source = new CountingSource( );
+            String stored = new RandomUUIDSessionIdGenerator( ).generateSessionId( ).toString( );
+            source.mementos.put( stored, personMemento( "Kusal" ) );
+            Executor rejectingExecutor = command -> {
+                throw new RejectedExecutionException( "I/O executor shut down" );
+            };
+            SessionServices sessionServices = new SessionServices( container, new ExternalSessionContainer( source ), rejectingExecutor );
+
+            CompletableFuture<SessionResponse<Session>> load = sessionServices.loadSessionAsync( stored );
+            assertTrue( load.isDone( ) );
+            assertTrue( load.join( ).isError( ) );
+            assertEquals( 0, source.reads.get( ) );
+            // The rejected load is not left in flight for later loads to wait on
+            Session session = sessionServices.loadSession( stored ).getData( );
+            assertEquals( "Kusal", ( ( PersonSession ) session ).getPerson( ).getName( ) );
+
+            ( ( PersonSession ) session ).startReadingSession( );
+            ( ( PersonSession ) session ).setPerson( new Person( "Kusal Kankanamge", 27, 0, "Matara" ) );
+            ( ( PersonSession ) session ).endReadingSession( );
+            CompletableFuture<SessionResponse<Boolean>> save = sessionServices.saveSessionToExternalSourceAsync( session );
+            assertTrue( save.isDone( ) );
+            assertTrue( save.join( ).isError( ) );
+            assertFalse( save.join( ).getData( ) );
+            assertEquals( 0, source.writes.get( ) );
+            assertSame( session, sessionServices.loadContainerLocalSession( stored ).getData( ) );
+        } finally {
+            container.close( );
+        }
+    }
+
+    private static void addTagAndSave( SessionServices sessionServices, String sessionId, String tag ) {
+        TaggedSession session = ( TaggedSession ) sessionServices.loadSession( sessionId ).getData( );
+        session.startReadingSession( );
+        session.addTag( tag );
+        session.endReadingSession( );
+        assertTrue( sessionServices.saveSessionToExternalSource( session ).isSuccess( ) );
+    }
+
+    private static List<String> tagsOf( SessionServices sessionServices, String sessionId ) {
+        return ( ( TaggedSession ) sessionServices.loadSession( sessionId ).getData( ) ).getTags( );
+    }
+
+    private static PersonMemento personMemento( String name ) {
+        PersonMemento memento = new PersonMemento( );
+        memento.setPerson( new Person( name, 27, 0, "Matara" ) );
+        memento.setSessionClass( );
+        memento.setSessionTimeoutInSeconds( 3600 );
+        return memento;
+    }
+
+    /**
+     * A source keeping its mementos in memory and counting how it is called
+     */
+    private static final class CountingSource implements ExternalSessionSource {
+
+        private final Map<String, SessionMemento> mementos = new ConcurrentHashMap<>( );
+        private final Set<String> readSessionIds = ConcurrentHashMap.newKeySet( );
+        private final Set<String> failingSessionIds = ConcurrentHashMap.newKeySet( );
+        private final Set<String> readThreads = ConcurrentHashMap.newKeySet( );
+        private final Set<String> writeThreads = ConcurrentHashMap.newKeySet( );
+        private final AtomicInteger reads = new AtomicInteger( );
+        private final AtomicInteger writes = new AtomicInteger( );
+        private final AtomicInteger deltas = new AtomicInteger( );
+        private final AtomicInteger touches = new AtomicInteger( );
+        private volatile CountDownLatch readReleased = new CountDownLatch( 0 );
+        private volatile boolean supportsDeltas;
+        private volatile boolean failTouches;
+
+        @Override
+        public SessionResponse<SessionMemento> readSessionMemento( String sessionId ) {
+            reads.incrementAndGet( );
+            readSessionIds.add( sessionId );
+            readThreads.add( Thread.currentThread( ).getName( ) );
+            try {
+                readReleased.await( 10, TimeUnit.SECONDS );
+            } catch ( InterruptedException e ) {
+                Thread.currentThread( ).interrupt( );
+            }
+            SessionMemento memento = mementos.get( sessionId );
+            return new SessionResponse<>( "", memento != null ? SessionCode.SUCCESS : SessionCode.ERROR, memento );
+        }
+
+        @Override
+        public SessionResponse<Boolean> writeSessionMemento( String sessionId, SessionMemento memento ) {
+            if ( failingSessionIds.contains( sessionId ) ) {
+                return new SessionResponse<>( "", SessionCode.ERROR, false );
+            }
+            writes.incrementAndGet( );
+            writeThreads.add( Thread.currentThread( ).getName( ) );
+            mementos.put( sessionId, memento );
+            return new SessionResponse<>( "", SessionCode.SUCCESS, true );
+        }
+
+        @Override
+        public SessionResponse<Boolean> appendSessionDelta( String sessionId, DeltaMemento delta ) {
+            deltas.incrementAndGet( );
+            if ( !supportsDeltas || mementos.computeIfPresent( sessionId, ( id, memento ) -> delta.applyTo( memento ) ) == null ) {
+                return new SessionResponse<>( "", SessionCode.ERROR, false );
+            }
+            return new SessionResponse<>( "", SessionCode.SUCCESS, true );
+        }
+
+        @Override
+        public SessionResponse<Boolean> touchSessionMemento( String sessionId, long timeoutInSeconds ) {
+            touches.incrementAndGet( );
+            return new SessionResponse<>( "", failTouches ? SessionCode.ERROR : SessionCode.SUCCESS, !failTouches );
+        }
+    }
+
+    /**
+     * A source stalling its writes until it is released
+     */
+    private static final class BlockingSource implements ExternalSessionSource {
+
+        private final CountDownLatch writing = new CountDownLatch( 1 );
+        private final CountDownLatch release = new CountDownLatch( 1 );
+        private volatile SessionMemento written;
+        private volatile String writtenSessionId;
+
+        @Override
+        public SessionResponse<SessionMemento> readSessionMemento( String sessionId ) {
+            return new SessionResponse<>( "", written != null ? SessionCode.SUCCESS : SessionCode.ERROR, written );
+        }
+
+        @Override
+        public SessionResponse<Boolean> writeSessionMemento( String sessionId, SessionMemento memento ) {
+            writtenSessionId = sessionId;
+            writing.countDown( );
+            try {
+                release.await( );
+            } catch ( InterruptedException e ) {
+                Thread.currentThread( ).interrupt( );
+            }
+            written = memento;
+            return new SessionResponse<>( "", SessionCode.SUCCESS, true );
+        }
+    }
+
+    /**
+     * A session holding a list of tags, saved as a delta of the tags added since it was last persisted
+     */
+    private static final class TaggedSession extends Session {
+
+        private final List<String> tags = new ArrayList<>( );
+        private final List<String> addedTags = new ArrayList<>( );
+
+        @Override
+        public void restore( SessionMemento memento ) {
+            tags.clear( );
+            tags.addAll( ( ( TagsMemento ) memento ).tags );
+            addedTags.clear( );
+        }
+
+        @Override
+        public SessionMemento createMemento( ) {
+            return new TagsMemento( tags );
+        }
+
+        @Override
+        public DeltaMemento createDeltaMemento( ) {
+            return new TagsDelta( addedTags );
+        }
+
+        @Override
+        protected boolean tracksModifications( ) {
+            return true;
+        }
+
+        @Override
+        protected void onPersisted( ) {
+            addedTags.clear( );
+        }
+
+        private void addTag( String tag ) {
+            tags.add( tag );
+            addedTags.add( tag );
+            markModified( );
+        }
+
+        private List<String> getTags( ) {
+            return new ArrayList<>( tags );
+        }
+    }
+
+    private static final class TagsMemento extends SessionMemento {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> tags;
+
+        private TagsMemento( List<String> tags ) {
+            this.tags = new ArrayList<>( tags );
+        }
+
+        @Override
+        public void setSessionClass( ) {
+            this.sessionClass = TaggedSession.class.getName( );
+        }
+    }
+
+    private static final class TagsDelta extends DeltaMemento {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> addedTags;
+
+        private TagsDelta( List<String> addedTags ) {
+            this.addedTags = new ArrayList<>( addedTags );
+        }
+
+        @Override
+        public SessionMemento applyTo( SessionMemento base ) {
+            ( ( TagsMemento ) base ).tags.addAll( addedTags );
+            return base;
+        }
+
+        @Override
+        public void setSessionClass( ) {
+            this.sessionClass = TaggedSession.class.getName( );
+        }
+    }
+
+    private static final class CountingCodec extends JavaSerializationMementoCodec {
+
+        private final AtomicInteger decodes = new AtomicInteger( );
+
+        @Override
+        public SessionMemento decode( ByteBuffer buffer ) throws IOException {
+            decodes.incrementAndGet( );
+            return super.decode( buffer );
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.kusalk.projects.session.handler.codec;
+
+import com.kusalk.projects.session.handler.demo.Person;
+import com.kusalk.projects.session.handler.demo.PersonMemento;
+import com.kusalk.projects.session.handler.demo.PersonMementoSchema;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link BinaryMementoCodec}
+ */
+public class BinaryMementoCodecTest {
+
+    private final BinaryMementoCodec codec = new BinaryMementoCodec( ).register( new PersonMementoSchema( ) );
+
+    @Test
+    public void shouldRoundTripRegisteredMementos( ) throws Exception {
+        PersonMemento memento = personMemento( new Person( "Kusal", 27, -123456789, "Matara" ) );
+
+        byte[] encoded = codec.encode( memento );
+        PersonMemento decoded = ( PersonMemento ) codec.decode( encoded );
+
+        assertEquals( BinaryMementoCodec.FORMAT_MARKER, encoded[0] );
+        assertTrue( encoded.length < new JavaSerializationMementoCodec( ).encode( memento ).length / 4 );
+        assertEquals( memento.getPerson( ).toString( ), decoded.getPerson( ).toString( ) );
+        assertEquals( 1500, decoded.getSessionTimeoutInSeconds( ) );
+        assertEquals( memento.getSessionClass( ), decoded.getSessionClass( ) );
+    }
+
+    @Test
+    public void shouldRoundTripNullFields( ) throws Exception {
+        PersonMemento decoded = ( PersonMemento ) codec.decode( codec.encode( personMemento( null ) ) );
+        assertNull( decoded.getPerson( ) );
+
+        decoded = ( PersonMemento ) codec.decode( codec.encode( personMemento( new Person( null, 0, 0, "" ) ) ) );
+        assertNull( decoded.getPerson( ).getName( ) );
+        assertEquals( "", decoded.getPerson( ).getAddress( ) );
+    }
+
+    @Test
+    public void shouldDecodeJavaSerializedMementos( ) throws Exception {
+        PersonMemento memento = personMemento( new Person( "Kusal", 27, 123456789, "Matara" ) );
+        byte[] serialized = new JavaSerializationMementoCodec( ).encode( memento );
+
+        PersonMemento decoded = ( PersonMemento ) codec.decode( serialized );
+
+        assertEquals( memento.getPerson( ).toString( ), decoded.getPerson( ).toString( ) );
+    }
+
+    private static PersonMemento personMemento( Person person ) {
+        PersonMemento memento = new PersonMemento( );
+        memento.setPerson( person );
+        memento.setSessionClass( );
+        memento.setSessionTimeoutInSeconds( 1500 );
+        return memento;
+    }
+}
@@ -0,0 +1,73 @@
+package com.kusalk.projects.session.handler.codec;
+
+import com.kusalk.projects.session.handler.demo.Person;
+import com.kusalk.projects.session.handler.demo.PersonMemento;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link CompressingMementoCodec}
+ */
+public class CompressingMementoCodecTest {
+
+    private final MementoCodec delegate = new JavaSerializationMementoCodec( );
+
+    @Test
+    public void shouldRoundTripWithEveryAlgorithm( ) throws Exception {
+        PersonMemento memento = personMemento( "Kusal", "Matara, Matara, Matara, Southern Province, Sri Lanka, Matara, Matara" );
+        for ( CompressionAlgorithm algorithm : CompressionAlgorithm.values( ) ) {
+            MementoCodec codec = CompressingMementoCodec.builder( delegate ).algorithm( algorithm ).thresholdBytes( 0 ).build( );
+
+            byte[] compressed = codec.encode( memento );
+
+            assertEquals( CompressingMementoCodec.COMPRESSION_MARKER, compressed[0] );
+            assertTrue( compressed.length < delegate.encode( memento ).length );
+            assertEquals( memento.getPerson( ).toString( ), ( ( PersonMemento ) codec.decode( compressed ) ).getPerson( ).toString( ) );
+        }
+    }
+
+    @Test
+    public void shouldKeepRecordsBelowTheThresholdUncompressed( ) throws Exception {
+        PersonMemento memento = personMemento( "Kusal", "Matara" );
+        MementoCodec codec = CompressingMementoCodec.builder( delegate ).thresholdBytes( 4096 ).build( );
+
+        byte[] record = codec.encode( memento );
+
+        assertArrayEquals( delegate.encode( memento ), record );
+        assertEquals( "Kusal", ( ( PersonMemento ) codec.decode( record ) ).getPerson( ).getName( ) );
+    }
+
+    @Test
+    public void shouldCompressBetterWithATrainedDictionary( ) throws Exception {
+        List<PersonMemento> samples = new ArrayList<>( );
+        for ( int i = 0; i < 50; i++ ) {
+            samples.add( personMemento( "Person " + i, "Street " + i ) );
+        }
+        PersonMemento memento = personMemento( "Someone", "Somewhere" );
+        String sessionClass = memento.getSessionClass( );
+
+        MementoCodec plain = CompressingMementoCodec.builder( delegate ).thresholdBytes( 0 ).build( );
+        MementoCodec trained = CompressingMementoCodec.builder( delegate ).thresholdBytes( 0 )
+                .trainDictionary( sessionClass, 1, samples, 4096 ).build( );
+
+        byte[] withDictionary = trained.encode( memento );
+
+        assertTrue( withDictionary.length < plain.encode( memento ).length / 2 );
+        assertEquals( "Somewhere", ( ( PersonMemento ) trained.decode( withDictionary ) ).getPerson( ).getAddress( ) );
+        assertEquals( "Someone", ( ( PersonMemento ) trained.decode( plain.encode( memento ) ) ).getPerson( ).getName( ) );
+    }
+
+    private static PersonMemento personMemento( String name, String address ) {
+        PersonMemento memento = new PersonMemento( );
+        memento.setPerson( new Person( name, 27, 123456789, address ) );
+        memento.setSessionClass( );
+        memento.setSessionTimeoutInSeconds( 1500 );
+        return memento;
+    }
+}
@@ -0,0 +1,54 @@
+package com.kusalk.projects.session.handler.containers;
+
+import com.kusalk.projects.session.handler.demo.PersonSession;
+import com.kusalk.projects.session.handler.session.SessionTypeRegistry;
+import com.kusalk.projects.session.handler.util.SessionResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for named and partitioned {@link InternalSessionContainer} objects
+ */
+public class InternalSessionContainerTest {
+
+    @Test
+    public void shouldKeepNamedContainersApart( ) {
+        SessionTypeRegistry.getInstance( ).register( PersonSession.class, PersonSession::new );
+        InternalSessionContainer tenantA = InternalSessionContainer.builder( "tenant-a" ).partitions( 4 ).defaultTimeoutInSeconds( 60 ).build( );
+        InternalSessionContainer tenantB = InternalSessionContainer.builder( "tenant-b" ).partitions( 1 ).build( );
+        try {
+            List<String> sessionIds = new ArrayList<>( );
+            for ( int i = 0; i < 1000; i++ ) {
+                SessionResponse<String> createResponse = tenantA.createSession( PersonSession.class );
+                assertTrue( createResponse.isSuccess( ) );
+                sessionIds.add( createResponse.getData( ) );
+            }
+
+            assertEquals( 1000, tenantA.getSessionCount( ) );
+            assertEquals( 0, tenantB.getSessionCount( ) );
+            assertSame( tenantA, InternalSessionContainer.getInstance( "tenant-a" ) );
+            assertEquals( 60, tenantA.loadSessionFromContainer( sessionIds.get( 0 ) ).getTimeoutInSeconds( ) );
+            assertNull( tenantB.loadSessionFromContainer( sessionIds.get( 0 ) ) );
+            assertThrows( IllegalArgumentException.class, ( ) -> InternalSessionContainer.builder( "tenant-a" ).build( ) );
+
+            for ( String sessionId : sessionIds ) {
+                assertNotNull( tenantA.loadSessionFromContainer( sessionId ) );
+                assertTrue( tenantA.removeSession( sessionId ).isSuccess( ) );
+            }
+            assertEquals( 0, tenantA.getSessionCount( ) );
+        } finally {
+            tenantA.close( );
+            tenantB.close( );
+        }
+        assertNull( InternalSessionContainer.getInstance( "tenant-a" ) );
+    }
+}
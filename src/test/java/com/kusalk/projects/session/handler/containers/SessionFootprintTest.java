@@ -0,0 +1,41 @@
+package com.kusalk.projects.session.handler.containers;
+
+import com.kusalk.projects.session.handler.demo.PersonSession;
+import com.kusalk.projects.session.handler.id.RandomUUIDSessionIdGenerator;
+import com.kusalk.projects.session.handler.session.Session;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jol.info.ClassLayout;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Measures the heap held for every session in the {@link InternalSessionContainer}, leaving out the state of the
+ * session itself
+ */
+public class SessionFootprintTest {
+
+    @Test
+    public void shouldKeepThePerSessionOverheadSmall( ) throws Exception {
+        long mapNodeBytes = ClassLayout.parseClass( Class.forName( ConcurrentHashMap.class.getName( ) + "$Node" ) ).instanceSize( );
+        Session session = new PersonSession( );
+        session.setSessionId( new RandomUUIDSessionIdGenerator( ).generateSessionId( ) );
+        SessionEntry entry = new SessionEntry( session );
+        long idleBytes = GraphLayout.parseInstance( entry ).totalSize( ) + mapNodeBytes;
+
+        // Use the session, so its lazily allocated lock is measured as well
+        session.startReadingSession( );
+        session.endReadingSession( );
+        session.startWritingSession( );
+        session.endWritingSession( );
+        session.readOptimistically( session::getSessionId );
+        long usedBytes = GraphLayout.parseInstance( entry ).totalSize( ) + mapNodeBytes;
+
+        String footprint = "Bytes per session : " + idleBytes + " idle, " + usedBytes + " used (map node " + mapNodeBytes + ")\n"
+                + GraphLayout.parseInstance( entry ).toFootprint( );
+        assertTrue( idleBytes < usedBytes, footprint );
+        assertTrue( usedBytes <= InternalSessionContainer.ESTIMATED_SESSION_OVERHEAD_BYTES, footprint );
+    }
+}
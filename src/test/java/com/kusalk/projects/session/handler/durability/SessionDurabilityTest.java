@@ -0,0 +1,150 @@
+package com.kusalk.projects.session.handler.durability;
+
+import com.kusalk.projects.session.handler.containers.InternalSessionContainer;
+import com.kusalk.projects.session.handler.demo.Person;
+import com.kusalk.projects.session.handler.demo.PersonSession;
+import com.kusalk.projects.session.handler.id.SessionId;
+import com.kusalk.projects.session.handler.session.SessionTypeRegistry;
+import com.kusalk.projects.session.handler.util.SessionResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link SessionDurability}
+ */
+public class SessionDurabilityTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldRecoverFromCheckpointAndJournal( ) {
+        SessionTypeRegistry.getInstance( ).register( PersonSession.class, PersonSession::new );
+        InternalSessionContainer container = InternalSessionContainer.builder( "durability-before-crash" ).partitions( 2 ).build( );
+        SessionDurability durability = newDurability( );
+        String checkpointed;
+        String updatedAfterCheckpoint;
+        String removed;
+        String createdAfterCheckpoint;
+        try {
+            assertEquals( 0, durability.start( container ).getData( ) );
+            checkpointed = createPerson( container, durability, "checkpointed" );
+            updatedAfterCheckpoint = createPerson( container, durability, "before-checkpoint" );
+            removed = createPerson( container, durability, "removed" );
+            assertTrue( durability.checkpoint( ).getData( ) );
+
+            createdAfterCheckpoint = container.createSession( PersonSession.class, 3600 ).getData( );
+            PersonSession updated = ( PersonSession ) container.loadSessionFromContainer( updatedAfterCheckpoint );
+            updated.setPerson( new Person( "after-checkpoint", 30, 2, "address" ) );
+            assertTrue( durability.journalUpdate( updated ).join( ).getData( ) );
+            container.removeSession( removed );
+        } finally {
+            durability.close( );
+            container.close( );
+        }
+
+        InternalSessionContainer recovered = InternalSessionContainer.builder( "durability-after-crash" ).partitions( 2 ).build( );
+        SessionDurability recovery = newDurability( );
+        try {
+            SessionResponse<Integer> startResponse = recovery.start( recovered );
+
+            assertTrue( startResponse.isSuccess( ) );
+            assertEquals( 3, startResponse.getData( ) );
+            assertEquals( "checkpointed", ( ( PersonSession ) recovered.loadSessionFromContainer( checkpointed ) ).getPerson( ).getName( ) );
+            assertEquals( "after-checkpoint", ( ( PersonSession ) recovered.loadSessionFromContainer( updatedAfterCheckpoint ) ).getPerson( ).getName( ) );
+            PersonSession created = ( PersonSession ) recovered.loadSessionFromContainer( createdAfterCheckpoint );
+            assertNotNull( created );
+            assertNull( created.getPerson( ) );
+            assertEquals( 3600, created.getTimeoutInSeconds( ) );
+            assertNull( recovered.loadSessionFromContainer( removed ) );
+        } finally {
+            recovery.close( );
+            recovered.close( );
+        }
+    }
+
+    @Test
+    public void shouldJournalModifiedSessionsWithTheGroupCommit( ) throws InterruptedException {
+        SessionTypeRegistry.getInstance( ).register( PersonSession.class, PersonSession::new );
+        InternalSessionContainer container = InternalSessionContainer.builder( "durability-modified" ).build( );
+        SessionDurability durability = newDurability( );
+        String sessionId;
+        try {
+            durability.start( container );
+            sessionId = container.createSession( PersonSession.class, 3600 ).getData( );
+            PersonSession session = ( PersonSession ) container.loadSessionFromContainer( sessionId );
+            session.startReadingSession( );
+            session.setPerson( new Person( "modified", 30, 1, "address" ) );
+            session.endReadingSession( );
+            // Several group commits pass without an explicit journal update
+            Thread.sleep( 100 );
+        } finally {
+            durability.close( );
+            container.close( );
+        }
+
+        InternalSessionContainer recovered = InternalSessionContainer.builder( "durability-modified-recovered" ).build( );
+        SessionDurability recovery = newDurability( );
+        try {
+            assertEquals( 1, recovery.start( recovered ).getData( ) );
+            assertEquals( "modified", ( ( PersonSession ) recovered.loadSessionFromContainer( sessionId ) ).getPerson( ).getName( ) );
+        } finally {
+            recovery.close( );
+            recovered.close( );
+        }
+    }
+
+    @Test
+    public void shouldReplayUpToATornRecord( ) throws IOException {
+        SessionTypeRegistry.getInstance( ).register( PersonSession.class, PersonSession::new );
+        InternalSessionContainer container = InternalSessionContainer.builder( "durability-torn" ).build( );
+        SessionDurability durability = newDurability( );
+        String sessionId;
+        try {
+            durability.start( container );
+            sessionId = createPerson( container, durability, "journaled" );
+        } finally {
+            durability.close( );
+            container.close( );
+        }
+        List<Long> segments = JournalReplay.listFiles( directory, "journal-", ".log" );
+        // a removal of the session whose commit was cut short by the crash
+        byte[] torn = JournalRecord.remove( Long.MAX_VALUE, SessionId.parse( sessionId ) ).encode( );
+        Files.write( SessionJournal.segmentPath( directory, segments.get( segments.size( ) - 1 ) ), Arrays.copyOf( torn, torn.length - 3 ),
+                StandardOpenOption.APPEND );
+
+        InternalSessionContainer recovered = InternalSessionContainer.builder( "durability-torn-recovered" ).build( );
+        SessionDurability recovery = newDurability( );
+        try {
+            assertEquals( 1, recovery.start( recovered ).getData( ) );
+            assertEquals( "journaled", ( ( PersonSession ) recovered.loadSessionFromContainer( sessionId ) ).getPerson( ).getName( ) );
+        } finally {
+            recovery.close( );
+            recovered.close( );
+        }
+    }
+
+    private SessionDurability newDurability( ) {
+        return SessionDurability.builder( directory ).groupCommitMillis( 5 ).checkpointIntervalMillis( 3_600_000 ).build( );
+    }
+
+    private static String createPerson( InternalSessionContainer container, SessionDurability durability, String name ) {
+        String sessionId = container.createSession( PersonSession.class, 3600 ).getData( );
+        PersonSession session = ( PersonSession ) container.loadSessionFromContainer( sessionId );
+        session.setPerson( new Person( name, 30, 1, "address" ) );
+        assertTrue( durability.journalUpdate( session ).join( ).getData( ) );
+        return sessionId;
+    }
+}
@@ -0,0 +1,62 @@
+package com.kusalk.projects.session.handler.expiry;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link TimerWheel}
+ */
+public class TimerWheelTest {
+
+    private static final long TICK = 1000;
+
+    @Test
+    public void shouldExpireNodesOnlyAfterTheirDeadline( ) {
+        TimerWheel<TimerNode> wheel = new TimerWheel<>( TICK, 0 );
+        TimerNode shortLived = new TimerNode( );
+        TimerNode longLived = new TimerNode( );
+        wheel.schedule( shortLived, 5 * TICK );
+        wheel.schedule( longLived, 90_000 * TICK );
+
+        List<TimerNode> expired = new ArrayList<>( );
+        wheel.advance( 4 * TICK, expired::add );
+        assertTrue( expired.isEmpty( ) );
+
+        wheel.advance( 5 * TICK, expired::add );
+        assertEquals( List.of( shortLived ), expired );
+
+        wheel.advance( 90_000 * TICK - 1, expired::add );
+        assertEquals( 1, expired.size( ) );
+
+        wheel.advance( 90_000 * TICK, expired::add );
+        assertEquals( List.of( shortLived, longLived ), expired );
+        assertEquals( 0, wheel.size( ) );
+    }
+
+    @Test
+    public void shouldMoveRescheduledNodesAndSkipCancelledNodes( ) {
+        TimerWheel<TimerNode> wheel = new TimerWheel<>( TICK, 0 );
+        TimerNode rescheduled = new TimerNode( );
+        TimerNode cancelled = new TimerNode( );
+        wheel.schedule( rescheduled, 10 * TICK );
+        wheel.schedule( cancelled, 10 * TICK );
+
+        wheel.schedule( rescheduled, 5_000 * TICK );
+        assertTrue( wheel.cancel( cancelled ) );
+        assertFalse( cancelled.isScheduled( ) );
+        assertEquals( 1, wheel.size( ) );
+
+        List<TimerNode> expired = new ArrayList<>( );
+        wheel.advance( 4_999 * TICK, expired::add );
+        assertTrue( expired.isEmpty( ) );
+
+        wheel.advance( 5_000 * TICK, expired::add );
+        assertEquals( List.of( rescheduled ), expired );
+    }
+}
@@ -0,0 +1,44 @@
+package com.kusalk.projects.session.handler.external.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link ScalableBloomFilter}
+ */
+public class ScalableBloomFilterTest {
+
+    @Test
+    public void shouldNeverMissAddedIdsWhileGrowing( ) {
+        ScalableBloomFilter filter = new ScalableBloomFilter( 1000, 0.01 );
+        String[] ids = new String[20000];
+        for ( int i = 0; i < ids.length; i++ ) {
+            ids[i] = UUID.randomUUID( ).toString( );
+            filter.add( ids[i] );
+        }
+        for ( String id : ids ) {
+            assertTrue( filter.mightContain( id ) );
+        }
+    }
+
+    @Test
+    public void shouldKeepFalsePositivesBelowTwiceTheConfiguredProbability( ) {
+        ScalableBloomFilter filter = new ScalableBloomFilter( 1000, 0.01 );
+        for ( int i = 0; i < 20000; i++ ) {
+            filter.add( UUID.randomUUID( ).toString( ) );
+        }
+        int falsePositives = 0;
+        int probes = 100000;
+        for ( int i = 0; i < probes; i++ ) {
+            if ( filter.mightContain( UUID.randomUUID( ).toString( ) ) ) {
+                falsePositives++;
+            }
+        }
+        assertTrue( falsePositives < probes * 0.02, "False positives : " + falsePositives );
+        assertFalse( new ScalableBloomFilter( 1000, 0.01 ).mightContain( "unknown" ) );
+    }
+}
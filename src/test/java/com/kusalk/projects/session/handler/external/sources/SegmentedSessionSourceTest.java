@@ -0,0 +1,249 @@
+package com.kusalk.projects.session.handler.external.sources;
+
+import com.kusalk.projects.session.handler.codec.JavaSerializationMementoCodec;
+import com.kusalk.projects.session.handler.demo.Person;
+import com.kusalk.projects.session.handler.demo.PersonMemento;
+import com.kusalk.projects.session.handler.session.DeltaMemento;
+import com.kusalk.projects.session.handler.session.SessionMemento;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link SegmentedSessionSource}
+ */
+public class SegmentedSessionSourceTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldRebuildTheIndexWhenReopened( ) {
+        try ( SegmentedSessionSource source = SegmentedSessionSource.builder( directory ).segmentSizeBytes( 4096 ).build( ) ) {
+            for ( int i = 0; i < 40; i++ ) {
+                source.writeSessionMemento( "session-" + i, personMemento( "person-" + i ) );
+            }
+            source.writeSessionMemento( "session-1", personMemento( "rewritten" ) );
+            source.deleteSessionMemento( "session-2" );
+            source.appendSessionDelta( "session-3", addressDelta( "Colombo" ) );
+            assertTrue( source.getSegmentCount( ) > 1 );
+        }
+
+        try ( SegmentedSessionSource reopened = SegmentedSessionSource.builder( directory ).segmentSizeBytes( 4096 ).build( ) ) {
+            assertEquals( 39, reopened.getSessionCount( ) );
+            assertEquals( "rewritten", personOf( reopened, "session-1" ).getName( ) );
+            assertFalse( reopened.readSessionMemento( "session-2" ).isSuccess( ) );
+            assertEquals( "Colombo", personOf( reopened, "session-3" ).getAddress( ) );
+            assertEquals( "person-39", personOf( reopened, "session-39" ).getName( ) );
+        }
+    }
+
+    @Test
+    public void shouldStopAtACorruptedTailWhenReopened( ) throws IOException {
+        try ( SegmentedSessionSource source = SegmentedSessionSource.builder( directory ).segmentSizeBytes( 64 * 1024 ).build( ) ) {
+            source.writeSessionMemento( "session-1", personMemento( "Kusal" ) );
+            source.writeSessionMemento( "session-2", personMemento( "Saman" ) );
+        }
+        // Flips the last byte of the latest record, as a crash in the middle of writing it would
+        Path segmentFile = directory.resolve( "segment-0000000000000000.log" );
+        List<Integer> recordEnds = new ArrayList<>( );
+        Segment.open( segmentFile, 0 ).scan( ( segment, offset, length, type, sessionId, writtenAtMillis, timeoutInSeconds ) -> recordEnds.add( offset + length ) );
+        assertEquals( 2, recordEnds.size( ) );
+        try ( FileChannel channel = FileChannel.open( segmentFile, StandardOpenOption.READ, StandardOpenOption.WRITE ) ) {
+            ByteBuffer lastByte = ByteBuffer.allocate( 1 );
+            channel.read( lastByte, recordEnds.get( 1 ) - 1 );
+            lastByte.put( 0, ( byte ) ~lastByte.get( 0 ) ).clear( );
+            channel.write( lastByte, recordEnds.get( 1 ) - 1 );
+        }
+
+        try ( SegmentedSessionSource reopened = SegmentedSessionSource.builder( directory ).segmentSizeBytes( 64 * 1024 ).build( ) ) {
+            assertEquals( "Kusal", personOf( reopened, "session-1" ).getName( ) );
+            assertFalse( reopened.readSessionMemento( "session-2" ).isSuccess( ) );
+            // The corrupted record is overwritten by the next append
+            reopened.writeSessionMemento( "session-3", personMemento( "Nimal" ) );
+        }
+        try ( SegmentedSessionSource reopened = SegmentedSessionSource.builder( directory ).segmentSizeBytes( 64 * 1024 ).build( ) ) {
+            assertEquals( 2, reopened.getSessionCount( ) );
+            assertEquals( "Nimal", personOf( reopened, "session-3" ).getName( ) );
+        }
+    }
+
+    @Test
+    public void shouldKeepDeletedSessionsDeletedAfterCompactionAndReopen( ) throws IOException {
+        // Every segment holds six records of the same size
+        int recordSize = Segment.encodeRecord( Segment.PUT, "k-1".getBytes( StandardCharsets.UTF_8 ), 0, 0,
+                new JavaSerializationMementoCodec( ).encode( personMemento( "p-1" ) ) ).remaining( );
+        int segmentSize = recordSize * 6 + 8;
+        try ( SegmentedSessionSource source = SegmentedSessionSource.builder( directory ).segmentSizeBytes( segmentSize ).build( ) ) {
+            // The first segment stays mostly live, so it is not compacted
+            source.writeSessionMemento( "s-0", personMemento( "p-0" ) );
+            for ( int i = 1; i <= 5; i++ ) {
+                source.writeSessionMemento( "k-" + i, personMemento( "p-" + i ) );
+            }
+            // The second segment holds the tombstone of s-0 and superseded records only
+            source.deleteSessionMemento( "s-0" );
+            for ( int i = 0; source.getSegmentCount( ) < 3; i++ ) {
+                source.writeSessionMemento( "x-0", personMemento( "x-" + i ) );
+            }
+            source.deleteSessionMemento( "k-2" );
+
+            source.compact( );
+
+            assertEquals( 2, source.getSegmentCount( ) );
+            assertFalse( source.readSessionMemento( "s-0" ).isSuccess( ) );
+        }
+
+        try ( SegmentedSessionSource reopened = SegmentedSessionSource.builder( directory ).segmentSizeBytes( segmentSize ).build( ) ) {
+            assertEquals( 2, reopened.getSegmentCount( ) );
+            assertFalse( reopened.readSessionMemento( "s-0" ).isSuccess( ) );
+            assertFalse( reopened.readSessionMemento( "k-2" ).isSuccess( ) );
+            for ( int i : new int[]{ 1, 3, 4, 5 } ) {
+                assertEquals( "p-" + i, personOf( reopened, "k-" + i ).getName( ) );
+            }
+            assertEquals( 5, reopened.getSessionCount( ) );
+        }
+    }
+
+    @Test
+    public void shouldFoldDeltaChainsLongerThanTheMaximum( ) {
+        CountingCodec codec = new CountingCodec( );
+        try ( SegmentedSessionSource source = SegmentedSessionSource.builder( directory ).mementoCodec( codec ).maxDeltaChainLength( 3 ).build( ) ) {
+            source.writeSessionMemento( "session-1", personMemento( "Kusal" ) );
+            for ( int i = 1; i <= 5; i++ ) {
+                assertTrue( source.appendSessionDelta( "session-1", addressDelta( "address-" + i ) ).isSuccess( ) );
+            }
+
+            // The chain was folded with the third delta, so the read decodes the folded memento and two deltas
+            codec.decodes.set( 0 );
+            assertEquals( "address-5", personOf( source, "session-1" ).getAddress( ) );
+            assertEquals( 3, codec.decodes.get( ) );
+            assertFalse( source.appendSessionDelta( "missing", addressDelta( "address" ) ).isSuccess( ) );
+        }
+
+        try ( SegmentedSessionSource reopened = SegmentedSessionSource.builder( directory ).mementoCodec( codec ).maxDeltaChainLength( 3 ).build( ) ) {
+            codec.decodes.set( 0 );
+            assertEquals( "address-5", personOf( reopened, "session-1" ).getAddress( ) );
+            assertEquals( 3, codec.decodes.get( ) );
+        }
+    }
+
+    @Test
+    public void shouldFoldDeltaChainsWhileCompacting( ) {
+        CountingCodec codec = new CountingCodec( );
+        try ( SegmentedSessionSource source = SegmentedSessionSource.builder( directory ).segmentSizeBytes( 4096 ).compactionThreshold( 0.01 )
+                .mementoCodec( codec ).build( ) ) {
+            source.writeSessionMemento( "session-1", personMemento( "Kusal" ) );
+            source.appendSessionDelta( "session-1", addressDelta( "Galle" ) );
+            source.appendSessionDelta( "session-1", addressDelta( "Colombo" ) );
+            source.writeSessionMemento( "rewritten", personMemento( "first" ) );
+            source.writeSessionMemento( "rewritten", personMemento( "second" ) );
+            for ( int i = 0; source.getSegmentCount( ) < 2; i++ ) {
+                source.writeSessionMemento( "filler-" + i, personMemento( "filler" ) );
+            }
+
+            source.compact( );
+
+            codec.decodes.set( 0 );
+            assertEquals( "Colombo", personOf( source, "session-1" ).getAddress( ) );
+            assertEquals( 1, codec.decodes.get( ) );
+        }
+
+        try ( SegmentedSessionSource reopened = SegmentedSessionSource.builder( directory ).segmentSizeBytes( 4096 ).mementoCodec( codec ).build( ) ) {
+            codec.decodes.set( 0 );
+            assertEquals( "Colombo", personOf( reopened, "session-1" ).getAddress( ) );
+            assertEquals( 1, codec.decodes.get( ) );
+            assertEquals( "second", personOf( reopened, "rewritten" ).getName( ) );
+        }
+    }
+
+    @Test
+    public void shouldGiveRecordsLargerThanASegmentASegmentOfTheirOwn( ) {
+        char[] address = new char[8192];
+        Arrays.fill( address, 'a' );
+        PersonMemento large = personMemento( "large" );
+        large.getPerson( ).setAddress( new String( address ) );
+        try ( SegmentedSessionSource source = SegmentedSessionSource.builder( directory ).segmentSizeBytes( 1024 ).build( ) ) {
+            source.writeSessionMemento( "small-1", personMemento( "small" ) );
+            assertTrue( source.writeSessionMemento( "large", large ).isSuccess( ) );
+            assertEquals( 2, source.getSegmentCount( ) );
+            source.writeSessionMemento( "small-2", personMemento( "small" ) );
+            assertEquals( 3, source.getSegmentCount( ) );
+            assertEquals( 8192, personOf( source, "large" ).getAddress( ).length( ) );
+        }
+
+        try ( SegmentedSessionSource reopened = SegmentedSessionSource.builder( directory ).segmentSizeBytes( 1024 ).build( ) ) {
+            assertEquals( 3, reopened.getSessionCount( ) );
+            assertEquals( 8192, personOf( reopened, "large" ).getAddress( ).length( ) );
+            assertEquals( "small", personOf( reopened, "small-2" ).getName( ) );
+        }
+    }
+
+    private static Person personOf( ExternalSessionSource source, String sessionId ) {
+        return ( ( PersonMemento ) source.readSessionMemento( sessionId ).getData( ) ).getPerson( );
+    }
+
+    private static PersonMemento personMemento( String name ) {
+        PersonMemento memento = new PersonMemento( );
+        memento.setPerson( new Person( name, 27, 0, "Matara" ) );
+        memento.setSessionClass( );
+        memento.setSessionTimeoutInSeconds( 3600 );
+        return memento;
+    }
+
+    private static AddressDelta addressDelta( String address ) {
+        AddressDelta delta = new AddressDelta( address );
+        delta.setSessionClass( );
+        delta.setSessionTimeoutInSeconds( 3600 );
+        return delta;
+    }
+
+    /**
+     * A delta changing the address of the person
+     */
+    private static final class AddressDelta extends DeltaMemento {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String address;
+
+        private AddressDelta( String address ) {
+            this.address = address;
+        }
+
+        @Override
+        public SessionMemento applyTo( SessionMemento base ) {
+            ( ( PersonMemento ) base ).getPerson( ).setAddress( address );
+            return base;
+        }
+
+        @Override
+        public void setSessionClass( ) {
+            this.sessionClass = "com.kusalk.projects.session.handler.demo.PersonSession";
+        }
+    }
+
+    private static final class CountingCodec extends JavaSerializationMementoCodec {
+
+        private final AtomicInteger decodes = new AtomicInteger( );
+
+        @Override
+        public SessionMemento decode( ByteBuffer buffer ) throws IOException {
+            decodes.incrementAndGet( );
+            return super.decode( buffer );
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.kusalk.projects.session.handler.external.sources;
+
+import com.kusalk.projects.session.handler.codec.JavaSerializationMementoCodec;
+import com.kusalk.projects.session.handler.demo.Person;
+import com.kusalk.projects.session.handler.demo.PersonMemento;
+import com.kusalk.projects.session.handler.session.SessionMemento;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests of the expiry of sessions stored in the external sources
+ */
+public class SessionExpiryTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldRejectAndSweepExpiredSessions( ) throws InterruptedException {
+        CountingCodec codec = new CountingCodec( );
+        SessionFileSource fileSource = new SessionFileSource( directory.resolve( "files" ), codec );
+        SegmentedSessionSource segmentedSource = SegmentedSessionSource.builder( directory.resolve( "segments" ) ).segmentSizeBytes( 64 * 1024 )
+                .mementoCodec( codec ).build( );
+        try {
+            for ( ExternalSessionSource source : new ExternalSessionSource[]{ fileSource, segmentedSource } ) {
+                for ( int i = 0; i < 10; i++ ) {
+                    source.writeSessionMemento( "expiring-" + i, personMemento( "expiring", 1 ) );
+                }
+                source.writeSessionMemento( "rewritten", personMemento( "rewritten", 1 ) );
+                source.writeSessionMemento( "live", personMemento( "live", 3600 ) );
+                source.writeSessionMemento( "eternal", personMemento( "eternal", 0 ) );
+            }
+            Thread.sleep( 1100 );
+
+            for ( ExternalSessionSource source : new ExternalSessionSource[]{ fileSource, segmentedSource } ) {
+                source.writeSessionMemento( "rewritten", personMemento( "rewritten", 3600 ) );
+                int decodes = codec.decodes.get( );
+                assertFalse( source.readSessionMemento( "expiring-0" ).isSuccess( ) );
+                assertEquals( decodes, codec.decodes.get( ) );
+
+                assertEquals( 4, source.sweepExpiredSessions( 4 ).getData( ) );
+                try ( ExpirySweeper sweeper = ExpirySweeper.builder( source ).maxSessionsPerSweep( 100 ).build( ) ) {
+                    assertEquals( 6, sweeper.sweep( ).getData( ) );
+                }
+                assertEquals( 0, source.sweepExpiredSessions( 100 ).getData( ) );
+                assertTrue( source.readSessionMemento( "rewritten" ).isSuccess( ) );
+                assertTrue( source.readSessionMemento( "live" ).isSuccess( ) );
+                assertTrue( source.readSessionMemento( "eternal" ).isSuccess( ) );
+            }
+            assertEquals( 3, segmentedSource.getSessionCount( ) );
+        } finally {
+            segmentedSource.close( );
+        }
+    }
+
+    @Test
+    public void shouldSweepSessionFilesWrittenBeforeARestart( ) throws InterruptedException, IOException {
+        Path files = directory.resolve( "files" );
+        SessionFileSource source = new SessionFileSource( files, new JavaSerializationMementoCodec( ) );
+        source.writeSessionMemento( "expiring", personMemento( "expiring", 1 ) );
+        source.writeSessionMemento( "live", personMemento( "live", 3600 ) );
+        // the expiry index is written with the sweeps
+        assertEquals( 0, source.sweepExpiredSessions( 100 ).getData( ) );
+        Thread.sleep( 1100 );
+
+        SessionFileSource restarted = new SessionFileSource( files, new JavaSerializationMementoCodec( ) );
+
+        assertEquals( 1, restarted.sweepExpiredSessions( 100 ).getData( ) );
+        assertFalse( Files.exists( files.resolve( "expiring.ser" ) ) );
+        assertTrue( restarted.readSessionMemento( "live" ).isSuccess( ) );
+    }
+
+    @Test
+    public void shouldKeepTouchedSessionFilesBeyondTheirWriteExpiry( ) throws InterruptedException {
+        SessionFileSource source = new SessionFileSource( directory.resolve( "files" ), new JavaSerializationMementoCodec( ) );
+        source.writeSessionMemento( "touched", personMemento( "touched", 1 ) );
+        Thread.sleep( 600 );
+
+        assertTrue( source.touchSessionMemento( "touched", 2 ).getData( ) );
+        assertFalse( source.touchSessionMemento( "missing", 2 ).getData( ) );
+        Thread.sleep( 600 );
+
+        assertEquals( 0, source.sweepExpiredSessions( 100 ).getData( ) );
+        assertTrue( source.readSessionMemento( "touched" ).isSuccess( ) );
+    }
+
+    private static PersonMemento personMemento( String name, long timeoutInSeconds ) {
+        PersonMemento memento = new PersonMemento( );
+        memento.setPerson( new Person( name, 30, 1, "address" ) );
+        memento.setSessionClass( );
+        memento.setSessionTimeoutInSeconds( timeoutInSeconds );
+        return memento;
+    }
+
+    private static final class CountingCodec extends JavaSerializationMementoCodec {
+
+        private final AtomicInteger decodes = new AtomicInteger( );
+
+        @Override
+        public SessionMemento decode( ByteBuffer buffer ) throws IOException {
+            decodes.incrementAndGet( );
+            return super.decode( buffer );
+        }
+    }
+}
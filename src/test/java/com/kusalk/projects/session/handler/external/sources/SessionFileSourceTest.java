@@ -0,0 +1,115 @@
+package com.kusalk.projects.session.handler.external.sources;
+
+import com.kusalk.projects.session.handler.codec.JavaSerializationMementoCodec;
+import com.kusalk.projects.session.handler.demo.Person;
+import com.kusalk.projects.session.handler.demo.PersonMemento;
+import com.kusalk.projects.session.handler.session.SessionMemento;
+import com.kusalk.projects.session.handler.util.SessionResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the batch reads and writes of the {@link SessionFileSource}
+ */
+public class SessionFileSourceTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldWriteBatchesAndReportEveryFailedWrite( ) {
+        RecordingCodec codec = new RecordingCodec( );
+        SessionFileSource source = new SessionFileSource( directory, codec, 4 );
+        Map<String, SessionMemento> mementos = new LinkedHashMap<>( );
+        for ( int i = 0; i < 100; i++ ) {
+            // Every tenth memento cannot be encoded
+            mementos.put( "session-" + i, personMemento( i % 10 == 0 ? "unwritable" : "person-" + i ) );
+        }
+
+        SessionResponse<Map<String, Boolean>> writeResponse = source.writeSessionMementos( mementos );
+
+        assertTrue( writeResponse.isError( ) );
+        assertEquals( mementos.keySet( ), writeResponse.getData( ).keySet( ) );
+        for ( int i = 0; i < 100; i++ ) {
+            assertEquals( i % 10 != 0, writeResponse.getData( ).get( "session-" + i ), "session-" + i );
+        }
+        // The batch is split between the calling thread and the I/O threads
+        assertTrue( codec.encodingThreads.size( ) > 1 );
+        assertTrue( codec.encodingThreads.contains( Thread.currentThread( ).getName( ) ) );
+
+        Map<String, SessionMemento> failedBatch = new LinkedHashMap<>( );
+        failedBatch.put( "unwritable", personMemento( "unwritable" ) );
+        assertFalse( source.writeSessionMementos( failedBatch ).getData( ).get( "unwritable" ) );
+        assertTrue( source.writeSessionMementos( Map.of( "written", personMemento( "written" ) ) ).isSuccess( ) );
+    }
+
+    @Test
+    public void shouldReadBatchesOfPresentAndMissingSessions( ) {
+        RecordingCodec codec = new RecordingCodec( );
+        SessionFileSource source = new SessionFileSource( directory, codec, 4 );
+        List<String> sessionIds = new ArrayList<>( );
+        for ( int i = 0; i < 100; i++ ) {
+            sessionIds.add( "session-" + i );
+            // Only the even session ids are written
+            if ( i % 2 == 0 ) {
+                source.writeSessionMemento( "session-" + i, personMemento( "person-" + i ) );
+            }
+        }
+
+        SessionResponse<Map<String, SessionMemento>> readResponse = source.readSessionMementos( sessionIds );
+
+        assertTrue( readResponse.isSuccess( ) );
+        assertEquals( 50, readResponse.getData( ).size( ) );
+        for ( int i = 0; i < 100; i += 2 ) {
+            assertEquals( "person-" + i, ( ( PersonMemento ) readResponse.getData( ).get( "session-" + i ) ).getPerson( ).getName( ) );
+        }
+        assertTrue( codec.decodingThreads.size( ) > 1 );
+        assertTrue( source.readSessionMementos( List.of( "session-1", "session-3" ) ).getData( ).isEmpty( ) );
+    }
+
+    private static PersonMemento personMemento( String name ) {
+        PersonMemento memento = new PersonMemento( );
+        memento.setPerson( new Person( name, 27, 0, "Matara" ) );
+        memento.setSessionClass( );
+        memento.setSessionTimeoutInSeconds( 3600 );
+        return memento;
+    }
+
+    /**
+     * A codec recording the threads it runs on, which fails to encode persons named "unwritable"
+     */
+    private static final class RecordingCodec extends JavaSerializationMementoCodec {
+
+        private final Set<String> encodingThreads = ConcurrentHashMap.newKeySet( );
+        private final Set<String> decodingThreads = ConcurrentHashMap.newKeySet( );
+
+        @Override
+        public byte[] encode( SessionMemento memento ) throws IOException {
+            encodingThreads.add( Thread.currentThread( ).getName( ) );
+            if ( "unwritable".equals( ( ( PersonMemento ) memento ).getPerson( ).getName( ) ) ) {
+                throw new IOException( "Memento cannot be encoded" );
+            }
+            return super.encode( memento );
+        }
+
+        @Override
+        public SessionMemento decode( ByteBuffer buffer ) throws IOException {
+            decodingThreads.add( Thread.currentThread( ).getName( ) );
+            return super.decode( buffer );
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.kusalk.projects.session.handler.external.sources;
+
+import com.kusalk.projects.session.handler.demo.Person;
+import com.kusalk.projects.session.handler.demo.PersonMemento;
+import com.kusalk.projects.session.handler.session.SessionMemento;
+import com.kusalk.projects.session.handler.util.SessionCode;
+import com.kusalk.projects.session.handler.util.SessionResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link ShardedSessionSource}
+ */
+public class ShardedSessionSourceTest {
+
+    @Test
+    public void shouldMoveOnlyTheKeysOfAnAddedShard( ) {
+        HashRing ring = new HashRing( Arrays.asList( "a", "b", "c", "d" ), 128 );
+        HashRing grownRing = new HashRing( Arrays.asList( "a", "b", "c", "d", "e" ), 128 );
+
+        int moved = 0;
+        for ( int i = 0; i < 10000; i++ ) {
+            String primary = ring.replicasOf( "session-" + i, 1 ).get( 0 );
+            String grownPrimary = grownRing.replicasOf( "session-" + i, 1 ).get( 0 );
+            if ( !primary.equals( grownPrimary ) ) {
+                assertEquals( "e", grownPrimary );
+                moved++;
+            }
+        }
+        assertTrue( moved > 1000 && moved < 3000, "Moved keys : " + moved );
+
+        List<String> replicas = ring.replicasOf( "session-1", 3 );
+        assertEquals( 3, replicas.stream( ).distinct( ).count( ) );
+        assertEquals( 4, ring.replicasOf( "session-1", 6 ).size( ) );
+    }
+
+    @Test
+    public void shouldRepairStaleReplicasOnRead( ) {
+        Map<String, MapSource> shards = shards( "a", "b", "c" );
+        ShardedSessionSource source = builder( shards ).replicationFactor( 3 ).build( );
+        source.writeSessionMemento( "session-1", personMemento( "Kusal" ) );
+        MapSource stale = shards.get( source.getReplicas( "session-1" ).get( 2 ) );
+        SessionMemento older = stale.mementos.get( "session-1" );
+        source.writeSessionMemento( "session-1", personMemento( "Kusal Kankanamge" ) );
+        stale.mementos.put( "session-1", older );
+
+        SessionResponse<SessionMemento> readResponse = source.readSessionMemento( "session-1" );
+
+        assertEquals( "Kusal Kankanamge", ( ( PersonMemento ) readResponse.getData( ) ).getPerson( ).getName( ) );
+        assertEquals( "Kusal Kankanamge", ( ( PersonMemento ) ReplicatedMemento.unwrap( stale.mementos.get( "session-1" ) ) ).getPerson( ).getName( ) );
+    }
+
+    @Test
+    public void shouldNotResurrectDeletedMementosOnRead( ) {
+        Map<String, MapSource> shards = shards( "a", "b", "c" );
+        ShardedSessionSource source = builder( shards ).replicationFactor( 3 ).build( );
+        source.writeSessionMemento( "session-1", personMemento( "Kusal" ) );
+        MapSource stale = shards.get( source.getReplicas( "session-1" ).get( 2 ) );
+        SessionMemento deleted = stale.mementos.get( "session-1" );
+        assertTrue( source.deleteSessionMemento( "session-1" ).isSuccess( ) );
+        // The replica missed the delete
+        stale.mementos.put( "session-1", deleted );
+
+        assertFalse( source.readSessionMemento( "session-1" ).isSuccess( ) );
+        assertTrue( ReplicatedMemento.isTombstone( stale.mementos.get( "session-1" ) ) );
+        assertTrue( source.readSessionMementos( Arrays.asList( "session-1" ) ).getData( ).isEmpty( ) );
+    }
+
+    @Test
+    public void shouldCopyMementosToAnAddedShard( ) {
+        Map<String, MapSource> shards = shards( "a", "b", "c" );
+        ShardedSessionSource source = builder( shards ).replicationFactor( 2 ).build( );
+        for ( int i = 0; i < 200; i++ ) {
+            source.writeSessionMemento( "session-" + i, personMemento( "person-" + i ) );
+        }
+
+        MapSource added = new MapSource( );
+        SessionResponse<Integer> addResponse = source.addShard( "d", added );
+
+        assertTrue( addResponse.isSuccess( ) );
+        assertTrue( addResponse.getData( ) > 0 );
+        shards.put( "d", added );
+        for ( int i = 0; i < 200; i++ ) {
+            String sessionId = "session-" + i;
+            assertEquals( "person-" + i, ( ( PersonMemento ) source.readSessionMemento( sessionId ).getData( ) ).getPerson( ).getName( ) );
+            for ( Map.Entry<String, MapSource> shard : shards.entrySet( ) ) {
+                assertEquals( source.getReplicas( sessionId ).contains( shard.getKey( ) ), shard.getValue( ).mementos.containsKey( sessionId ) );
+            }
+        }
+
+        source.removeShard( "d" );
+        for ( int i = 0; i < 200; i++ ) {
+            assertEquals( "person-" + i, ( ( PersonMemento ) source.readSessionMemento( "session-" + i ).getData( ) ).getPerson( ).getName( ) );
+        }
+        assertFalse( source.getShardNames( ).contains( "d" ) );
+    }
+
+    private static ShardedSessionSource.Builder builder( Map<String, MapSource> shards ) {
+        ShardedSessionSource.Builder builder = ShardedSessionSource.builder( ).executor( Runnable::run );
+        shards.forEach( builder::shard );
+        return builder;
+    }
+
+    private static Map<String, MapSource> shards( String... names ) {
+        Map<String, MapSource> shards = new HashMap<>( );
+        for ( String name : names ) {
+            shards.put( name, new MapSource( ) );
+        }
+        return shards;
+    }
+
+    private static PersonMemento personMemento( String name ) {
+        PersonMemento memento = new PersonMemento( );
+        memento.setPerson( new Person( name, 27, 0, "Matara" ) );
+        memento.setSessionClass( );
+        return memento;
+    }
+
+    /**
+     * A shard keeping its mementos in memory
+     */
+    private static final class MapSource implements ExternalSessionSource {
+
+        private final Map<String, SessionMemento> mementos = new ConcurrentHashMap<>( );
+
+        @Override
+        public SessionResponse<SessionMemento> readSessionMemento( String sessionId ) {
+            SessionMemento memento = mementos.get( sessionId );
+            return new SessionResponse<>( "", memento != null ? SessionCode.SUCCESS : SessionCode.ERROR, memento );
+        }
+
+        @Override
+        public SessionResponse<Boolean> writeSessionMemento( String sessionId, SessionMemento memento ) {
+            mementos.put( sessionId, memento );
+            return new SessionResponse<>( "", SessionCode.SUCCESS, true );
+        }
+
+        @Override
+        public SessionResponse<Boolean> deleteSessionMemento( String sessionId ) {
+            return new SessionResponse<>( "", SessionCode.SUCCESS, mementos.remove( sessionId ) != null );
+        }
+
+        @Override
+        public SessionResponse<Boolean> forEachSessionId( Consumer<String> action ) {
+            mementos.keySet( ).forEach( action );
+            return new SessionResponse<>( "", SessionCode.SUCCESS, true );
+        }
+    }
+}
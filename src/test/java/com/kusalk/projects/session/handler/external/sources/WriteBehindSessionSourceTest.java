@@ -0,0 +1,270 @@
+package com.kusalk.projects.session.handler.external.sources;
+
+import com.kusalk.projects.session.handler.demo.Person;
+import com.kusalk.projects.session.handler.demo.PersonMemento;
+import com.kusalk.projects.session.handler.session.SessionMemento;
+import com.kusalk.projects.session.handler.util.SessionCode;
+import com.kusalk.projects.session.handler.util.SessionResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link WriteBehindSessionSource}
+ */
+public class WriteBehindSessionSourceTest {
+
+    // Long enough for the writer thread to stay out of the tests unless they flush
+    private static final long FLUSH_INTERVAL_MILLIS = 60000;
+
+    @Test
+    public void shouldCoalesceRepeatedSavesOfASession( ) {
+        MapSource delegate = new MapSource( );
+        WriteBehindSessionSource source = builder( delegate ).build( );
+        PersonMemento latest = personMemento( "Kusal Kankanamge" );
+
+        source.writeSessionMemento( "session-1", personMemento( "Kusal" ) );
+        source.writeSessionMemento( "session-1", personMemento( "Kusal K" ) );
+        assertTrue( source.writeSessionMemento( "session-1", latest ).isSuccess( ) );
+
+        assertEquals( 1, source.getPendingWriteCount( ) );
+        assertEquals( 0, delegate.writes.get( ) );
+        assertTrue( source.flush( ).isSuccess( ) );
+        assertEquals( 1, delegate.writes.get( ) );
+        assertSame( latest, delegate.mementos.get( "session-1" ) );
+        source.close( );
+    }
+
+    @Test
+    public void shouldBlockSavesWhileTheQueueIsFull( ) throws Exception {
+        MapSource delegate = new MapSource( );
+        WriteBehindSessionSource source = builder( delegate ).maxPendingWrites( 1 ).backPressurePolicy( WriteBehindSessionSource.BackPressurePolicy.BLOCK ).build( );
+        source.writeSessionMemento( "session-1", personMemento( "Kusal" ) );
+
+        AtomicBoolean written = new AtomicBoolean( );
+        Thread blocked = new Thread( ( ) -> written.set( source.writeSessionMemento( "session-2", personMemento( "Saman" ) ).isSuccess( ) ) );
+        blocked.start( );
+        blocked.join( 200 );
+        assertTrue( blocked.isAlive( ) );
+
+        source.flush( );
+        blocked.join( 5000 );
+        assertFalse( blocked.isAlive( ) );
+        assertTrue( written.get( ) );
+        source.close( );
+        assertTrue( delegate.mementos.keySet( ).containsAll( Arrays.asList( "session-1", "session-2" ) ) );
+    }
+
+    @Test
+    public void shouldRejectSavesWhileTheQueueIsFull( ) {
+        MapSource delegate = new MapSource( );
+        WriteBehindSessionSource source = builder( delegate ).maxPendingWrites( 1 ).backPressurePolicy( WriteBehindSessionSource.BackPressurePolicy.REJECT ).build( );
+
+        assertTrue( source.writeSessionMemento( "session-1", personMemento( "Kusal" ) ).isSuccess( ) );
+        SessionResponse<Boolean> rejected = source.writeSessionMemento( "session-2", personMemento( "Saman" ) );
+        // A session id which is already queued does not need another slot
+        assertTrue( source.writeSessionMemento( "session-1", personMemento( "Kusal K" ) ).isSuccess( ) );
+
+        assertTrue( rejected.isError( ) );
+        assertFalse( rejected.getData( ) );
+        source.close( );
+        assertEquals( Set.of( "session-1" ), delegate.mementos.keySet( ) );
+    }
+
+    @Test
+    public void shouldWriteOnTheCallerWhileTheQueueIsFull( ) {
+        MapSource delegate = new MapSource( );
+        WriteBehindSessionSource source = builder( delegate ).maxPendingWrites( 1 ).backPressurePolicy( WriteBehindSessionSource.BackPressurePolicy.CALLER_RUNS ).build( );
+
+        source.writeSessionMemento( "session-1", personMemento( "Kusal" ) );
+        assertTrue( source.writeSessionMemento( "session-2", personMemento( "Saman" ) ).isSuccess( ) );
+
+        assertEquals( Set.of( "session-2" ), delegate.mementos.keySet( ) );
+        assertEquals( 1, source.getPendingWriteCount( ) );
+        source.close( );
+    }
+
+    @Test
+    public void shouldReadQueuedAndInFlightMementos( ) throws Exception {
+        MapSource delegate = new MapSource( );
+        WriteBehindSessionSource source = builder( delegate ).build( );
+        PersonMemento memento = personMemento( "Kusal" );
+        source.writeSessionMemento( "session-1", memento );
+
+        assertSame( memento, source.readSessionMemento( "session-1" ).getData( ) );
+
+        Thread flushing = delegate.blockWritesWhile( source::flush );
+        assertNull( delegate.mementos.get( "session-1" ) );
+        assertEquals( 0, source.getPendingWriteCount( ) );
+        assertSame( memento, source.readSessionMemento( "session-1" ).getData( ) );
+        assertSame( memento, source.readSessionMementos( Arrays.asList( "session-1", "session-2" ) ).getData( ).get( "session-1" ) );
+
+        delegate.releaseWrites( );
+        flushing.join( 5000 );
+        assertSame( memento, source.readSessionMemento( "session-1" ).getData( ) );
+        source.close( );
+    }
+
+    @Test
+    public void shouldNotWriteADeletedSessionAgainAfterAnInFlightWrite( ) throws Exception {
+        MapSource delegate = new MapSource( );
+        WriteBehindSessionSource source = builder( delegate ).build( );
+        source.writeSessionMemento( "session-1", personMemento( "Kusal" ) );
+        Thread flushing = delegate.blockWritesWhile( source::flush );
+
+        Thread deleting = new Thread( ( ) -> source.deleteSessionMemento( "session-1" ) );
+        deleting.start( );
+        deleting.join( 200 );
+        // The delete waits for the write in flight
+        assertTrue( deleting.isAlive( ) );
+
+        delegate.releaseWrites( );
+        flushing.join( 5000 );
+        deleting.join( 5000 );
+        assertFalse( delegate.mementos.containsKey( "session-1" ) );
+        assertFalse( source.readSessionMemento( "session-1" ).isSuccess( ) );
+        source.close( );
+    }
+
+    @Test
+    public void shouldWriteEverySuccessfulSaveByTheTimeItIsClosed( ) throws Exception {
+        MapSource delegate = new MapSource( );
+        WriteBehindSessionSource source = builder( delegate ).maxPendingWrites( 64 ).build( );
+        for ( int i = 0; i < 10; i++ ) {
+            source.writeSessionMemento( "queued-" + i, personMemento( "person-" + i ) );
+        }
+
+        Set<String> saved = ConcurrentHashMap.newKeySet( );
+        CountDownLatch started = new CountDownLatch( 4 );
+        List<Thread> writers = new ArrayList<>( );
+        for ( int t = 0; t < 4; t++ ) {
+            int writer = t;
+            Thread thread = new Thread( ( ) -> {
+                started.countDown( );
+                for ( int i = 0; i < 2000; i++ ) {
+                    String sessionId = "writer-" + writer + "-" + i;
+                    if ( source.writeSessionMemento( sessionId, personMemento( sessionId ) ).isSuccess( ) ) {
+                        saved.add( sessionId );
+                    }
+                }
+            } );
+            thread.start( );
+            writers.add( thread );
+        }
+        started.await( );
+        source.close( );
+        for ( Thread writer : writers ) {
+            writer.join( 10000 );
+        }
+
+        for ( int i = 0; i < 10; i++ ) {
+            assertTrue( delegate.mementos.containsKey( "queued-" + i ) );
+        }
+        for ( String sessionId : saved ) {
+            assertTrue( delegate.mementos.containsKey( sessionId ), sessionId );
+        }
+        assertEquals( 0, source.getPendingWriteCount( ) );
+    }
+
+    @Test
+    public void shouldQueueFailedWritesAgain( ) {
+        MapSource delegate = new MapSource( );
+        WriteBehindSessionSource source = builder( delegate ).build( );
+        PersonMemento memento = personMemento( "Kusal" );
+        source.writeSessionMemento( "session-1", memento );
+
+        delegate.failWrites.set( true );
+        SessionResponse<Boolean> failedFlush = source.flush( );
+        assertTrue( failedFlush.isError( ) );
+        assertEquals( 1, source.getPendingWriteCount( ) );
+        assertSame( memento, source.readSessionMemento( "session-1" ).getData( ) );
+
+        delegate.failWrites.set( false );
+        assertTrue( source.flush( ).isSuccess( ) );
+        assertEquals( 0, source.getPendingWriteCount( ) );
+        assertSame( memento, delegate.mementos.get( "session-1" ) );
+        source.close( );
+    }
+
+    private static WriteBehindSessionSource.Builder builder( MapSource delegate ) {
+        return WriteBehindSessionSource.builder( delegate ).flushIntervalMillis( FLUSH_INTERVAL_MILLIS );
+    }
+
+    private static PersonMemento personMemento( String name ) {
+        PersonMemento memento = new PersonMemento( );
+        memento.setPerson( new Person( name, 27, 0, "Matara" ) );
+        memento.setSessionClass( );
+        return memento;
+    }
+
+    /**
+     * A delegate keeping its mementos in memory, whose writes can be failed or held
+     */
+    private static final class MapSource implements ExternalSessionSource {
+
+        private final Map<String, SessionMemento> mementos = new ConcurrentHashMap<>( );
+        private final AtomicInteger writes = new AtomicInteger( );
+        private final AtomicBoolean failWrites = new AtomicBoolean( );
+        private volatile CountDownLatch writeEntered = new CountDownLatch( 0 );
+        private volatile CountDownLatch writeReleased = new CountDownLatch( 0 );
+
+        @Override
+        public SessionResponse<SessionMemento> readSessionMemento( String sessionId ) {
+            SessionMemento memento = mementos.get( sessionId );
+            return new SessionResponse<>( "", memento != null ? SessionCode.SUCCESS : SessionCode.ERROR, memento );
+        }
+
+        @Override
+        public SessionResponse<Boolean> writeSessionMemento( String sessionId, SessionMemento memento ) {
+            writeEntered.countDown( );
+            try {
+                writeReleased.await( 5, TimeUnit.SECONDS );
+            } catch ( InterruptedException e ) {
+                Thread.currentThread( ).interrupt( );
+            }
+            if ( failWrites.get( ) ) {
+                return new SessionResponse<>( "", SessionCode.ERROR, false );
+            }
+            writes.incrementAndGet( );
+            mementos.put( sessionId, memento );
+            return new SessionResponse<>( "", SessionCode.SUCCESS, true );
+        }
+
+        @Override
+        public SessionResponse<Boolean> deleteSessionMemento( String sessionId ) {
+            return new SessionResponse<>( "", SessionCode.SUCCESS, mementos.remove( sessionId ) != null );
+        }
+
+        /**
+         * Runs the action on a new thread and returns once it is writing to this source, holding the write until
+         * {@link #releaseWrites()} is called
+         */
+        private Thread blockWritesWhile( Runnable action ) throws InterruptedException {
+            writeEntered = new CountDownLatch( 1 );
+            writeReleased = new CountDownLatch( 1 );
+            Thread thread = new Thread( action );
+            thread.start( );
+            assertTrue( writeEntered.await( 5, TimeUnit.SECONDS ) );
+            return thread;
+        }
+
+        private void releaseWrites( ) {
+            writeReleased.countDown( );
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.kusalk.projects.session.handler.id;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link SessionIdGenerator} implementations and how the generator is resolved
+ */
+public class SessionIdGeneratorTest {
+
+    @Test
+    public void shouldGenerateUniqueSequentialIdsAcrossThreads( ) throws InterruptedException {
+        SequentialSessionIdGenerator generator = new SequentialSessionIdGenerator( 0x12345 );
+        Set<SessionId> sessionIds = ConcurrentHashMap.newKeySet( );
+        AtomicInteger violations = new AtomicInteger( );
+        List<Thread> threads = new ArrayList<>( );
+        for ( int t = 0; t < 8; t++ ) {
+            threads.add( new Thread( ( ) -> {
+                long previousSequence = -1;
+                for ( int i = 0; i < 5000; i++ ) {
+                    SessionId sessionId = generator.generateSessionId( );
+                    sessionIds.add( sessionId );
+                    // Only the lower 16 bits of the node id are kept in the high bits of the id
+                    long sequence = sessionId.getMostSignificantBits( ) & 0xFFFFFFFFFFFFL;
+                    if ( sessionId.getMostSignificantBits( ) >>> 48 != 0x2345 || sequence <= previousSequence ) {
+                        violations.incrementAndGet( );
+                    }
+                    previousSequence = sequence;
+                }
+            } ) );
+        }
+        threads.forEach( Thread::start );
+        for ( Thread thread : threads ) {
+            thread.join( );
+        }
+
+        assertEquals( 0, violations.get( ) );
+        assertEquals( 8 * 5000, sessionIds.size( ) );
+        assertTrue( generator.isCollisionFree( ) );
+        assertFalse( new RandomUUIDSessionIdGenerator( ).isCollisionFree( ) );
+    }
+
+    @Test
+    public void shouldResolveTheGeneratorFromTheSystemProperty( ) {
+        String previous = System.getProperty( SessionIdGenerator.ID_GENERATOR_PROPERTY );
+        try {
+            System.clearProperty( SessionIdGenerator.ID_GENERATOR_PROPERTY );
+            assertEquals( SequentialSessionIdGenerator.class, SessionIdGenerator.load( ).getClass( ) );
+
+            System.setProperty( SessionIdGenerator.ID_GENERATOR_PROPERTY, " " + RandomUUIDSessionIdGenerator.class.getName( ) + " " );
+            assertEquals( RandomUUIDSessionIdGenerator.class, SessionIdGenerator.load( ).getClass( ) );
+
+            // Unknown classes and classes which are not generators fall back to the default generator
+            System.setProperty( SessionIdGenerator.ID_GENERATOR_PROPERTY, "com.example.MissingGenerator" );
+            assertEquals( SequentialSessionIdGenerator.class, SessionIdGenerator.load( ).getClass( ) );
+            System.setProperty( SessionIdGenerator.ID_GENERATOR_PROPERTY, String.class.getName( ) );
+            assertEquals( SequentialSessionIdGenerator.class, SessionIdGenerator.load( ).getClass( ) );
+        } finally {
+            if ( previous != null ) {
+                System.setProperty( SessionIdGenerator.ID_GENERATOR_PROPERTY, previous );
+            } else {
+                System.clearProperty( SessionIdGenerator.ID_GENERATOR_PROPERTY );
+            }
+        }
+    }
+}
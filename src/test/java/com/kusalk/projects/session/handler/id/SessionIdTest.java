@@ -0,0 +1,58 @@
+package com.kusalk.projects.session.handler.id;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Unit tests for the text forms of a {@link SessionId}
+ */
+public class SessionIdTest {
+
+    @Test
+    public void shouldRoundTripBothTextForms( ) {
+        SessionId sessionId = new SessionId( 0x0123456789ABCDEFL, 0xFEDCBA9876543210L );
+
+        assertEquals( "01234567-89ab-cdef-fedc-ba9876543210", sessionId.toUuidString( ) );
+        assertEquals( 22, sessionId.toCompactString( ).length( ) );
+        assertEquals( sessionId, SessionId.parse( sessionId.toUuidString( ) ) );
+        assertEquals( sessionId, SessionId.parse( sessionId.toCompactString( ) ) );
+        assertEquals( sessionId.hashCode( ), SessionId.parse( sessionId.toCompactString( ) ).hashCode( ) );
+        // The UUID form is the default text form
+        assertEquals( sessionId.toUuidString( ), sessionId.toString( ) );
+
+        UUID uuid = UUID.randomUUID( );
+        assertEquals( uuid.toString( ), SessionId.parse( uuid.toString( ) ).toUuidString( ) );
+        assertNotEquals( sessionId, new SessionId( 0x0123456789ABCDEFL, 0 ) );
+    }
+
+    @Test
+    public void shouldNormalizeEverySpellingOfASessionId( ) {
+        SessionId sessionId = new SessionId( 0x0123456789ABCDEFL, 0xFEDCBA9876543210L );
+        String canonical = sessionId.toString( );
+
+        assertEquals( canonical, SessionId.normalize( canonical ) );
+        assertEquals( canonical, SessionId.normalize( canonical.toUpperCase( ) ) );
+        assertEquals( canonical, SessionId.normalize( sessionId.toCompactString( ) ) );
+
+        // The last character of the compact form carries four spare bits, which do not change the session id
+        SessionId zero = new SessionId( 0, 0 );
+        assertEquals( "AAAAAAAAAAAAAAAAAAAAAA", zero.toCompactString( ) );
+        assertEquals( zero, SessionId.parse( "AAAAAAAAAAAAAAAAAAAAAB" ) );
+        assertEquals( zero.toString( ), SessionId.normalize( "AAAAAAAAAAAAAAAAAAAAAB" ) );
+    }
+
+    @Test
+    public void shouldRejectInvalidText( ) {
+        assertNull( SessionId.parse( null ) );
+        assertNull( SessionId.parse( "" ) );
+        assertNull( SessionId.parse( "custom-session-id" ) );
+        assertNull( SessionId.parse( "zzzzzzzz-89ab-cdef-fedc-ba9876543210" ) );
+        assertNull( SessionId.parse( "AAAAAAAAAAAAAAAAAAAA+/" ) );
+        assertNull( SessionId.normalize( "custom-session-id" ) );
+    }
+}
@@ -0,0 +1,46 @@
+package com.kusalk.projects.session.handler.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link LatencyHistogram}
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void shouldReportPercentilesWithinThreePercent( ) {
+        LatencyHistogram histogram = new LatencyHistogram( );
+        for ( long value = 1; value <= 100000; value++ ) {
+            histogram.record( value * 1000 );
+        }
+        assertEquals( 100000, histogram.getCount( ) );
+        assertEquals( 100000000, histogram.getMax( ) );
+        assertEquals( 50000500, histogram.getMean( ), 1 );
+        assertWithin( 50000000, histogram.getValueAtPercentile( 50 ) );
+        assertWithin( 99000000, histogram.getValueAtPercentile( 99 ) );
+        assertWithin( 99900000, histogram.getValueAtPercentile( 99.9 ) );
+        assertEquals( 100000000, histogram.getValueAtPercentile( 100 ) );
+    }
+
+    @Test
+    public void shouldMapEveryValueToABucketCoveringIt( ) {
+        long[] values = { 0, 1, 31, 32, 33, 63, 64, 1000, 123456789, 1L << 40, ( 1L << 41 ) - 1 };
+        for ( long value : values ) {
+            int bucket = LatencyHistogram.bucketOf( value );
+            assertTrue( LatencyHistogram.upperBoundOf( bucket ) >= value, "Bucket of " + value );
+            assertTrue( bucket == 0 || LatencyHistogram.upperBoundOf( bucket - 1 ) < value, "Bucket of " + value );
+        }
+        LatencyHistogram histogram = new LatencyHistogram( );
+        histogram.record( Long.MAX_VALUE );
+        histogram.reset( );
+        assertEquals( 0, histogram.getCount( ) );
+        assertEquals( 0, histogram.getValueAtPercentile( 99 ) );
+    }
+
+    private static void assertWithin( long expected, long actual ) {
+        assertTrue( Math.abs( actual - expected ) <= expected * 0.03, "Expected about " + expected + " but was " + actual );
+    }
+}
@@ -0,0 +1,54 @@
+package com.kusalk.projects.session.handler.offheap;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * Unit tests for the {@link SlabAllocator}
+ */
+public class SlabAllocatorTest {
+
+    @Test
+    public void shouldReadBackWhatWasAllocated( ) {
+        SlabAllocator allocator = new SlabAllocator( 1 << 22, 1 << 14 );
+        Random random = new Random( 7 );
+        List<byte[]> stored = new ArrayList<>( );
+        List<Long> handles = new ArrayList<>( );
+        for ( int i = 0; i < 200; i++ ) {
+            byte[] data = new byte[random.nextInt( 3000 )];
+            random.nextBytes( data );
+            long handle = allocator.allocate( data );
+            assertNotEquals( SlabAllocator.NO_HANDLE, handle );
+            stored.add( data );
+            handles.add( handle );
+        }
+        for ( int i = 0; i < stored.size( ); i++ ) {
+            assertArrayEquals( stored.get( i ), allocator.read( handles.get( i ) ) );
+        }
+        handles.forEach( allocator::free );
+        assertEquals( 0, allocator.getUsedBytes( ) );
+    }
+
+    @Test
+    public void shouldReuseFreedChunksOnceTheCapacityIsUsedUp( ) {
+        SlabAllocator allocator = new SlabAllocator( 4096, 1024 );
+        byte[] data = new byte[1000];
+        List<Long> handles = new ArrayList<>( );
+        long handle;
+        while ( ( handle = allocator.allocate( data ) ) != SlabAllocator.NO_HANDLE ) {
+            handles.add( handle );
+        }
+        assertEquals( 4, handles.size( ) );
+        assertEquals( SlabAllocator.NO_HANDLE, allocator.allocate( new byte[10] ) );
+        assertEquals( SlabAllocator.NO_HANDLE, allocator.allocate( new byte[2000] ) );
+        allocator.free( handles.get( 2 ) );
+        assertEquals( handles.get( 2 ), allocator.allocate( data ) );
+    }
+}
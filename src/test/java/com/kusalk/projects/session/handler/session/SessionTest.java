@@ -0,0 +1,80 @@
+package com.kusalk.projects.session.handler.session;
+
+import com.kusalk.projects.session.handler.demo.PersonSession;
+import com.kusalk.projects.session.handler.id.SessionId;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the locks and the session id of a {@link Session}
+ */
+public class SessionTest {
+
+    @Test
+    public void shouldExcludeReadersWhileWriting( ) throws Exception {
+        Session session = new PersonSession( );
+        AtomicInteger readers = new AtomicInteger( );
+        AtomicInteger writers = new AtomicInteger( );
+        AtomicInteger violations = new AtomicInteger( );
+        List<Thread> threads = new ArrayList<>( );
+        for ( int t = 0; t < 8; t++ ) {
+            boolean writer = t % 4 == 0;
+            threads.add( new Thread( ( ) -> {
+                for ( int i = 0; i < 20000; i++ ) {
+                    if ( writer ) {
+                        session.startWritingSession( );
+                        if ( writers.incrementAndGet( ) != 1 || readers.get( ) != 0 ) {
+                            violations.incrementAndGet( );
+                        }
+                        writers.decrementAndGet( );
+                        session.endWritingSession( );
+                    } else {
+                        session.startReadingSession( );
+                        readers.incrementAndGet( );
+                        if ( writers.get( ) != 0 ) {
+                            violations.incrementAndGet( );
+                        }
+                        readers.decrementAndGet( );
+                        session.endReadingSession( );
+                    }
+                }
+            } ) );
+        }
+        threads.forEach( Thread::start );
+        for ( Thread thread : threads ) {
+            thread.join( );
+        }
+
+        assertEquals( 0, violations.get( ) );
+        assertTrue( session.tryStartWritingSession( ) );
+        assertFalse( session.tryStartWritingSession( ) );
+        session.endWritingSession( );
+        assertThrows( IllegalMonitorStateException.class, session::endReadingSession );
+    }
+
+    @Test
+    public void shouldKeepCustomSessionIdsWhichAreNotSessionIds( ) {
+        Session session = new PersonSession( );
+        session.setSessionId( " " );
+        session.setSessionId( "custom-session-id" );
+        session.setSessionId( "another-session-id" );
+
+        assertEquals( "custom-session-id", session.getSessionId( ) );
+        assertNull( session.getId( ) );
+
+        // The session containers replace a custom session id with the id they hold the session under
+        SessionId sessionId = new SessionId( 1, 2 );
+        session.setSessionId( sessionId );
+        assertEquals( sessionId.toString( ), session.getSessionId( ) );
+        assertEquals( sessionId, session.getId( ) );
+    }
+}
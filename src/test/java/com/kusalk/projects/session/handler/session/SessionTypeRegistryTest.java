@@ -0,0 +1,168 @@
+package com.kusalk.projects.session.handler.session;
+
+import com.kusalk.projects.session.handler.SessionServices;
+import com.kusalk.projects.session.handler.containers.InternalSessionContainer;
+import com.kusalk.projects.session.handler.util.SessionResponse;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the factories of the {@link SessionTypeRegistry}
+ */
+public class SessionTypeRegistryTest {
+
+    private final SessionTypeRegistry registry = SessionTypeRegistry.getInstance( );
+
+    @Test
+    public void shouldCallPublicConstructorsThroughASpunLambda( ) {
+        SessionType<PublicSession> sessionType = registry.register( PublicSession.class );
+
+        assertEquals( PublicSession.class, sessionType.newSession( ).getClass( ) );
+        assertSame( sessionType, registry.resolve( PublicSession.class ) );
+        assertSame( sessionType, registry.getSessionType( sessionType.getTypeId( ) ) );
+        // The lambda calls the constructor directly, so even a checked exception it throws is not wrapped
+        PublicSession.FAIL.set( true );
+        try {
+            assertEquals( IOException.class, assertThrows( Exception.class, sessionType::newSession ).getClass( ) );
+        } finally {
+            PublicSession.FAIL.set( false );
+        }
+    }
+
+    @Test
+    public void shouldFallBackToTheMethodHandleForNonPublicConstructors( ) {
+        SessionType<HiddenConstructorSession> sessionType = registry.register( HiddenConstructorSession.class );
+
+        assertEquals( HiddenConstructorSession.class, sessionType.newSession( ).getClass( ) );
+        // The method handle is invoked by the registry, which wraps checked exceptions of the constructor
+        HiddenConstructorSession.FAIL.set( true );
+        try {
+            Exception e = assertThrows( Exception.class, sessionType::newSession );
+            assertEquals( IllegalStateException.class, e.getClass( ) );
+            assertEquals( IOException.class, e.getCause( ).getClass( ) );
+        } finally {
+            HiddenConstructorSession.FAIL.set( false );
+        }
+        assertThrows( IllegalArgumentException.class, ( ) -> registry.register( NoDefaultConstructorSession.class ) );
+    }
+
+    @Test
+    public void shouldRejectUnknownSessionClassNames( ) {
+        assertThrows( ClassNotFoundException.class, ( ) -> registry.resolve( "com.example.MissingSession" ) );
+        assertThrows( IllegalArgumentException.class, ( ) -> registry.resolve( String.class.getName( ) ) );
+
+        InternalSessionContainer container = InternalSessionContainer.builder( "unknown-session-class" ).partitions( 1 ).build( );
+        try {
+            SessionResponse<String> sessionResponse = container.createSession( "com.example.MissingSession", 60 );
+            assertTrue( sessionResponse.isError( ) );
+            assertEquals( 0, container.getSessionCount( ) );
+        } finally {
+            container.close( );
+        }
+    }
+
+    @Test
+    public void shouldCreateAndRestoreSessionsThroughTheRegisteredFactory( ) throws ClassNotFoundException {
+        AtomicInteger created = new AtomicInteger( );
+        SessionType<CountedSession> sessionType = registry.register( CountedSession.class, ( ) -> {
+            created.incrementAndGet( );
+            return new CountedSession( );
+        } );
+        // Registering the class again keeps the first factory
+        assertSame( sessionType, registry.register( CountedSession.class, CountedSession::new ) );
+        assertSame( sessionType, registry.resolve( CountedSession.class.getName( ) ) );
+
+        InternalSessionContainer container = InternalSessionContainer.builder( "registered-factory" ).partitions( 1 ).build( );
+        try {
+            SessionServices sessionServices = new SessionServices( container );
+            String sessionId = sessionServices.createSession( CountedSession.class, 60 ).getData( );
+            assertEquals( 1, created.get( ) );
+            assertEquals( 60, sessionServices.loadSession( sessionId ).getData( ).getTimeoutInSeconds( ) );
+
+            container.removeSession( sessionId );
+            CountedMemento memento = new CountedMemento( );
+            memento.setSessionClass( );
+            memento.setSessionTimeoutInSeconds( 60 );
+            Session restored = container.restoreSession( sessionId, memento ).getData( );
+            assertEquals( 2, created.get( ) );
+            assertEquals( CountedSession.class, restored.getClass( ) );
+            assertEquals( sessionId, restored.getSessionId( ) );
+        } finally {
+            container.close( );
+        }
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private static <E extends Throwable> void sneakyThrow( Throwable e ) throws E {
+        throw ( E ) e;
+    }
+
+    /**
+     * A session with a public constructor, which throws a checked exception once it is told to fail
+     */
+    public static class PublicSession extends EmptySession {
+
+        private static final AtomicBoolean FAIL = new AtomicBoolean( );
+
+        public PublicSession( ) {
+            if ( FAIL.get( ) ) {
+                SessionTypeRegistryTest.<RuntimeException>sneakyThrow( new IOException( "constructor failed" ) );
+            }
+        }
+    }
+
+    /**
+     * A session with a private constructor, which throws a checked exception once it is told to fail
+     */
+    public static class HiddenConstructorSession extends EmptySession {
+
+        private static final AtomicBoolean FAIL = new AtomicBoolean( );
+
+        private HiddenConstructorSession( ) {
+            if ( FAIL.get( ) ) {
+                SessionTypeRegistryTest.<RuntimeException>sneakyThrow( new IOException( "constructor failed" ) );
+            }
+        }
+    }
+
+    public static class NoDefaultConstructorSession extends EmptySession {
+
+        public NoDefaultConstructorSession( String name ) {
+        }
+    }
+
+    public static class CountedSession extends EmptySession {
+    }
+
+    private static class CountedMemento extends SessionMemento {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void setSessionClass( ) {
+            this.sessionClass = CountedSession.class.getName( );
+        }
+    }
+
+    private abstract static class EmptySession extends Session {
+
+        @Override
+        public void restore( SessionMemento memento ) {
+        }
+
+        @Override
+        public SessionMemento createMemento( ) {
+            CountedMemento memento = new CountedMemento( );
+            memento.setSessionClass( );
+            return memento;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.kusalk.projects.session.handler.warmup;
+
+import com.kusalk.projects.session.handler.SessionServices;
+import com.kusalk.projects.session.handler.containers.ExternalSessionContainer;
+import com.kusalk.projects.session.handler.containers.InternalSessionContainer;
+import com.kusalk.projects.session.handler.demo.Person;
+import com.kusalk.projects.session.handler.demo.PersonMemento;
+import com.kusalk.projects.session.handler.demo.PersonSession;
+import com.kusalk.projects.session.handler.external.sources.ExternalSessionSource;
+import com.kusalk.projects.session.handler.external.sources.StoredSession;
+import com.kusalk.projects.session.handler.id.RandomUUIDSessionIdGenerator;
+import com.kusalk.projects.session.handler.session.Session;
+import com.kusalk.projects.session.handler.session.SessionMemento;
+import com.kusalk.projects.session.handler.session.SessionTypeRegistry;
+import com.kusalk.projects.session.handler.util.SessionCode;
+import com.kusalk.projects.session.handler.util.SessionResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link SessionWarmer}
+ */
+public class SessionWarmerTest {
+
+    @Test
+    public void shouldHydrateTheMostRecentLiveSessions( ) {
+        SessionTypeRegistry.getInstance( ).register( PersonSession.class, PersonSession::new );
+        InternalSessionContainer container = InternalSessionContainer.builder( "warm-up" ).partitions( 2 ).build( );
+        ExecutorService executor = Executors.newFixedThreadPool( 4 );
+        try {
+            TimedSource source = new TimedSource( );
+            long now = System.currentTimeMillis( );
+            List<String> sessionIds = new ArrayList<>( );
+            RandomUUIDSessionIdGenerator generator = new RandomUUIDSessionIdGenerator( );
+            for ( int i = 0; i < 1000; i++ ) {
+                String sessionId = generator.generateSessionId( ).toString( );
+                sessionIds.add( sessionId );
+                // the first 100 sessions were written two hours ago with a timeout of one hour
+                long writtenAt = i < 100 ? now - 7_200_000 : now - ( 1000 - i ) * 1000L;
+                source.put( sessionId, writtenAt, personMemento( "person-" + i ) );
+            }
+            SessionServices sessionServices = new SessionServices( container, new ExternalSessionContainer( source ), executor );
+
+            SessionResponse<WarmUpProgress> warmUpResponse = sessionServices.warmUp( 300 );
+
+            assertTrue( warmUpResponse.isSuccess( ) );
+            WarmUpProgress progress = warmUpResponse.getData( );
+            assertEquals( WarmUpProgress.Phase.COMPLETED, progress.getPhase( ) );
+            assertEquals( 1000, progress.getScannedSessions( ) );
+            assertEquals( 900, progress.getLiveSessions( ) );
+            assertEquals( 100, progress.getExpiredSessions( ) );
+            assertEquals( 300, progress.getHydratedSessions( ) );
+            assertEquals( 300, container.getSessionCount( ) );
+            for ( int i = 700; i < 1000; i++ ) {
+                assertNotNull( container.loadSessionFromContainer( sessionIds.get( i ) ) );
+            }
+            assertNull( container.loadSessionFromContainer( sessionIds.get( 699 ) ) );
+
+            int reads = source.reads.get( );
+            assertEquals( SessionCode.ERROR, sessionServices.loadSession( sessionIds.get( 0 ) ).getCode( ) );
+            assertEquals( reads, source.reads.get( ) );
+            SessionResponse<Session> lazyResponse = sessionServices.loadSession( sessionIds.get( 699 ) );
+            assertTrue( lazyResponse.isSuccess( ) );
+            assertEquals( reads + 1, source.reads.get( ) );
+        } finally {
+            executor.shutdown( );
+            container.close( );
+        }
+    }
+
+    private static PersonMemento personMemento( String name ) {
+        PersonMemento memento = new PersonMemento( );
+        memento.setPerson( new Person( name, 27, 0, "Matara" ) );
+        memento.setSessionClass( );
+        return memento;
+    }
+
+    /**
+     * A source keeping its mementos in memory along with when they were written
+     */
+    private static final class TimedSource implements ExternalSessionSource {
+
+        private final Map<String, SessionMemento> mementos = new ConcurrentHashMap<>( );
+        private final Map<String, Long> writtenAt = new ConcurrentHashMap<>( );
+        private final AtomicInteger reads = new AtomicInteger( );
+
+        void put( String sessionId, long writtenAtMillis, SessionMemento memento ) {
+            mementos.put( sessionId, memento );
+            writtenAt.put( sessionId, writtenAtMillis );
+        }
+
+        @Override
+        public SessionResponse<SessionMemento> readSessionMemento( String sessionId ) {
+            reads.incrementAndGet( );
+            SessionMemento memento = mementos.get( sessionId );
+            return new SessionResponse<>( "", memento != null ? SessionCode.SUCCESS : SessionCode.ERROR, memento );
+        }
+
+        @Override
+        public SessionResponse<Boolean> writeSessionMemento( String sessionId, SessionMemento memento ) {
+            put( sessionId, System.currentTimeMillis( ), memento );
+            return new SessionResponse<>( "", SessionCode.SUCCESS, true );
+        }
+
+        @Override
+        public SessionResponse<Boolean> forEachSessionId( Consumer<String> action ) {
+            mementos.keySet( ).forEach( action );
+            return new SessionResponse<>( "", SessionCode.SUCCESS, true );
+        }
+
+        @Override
+        public SessionResponse<Boolean> forEachStoredSession( Consumer<StoredSession> action ) {
+            writtenAt.forEach( ( sessionId, writtenAtMillis ) -> action.accept( new StoredSession( sessionId, writtenAtMillis, 3600 ) ) );
+            return new SessionResponse<>( "", SessionCode.SUCCESS, true );
+        }
+    }
+}